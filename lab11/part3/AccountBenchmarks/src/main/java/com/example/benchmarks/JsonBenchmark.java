@@ -0,0 +1,80 @@
+package com.example.benchmarks;
+
+import com.example.checkingaccount.dto.TransactionRequest;
+import com.example.transferclient.dto.TransferRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson (de)serialization of the request bodies exchanged between TransferClient and the account services.
+ * Readers and writers are built once, as Spring MVC and Feign reuse theirs across requests.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBenchmark {
+
+    private ObjectWriter transactionWriter;
+    private ObjectReader transactionReader;
+    private ObjectWriter transferWriter;
+    private ObjectReader transferReader;
+
+    private TransactionRequest transactionRequest;
+    private TransferRequest transferRequest;
+    private byte[] transactionJson;
+    private byte[] transferJson;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        transactionWriter = mapper.writerFor(TransactionRequest.class);
+        transactionReader = mapper.readerFor(TransactionRequest.class);
+        transferWriter = mapper.writerFor(TransferRequest.class);
+        transferReader = mapper.readerFor(TransferRequest.class);
+
+        transactionRequest = new TransactionRequest("CHK001", 12_50L, "USD");
+        transferRequest = new TransferRequest("CHK001", "SAV001", 12_50L, "USD");
+        transactionJson = "{\"accountNumber\":\"CHK001\",\"amount\":12.50,\"currency\":\"USD\"}"
+                .getBytes(StandardCharsets.UTF_8);
+        transferJson = ("{\"fromAccountNumber\":\"CHK001\",\"toAccountNumber\":\"SAV001\",\"amount\":12.50,"
+                + "\"currency\":\"USD\",\"simulateError\":false}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] writeTransactionRequest() throws IOException {
+        return transactionWriter.writeValueAsBytes(transactionRequest);
+    }
+
+    @Benchmark
+    public TransactionRequest readTransactionRequest() throws IOException {
+        return transactionReader.readValue(transactionJson);
+    }
+
+    @Benchmark
+    public byte[] writeTransferRequest() throws IOException {
+        return transferWriter.writeValueAsBytes(transferRequest);
+    }
+
+    @Benchmark
+    public TransferRequest readTransferRequest() throws IOException {
+        return transferReader.readValue(transferJson);
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.benchmarks;
+
+import com.example.checkingaccount.model.CheckingAccount;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocation cost of one deposit plus one withdrawal on the account hot path.
+ * Run with {@code -prof gc} and compare {@code gc.alloc.rate.norm} (bytes per operation)
+ * between the minor-unit entity and the BigDecimal representation it replaced.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MoneyBenchmark {
+
+    private CheckingAccount account;
+    private BigDecimalAccount bigDecimalAccount;
+    private BigDecimal bigDecimalAmount;
+
+    @Setup
+    public void setUp() {
+        account = new CheckingAccount("CHK001", "CUST001", 100_000_00L, "USD");
+        bigDecimalAccount = new BigDecimalAccount(new BigDecimal("100000.00"));
+        bigDecimalAmount = new BigDecimal("12.50");
+    }
+
+    @Benchmark
+    public boolean minorUnits() {
+        return account.deposit(12_50L) & account.withdraw(12_50L);
+    }
+
+    @Benchmark
+    public boolean bigDecimal() {
+        return bigDecimalAccount.deposit(bigDecimalAmount) & bigDecimalAccount.withdraw(bigDecimalAmount);
+    }
+
+    /**
+     * The balance logic as it was before the switch to minor units.
+     */
+    static class BigDecimalAccount {
+        private BigDecimal balance;
+        private LocalDateTime updatedAt;
+
+        BigDecimalAccount(BigDecimal balance) {
+            this.balance = balance;
+        }
+
+        boolean deposit(BigDecimal amount) {
+            if (amount.compareTo(BigDecimal.ZERO) > 0) {
+                this.balance = this.balance.add(amount);
+                this.updatedAt = LocalDateTime.now();
+                return true;
+            }
+            return false;
+        }
+
+        boolean withdraw(BigDecimal amount) {
+            if (amount.compareTo(BigDecimal.ZERO) > 0 && this.balance.compareTo(amount) >= 0) {
+                this.balance = this.balance.subtract(amount);
+                this.updatedAt = LocalDateTime.now();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.benchmarks;
+
+import com.example.checkingaccount.CheckingAccountServiceApplication;
+import com.example.checkingaccount.dto.AccountRequest;
+import com.example.checkingaccount.service.CheckingAccountService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CheckingAccountService#transferFrom} against the service's embedded H2 database, with the full Spring
+ * context (transactions, cache eviction, optional in-memory ledger) but no HTTP layer.
+ * Run it once per thread count with {@code -t}; {@code accounts=1} puts every thread on the same row.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TransferFromBenchmark {
+
+    private static final String CURRENCY = "USD";
+
+    @Param({"1", "1000"})
+    private int accounts;
+
+    @Param({"false", "true"})
+    private boolean ledger;
+
+    private ConfigurableApplicationContext context;
+    private CheckingAccountService service;
+    private Path ledgerDir;
+    private String[] accountNumbers;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        ledgerDir = Files.createTempDirectory("ledger-bench");
+        context = new SpringApplicationBuilder(CheckingAccountServiceApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "eureka.client.enabled=false",
+                        "spring.main.banner-mode=off",
+                        "logging.level.root=WARN",
+                        "account.ledger.enabled=" + ledger,
+                        "account.ledger.log-dir=" + ledgerDir)
+                .run();
+        service = context.getBean(CheckingAccountService.class);
+
+        accountNumbers = new String[accounts];
+        for (int i = 0; i < accounts; i++) {
+            accountNumbers[i] = String.format("BENCH%06d", i);
+            // Large enough that one cent per operation never runs an account dry
+            service.createAccount(new AccountRequest(accountNumbers[i], "BENCH", new BigDecimal("1000000000.00")));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+        context.close();
+        FileSystemUtils.deleteRecursively(ledgerDir);
+    }
+
+    @Benchmark
+    public boolean transferFrom() {
+        String accountNumber = accountNumbers[ThreadLocalRandom.current().nextInt(accountNumbers.length)];
+        return service.transferFrom(accountNumber, 1L, CURRENCY);
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.checkingaccount.cache;
+
+import com.example.checkingaccount.ledger.LedgerEngine;
+import com.example.checkingaccount.model.CheckingAccount;
+import com.example.checkingaccount.repository.CheckingAccountRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Preloads the {@code account.warmup.accounts} most recently changed accounts at startup, so the first requests
+ * after a restart do not all miss. They are put in the read-through account cache and, with the ledger enabled,
+ * loaded into the ledger. Reading them also pulls their pages into the page cache of a file database, which keeps
+ * them after the cache entries expire.
+ *
+ * Runs on {@link ApplicationReadyEvent}, which is published before the readiness state changes to
+ * ACCEPTING_TRAFFIC, so an instance reports itself ready only once it is warm.
+ */
+@Component
+public class AccountWarmup {
+
+    private static final Logger log = LoggerFactory.getLogger(AccountWarmup.class);
+
+    @Autowired
+    private CheckingAccountRepository checkingAccountRepository;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    // Present only when account.ledger.enabled=true
+    @Autowired(required = false)
+    private LedgerEngine ledgerEngine;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${account.warmup.accounts:0}")
+    private int accounts;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (accounts > 0) {
+            long start = System.nanoTime();
+            int loaded = load();
+            long elapsed = System.nanoTime() - start;
+            Timer.builder("account.warmup")
+                    .description("Time spent preloading recently changed accounts at startup")
+                    .register(meterRegistry)
+                    .record(elapsed, TimeUnit.NANOSECONDS);
+            log.info("Warmed up {} accounts in {} ms", loaded, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        }
+        log.info("Ready {} ms after JVM start", ManagementFactory.getRuntimeMXBean().getUptime());
+    }
+
+    private int load() {
+        Cache cache = cacheManager.getCache(AccountCache.NAME);
+        if (cache == null) {
+            return 0;
+        }
+        List<CheckingAccount> hot = checkingAccountRepository.findRecentlyUpdated(PageRequest.of(0, accounts));
+        for (CheckingAccount account : hot) {
+            if (ledgerEngine != null) {
+                // The ledger may hold a newer balance than the row, e.g. after a journal replay
+                ledgerEngine.getAccount(account.getAccountNumber())
+                        .ifPresent(live -> cache.put(live.getAccountNumber(), live));
+            } else {
+                cache.put(account.getAccountNumber(), account);
+            }
+        }
+        return hot.size();
+    }
+}
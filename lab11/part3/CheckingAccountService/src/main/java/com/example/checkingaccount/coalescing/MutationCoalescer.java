@@ -0,0 +1,367 @@
+package com.example.checkingaccount.coalescing;
+
+import com.example.checkingaccount.cache.AccountChangedEvent;
+import com.example.checkingaccount.dto.TransactionRequest;
+import com.example.checkingaccount.history.TransactionHistory;
+import com.example.checkingaccount.idempotency.IdempotencyConflictException;
+import com.example.checkingaccount.idempotency.IdempotencyService;
+import com.example.checkingaccount.model.CheckingAccount;
+import com.example.checkingaccount.model.IdempotencyRecord;
+import com.example.checkingaccount.model.TransactionType;
+import com.example.checkingaccount.repository.CheckingAccountRepository;
+import com.example.checkingaccount.repository.IdempotencyRecordRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Group commit for deposits and withdrawals on hot accounts.
+ *
+ * Mutations are queued per account. The first one to arrive opens a window of {@code account.coalescing.window-ms};
+ * everything queued for the account by then, or as soon as {@code max-batch} mutations are waiting, is applied in
+ * one transaction that locks the row once and writes the net balance. Mutations are evaluated in arrival order
+ * against the running balance, so a withdrawal sees exactly the deposits queued before it, and each caller's
+ * future completes with its own outcome after the commit. Only one batch per account is in flight at a time;
+ * different accounts flush in parallel.
+ *
+ * Keyed requests have their idempotency records written in the same transaction as the balance, as
+ * {@link IdempotencyService#execute} does for requests that are not coalesced.
+ */
+@Component
+@ConditionalOnExpression("${account.coalescing.enabled:false} and !${account.ledger.enabled:false}")
+public class MutationCoalescer {
+
+    private static final Logger log = LoggerFactory.getLogger(MutationCoalescer.class);
+
+    public enum Kind {
+        CREDIT, DEBIT
+    }
+
+    private enum State {
+        IDLE, SCHEDULED, FLUSHING
+    }
+
+    @Autowired
+    private CheckingAccountRepository checkingAccountRepository;
+
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    // Present unless account.history.enabled=false
+    @Autowired(required = false)
+    private TransactionHistory transactionHistory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${account.coalescing.window-ms:2}")
+    private long windowMs;
+
+    @Value("${account.coalescing.max-batch:256}")
+    private int maxBatch;
+
+    @Value("${account.coalescing.threads:8}")
+    private int threads;
+
+    private final ConcurrentMap<String, AccountQueue> queues = new ConcurrentHashMap<>();
+    private TransactionTemplate transactionTemplate;
+    private ScheduledExecutorService executor;
+    private DistributionSummary batchSizes;
+
+    @PostConstruct
+    public void start() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newScheduledThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "coalescer-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        batchSizes = DistributionSummary.builder("account.coalescing.batch.size")
+                .description("Mutations applied per group commit")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Queue a mutation for its account's next group commit.
+     *
+     * @return completes with true if the mutation was applied, false if the account is missing, holds another
+     *         currency, has insufficient funds or the amount is invalid; completes exceptionally with
+     *         {@link IdempotencyConflictException} if the key was used for a different request
+     */
+    public CompletableFuture<Boolean> submit(Kind kind, String operation, TransactionRequest request,
+            String idempotencyKey) {
+        String key = idempotencyKey == null || idempotencyKey.isEmpty() ? null : idempotencyKey;
+        if (key != null) {
+            IdempotencyRecord stored = idempotencyService.lookup(key);
+            if (stored != null) {
+                try {
+                    return CompletableFuture.completedFuture(IdempotencyService.replay(stored, operation, request));
+                } catch (IdempotencyConflictException e) {
+                    return CompletableFuture.failedFuture(e);
+                }
+            }
+        }
+
+        Mutation mutation = new Mutation(kind, operation, request, key);
+        while (true) {
+            AccountQueue queue = queues.computeIfAbsent(request.getAccountNumber(), AccountQueue::new);
+            synchronized (queue) {
+                // Lost a race with the queue going idle; it is no longer in the map
+                if (queue.retired) {
+                    continue;
+                }
+                queue.pending.add(mutation);
+                if (queue.state == State.IDLE) {
+                    queue.state = State.SCHEDULED;
+                    executor.schedule(() -> flushIfScheduled(queue), windowMs, TimeUnit.MILLISECONDS);
+                } else if (queue.state == State.SCHEDULED && queue.pending.size() >= maxBatch) {
+                    queue.state = State.FLUSHING;
+                    executor.execute(() -> flush(queue));
+                }
+            }
+            return mutation.result;
+        }
+    }
+
+    private void flushIfScheduled(AccountQueue queue) {
+        synchronized (queue) {
+            if (queue.state != State.SCHEDULED) {
+                return;
+            }
+            queue.state = State.FLUSHING;
+        }
+        flush(queue);
+    }
+
+    private void flush(AccountQueue queue) {
+        List<Mutation> batch = new ArrayList<>();
+        synchronized (queue) {
+            while (batch.size() < maxBatch && !queue.pending.isEmpty()) {
+                batch.add(queue.pending.poll());
+            }
+        }
+        try {
+            apply(queue.accountNumber, batch);
+        } finally {
+            synchronized (queue) {
+                if (queue.pending.isEmpty()) {
+                    queue.state = State.IDLE;
+                    queue.retired = true;
+                    queues.remove(queue.accountNumber, queue);
+                } else {
+                    // Mutations that arrived during this flush have already waited a full batch
+                    executor.execute(() -> flush(queue));
+                }
+            }
+        }
+    }
+
+    private void apply(String accountNumber, List<Mutation> batch) {
+        batchSizes.record(batch.size());
+        List<IdempotencyRecord> created;
+        try {
+            created = transactionTemplate.execute(status -> applyInTransaction(accountNumber, batch));
+        } catch (RuntimeException e) {
+            if (batch.size() > 1) {
+                // e.g. a key committed concurrently by an uncoalesced request; don't fail the whole batch for it
+                log.warn("Group commit of {} mutations on {} failed, applying them one by one: {}",
+                        batch.size(), accountNumber, e.getMessage());
+                for (Mutation mutation : batch) {
+                    apply(accountNumber, Collections.singletonList(mutation));
+                }
+            } else {
+                failAlone(batch.get(0), e);
+            }
+            return;
+        }
+        for (IdempotencyRecord record : created) {
+            idempotencyService.remember(record);
+        }
+        for (Mutation mutation : batch) {
+            mutation.complete();
+        }
+    }
+
+    private List<IdempotencyRecord> applyInTransaction(String accountNumber, List<Mutation> batch) {
+        List<CheckingAccount> locked = checkingAccountRepository.findByAccountNumberInForUpdate(
+                Collections.singleton(accountNumber));
+        CheckingAccount account = locked.isEmpty() ? null : locked.get(0);
+
+        Map<String, IdempotencyRecord> known = new HashMap<>();
+        List<String> keys = new ArrayList<>();
+        for (Mutation mutation : batch) {
+            if (mutation.key != null) {
+                keys.add(mutation.key);
+            }
+        }
+        if (!keys.isEmpty()) {
+            for (IdempotencyRecord record : idempotencyRecordRepository.findAllById(keys)) {
+                known.put(record.getIdempotencyKey(), record);
+            }
+        }
+
+        List<IdempotencyRecord> created = new ArrayList<>();
+        long balance = account != null ? account.getBalanceMinor() : 0;
+        boolean changed = false;
+        for (Mutation mutation : batch) {
+            IdempotencyRecord stored = mutation.key != null ? known.get(mutation.key) : null;
+            if (stored != null) {
+                mutation.replay(stored);
+                continue;
+            }
+
+            long amount = mutation.request.getAmountMinor();
+            boolean success = false;
+            if (account != null && amount > 0 && account.getCurrency().equals(mutation.request.getCurrency())) {
+                if (mutation.kind == Kind.CREDIT && balance <= Long.MAX_VALUE - amount) {
+                    balance += amount;
+                    success = true;
+                } else if (mutation.kind == Kind.DEBIT && balance >= amount) {
+                    balance -= amount;
+                    success = true;
+                }
+            }
+            mutation.succeed(success);
+            changed |= success;
+            if (success && transactionHistory != null) {
+                transactionHistory.record(accountNumber, typeOf(mutation), amount, mutation.request.getCurrency(),
+                        null);
+            }
+
+            if (mutation.key != null) {
+                IdempotencyRecord record = new IdempotencyRecord(mutation.key, mutation.operation, accountNumber,
+                        amount, mutation.request.getCurrency());
+                record.setSuccess(success);
+                known.put(mutation.key, record);
+                created.add(record);
+            }
+        }
+
+        if (changed) {
+            account.setBalanceMinor(balance);
+            eventPublisher.publishEvent(new AccountChangedEvent(accountNumber));
+        }
+        idempotencyRecordRepository.saveAll(created);
+        return created;
+    }
+
+    // History type of a mutation, from the endpoint that queued it
+    private static TransactionType typeOf(Mutation mutation) {
+        switch (mutation.operation) {
+            case "transfer-from":
+                return TransactionType.TRANSFER_OUT;
+            case "transfer-to":
+                return TransactionType.TRANSFER_IN;
+            default:
+                return mutation.kind == Kind.CREDIT ? TransactionType.DEPOSIT : TransactionType.WITHDRAWAL;
+        }
+    }
+
+    private void failAlone(Mutation mutation, RuntimeException e) {
+        if (e instanceof DataIntegrityViolationException && mutation.key != null) {
+            // Another request with the same key committed first
+            IdempotencyRecord winner = idempotencyRecordRepository.findById(mutation.key).orElse(null);
+            if (winner != null) {
+                idempotencyService.remember(winner);
+                mutation.replay(winner);
+                mutation.complete();
+                return;
+            }
+        }
+        mutation.result.completeExceptionally(e);
+    }
+
+    private static class AccountQueue {
+        private final String accountNumber;
+        private final Queue<Mutation> pending = new ArrayDeque<>();
+        private State state = State.IDLE;
+        private boolean retired;
+
+        AccountQueue(String accountNumber) {
+            this.accountNumber = accountNumber;
+        }
+    }
+
+    private static class Mutation {
+        private final Kind kind;
+        private final String operation;
+        private final TransactionRequest request;
+        private final String key;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        // Decided inside the transaction, handed to the caller only once it has committed
+        private boolean success;
+        private RuntimeException error;
+
+        Mutation(Kind kind, String operation, TransactionRequest request, String key) {
+            this.kind = kind;
+            this.operation = operation;
+            this.request = request;
+            this.key = key;
+        }
+
+        void succeed(boolean success) {
+            this.success = success;
+            this.error = null;
+        }
+
+        void replay(IdempotencyRecord stored) {
+            try {
+                succeed(IdempotencyService.replay(stored, operation, request));
+            } catch (IdempotencyConflictException e) {
+                this.error = e;
+            }
+        }
+
+        void complete() {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(success);
+            }
+        }
+    }
+}
@@ -1,25 +1,113 @@
 package com.example.checkingaccount.controller;
 
+import com.example.checkingaccount.bulkimport.AccountImporter;
+import com.example.checkingaccount.coalescing.MutationCoalescer;
+import com.example.checkingaccount.coalescing.MutationCoalescer.Kind;
 import com.example.checkingaccount.dto.AccountRequest;
+import com.example.checkingaccount.dto.ImportProgress;
 import com.example.checkingaccount.dto.TransactionRequest;
+import com.example.checkingaccount.dto.TransactionResult;
+import com.example.checkingaccount.history.InvalidCursorException;
+import com.example.checkingaccount.history.TransactionHistory;
+import com.example.checkingaccount.history.TransactionHistory.Cursor;
+import com.example.checkingaccount.hold.HoldConflictException;
+import com.example.checkingaccount.idempotency.IdempotencyConflictException;
+import com.example.checkingaccount.idempotency.IdempotencyService;
+import com.example.checkingaccount.model.AccountTransaction;
 import com.example.checkingaccount.model.CheckingAccount;
+import com.example.checkingaccount.model.FundHold;
+import com.example.checkingaccount.model.IdempotencyRecord;
+import com.example.checkingaccount.model.MinorUnits;
+import com.example.checkingaccount.outbox.InMemoryEventBroker;
+import com.example.checkingaccount.query.AccountProjection;
 import com.example.checkingaccount.service.CheckingAccountService;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/checking-accounts")
 @CrossOrigin(origins = "*")
+@Timed(histogram = true)
 public class CheckingAccountController {
 
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+
+    // Stored answers of keyed hand-offs and adoptions
+    private static final TypeReference<List<AccountRequest>> HANDED_OFF = new TypeReference<>() { };
+    private static final TypeReference<List<String>> ADOPTED = new TypeReference<>() { };
+
     @Autowired
     private CheckingAccountService checkingAccountService;
 
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    // Present only when account.coalescing.enabled=true and the ledger is disabled
+    @Autowired(required = false)
+    private MutationCoalescer mutationCoalescer;
+
+    @Autowired
+    private AccountImporter accountImporter;
+
+    // Present only when the outbox publishes to the embedded broker (account.outbox.sink=broker)
+    @Autowired(required = false)
+    private InMemoryEventBroker eventBroker;
+
+    // Present only when account.query.enabled=true; the GET endpoints then read it instead of the database
+    @Autowired(required = false)
+    private AccountProjection accountProjection;
+
+    // Present unless account.history.enabled=false
+    @Autowired(required = false)
+    private TransactionHistory transactionHistory;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${account.outbox.broker.max-wait-ms:30000}")
+    private long maxEventWaitMs;
+
+    @Value("${account.holds.default-ttl-ms:60000}")
+    private long defaultHoldTtlMs;
+
+    @Value("${account.holds.max-ttl-ms:3600000}")
+    private long maxHoldTtlMs;
+
+    @Value("${account.listing.default-limit:100}")
+    private int defaultLimit;
+
+    @Value("${account.listing.max-limit:1000}")
+    private int maxLimit;
+
+    @Value("${account.history.default-limit:100}")
+    private int defaultHistoryLimit;
+
+    @Value("${account.history.max-limit:1000}")
+    private int maxHistoryLimit;
+
     @PostMapping
     public ResponseEntity<?> createAccount(@RequestBody AccountRequest request) {
         try {
@@ -30,9 +118,114 @@ public class CheckingAccountController {
         }
     }
 
+    /**
+     * Bulk import from a CSV or NDJSON body, read while it is uploaded. Responds once the last batch has
+     * committed, with the number of rows imported and skipped as duplicates or invalid.
+     */
+    @PostMapping(value = "/import", consumes = {"text/csv", "application/x-ndjson"})
+    public ResponseEntity<ImportProgress> importAccounts(InputStream body,
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType) throws IOException {
+        AccountImporter.Format format = MediaType.parseMediaType(contentType).isCompatibleWith(TEXT_CSV)
+                ? AccountImporter.Format.CSV
+                : AccountImporter.Format.NDJSON;
+        return ResponseEntity.ok(accountImporter.importAccounts(body, format));
+    }
+
+    // Progress of the imports still running
+    @GetMapping("/import")
+    public List<ImportProgress> getRunningImports() {
+        return accountImporter.running();
+    }
+
+    /**
+     * One page of all accounts in account-number order, for the shard rebalancer. When the page is full, the
+     * {@code X-Next-After} header holds the value to pass as {@code after} for the next page.
+     */
+    @GetMapping
+    public ResponseEntity<List<CheckingAccount>> getAccounts(@RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit) {
+        int pageSize = Math.max(1, Math.min(limit != null ? limit : defaultLimit, maxLimit));
+        List<CheckingAccount> accounts = checkingAccountService.getAccounts(after, pageSize);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (accounts.size() == pageSize) {
+            response.header("X-Next-After", accounts.get(accounts.size() - 1).getAccountNumber());
+        }
+        return response.body(accounts);
+    }
+
+    /**
+     * Give up the listed accounts to another shard. They are deleted here and returned with their final balances
+     * and the stored outcomes of their keyed mutations, as account requests for {@code POST /adopt} on the new
+     * owner. Accounts with funds on hold stay here and are left out. Under an Idempotency-Key the answer is stored
+     * with the deletion, so a hand-off whose answer was lost is repeated without losing the balances. Answers
+     * {@code 409} in ledger mode.
+     */
+    @PostMapping("/handoff")
+    public ResponseEntity<?> handOff(@RequestBody List<String> accountNumbers,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        try {
+            return ResponseEntity.ok(idempotencyService.executeStored(idempotencyKey, "handoff", HANDED_OFF,
+                    () -> handOffAccounts(accountNumbers)));
+        } catch (UnsupportedOperationException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+    }
+
+    private List<AccountRequest> handOffAccounts(List<String> accountNumbers) {
+        List<CheckingAccount> accounts = checkingAccountService.handOff(accountNumbers);
+        List<String> handedOffNumbers = accounts.stream()
+                .map(CheckingAccount::getAccountNumber)
+                .collect(Collectors.toList());
+        Map<String, List<IdempotencyRecord>> records = idempotencyService.recordsOf(handedOffNumbers).stream()
+                .collect(Collectors.groupingBy(IdempotencyRecord::getAccountNumber));
+        List<AccountRequest> handedOff = new ArrayList<>();
+        for (CheckingAccount account : accounts) {
+            AccountRequest request = new AccountRequest(account.getAccountNumber(), account.getCustomerId(),
+                    account.getBalance());
+            request.setCurrency(account.getCurrency());
+            request.setIdempotencyRecords(records.getOrDefault(account.getAccountNumber(), List.of()));
+            handedOff.add(request);
+        }
+        return handedOff;
+    }
+
+    /**
+     * Take over accounts handed off by another shard, with their balances as initial balances and the stored
+     * outcomes of their keyed mutations. Returns the numbers of the accounts created; the others already exist here.
+     * Under an Idempotency-Key a repeated adoption is answered with the numbers created the first time.
+     */
+    @PostMapping("/adopt")
+    public ResponseEntity<?> adopt(@RequestBody List<AccountRequest> requests,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        List<CheckingAccount> accounts = new ArrayList<>(requests.size());
+        List<IdempotencyRecord> records = new ArrayList<>();
+        for (AccountRequest request : requests) {
+            if (request.getIdempotencyRecords() != null) {
+                records.addAll(request.getIdempotencyRecords());
+            }
+            String currency = request.getCurrency() != null ? request.getCurrency() : MinorUnits.DEFAULT_CURRENCY;
+            long balanceMinor = request.getInitialBalance() != null
+                    ? MinorUnits.fromDecimal(request.getInitialBalance(), currency)
+                    : 0;
+            accounts.add(new CheckingAccount(request.getAccountNumber(), request.getCustomerId(),
+                    balanceMinor, currency));
+        }
+        try {
+            return ResponseEntity.ok(idempotencyService.executeStored(idempotencyKey, "adopt", ADOPTED,
+                    () -> checkingAccountService.adoptAccounts(accounts, records).stream()
+                            .map(CheckingAccount::getAccountNumber)
+                            .collect(Collectors.toList())));
+        } catch (DataIntegrityViolationException e) {
+            // One of the numbers was created concurrently; nothing was adopted
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Account created concurrently, retry");
+        }
+    }
+
     @GetMapping("/{accountNumber}")
     public ResponseEntity<?> getAccount(@PathVariable String accountNumber) {
-        Optional<CheckingAccount> account = checkingAccountService.getAccount(accountNumber);
+        Optional<CheckingAccount> account = accountProjection != null
+                ? accountProjection.getAccount(accountNumber)
+                : checkingAccountService.getAccount(accountNumber);
         if (account.isPresent()) {
             return ResponseEntity.ok(account.get());
         } else {
@@ -40,49 +233,228 @@ public class CheckingAccountController {
         }
     }
 
+    /**
+     * One page of a customer's accounts in account-number order. When the page is full, the
+     * {@code X-Next-After} header holds the value to pass as {@code after} for the next page.
+     */
     @GetMapping("/customer/{customerId}")
-    public ResponseEntity<List<CheckingAccount>> getAccountsByCustomer(@PathVariable String customerId) {
-        List<CheckingAccount> accounts = checkingAccountService.getAccountsByCustomer(customerId);
-        return ResponseEntity.ok(accounts);
+    public ResponseEntity<List<CheckingAccount>> getAccountsByCustomer(@PathVariable String customerId,
+            @RequestParam(required = false) String after, @RequestParam(required = false) Integer limit) {
+        int pageSize = Math.max(1, Math.min(limit != null ? limit : defaultLimit, maxLimit));
+        List<CheckingAccount> accounts = accountProjection != null
+                ? accountProjection.getAccountsByCustomer(customerId, after, pageSize)
+                : checkingAccountService.getAccountsByCustomer(customerId, after, pageSize);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (accounts.size() == pageSize) {
+            response.header("X-Next-After", accounts.get(accounts.size() - 1).getAccountNumber());
+        }
+        return response.body(accounts);
     }
 
-    @PostMapping("/deposit")
-    public ResponseEntity<?> deposit(@RequestBody TransactionRequest request) {
-        boolean success = checkingAccountService.deposit(request);
-        if (success) {
-            return ResponseEntity.ok("Deposit successful");
-        } else {
-            return ResponseEntity.badRequest().body("Deposit failed");
+    /**
+     * All accounts of a customer as newline-delimited JSON, written while they are read from the database.
+     */
+    @GetMapping(value = "/customer/{customerId}/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamAccountsByCustomer(@PathVariable String customerId) {
+        StreamingResponseBody body = out -> {
+            Consumer<CheckingAccount> writer = account -> {
+                try {
+                    out.write(objectMapper.writeValueAsBytes(account));
+                    out.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+            if (accountProjection != null) {
+                accountProjection.getAllAccountsByCustomer(customerId).forEach(writer);
+            } else {
+                checkingAccountService.streamAccountsByCustomer(customerId, writer);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType("application/x-ndjson")).body(body);
+    }
+
+    /**
+     * One page of an account's transaction history, newest first, made at or after {@code from} and before
+     * {@code to} (epoch milliseconds, both optional). When the page is full, the {@code X-Next-After} header
+     * holds the value to pass as {@code after} for the next page.
+     */
+    @GetMapping("/{accountNumber}/transactions")
+    public ResponseEntity<List<AccountTransaction>> getTransactions(@PathVariable String accountNumber,
+            @RequestParam(required = false) Long from, @RequestParam(required = false) Long to,
+            @RequestParam(required = false) String after, @RequestParam(required = false) Integer limit) {
+        if (transactionHistory == null || checkingAccountService.getAccount(accountNumber).isEmpty()) {
+            return ResponseEntity.notFound().build();
         }
+        Cursor cursor = Cursor.of(after, to != null ? to : Long.MAX_VALUE);
+        int pageSize = Math.max(1, Math.min(limit != null ? limit : defaultHistoryLimit, maxHistoryLimit));
+        List<AccountTransaction> entries = transactionHistory.getPage(accountNumber,
+                from != null ? from : Long.MIN_VALUE, cursor, pageSize);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (entries.size() == pageSize) {
+            response.header("X-Next-After", Cursor.after(entries.get(entries.size() - 1)));
+        }
+        return response.body(entries);
     }
 
-    @PostMapping("/withdraw")
-    public ResponseEntity<?> withdraw(@RequestBody TransactionRequest request) {
-        boolean success = checkingAccountService.withdraw(request);
-        if (success) {
-            return ResponseEntity.ok("Withdrawal successful");
-        } else {
-            return ResponseEntity.badRequest().body("Withdrawal failed");
+    /**
+     * The same range of the history, without a page limit, as newline-delimited JSON written while it is read
+     * from the database, for statements of long histories.
+     */
+    @GetMapping(value = "/{accountNumber}/transactions/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamTransactions(@PathVariable String accountNumber,
+            @RequestParam(required = false) Long from, @RequestParam(required = false) Long to,
+            @RequestParam(required = false) String after) {
+        if (transactionHistory == null || checkingAccountService.getAccount(accountNumber).isEmpty()) {
+            return ResponseEntity.notFound().build();
         }
+        Cursor cursor = Cursor.of(after, to != null ? to : Long.MAX_VALUE);
+        StreamingResponseBody body = out -> transactionHistory.stream(accountNumber,
+                from != null ? from : Long.MIN_VALUE, cursor, entry -> {
+                    try {
+                        out.write(objectMapper.writeValueAsBytes(entry));
+                        out.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType("application/x-ndjson")).body(body);
     }
 
-    @PostMapping("/transfer-from")
-    public ResponseEntity<?> transferFrom(@RequestBody TransactionRequest request) {
-        boolean success = checkingAccountService.transferFrom(request.getAccountNumber(), request.getAmount());
-        if (success) {
-            return ResponseEntity.ok("Transfer from successful");
-        } else {
-            return ResponseEntity.badRequest().body("Transfer from failed");
+    /**
+     * Balance changes published by the outbox, starting at offset {@code from}. With {@code waitMs} the request
+     * is held until at least one event is available or the wait is over. Continue with the returned
+     * {@code nextOffset}. Returns {@code 410} when {@code from} is older than the retained events.
+     */
+    @GetMapping("/events")
+    public CompletableFuture<ResponseEntity<?>> getEvents(@RequestParam(defaultValue = "0") long from,
+            @RequestParam(defaultValue = "500") int limit, @RequestParam(defaultValue = "0") long waitMs) {
+        if (eventBroker == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.notFound().build());
         }
+        int pageSize = Math.max(1, Math.min(limit, maxLimit));
+        return eventBroker.awaitEvents(from)
+                .completeOnTimeout(null, Math.max(0, Math.min(waitMs, maxEventWaitMs)), TimeUnit.MILLISECONDS)
+                .<ResponseEntity<?>>thenApply(ready -> ResponseEntity.ok(eventBroker.read(from, pageSize)))
+                .exceptionally(e -> e.getCause() instanceof InMemoryEventBroker.OffsetExpiredException
+                        ? ResponseEntity.status(HttpStatus.GONE).body(e.getCause().getMessage())
+                        : ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(e.getMessage()));
+    }
+
+    @PostMapping("/deposit")
+    public CompletableFuture<ResponseEntity<String>> deposit(@RequestBody TransactionRequest request,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        return mutate(Kind.CREDIT, "deposit", request, idempotencyKey,
+                () -> checkingAccountService.deposit(request))
+                .thenApply(success -> success
+                        ? ResponseEntity.ok("Deposit successful")
+                        : ResponseEntity.badRequest().body("Deposit failed"));
+    }
+
+    @PostMapping("/withdraw")
+    public CompletableFuture<ResponseEntity<String>> withdraw(@RequestBody TransactionRequest request,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        return mutate(Kind.DEBIT, "withdraw", request, idempotencyKey,
+                () -> checkingAccountService.withdraw(request))
+                .thenApply(success -> success
+                        ? ResponseEntity.ok("Withdrawal successful")
+                        : ResponseEntity.badRequest().body("Withdrawal failed"));
+    }
+
+    @PostMapping("/transfer-from")
+    public CompletableFuture<ResponseEntity<String>> transferFrom(@RequestBody TransactionRequest request,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        return mutate(Kind.DEBIT, "transfer-from", request, idempotencyKey,
+                () -> checkingAccountService.transferFrom(request.getAccountNumber(),
+                        request.getAmountMinor(), request.getCurrency()))
+                .thenApply(success -> success
+                        ? ResponseEntity.ok("Transfer from successful")
+                        : ResponseEntity.badRequest().body("Transfer from failed"));
     }
 
     @PostMapping("/transfer-to")
-    public ResponseEntity<?> transferTo(@RequestBody TransactionRequest request) {
-        boolean success = checkingAccountService.transferTo(request.getAccountNumber(), request.getAmount());
-        if (success) {
-            return ResponseEntity.ok("Transfer to successful");
-        } else {
-            return ResponseEntity.badRequest().body("Transfer to failed");
+    public CompletableFuture<ResponseEntity<String>> transferTo(@RequestBody TransactionRequest request,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        return mutate(Kind.CREDIT, "transfer-to", request, idempotencyKey,
+                () -> checkingAccountService.transferTo(request.getAccountNumber(),
+                        request.getAmountMinor(), request.getCurrency()))
+                .thenApply(success -> success
+                        ? ResponseEntity.ok("Transfer to successful")
+                        : ResponseEntity.badRequest().body("Transfer to failed"));
+    }
+
+    @PostMapping("/transfer-from/batch")
+    public ResponseEntity<List<TransactionResult>> transferFromBatch(@RequestBody List<TransactionRequest> requests,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        return ResponseEntity.ok(idempotencyService.executeBatch(idempotencyKey, "transfer-from-batch", requests,
+                () -> checkingAccountService.transferFromBatch(requests)));
+    }
+
+    @PostMapping("/transfer-to/batch")
+    public ResponseEntity<List<TransactionResult>> transferToBatch(@RequestBody List<TransactionRequest> requests,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        return ResponseEntity.ok(idempotencyService.executeBatch(idempotencyKey, "transfer-to-batch", requests,
+                () -> checkingAccountService.transferToBatch(requests)));
+    }
+
+    /**
+     * With account.coalescing.enabled the mutation joins its account's next group commit and the request
+     * thread is released until that commits; otherwise it runs here, under the Idempotency-Key if one is given.
+     */
+    private CompletableFuture<Boolean> mutate(Kind kind, String operation, TransactionRequest request,
+            String idempotencyKey, BooleanSupplier action) {
+        if (mutationCoalescer != null) {
+            return mutationCoalescer.submit(kind, operation, request, idempotencyKey);
+        }
+        return CompletableFuture.completedFuture(idempotencyService.execute(idempotencyKey, operation, request,
+                action));
+    }
+
+    /**
+     * Reserve funds under a client-chosen hold id until they are confirmed or released, or {@code ttlMs}
+     * passes. Repeating the request returns the existing hold, so it can be retried safely.
+     */
+    @PutMapping("/holds/{holdId}")
+    public ResponseEntity<?> placeHold(@PathVariable String holdId, @RequestBody TransactionRequest request,
+            @RequestParam(required = false) Long ttlMs) {
+        long ttl = Math.max(1, Math.min(ttlMs != null ? ttlMs : defaultHoldTtlMs, maxHoldTtlMs));
+        FundHold hold;
+        try {
+            hold = checkingAccountService.placeHold(holdId, request, System.currentTimeMillis() + ttl);
+        } catch (DataIntegrityViolationException e) {
+            // Placed concurrently under the same id; answer with the hold that won
+            hold = checkingAccountService.placeHold(holdId, request, System.currentTimeMillis() + ttl);
         }
+        return hold != null ? ResponseEntity.ok(hold) : ResponseEntity.badRequest().body("Hold failed");
+    }
+
+    @PutMapping("/holds/{holdId}/confirmation")
+    public ResponseEntity<FundHold> confirmHold(@PathVariable String holdId) {
+        return ResponseEntity.of(checkingAccountService.confirmHold(holdId));
+    }
+
+    @DeleteMapping("/holds/{holdId}")
+    public ResponseEntity<FundHold> releaseHold(@PathVariable String holdId) {
+        return ResponseEntity.of(checkingAccountService.releaseHold(holdId));
+    }
+
+    @GetMapping("/holds/{holdId}")
+    public ResponseEntity<FundHold> getHold(@PathVariable String holdId) {
+        return ResponseEntity.of(checkingAccountService.getHold(holdId));
+    }
+
+    @ExceptionHandler(HoldConflictException.class)
+    public ResponseEntity<String> handleHoldConflict(HoldConflictException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+    }
+
+    @ExceptionHandler(InvalidCursorException.class)
+    public ResponseEntity<String> handleInvalidCursor(InvalidCursorException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    @ExceptionHandler(IdempotencyConflictException.class)
+    public ResponseEntity<String> handleIdempotencyConflict(IdempotencyConflictException e) {
+        return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(e.getMessage());
     }
 }
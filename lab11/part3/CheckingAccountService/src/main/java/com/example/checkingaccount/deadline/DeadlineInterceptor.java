@@ -0,0 +1,78 @@
+package com.example.checkingaccount.deadline;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Drops API requests whose caller has already given up. The TransferClient sends the caller's deadline as
+ * {@code X-Request-Deadline} (epoch milliseconds). A request that is dispatched to a controller after that
+ * time, e.g. because it sat in Tomcat's queue under overload, is answered with 504 before any database work.
+ * The thread then goes to requests that can still succeed.
+ *
+ * Only the initial dispatch is checked. A mutation that finished in a group commit has already been applied,
+ * so it must not be reported as expired when its response is dispatched.
+ */
+@Component
+public class DeadlineInterceptor implements HandlerInterceptor, WebMvcConfigurer {
+
+    public static final String HEADER = "X-Request-Deadline";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Counter expired;
+
+    @PostConstruct
+    public void init() {
+        expired = Counter.builder("account.deadline.expired")
+                .description("Requests rejected because their deadline had passed when they were dispatched")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(this).addPathPatterns("/api/**");
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws IOException {
+        String header = request.getHeader(HEADER);
+        if (header == null || request.getDispatcherType() != DispatcherType.REQUEST) {
+            return true;
+        }
+        long deadline;
+        try {
+            deadline = Long.parseLong(header.trim());
+        } catch (NumberFormatException e) {
+            reject(response, HttpStatus.BAD_REQUEST, HEADER + " must be epoch milliseconds");
+            return false;
+        }
+        long late = System.currentTimeMillis() - deadline;
+        if (late < 0) {
+            return true;
+        }
+        expired.increment();
+        reject(response, HttpStatus.GATEWAY_TIMEOUT, "Request deadline passed " + late + " ms ago");
+        return false;
+    }
+
+    private static void reject(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.getWriter().write(message);
+    }
+}
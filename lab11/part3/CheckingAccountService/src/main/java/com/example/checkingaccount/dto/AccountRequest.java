@@ -1,11 +1,17 @@
 package com.example.checkingaccount.dto;
 
+import com.example.checkingaccount.model.IdempotencyRecord;
+
 import java.math.BigDecimal;
+import java.util.List;
 
 public class AccountRequest {
     private String accountNumber;
     private String customerId;
     private BigDecimal initialBalance;
+    private String currency;
+    // Stored outcomes of the keyed mutations of an account moved between shards
+    private List<IdempotencyRecord> idempotencyRecords;
 
     // Constructors
     public AccountRequest() {
@@ -41,4 +47,20 @@ public class AccountRequest {
     public void setInitialBalance(BigDecimal initialBalance) {
         this.initialBalance = initialBalance;
     }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+
+    public List<IdempotencyRecord> getIdempotencyRecords() {
+        return idempotencyRecords;
+    }
+
+    public void setIdempotencyRecords(List<IdempotencyRecord> idempotencyRecords) {
+        this.idempotencyRecords = idempotencyRecords;
+    }
 }
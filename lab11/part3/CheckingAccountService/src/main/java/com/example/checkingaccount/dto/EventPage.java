@@ -0,0 +1,26 @@
+package com.example.checkingaccount.dto;
+
+import java.util.List;
+
+/**
+ * Events read from the in-JVM broker. Pass {@code nextOffset} as {@code from} to read the following page.
+ */
+public class EventPage {
+    private final List<BalanceChangedEvent> events;
+    private final long nextOffset;
+
+    // Constructors
+    public EventPage(List<BalanceChangedEvent> events, long nextOffset) {
+        this.events = events;
+        this.nextOffset = nextOffset;
+    }
+
+    // Getters
+    public List<BalanceChangedEvent> getEvents() {
+        return events;
+    }
+
+    public long getNextOffset() {
+        return nextOffset;
+    }
+}
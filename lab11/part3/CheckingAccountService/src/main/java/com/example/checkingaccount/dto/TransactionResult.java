@@ -0,0 +1,83 @@
+package com.example.checkingaccount.dto;
+
+import com.example.checkingaccount.model.MinorUnits;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.math.BigDecimal;
+
+public class TransactionResult {
+    private String accountNumber;
+    private long amountMinor;
+    private String currency;
+    private boolean success;
+    private String message;
+
+    // Constructors
+    public TransactionResult() {
+    }
+
+    public TransactionResult(String accountNumber, long amountMinor, String currency, boolean success,
+            String message) {
+        this.accountNumber = accountNumber;
+        this.amountMinor = amountMinor;
+        this.currency = currency;
+        this.success = success;
+        this.message = message;
+    }
+
+    public static TransactionResult succeeded(TransactionRequest request) {
+        return new TransactionResult(request.getAccountNumber(), request.getAmountMinor(), request.getCurrency(),
+                true, "OK");
+    }
+
+    public static TransactionResult failed(TransactionRequest request, String message) {
+        return new TransactionResult(request.getAccountNumber(), request.getAmountMinor(), request.getCurrency(),
+                false, message);
+    }
+
+    // Getters and Setters
+    public String getAccountNumber() {
+        return accountNumber;
+    }
+
+    public void setAccountNumber(String accountNumber) {
+        this.accountNumber = accountNumber;
+    }
+
+    @JsonIgnore
+    public long getAmountMinor() {
+        return amountMinor;
+    }
+
+    public void setAmountMinor(long amountMinor) {
+        this.amountMinor = amountMinor;
+    }
+
+    public BigDecimal getAmount() {
+        return MinorUnits.toDecimal(amountMinor, currency);
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.checkingaccount.history;
+
+/**
+ * The {@code after} value of a history request is not a cursor returned by an earlier page.
+ */
+public class InvalidCursorException extends RuntimeException {
+
+    public InvalidCursorException(String cursor) {
+        super("Invalid cursor: " + cursor);
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.checkingaccount.idempotency;
+
+import com.example.checkingaccount.model.IdempotencyRecord;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded, time-evicting front for the idempotency table.
+ * Holds the most recently used outcomes so replays of hot keys never reach the database.
+ */
+class DedupCache {
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final Map<String, Entry> entries;
+
+    DedupCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > DedupCache.this.maxEntries;
+            }
+        };
+    }
+
+    synchronized IdempotencyRecord get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt < System.currentTimeMillis()) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.record;
+    }
+
+    synchronized void put(IdempotencyRecord record) {
+        entries.put(record.getIdempotencyKey(), new Entry(record, System.currentTimeMillis() + ttlMillis));
+    }
+
+    private static final class Entry {
+        private final IdempotencyRecord record;
+        private final long expiresAt;
+
+        private Entry(IdempotencyRecord record, long expiresAt) {
+            this.record = record;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.example.checkingaccount.idempotency;
+
+import com.example.checkingaccount.dto.TransactionRequest;
+import com.example.checkingaccount.dto.TransactionResult;
+import com.example.checkingaccount.model.IdempotencyRecord;
+import com.example.checkingaccount.repository.IdempotencyRecordRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Executes mutations at most once per Idempotency-Key.
+ * The key is claimed by inserting its record in the same transaction as the balance change,
+ * so the outcome is stored if and only if the mutation committed. Replays are answered from
+ * the in-memory {@link DedupCache} or the idempotency table without touching the balance.
+ */
+@Service
+public class IdempotencyService {
+
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${account.idempotency.cache-size:100000}")
+    private int cacheSize;
+
+    @Value("${account.idempotency.cache-ttl-seconds:600}")
+    private long cacheTtlSeconds;
+
+    @Value("${account.idempotency.retention-hours:24}")
+    private long retentionHours;
+
+    private DedupCache cache;
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        cache = new DedupCache(cacheSize, cacheTtlSeconds * 1000);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public boolean execute(String idempotencyKey, String operation, TransactionRequest request,
+            BooleanSupplier action) {
+        if (idempotencyKey == null || idempotencyKey.isEmpty()) {
+            return action.getAsBoolean();
+        }
+
+        IdempotencyRecord stored = lookup(idempotencyKey);
+        if (stored != null) {
+            return replay(stored, operation, request);
+        }
+
+        try {
+            IdempotencyRecord record = transactionTemplate.execute(status -> {
+                IdempotencyRecord claim = new IdempotencyRecord(idempotencyKey, operation,
+                        request.getAccountNumber(), request.getAmountMinor(), request.getCurrency());
+                // A concurrent request with the same key blocks here until this one commits
+                idempotencyRecordRepository.saveAndFlush(claim);
+                claim.setSuccess(action.getAsBoolean());
+                return claim;
+            });
+            cache.put(record);
+            return record.isSuccess();
+        } catch (DataIntegrityViolationException e) {
+            // Lost the race: another request with the same key committed first
+            IdempotencyRecord winner = idempotencyRecordRepository.findById(idempotencyKey).orElseThrow(() -> e);
+            cache.put(winner);
+            return replay(winner, operation, request);
+        }
+    }
+
+    /**
+     * Executes a bulk mutation at most once per Idempotency-Key. Each leg is recorded under {@code <key>:<index>}
+     * in the batch's transaction, so either all legs of a batch are recorded or none are. A replay is answered
+     * from those records. Legs rejected the first time only say so, without the original reason.
+     *
+     * @throws IdempotencyConflictException if the key was used for a different batch
+     */
+    public List<TransactionResult> executeBatch(String idempotencyKey, String operation,
+            List<TransactionRequest> requests, Supplier<List<TransactionResult>> action) {
+        if (idempotencyKey == null || idempotencyKey.isEmpty() || requests.isEmpty()) {
+            return action.get();
+        }
+
+        if (idempotencyRecordRepository.existsById(legKey(idempotencyKey, 0))) {
+            return replayBatch(idempotencyKey, operation, requests);
+        }
+
+        try {
+            return transactionTemplate.execute(status -> {
+                List<IdempotencyRecord> claims = new ArrayList<>(requests.size());
+                for (int i = 0; i < requests.size(); i++) {
+                    TransactionRequest request = requests.get(i);
+                    claims.add(new IdempotencyRecord(legKey(idempotencyKey, i), operation,
+                            request.getAccountNumber(), request.getAmountMinor(), request.getCurrency()));
+                }
+                // A concurrent batch with the same key blocks here until this one commits
+                idempotencyRecordRepository.saveAllAndFlush(claims);
+                List<TransactionResult> results = action.get();
+                for (int i = 0; i < claims.size(); i++) {
+                    claims.get(i).setSuccess(results.get(i).isSuccess());
+                }
+                return results;
+            });
+        } catch (DataIntegrityViolationException e) {
+            // Lost the race: another batch with the same key committed first
+            return replayBatch(idempotencyKey, operation, requests);
+        }
+    }
+
+    /**
+     * Executes a mutation whose answer is a body rather than a success flag, such as a hand-off of accounts, at most
+     * once per Idempotency-Key. The body is stored as JSON under the key in the mutation's transaction, and a replay
+     * is answered with it. Unlike {@link #execute}, the request itself is not compared, only the operation.
+     *
+     * @throws IdempotencyConflictException if the key was used for a different operation
+     */
+    public <T> T executeStored(String idempotencyKey, String operation, TypeReference<T> type, Supplier<T> action) {
+        if (idempotencyKey == null || idempotencyKey.isEmpty()) {
+            return action.get();
+        }
+
+        IdempotencyRecord stored = idempotencyRecordRepository.findById(idempotencyKey).orElse(null);
+        if (stored == null) {
+            try {
+                return transactionTemplate.execute(status -> {
+                    IdempotencyRecord claim = new IdempotencyRecord(idempotencyKey, operation, null, 0, null);
+                    // A concurrent request with the same key blocks here until this one commits
+                    idempotencyRecordRepository.saveAndFlush(claim);
+                    T result = action.get();
+                    claim.setSuccess(true);
+                    claim.setResponse(write(result));
+                    return result;
+                });
+            } catch (DataIntegrityViolationException e) {
+                // Lost the race, or the action itself failed on a constraint and nothing was stored
+                stored = idempotencyRecordRepository.findById(idempotencyKey).orElseThrow(() -> e);
+            }
+        }
+        if (!stored.getOperation().equals(operation) || stored.getResponse() == null) {
+            throw new IdempotencyConflictException(idempotencyKey);
+        }
+        try {
+            return objectMapper.readValue(stored.getResponse(), type);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String write(Object response) {
+        try {
+            return objectMapper.writeValueAsString(response);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<TransactionResult> replayBatch(String idempotencyKey, String operation,
+            List<TransactionRequest> requests) {
+        List<String> keys = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            keys.add(legKey(idempotencyKey, i));
+        }
+        Map<String, IdempotencyRecord> stored = idempotencyRecordRepository.findAllById(keys).stream()
+                .collect(Collectors.toMap(IdempotencyRecord::getIdempotencyKey, Function.identity()));
+        List<TransactionResult> results = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            IdempotencyRecord record = stored.get(keys.get(i));
+            if (record == null) {
+                // The batch that used the key had fewer legs
+                throw new IdempotencyConflictException(idempotencyKey);
+            }
+            TransactionRequest request = requests.get(i);
+            results.add(replay(record, operation, request)
+                    ? TransactionResult.succeeded(request)
+                    : TransactionResult.failed(request, "Failed when first sent with this Idempotency-Key"));
+        }
+        return results;
+    }
+
+    /**
+     * The stored outcomes of the accounts' keyed mutations, to be handed off to the shard that takes the accounts
+     * over. The records also stay here, so replays that still reach this shard are answered as before.
+     */
+    public List<IdempotencyRecord> recordsOf(Collection<String> accountNumbers) {
+        return idempotencyRecordRepository.findByAccountNumberIn(accountNumbers);
+    }
+
+    private static String legKey(String idempotencyKey, int index) {
+        return idempotencyKey + ":" + index;
+    }
+
+    @Scheduled(fixedDelayString = "${account.idempotency.purge-interval-ms:3600000}")
+    public void purgeExpired() {
+        idempotencyRecordRepository.deleteOlderThan(LocalDateTime.now().minusHours(retentionHours));
+    }
+
+    /**
+     * The stored outcome for a key, from the cache or the idempotency table, or null if the key is new.
+     */
+    public IdempotencyRecord lookup(String idempotencyKey) {
+        IdempotencyRecord record = cache.get(idempotencyKey);
+        if (record == null) {
+            record = idempotencyRecordRepository.findById(idempotencyKey).orElse(null);
+            if (record != null) {
+                cache.put(record);
+            }
+        }
+        return record;
+    }
+
+    /**
+     * Cache an outcome committed outside {@link #execute}, e.g. by a coalesced batch.
+     */
+    public void remember(IdempotencyRecord record) {
+        cache.put(record);
+    }
+
+    /**
+     * The stored outcome of a replayed request.
+     *
+     * @throws IdempotencyConflictException if the key was used for a different request
+     */
+    public static boolean replay(IdempotencyRecord record, String operation, TransactionRequest request) {
+        if (!record.matches(operation, request.getAccountNumber(), request.getAmountMinor(),
+                request.getCurrency())) {
+            throw new IdempotencyConflictException(record.getIdempotencyKey());
+        }
+        return record.isSuccess();
+    }
+}
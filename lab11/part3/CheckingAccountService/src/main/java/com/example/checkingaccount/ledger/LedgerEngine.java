@@ -0,0 +1,711 @@
+package com.example.checkingaccount.ledger;
+
+import com.example.checkingaccount.model.CheckingAccount;
+import com.example.checkingaccount.outbox.OutboxWriter;
+import com.example.checkingaccount.repository.CheckingAccountRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory ledger for checking account balances.
+ * Mutations are applied under a per-stripe lock, made durable and written to the database in
+ * batches by a write-behind thread. Enabled with {@code account.ledger.enabled=true}; otherwise
+ * the service updates the database directly.
+ *
+ * {@code account.ledger.mode} selects what makes a mutation durable:
+ * <ul>
+ *   <li>{@code write-behind}: the new balance is appended to the {@link LedgerLog}, whose
+ *   segments are dropped once the database has caught up. The database stays the system of record.</li>
+ *   <li>{@code journal}: the deposit or withdrawal itself is appended to the {@link Journal} and
+ *   kept as history. Balances are rebuilt on startup from the latest snapshot plus the records
+ *   after it, and the database is repopulated from them, so accounts survive a restart even
+ *   with the in-memory H2 database.</li>
+ * </ul>
+ *
+ * A mutation made inside a database transaction is undone if that transaction rolls back, and an
+ * account opened inside one is only tracked once it commits, so the ledger never keeps a change
+ * the database refused. A debit takes effect at once, so the funds are reserved; a credit is
+ * logged at once but can only be spent, and is only shown and flushed, once its transaction has
+ * committed. So undoing either never takes a balance below zero.
+ */
+@Component
+@ConditionalOnProperty(name = "account.ledger.enabled", havingValue = "true")
+public class LedgerEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(LedgerEngine.class);
+
+    @Autowired
+    private CheckingAccountRepository checkingAccountRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Present unless account.outbox.enabled=false; flushed balances are the committed changes in ledger mode
+    @Autowired(required = false)
+    private OutboxWriter outboxWriter;
+
+    @Value("${account.ledger.stripes:64}")
+    private int stripeCount;
+
+    @Value("${account.ledger.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    @Value("${account.ledger.flush-batch-size:500}")
+    private int flushBatchSize;
+
+    @Value("${account.ledger.log-dir:./ledger/checking-account}")
+    private String logDir;
+
+    @Value("${account.ledger.fsync:true}")
+    private boolean fsync;
+
+    @Value("${account.ledger.mode:write-behind}")
+    private String mode;
+
+    @Value("${account.ledger.evict-idle-ms:600000}")
+    private long evictIdleMs;
+
+    @Value("${account.ledger.journal.segment-size-mb:64}")
+    private int segmentSizeMb;
+
+    @Value("${account.ledger.journal.snapshot-interval-ms:60000}")
+    private long snapshotIntervalMs;
+
+    @Value("${account.ledger.journal.retain-segments:true}")
+    private boolean retainSegments;
+
+    private final Map<String, CheckingAccount> accounts = new ConcurrentHashMap<>();
+
+    // Per account, credits whose transaction has not committed yet: in the balance and the log, but
+    // neither spendable nor shown. Changed under the account's stripe lock.
+    private final Map<String, Long> uncommitted = new ConcurrentHashMap<>();
+
+    // Per account, mutations whose transaction has not completed yet; such accounts are not evicted
+    private final Map<String, Integer> unsettled = new ConcurrentHashMap<>();
+
+    // Mutations hold the read lock; the flusher takes the write lock only to roll the
+    // log and swap the dirty set, so both always describe the same set of changes.
+    private final ReadWriteLock flushLock = new ReentrantReadWriteLock();
+    private volatile Set<String> dirty = ConcurrentHashMap.newKeySet();
+
+    private Object[] stripes;
+    private LedgerLog ledgerLog;
+    private Journal journal;
+    private JournalSnapshots snapshots;
+    private long lastSnapshotSequence;
+    private TransactionTemplate transactionTemplate;
+    private ScheduledExecutorService flusher;
+
+    @PostConstruct
+    public void start() {
+        stripes = new Object[stripeCount];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Object();
+        }
+        transactionTemplate = new TransactionTemplate(transactionManager);
+
+        if ("journal".equals(mode)) {
+            recoverJournal();
+        } else {
+            ledgerLog = new LedgerLog(Paths.get(logDir), fsync);
+            Map<String, LedgerLog.Entry> recovered = ledgerLog.recover();
+            long firstLive = ledgerLog.roll();
+            if (!recovered.isEmpty()) {
+                restore(recovered);
+                log.info("Recovered {} account balances from the ledger log", recovered.size());
+            }
+            ledgerLog.deleteBefore(firstLive);
+        }
+
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ledger-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        if (journal != null) {
+            flusher.scheduleWithFixedDelay(this::snapshotQuietly, snapshotIntervalMs, snapshotIntervalMs,
+                    TimeUnit.MILLISECONDS);
+        } else if (evictIdleMs > 0) {
+            // On the flush thread, so never while a flush has drained an account without writing it yet
+            long evictIntervalMs = Math.max(flushIntervalMs, evictIdleMs / 10);
+            flusher.scheduleWithFixedDelay(this::evictQuietly, evictIntervalMs, evictIntervalMs,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        flusher.shutdown();
+        flusher.awaitTermination(10, TimeUnit.SECONDS);
+        if (journal != null) {
+            snapshot();
+            journal.close();
+        }
+        // The in-memory database may already have been closed by its own shutdown hook; anything
+        // not flushed is still in the ledger log or journal and is written back on the next start
+        flushQuietly();
+        if (ledgerLog != null) {
+            ledgerLog.close();
+        }
+    }
+
+    /**
+     * Load the newest snapshot, replay the journal after it and write the result to the database.
+     */
+    private void recoverJournal() {
+        Path directory = Paths.get(logDir);
+        journal = new Journal(directory, segmentSizeMb * 1024 * 1024, fsync);
+        snapshots = new JournalSnapshots(directory);
+
+        JournalSnapshots.Snapshot snapshot = snapshots.loadLatest();
+        accounts.putAll(snapshot.accounts);
+        lastSnapshotSequence = snapshot.sequence;
+        long[] replayed = new long[1];
+        journal.replay(snapshot.sequence, record -> {
+            replay(record);
+            replayed[0]++;
+        });
+        if (!accounts.isEmpty()) {
+            materialize();
+            log.info("Restored {} accounts from snapshot {} and {} journal records", accounts.size(),
+                    snapshot.sequence, replayed[0]);
+        }
+    }
+
+    private void replay(Journal.Record record) {
+        if (record.type == Journal.OPEN) {
+            CheckingAccount account = new CheckingAccount(record.accountNumber, record.customerId,
+                    record.amountMinor, record.currency);
+            account.setCreatedAt(LocalDateTime.ofInstant(Instant.ofEpochMilli(record.timestamp), ZoneId.systemDefault()));
+            account.setUpdatedAtMillis(record.timestamp);
+            accounts.put(record.accountNumber, account);
+            return;
+        }
+        CheckingAccount account = accounts.get(record.accountNumber);
+        if (account == null) {
+            log.warn("Journal record {} refers to unknown account {}", record.sequence, record.accountNumber);
+            return;
+        }
+        account.setBalanceMinor(record.type == Journal.CREDIT
+                ? account.getBalanceMinor() + record.amountMinor
+                : account.getBalanceMinor() - record.amountMinor);
+        account.setUpdatedAtMillis(record.timestamp);
+    }
+
+    /**
+     * Bring the database rows in line with the recovered accounts, inserting the ones it does not have.
+     */
+    private void materialize() {
+        List<String> accountNumbers = new ArrayList<>(accounts.keySet());
+        for (int from = 0; from < accountNumbers.size(); from += flushBatchSize) {
+            List<String> batch = accountNumbers.subList(from, Math.min(from + flushBatchSize, accountNumbers.size()));
+            transactionTemplate.executeWithoutResult(status -> {
+                Map<String, CheckingAccount> stored = new HashMap<>();
+                for (CheckingAccount account : checkingAccountRepository.findByAccountNumberInForUpdate(batch)) {
+                    stored.put(account.getAccountNumber(), account);
+                }
+                List<CheckingAccount> rows = new ArrayList<>(batch.size());
+                for (String accountNumber : batch) {
+                    CheckingAccount live = accounts.get(accountNumber);
+                    CheckingAccount row = stored.get(accountNumber);
+                    if (row == null) {
+                        row = copyOf(live);
+                        row.setId(null);
+                    } else {
+                        row.setBalanceMinor(live.getBalanceMinor());
+                        row.setUpdatedAtMillis(live.getUpdatedAtMillis());
+                    }
+                    rows.add(row);
+                }
+                for (CheckingAccount saved : checkingAccountRepository.saveAll(rows)) {
+                    accounts.get(saved.getAccountNumber()).setId(saved.getId());
+                }
+            });
+        }
+    }
+
+    public Optional<CheckingAccount> getAccount(String accountNumber) {
+        CheckingAccount account = load(accountNumber);
+        if (account == null) {
+            return Optional.empty();
+        }
+        synchronized (stripeFor(accountNumber)) {
+            return Optional.of(published(account));
+        }
+    }
+
+    /**
+     * Replace database rows with their in-memory state where the ledger holds a newer balance.
+     */
+    public List<CheckingAccount> overlay(List<CheckingAccount> stored) {
+        List<CheckingAccount> result = new ArrayList<>(stored.size());
+        for (CheckingAccount account : stored) {
+            result.add(overlay(account));
+        }
+        return result;
+    }
+
+    public CheckingAccount overlay(CheckingAccount stored) {
+        CheckingAccount live = accounts.get(stored.getAccountNumber());
+        if (live == null) {
+            return stored;
+        }
+        synchronized (stripeFor(stored.getAccountNumber())) {
+            return published(live);
+        }
+    }
+
+    /**
+     * Start tracking an account that is not in memory yet. In journal mode this records its
+     * opening balance, so every later record of the account can be replayed. Inside a transaction
+     * this happens once it has committed, so an account whose insert rolls back is never tracked.
+     */
+    public void open(CheckingAccount account) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            CheckingAccount copy = copyOf(account);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    track(copy);
+                }
+            });
+            return;
+        }
+        track(account);
+    }
+
+    private void track(CheckingAccount account) {
+        flushLock.readLock().lock();
+        try {
+            synchronized (stripeFor(account.getAccountNumber())) {
+                if (accounts.containsKey(account.getAccountNumber())) {
+                    return;
+                }
+                if (journal != null) {
+                    journal.append(Journal.OPEN, account.getAccountNumber(), account.getCustomerId(),
+                            account.getCurrency(), account.getBalanceMinor(), account.getUpdatedAtMillis());
+                }
+                accounts.put(account.getAccountNumber(), copyOf(account));
+            }
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    public boolean credit(String accountNumber, long amountMinor, String currency) {
+        return apply(accountNumber, Journal.CREDIT, amountMinor, currency);
+    }
+
+    public boolean debit(String accountNumber, long amountMinor, String currency) {
+        return apply(accountNumber, Journal.DEBIT, amountMinor, currency);
+    }
+
+    private boolean apply(String accountNumber, byte type, long amountMinor, String currency) {
+        boolean inTransaction = TransactionSynchronizationManager.isSynchronizationActive();
+        while (true) {
+            CheckingAccount account = load(accountNumber);
+            if (account == null) {
+                return false;
+            }
+            flushLock.readLock().lock();
+            try {
+                synchronized (stripeFor(accountNumber)) {
+                    if (accounts.get(accountNumber) != account) {
+                        // Evicted since it was loaded: load it again rather than change a copy no one sees
+                        continue;
+                    }
+                    if (!mutate(account, type, amountMinor, currency, inTransaction)) {
+                        return false;
+                    }
+                }
+            } finally {
+                flushLock.readLock().unlock();
+            }
+            if (inTransaction) {
+                settleOnCompletion(account, type, amountMinor);
+            }
+            return true;
+        }
+    }
+
+    // Caller holds the read lock and the account's stripe lock
+    private boolean mutate(CheckingAccount account, byte type, long amountMinor, String currency,
+            boolean inTransaction) {
+        String accountNumber = account.getAccountNumber();
+        if (!account.getCurrency().equals(currency)) {
+            return false;
+        }
+        if (type == Journal.DEBIT && spendable(account) < amountMinor) {
+            return false;
+        }
+        long previousBalance = account.getBalanceMinor();
+        long previousUpdatedAt = account.getUpdatedAtMillis();
+        boolean applied = type == Journal.CREDIT ? account.deposit(amountMinor) : account.withdraw(amountMinor);
+        if (!applied) {
+            return false;
+        }
+        try {
+            record(account, type, amountMinor);
+        } catch (RuntimeException e) {
+            account.setBalanceMinor(previousBalance);
+            account.setUpdatedAtMillis(previousUpdatedAt);
+            throw e;
+        }
+        if (inTransaction) {
+            unsettled.merge(accountNumber, 1, Integer::sum);
+            if (type == Journal.CREDIT) {
+                uncommitted.merge(accountNumber, amountMinor, Long::sum);
+                return true;
+            }
+        }
+        dirty.add(accountNumber);
+        return true;
+    }
+
+    private void record(CheckingAccount account, byte type, long amountMinor) {
+        if (journal != null) {
+            journal.append(type, account.getAccountNumber(), null, null, amountMinor, account.getUpdatedAtMillis());
+        } else {
+            ledgerLog.append(account.getAccountNumber(), account.getCurrency(), account.getCustomerId(),
+                    account.getBalanceMinor());
+        }
+    }
+
+    /**
+     * The caller records the transaction and publishes the change in its own database transaction.
+     * Once that commits, a credit becomes spendable. If it rolls back, the mutation is reversed by
+     * the opposite one, so the ledger and its log agree with the database again. Later mutations
+     * of the account are kept.
+     */
+    private void settleOnCompletion(CheckingAccount account, byte type, long amountMinor) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    if (type == Journal.CREDIT) {
+                        publish(account, amountMinor);
+                    }
+                } else if (status == STATUS_ROLLED_BACK) {
+                    undo(account, type == Journal.CREDIT ? Journal.DEBIT : Journal.CREDIT, amountMinor);
+                } else {
+                    // A credit stays unspendable, and the account in memory
+                    log.error("Commit outcome unknown after {} of {} on {}. Manual intervention required!",
+                            type == Journal.CREDIT ? "credit" : "debit", amountMinor, account.getAccountNumber());
+                    return;
+                }
+                settled(account.getAccountNumber());
+            }
+        });
+    }
+
+    // Once published or undone, and marked dirty, so the account is not evicted before the next flush
+    private void settled(String accountNumber) {
+        synchronized (stripeFor(accountNumber)) {
+            unsettled.computeIfPresent(accountNumber, (k, count) -> count == 1 ? null : count - 1);
+        }
+    }
+
+    private void publish(CheckingAccount account, long amountMinor) {
+        String accountNumber = account.getAccountNumber();
+        flushLock.readLock().lock();
+        try {
+            synchronized (stripeFor(accountNumber)) {
+                dropUncommitted(accountNumber, amountMinor);
+                dirty.add(accountNumber);
+                if (ledgerLog != null) {
+                    // The segment with the credit may be gone by now, dropped by a flush that left it out
+                    ledgerLog.append(accountNumber, account.getCurrency(), account.getCustomerId(),
+                            account.getBalanceMinor());
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Could not log the commit of a credit of {} on {}: {}. Manual intervention required!",
+                    amountMinor, accountNumber, e.getMessage());
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    private void undo(CheckingAccount account, byte type, long amountMinor) {
+        String accountNumber = account.getAccountNumber();
+        flushLock.readLock().lock();
+        try {
+            synchronized (stripeFor(accountNumber)) {
+                // Never below zero: an uncommitted credit could not be spent, so its amount is still there
+                if (type == Journal.DEBIT) {
+                    dropUncommitted(accountNumber, amountMinor);
+                }
+                account.setBalanceMinor(type == Journal.CREDIT
+                        ? account.getBalanceMinor() + amountMinor
+                        : account.getBalanceMinor() - amountMinor);
+                account.setUpdatedAtMillis(System.currentTimeMillis());
+                dirty.add(accountNumber);
+                record(account, type, amountMinor);
+            }
+        } catch (RuntimeException e) {
+            log.error("Could not log the undo of a rolled back mutation of {} on {}: {}. "
+                    + "Manual intervention required!", amountMinor, accountNumber, e.getMessage());
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    // Caller holds the account's stripe lock
+    private void dropUncommitted(String accountNumber, long amountMinor) {
+        uncommitted.computeIfPresent(accountNumber,
+                (k, pending) -> pending == amountMinor ? null : pending - amountMinor);
+    }
+
+    // Caller holds the account's stripe lock
+    private long spendable(CheckingAccount account) {
+        return account.getBalanceMinor() - uncommitted.getOrDefault(account.getAccountNumber(), 0L);
+    }
+
+    // A copy showing the committed balance; caller holds the account's stripe lock
+    private CheckingAccount published(CheckingAccount account) {
+        CheckingAccount copy = copyOf(account);
+        copy.setBalanceMinor(spendable(account));
+        return copy;
+    }
+
+    private CheckingAccount load(String accountNumber) {
+        CheckingAccount account = accounts.get(accountNumber);
+        if (account != null) {
+            return account;
+        }
+        Optional<CheckingAccount> stored = checkingAccountRepository.findByAccountNumber(accountNumber);
+        if (!stored.isPresent()) {
+            return null;
+        }
+        // The row is committed, so it is tracked right away; track() keeps a private copy, so the cached
+        // object is never attached to a persistence context
+        track(stored.get());
+        return accounts.get(accountNumber);
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Ledger flush failed, will retry: {}", e.getMessage());
+        }
+    }
+
+    void flush() {
+        Set<String> drained;
+        long firstLive;
+        flushLock.writeLock().lock();
+        try {
+            if (dirty.isEmpty()) {
+                return;
+            }
+            drained = dirty;
+            dirty = ConcurrentHashMap.newKeySet();
+            firstLive = ledgerLog != null ? ledgerLog.roll() : 0;
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+
+        Map<String, Long> balances = new HashMap<>(drained.size() * 2);
+        for (String accountNumber : drained) {
+            synchronized (stripeFor(accountNumber)) {
+                balances.put(accountNumber, spendable(accounts.get(accountNumber)));
+            }
+        }
+
+        try {
+            writeBalances(balances);
+        } catch (RuntimeException e) {
+            flushLock.readLock().lock();
+            try {
+                dirty.addAll(drained);
+            } finally {
+                flushLock.readLock().unlock();
+            }
+            throw e;
+        }
+        if (ledgerLog != null) {
+            ledgerLog.deleteBefore(firstLive);
+        }
+    }
+
+    private void evictQuietly() {
+        try {
+            evictIdle();
+        } catch (RuntimeException e) {
+            log.warn("Ledger eviction failed, will retry: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Drop accounts not changed for account.ledger.evict-idle-ms whose balance is in the database,
+     * so memory follows the active accounts rather than every account ever used; the next use loads
+     * them again. Only in write-behind mode: in journal mode the snapshots are built from memory.
+     */
+    int evictIdle() {
+        long idleSince = System.currentTimeMillis() - evictIdleMs;
+        int evicted = 0;
+        for (Map.Entry<String, CheckingAccount> entry : accounts.entrySet()) {
+            String accountNumber = entry.getKey();
+            synchronized (stripeFor(accountNumber)) {
+                if (entry.getValue().getUpdatedAtMillis() < idleSince && !dirty.contains(accountNumber)
+                        && !unsettled.containsKey(accountNumber)
+                        && accounts.remove(accountNumber, entry.getValue())) {
+                    evicted++;
+                }
+            }
+        }
+        if (evicted > 0) {
+            log.debug("Evicted {} idle accounts from the ledger, {} left", evicted, accounts.size());
+        }
+        return evicted;
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (RuntimeException e) {
+            log.warn("Journal snapshot failed, will retry: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Write every account to a snapshot. Holding the write lock while copying guarantees that
+     * the copies contain exactly the journal records up to the captured sequence number, including
+     * uncommitted credits, whose undo, if any, comes after it.
+     */
+    void snapshot() {
+        long sequence;
+        List<CheckingAccount> copies;
+        flushLock.writeLock().lock();
+        try {
+            sequence = journal.lastSequence();
+            if (sequence == lastSnapshotSequence) {
+                return;
+            }
+            copies = new ArrayList<>(accounts.size());
+            for (CheckingAccount account : accounts.values()) {
+                copies.add(copyOf(account));
+            }
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+
+        snapshots.write(sequence, copies);
+        lastSnapshotSequence = sequence;
+        if (!retainSegments) {
+            journal.deleteThrough(sequence);
+        }
+    }
+
+    /**
+     * Write the balances recovered from the ledger log, inserting the rows the database has lost.
+     *
+     * @throws IllegalStateException if a row is missing and the log, written by an older version,
+     *         does not say whose account it was
+     */
+    private void restore(Map<String, LedgerLog.Entry> recovered) {
+        List<String> accountNumbers = new ArrayList<>(recovered.keySet());
+        for (int from = 0; from < accountNumbers.size(); from += flushBatchSize) {
+            List<String> batch = accountNumbers.subList(from, Math.min(from + flushBatchSize, accountNumbers.size()));
+            transactionTemplate.executeWithoutResult(status -> {
+                Map<String, CheckingAccount> stored = new HashMap<>();
+                for (CheckingAccount account : checkingAccountRepository.findByAccountNumberInForUpdate(batch)) {
+                    stored.put(account.getAccountNumber(), account);
+                }
+                List<CheckingAccount> rows = new ArrayList<>(batch.size());
+                for (String accountNumber : batch) {
+                    LedgerLog.Entry entry = recovered.get(accountNumber);
+                    CheckingAccount row = stored.get(accountNumber);
+                    if (row == null) {
+                        if (entry.currency == null) {
+                            throw new IllegalStateException("Account " + accountNumber + " has a balance of "
+                                    + entry.balanceMinor + " in the ledger log but no row in the database. "
+                                    + "Manual intervention required!");
+                        }
+                        row = new CheckingAccount(accountNumber, entry.customerId, entry.balanceMinor, entry.currency);
+                    } else {
+                        row.setBalanceMinor(entry.balanceMinor);
+                    }
+                    rows.add(row);
+                }
+                List<CheckingAccount> saved = checkingAccountRepository.saveAll(rows);
+                if (outboxWriter != null) {
+                    outboxWriter.append(saved);
+                }
+            });
+        }
+    }
+
+    /**
+     * @throws IllegalStateException if an account has no row to write to; the flush is retried, and
+     *         the ledger log keeps the balances until it succeeds
+     */
+    private void writeBalances(Map<String, Long> balances) {
+        List<String> accountNumbers = new ArrayList<>(balances.keySet());
+        for (int from = 0; from < accountNumbers.size(); from += flushBatchSize) {
+            List<String> batch = accountNumbers.subList(from, Math.min(from + flushBatchSize, accountNumbers.size()));
+            transactionTemplate.executeWithoutResult(status -> {
+                List<CheckingAccount> stored = checkingAccountRepository.findByAccountNumberInForUpdate(batch);
+                if (stored.size() < batch.size()) {
+                    List<String> missing = new ArrayList<>(batch);
+                    for (CheckingAccount account : stored) {
+                        missing.remove(account.getAccountNumber());
+                    }
+                    log.error("Ledger balances of accounts without a database row: {}. Manual intervention required!",
+                            missing);
+                    throw new IllegalStateException("No database row for accounts " + missing);
+                }
+                for (CheckingAccount account : stored) {
+                    account.setBalanceMinor(balances.get(account.getAccountNumber()));
+                }
+                checkingAccountRepository.saveAll(stored);
+                if (outboxWriter != null) {
+                    outboxWriter.append(stored);
+                }
+            });
+        }
+    }
+
+    private Object stripeFor(String accountNumber) {
+        return stripes[(accountNumber.hashCode() & 0x7fffffff) % stripes.length];
+    }
+
+    private static CheckingAccount copyOf(CheckingAccount source) {
+        CheckingAccount copy = new CheckingAccount(source.getAccountNumber(), source.getCustomerId(),
+                source.getBalanceMinor(), source.getCurrency());
+        copy.setId(source.getId());
+        copy.setCreatedAt(source.getCreatedAt());
+        copy.setUpdatedAtMillis(source.getUpdatedAtMillis());
+        return copy;
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.checkingaccount.ledger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Durable append log for the ledger engine.
+ * Every record holds the absolute balance of one account after a mutation, in minor units, so replaying
+ * the log is idempotent: the last record per account wins. Records also carry the account's currency and
+ * customer, so an account whose row is gone can be recreated from them. The log is split into numbered
+ * segments; a segment can be deleted once every balance in it has been flushed to the database.
+ */
+class LedgerLog {
+
+    private static final String PREFIX = "ledger-";
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+    private final boolean fsync;
+    private long segmentId;
+    private FileChannel channel;
+
+    LedgerLog(Path directory, boolean fsync) {
+        this.directory = directory;
+        this.fsync = fsync;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create ledger log directory " + directory, e);
+        }
+    }
+
+    /**
+     * Read the latest balance per account from all segments left over from a previous run.
+     */
+    synchronized Map<String, Entry> recover() {
+        Map<String, Entry> balances = new LinkedHashMap<>();
+        for (Path segment : segments()) {
+            try {
+                for (String line : Files.readAllLines(segment, StandardCharsets.UTF_8)) {
+                    Entry entry = parse(line);
+                    if (entry != null) {
+                        balances.put(entry.accountNumber, entry);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read ledger segment " + segment, e);
+            }
+            segmentId = Math.max(segmentId, idOf(segment));
+        }
+        return balances;
+    }
+
+    // accountNumber,currency,customerId,balance; segments written before currency and customer were logged
+    // hold accountNumber,balance. Null for a torn write at the end of a segment.
+    private static Entry parse(String line) {
+        int first = line.indexOf(',');
+        int last = line.lastIndexOf(',');
+        if (first <= 0) {
+            return null;
+        }
+        long balanceMinor;
+        try {
+            balanceMinor = Long.parseLong(line.substring(last + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (first == last) {
+            return new Entry(line.substring(0, first), null, null, balanceMinor);
+        }
+        int second = line.indexOf(',', first + 1);
+        if (second == last) {
+            return null;
+        }
+        return new Entry(line.substring(0, first), line.substring(second + 1, last),
+                line.substring(first + 1, second), balanceMinor);
+    }
+
+    private void open() {
+        segmentId++;
+        try {
+            channel = FileChannel.open(directory.resolve(PREFIX + segmentId + SUFFIX),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open ledger segment " + segmentId, e);
+        }
+    }
+
+    synchronized void append(String accountNumber, String currency, String customerId, long balanceMinor) {
+        ByteBuffer record = ByteBuffer.wrap((accountNumber + "," + currency + "," + customerId + "," + balanceMinor
+                + "\n").getBytes(StandardCharsets.UTF_8));
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            if (fsync) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot append to ledger segment " + segmentId, e);
+        }
+    }
+
+    /**
+     * Close the current segment and start a new one.
+     *
+     * @return the id of the first segment that is still needed once the balances
+     *         captured at this point have been flushed
+     */
+    synchronized long roll() {
+        close();
+        open();
+        return segmentId;
+    }
+
+    /**
+     * Delete every segment older than the given id.
+     */
+    synchronized void deleteBefore(long id) {
+        for (Path segment : segments()) {
+            if (idOf(segment) < id) {
+                try {
+                    Files.deleteIfExists(segment);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot delete ledger segment " + segment, e);
+                }
+            }
+        }
+    }
+
+    synchronized void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot close ledger segment " + segmentId, e);
+            }
+            channel = null;
+        }
+    }
+
+    private List<Path> segments() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> p.getFileName().toString().startsWith(PREFIX))
+                    .filter(p -> p.getFileName().toString().endsWith(SUFFIX))
+                    .sorted((a, b) -> Long.compare(idOf(a), idOf(b)))
+                    .collect(Collectors.toCollection(ArrayList::new));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot list ledger segments in " + directory, e);
+        }
+    }
+
+    /**
+     * The last balance of an account found in the log. Currency and customer are null for records
+     * from segments written before they were logged.
+     */
+    static class Entry {
+        final String accountNumber;
+        final String customerId;
+        final String currency;
+        final long balanceMinor;
+
+        Entry(String accountNumber, String customerId, String currency, long balanceMinor) {
+            this.accountNumber = accountNumber;
+            this.customerId = customerId;
+            this.currency = currency;
+            this.balanceMinor = balanceMinor;
+        }
+    }
+
+    private static long idOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
@@ -1,15 +1,24 @@
 package com.example.checkingaccount.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import javax.persistence.*;
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 
 @Entity
-@Table(name = "checking_accounts")
+@Table(name = "checking_accounts", indexes = {
+        // Serves the customer listing: equality on customer_id, keyset range and order on account_number
+        @Index(name = "idx_checking_accounts_customer_account", columnList = "customer_id, account_number")
+})
 public class CheckingAccount {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Pooled sequence rather than IDENTITY, so Hibernate knows ids before inserting and can batch the inserts
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "checking_accounts_seq")
+    @SequenceGenerator(name = "checking_accounts_seq", sequenceName = "checking_accounts_seq", allocationSize = 100)
     private Long id;
 
     @Column(name = "account_number", unique = true, nullable = false)
@@ -18,27 +27,32 @@ public class CheckingAccount {
     @Column(name = "customer_id", nullable = false)
     private String customerId;
 
-    @Column(name = "balance", nullable = false)
-    private BigDecimal balance;
+    @Column(name = "balance_minor", nullable = false)
+    private long balanceMinor;
+
+    @Column(name = "currency", nullable = false, length = 3)
+    private String currency;
 
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
+    // Epoch milliseconds, so a balance change does not allocate a timestamp object
     @Column(name = "updated_at")
-    private LocalDateTime updatedAt;
+    private long updatedAt;
 
     // Constructors
     public CheckingAccount() {
-        this.balance = BigDecimal.ZERO;
+        this.currency = MinorUnits.DEFAULT_CURRENCY;
         this.createdAt = LocalDateTime.now();
-        this.updatedAt = LocalDateTime.now();
+        this.updatedAt = System.currentTimeMillis();
     }
 
-    public CheckingAccount(String accountNumber, String customerId, BigDecimal balance) {
+    public CheckingAccount(String accountNumber, String customerId, long balanceMinor, String currency) {
         this();
         this.accountNumber = accountNumber;
         this.customerId = customerId;
-        this.balance = balance;
+        this.balanceMinor = balanceMinor;
+        this.currency = currency;
     }
 
     // Getters and Setters
@@ -66,13 +80,27 @@ public class CheckingAccount {
         this.customerId = customerId;
     }
 
+    @JsonIgnore
+    public long getBalanceMinor() {
+        return balanceMinor;
+    }
+
+    public void setBalanceMinor(long balanceMinor) {
+        this.balanceMinor = balanceMinor;
+        this.updatedAt = System.currentTimeMillis();
+    }
+
+    // Decimal view for the JSON API
     public BigDecimal getBalance() {
-        return balance;
+        return MinorUnits.toDecimal(balanceMinor, currency);
     }
 
-    public void setBalance(BigDecimal balance) {
-        this.balance = balance;
-        this.updatedAt = LocalDateTime.now();
+    public String getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(String currency) {
+        this.currency = currency;
     }
 
     public LocalDateTime getCreatedAt() {
@@ -83,28 +111,34 @@ public class CheckingAccount {
         this.createdAt = createdAt;
     }
 
-    public LocalDateTime getUpdatedAt() {
+    @JsonIgnore
+    public long getUpdatedAtMillis() {
         return updatedAt;
     }
 
-    public void setUpdatedAt(LocalDateTime updatedAt) {
+    public void setUpdatedAtMillis(long updatedAt) {
         this.updatedAt = updatedAt;
     }
 
+    public LocalDateTime getUpdatedAt() {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(updatedAt), ZoneId.systemDefault());
+    }
+
     // Business methods
-    public boolean deposit(BigDecimal amount) {
-        if (amount.compareTo(BigDecimal.ZERO) > 0) {
-            this.balance = this.balance.add(amount);
-            this.updatedAt = LocalDateTime.now();
+    public boolean deposit(long amountMinor) {
+        // Exact overflow check: reject rather than wrap around
+        if (amountMinor > 0 && balanceMinor <= Long.MAX_VALUE - amountMinor) {
+            this.balanceMinor += amountMinor;
+            this.updatedAt = System.currentTimeMillis();
             return true;
         }
         return false;
     }
 
-    public boolean withdraw(BigDecimal amount) {
-        if (amount.compareTo(BigDecimal.ZERO) > 0 && this.balance.compareTo(amount) >= 0) {
-            this.balance = this.balance.subtract(amount);
-            this.updatedAt = LocalDateTime.now();
+    public boolean withdraw(long amountMinor) {
+        if (amountMinor > 0 && this.balanceMinor >= amountMinor) {
+            this.balanceMinor -= amountMinor;
+            this.updatedAt = System.currentTimeMillis();
             return true;
         }
         return false;
@@ -0,0 +1,12 @@
+package com.example.checkingaccount.model;
+
+public enum HoldStatus {
+    // Amount taken from the available balance, waiting for confirm or release
+    HELD,
+    // Withdrawal made final
+    CONFIRMED,
+    // Amount returned to the account by a release
+    RELEASED,
+    // Amount returned to the account by the expiry sweeper
+    EXPIRED
+}
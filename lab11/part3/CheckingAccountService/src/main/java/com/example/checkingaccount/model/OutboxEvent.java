@@ -0,0 +1,100 @@
+package com.example.checkingaccount.model;
+
+import javax.persistence.*;
+
+/**
+ * Balance of an account as committed by one transaction, waiting to be published by the outbox relay.
+ * A removed event holds the final balance of an account that has left this service.
+ */
+@Entity
+@Table(name = "outbox_events")
+public class OutboxEvent {
+
+    // Pooled sequence, so the inserts of one transaction or flush are batched
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_events_seq")
+    @SequenceGenerator(name = "outbox_events_seq", sequenceName = "outbox_events_seq", allocationSize = 100)
+    private Long id;
+
+    @Column(name = "account_number", nullable = false)
+    private String accountNumber;
+
+    @Column(name = "balance_minor", nullable = false)
+    private long balanceMinor;
+
+    @Column(name = "currency", nullable = false, length = 3)
+    private String currency;
+
+    @Column(name = "removed", nullable = false)
+    private boolean removed;
+
+    // Epoch milliseconds
+    @Column(name = "created_at", nullable = false)
+    private long createdAt;
+
+    // Constructors
+    public OutboxEvent() {
+        this.createdAt = System.currentTimeMillis();
+    }
+
+    public OutboxEvent(String accountNumber, long balanceMinor, String currency) {
+        this();
+        this.accountNumber = accountNumber;
+        this.balanceMinor = balanceMinor;
+        this.currency = currency;
+    }
+
+    public OutboxEvent(String accountNumber, long balanceMinor, String currency, boolean removed) {
+        this(accountNumber, balanceMinor, currency);
+        this.removed = removed;
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getAccountNumber() {
+        return accountNumber;
+    }
+
+    public void setAccountNumber(String accountNumber) {
+        this.accountNumber = accountNumber;
+    }
+
+    public long getBalanceMinor() {
+        return balanceMinor;
+    }
+
+    public void setBalanceMinor(long balanceMinor) {
+        this.balanceMinor = balanceMinor;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+
+    public boolean isRemoved() {
+        return removed;
+    }
+
+    public void setRemoved(boolean removed) {
+        this.removed = removed;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.checkingaccount.outbox;
+
+import com.example.checkingaccount.dto.BalanceChangedEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Appends events as newline-delimited JSON to {@code account.outbox.file.path}, one write per batch.
+ * Consumers follow the file like a log, e.g. with {@code tail -F}, and remember the byte position they reached.
+ */
+@Component
+@ConditionalOnExpression("${account.outbox.enabled:true} and '${account.outbox.sink:broker}' == 'file'")
+public class FileEventSink implements OutboxSink {
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${account.outbox.file.path:./outbox/checking-account-events.ndjson}")
+    private String path;
+
+    @Value("${account.outbox.file.fsync:true}")
+    private boolean fsync;
+
+    private ObjectWriter eventWriter;
+    private FileChannel channel;
+
+    @PostConstruct
+    public void open() throws IOException {
+        eventWriter = objectMapper.writerFor(BalanceChangedEvent.class);
+        Path file = Paths.get(path).toAbsolutePath();
+        Files.createDirectories(file.getParent());
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    public void publish(List<BalanceChangedEvent> events) throws IOException {
+        ByteArrayOutputStream lines = new ByteArrayOutputStream(events.size() * 128);
+        for (BalanceChangedEvent event : events) {
+            eventWriter.writeValue(lines, event);
+            lines.write('\n');
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(lines.toByteArray());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        if (fsync) {
+            channel.force(false);
+        }
+    }
+}
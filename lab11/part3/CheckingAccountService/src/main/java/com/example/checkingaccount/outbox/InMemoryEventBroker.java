@@ -0,0 +1,102 @@
+package com.example.checkingaccount.outbox;
+
+import com.example.checkingaccount.dto.BalanceChangedEvent;
+import com.example.checkingaccount.dto.EventPage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Embedded broker: keeps the last {@code account.outbox.broker.retain} published events in memory, numbered by
+ * offset in publish order. Consumers read from the offset they stopped at and can wait for new events instead of
+ * polling the balance endpoints. Events are not kept across restarts; offsets start again at 0.
+ */
+@Component
+@ConditionalOnExpression("${account.outbox.enabled:true} and '${account.outbox.sink:broker}' == 'broker'")
+public class InMemoryEventBroker implements OutboxSink {
+
+    /**
+     * Thrown by {@link #read} when the requested offset has already been dropped from the retained events.
+     */
+    public static class OffsetExpiredException extends RuntimeException {
+        public OffsetExpiredException(long offset, long firstOffset) {
+            super("Offset " + offset + " is no longer retained; the oldest retained offset is " + firstOffset);
+        }
+    }
+
+    @Value("${account.outbox.broker.retain:100000}")
+    private int retain;
+
+    private final ArrayDeque<BalanceChangedEvent> retained = new ArrayDeque<>();
+    private final List<CompletableFuture<Void>> waiters = new ArrayList<>();
+    // Offset of the first retained event
+    private long firstOffset;
+
+    @Override
+    public void publish(List<BalanceChangedEvent> events) {
+        List<CompletableFuture<Void>> woken;
+        synchronized (this) {
+            retained.addAll(events);
+            while (retained.size() > retain) {
+                retained.removeFirst();
+                firstOffset++;
+            }
+            woken = new ArrayList<>(waiters);
+            waiters.clear();
+        }
+        for (CompletableFuture<Void> waiter : woken) {
+            waiter.complete(null);
+        }
+    }
+
+    /**
+     * Up to {@code limit} events starting at {@code offset}. An offset past the last event returns an empty page.
+     *
+     * @throws OffsetExpiredException if events at the offset have been dropped; the consumer has to resync
+     *         from the balance endpoints and continue from {@link #endOffset()}
+     */
+    public synchronized EventPage read(long offset, int limit) {
+        if (offset < firstOffset) {
+            throw new OffsetExpiredException(offset, firstOffset);
+        }
+        long endOffset = firstOffset + retained.size();
+        if (offset >= endOffset) {
+            return new EventPage(Collections.emptyList(), endOffset);
+        }
+        List<BalanceChangedEvent> events = new ArrayList<>((int) Math.min(limit, endOffset - offset));
+        Iterator<BalanceChangedEvent> it = retained.iterator();
+        // ArrayDeque has no indexed access; retained is bounded, and consumers normally read near the end
+        for (long skip = offset - firstOffset; skip > 0; skip--) {
+            it.next();
+        }
+        while (it.hasNext() && events.size() < limit) {
+            events.add(it.next());
+        }
+        return new EventPage(events, offset + events.size());
+    }
+
+    /**
+     * Completes on the next publish, or at once if events at or after {@code offset} are already there.
+     */
+    public synchronized CompletableFuture<Void> awaitEvents(long offset) {
+        if (offset < firstOffset + retained.size()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        // Drop waiters whose consumers timed out since the last publish
+        waiters.removeIf(CompletableFuture::isDone);
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        waiters.add(waiter);
+        return waiter;
+    }
+
+    public synchronized long endOffset() {
+        return firstOffset + retained.size();
+    }
+}
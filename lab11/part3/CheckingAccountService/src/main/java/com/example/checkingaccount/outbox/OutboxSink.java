@@ -0,0 +1,18 @@
+package com.example.checkingaccount.outbox;
+
+import com.example.checkingaccount.dto.BalanceChangedEvent;
+
+import java.util.List;
+
+/**
+ * Destination of the outbox relay. Select a built-in sink with {@code account.outbox.sink} ({@code broker} or
+ * {@code file}), or set it to any other value and provide an OutboxSink bean.
+ */
+public interface OutboxSink {
+
+    /**
+     * Publish a batch of events in order. Throwing leaves the batch in the outbox; it is offered again on the
+     * next relay run, so a sink can see the same event more than once.
+     */
+    void publish(List<BalanceChangedEvent> events) throws Exception;
+}
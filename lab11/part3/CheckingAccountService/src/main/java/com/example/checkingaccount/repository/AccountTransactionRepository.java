@@ -0,0 +1,46 @@
+package com.example.checkingaccount.repository;
+
+import com.example.checkingaccount.model.AccountTransaction;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.QueryHint;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
+@Repository
+public interface AccountTransactionRepository extends JpaRepository<AccountTransaction, Long> {
+
+    /**
+     * One page of an account's history, newest first, made at or after {@code from} and before the keyset
+     * position ({@code beforeTime}, {@code beforeId}). The page size comes from the {@link Pageable}; its page
+     * number must stay 0.
+     *
+     * The plain {@code createdAt <= :beforeTime} bounds the index range, which the OR alone does not. The constant
+     * account number leads the ORDER BY so that it matches the index and H2 reads the rows in index order
+     * instead of sorting the whole range.
+     */
+    @Query("SELECT t FROM AccountTransaction t WHERE t.accountNumber = :accountNumber "
+            + "AND t.createdAt >= :from AND t.createdAt <= :beforeTime "
+            + "AND (t.createdAt < :beforeTime OR (t.createdAt = :beforeTime AND t.id < :beforeId)) "
+            + "ORDER BY t.accountNumber, t.createdAt DESC, t.id DESC")
+    List<AccountTransaction> findHistoryPage(@Param("accountNumber") String accountNumber, @Param("from") long from,
+            @Param("beforeTime") long beforeTime, @Param("beforeId") long beforeId, Pageable pageable);
+
+    /**
+     * The same range as a cursor-backed stream. Must be consumed and closed inside a transaction.
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT t FROM AccountTransaction t WHERE t.accountNumber = :accountNumber "
+            + "AND t.createdAt >= :from AND t.createdAt <= :beforeTime "
+            + "AND (t.createdAt < :beforeTime OR (t.createdAt = :beforeTime AND t.id < :beforeId)) "
+            + "ORDER BY t.accountNumber, t.createdAt DESC, t.id DESC")
+    Stream<AccountTransaction> streamHistory(@Param("accountNumber") String accountNumber, @Param("from") long from,
+            @Param("beforeTime") long beforeTime, @Param("beforeId") long beforeId);
+}
@@ -2,10 +2,22 @@ package com.example.checkingaccount.repository;
 
 import com.example.checkingaccount.model.CheckingAccount;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 @Repository
 public interface CheckingAccountRepository extends JpaRepository<CheckingAccount, Long> {
@@ -14,5 +26,74 @@ public interface CheckingAccountRepository extends JpaRepository<CheckingAccount
 
     List<CheckingAccount> findByCustomerId(String customerId);
 
+    /**
+     * One page of a customer's accounts, ordered by account number and starting after the given one.
+     * The page size comes from the {@link Pageable}; its page number must stay 0.
+     */
+    @Query("SELECT a FROM CheckingAccount a WHERE a.customerId = :customerId AND a.accountNumber > :after "
+            + "ORDER BY a.accountNumber")
+    List<CheckingAccount> findPageByCustomerId(@Param("customerId") String customerId, @Param("after") String after,
+            Pageable pageable);
+
+    /**
+     * All accounts of a customer as a cursor-backed stream. Must be consumed and closed inside a transaction.
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT a FROM CheckingAccount a WHERE a.customerId = :customerId ORDER BY a.accountNumber")
+    Stream<CheckingAccount> streamByCustomerId(@Param("customerId") String customerId);
+
+    /**
+     * Load and row-lock a set of accounts. Rows are locked in account-number order so
+     * concurrent batches cannot deadlock each other.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT a FROM CheckingAccount a WHERE a.accountNumber IN :accountNumbers ORDER BY a.accountNumber")
+    List<CheckingAccount> findByAccountNumberInForUpdate(@Param("accountNumbers") Collection<String> accountNumbers);
+
+    /**
+     * One page of all accounts, ordered by account number and starting after the given one, for moving accounts
+     * between shards. The page size comes from the {@link Pageable}; its page number must stay 0.
+     */
+    @Query("SELECT a FROM CheckingAccount a WHERE a.accountNumber > :after ORDER BY a.accountNumber")
+    List<CheckingAccount> findPageAfter(@Param("after") String after, Pageable pageable);
+
     boolean existsByAccountNumber(String accountNumber);
+
+    // Most recently changed accounts first, for the startup cache warm-up
+    @Query("SELECT a FROM CheckingAccount a ORDER BY a.updatedAt DESC")
+    List<CheckingAccount> findRecentlyUpdated(Pageable pageable);
+
+    // Plain read of several accounts, for the query-side projection
+    List<CheckingAccount> findByAccountNumberIn(Collection<String> accountNumbers);
+
+    /**
+     * The subset of the given account numbers that are already taken, in one query.
+     */
+    @Query("SELECT a.accountNumber FROM CheckingAccount a WHERE a.accountNumber IN :accountNumbers")
+    List<String> findExistingAccountNumbers(@Param("accountNumbers") Collection<String> accountNumbers);
+
+    /**
+     * Add to the balance in a single statement. The {@code ceiling} is {@code Long.MAX_VALUE - amount},
+     * so a credit that would overflow the balance matches no row instead of failing.
+     *
+     * @return the number of rows updated, 0 when the account does not exist, holds another
+     *         currency or would overflow
+     */
+    @Modifying
+    @Query("UPDATE CheckingAccount a SET a.balanceMinor = a.balanceMinor + :amount, a.updatedAt = :now "
+            + "WHERE a.accountNumber = :accountNumber AND a.currency = :currency AND a.balanceMinor <= :ceiling")
+    int credit(@Param("accountNumber") String accountNumber, @Param("amount") long amountMinor,
+            @Param("currency") String currency, @Param("ceiling") long ceiling, @Param("now") long now);
+
+    /**
+     * Subtract from the balance in a single statement, only if the funds are there.
+     *
+     * @return the number of rows updated, 0 when the account does not exist, holds another
+     *         currency or has insufficient funds
+     */
+    @Modifying
+    @Query("UPDATE CheckingAccount a SET a.balanceMinor = a.balanceMinor - :amount, a.updatedAt = :now "
+            + "WHERE a.accountNumber = :accountNumber AND a.currency = :currency AND a.balanceMinor >= :amount")
+    int debit(@Param("accountNumber") String accountNumber, @Param("amount") long amountMinor,
+            @Param("currency") String currency, @Param("now") long now);
 }
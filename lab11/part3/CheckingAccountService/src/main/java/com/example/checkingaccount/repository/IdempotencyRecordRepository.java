@@ -0,0 +1,31 @@
+package com.example.checkingaccount.repository;
+
+import com.example.checkingaccount.model.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String> {
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.createdAt < :cutoff")
+    int deleteOlderThan(@Param("cutoff") LocalDateTime cutoff);
+
+    // Outcomes of the accounts' keyed mutations, handed off along with the accounts
+    List<IdempotencyRecord> findByAccountNumberIn(Collection<String> accountNumbers);
+
+    /**
+     * The subset of the given keys that are already stored, in one query.
+     */
+    @Query("SELECT r.idempotencyKey FROM IdempotencyRecord r WHERE r.idempotencyKey IN :keys")
+    List<String> findExistingKeys(@Param("keys") Collection<String> keys);
+}
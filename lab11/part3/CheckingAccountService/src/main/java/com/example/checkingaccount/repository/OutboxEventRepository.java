@@ -0,0 +1,30 @@
+package com.example.checkingaccount.repository;
+
+import com.example.checkingaccount.model.OutboxEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    /**
+     * Unsaved outbox events holding the current balances of the given accounts. The balances are read with a
+     * scalar query, so they reflect single-statement updates made earlier in the transaction.
+     */
+    @Query("SELECT new com.example.checkingaccount.model.OutboxEvent(a.accountNumber, a.balanceMinor, a.currency) "
+            + "FROM CheckingAccount a WHERE a.accountNumber IN :accountNumbers ORDER BY a.accountNumber")
+    List<OutboxEvent> snapshotBalances(@Param("accountNumbers") Collection<String> accountNumbers);
+
+    @Query("SELECT COALESCE(MAX(e.id), 0) FROM OutboxEvent e")
+    long findMaxId();
+
+    // The page size comes from the Pageable; its page number must stay 0
+    @Query("SELECT e FROM OutboxEvent e ORDER BY e.id")
+    List<OutboxEvent> findOldest(Pageable pageable);
+}
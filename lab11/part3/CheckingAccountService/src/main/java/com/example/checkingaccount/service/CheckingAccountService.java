@@ -1,16 +1,44 @@
 package com.example.checkingaccount.service;
 
+import com.example.checkingaccount.cache.AccountCache;
+import com.example.checkingaccount.cache.AccountChangedEvent;
 import com.example.checkingaccount.dto.AccountRequest;
 import com.example.checkingaccount.dto.TransactionRequest;
+import com.example.checkingaccount.dto.TransactionResult;
+import com.example.checkingaccount.history.TransactionHistory;
+import com.example.checkingaccount.hold.HoldConflictException;
+import com.example.checkingaccount.ledger.LedgerEngine;
 import com.example.checkingaccount.model.CheckingAccount;
+import com.example.checkingaccount.model.FundHold;
+import com.example.checkingaccount.model.HoldStatus;
+import com.example.checkingaccount.model.IdempotencyRecord;
+import com.example.checkingaccount.model.MinorUnits;
+import com.example.checkingaccount.model.TransactionType;
+import com.example.checkingaccount.outbox.OutboxWriter;
 import com.example.checkingaccount.repository.CheckingAccountRepository;
+import com.example.checkingaccount.repository.FundHoldRepository;
+import com.example.checkingaccount.repository.IdempotencyRecordRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.math.BigDecimal;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @Transactional
@@ -19,82 +47,457 @@ public class CheckingAccountService {
     @Autowired
     private CheckingAccountRepository checkingAccountRepository;
 
+    @Autowired
+    private FundHoldRepository fundHoldRepository;
+
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    // Present only when account.ledger.enabled=true
+    @Autowired(required = false)
+    private LedgerEngine ledgerEngine;
+
+    // Present unless account.history.enabled=false
+    @Autowired(required = false)
+    private TransactionHistory transactionHistory;
+
+    // Present unless account.outbox.enabled=false
+    @Autowired(required = false)
+    private OutboxWriter outboxWriter;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
     public CheckingAccount createAccount(AccountRequest request) {
         if (checkingAccountRepository.existsByAccountNumber(request.getAccountNumber())) {
             throw new RuntimeException("Account with number " + request.getAccountNumber() + " already exists");
         }
 
+        String currency = request.getCurrency() != null ? request.getCurrency() : MinorUnits.DEFAULT_CURRENCY;
         CheckingAccount account = new CheckingAccount(
                 request.getAccountNumber(),
                 request.getCustomerId(),
-                request.getInitialBalance() != null ? request.getInitialBalance() : BigDecimal.ZERO);
+                request.getInitialBalance() != null ? MinorUnits.fromDecimal(request.getInitialBalance(), currency) : 0,
+                currency);
 
-        return checkingAccountRepository.save(account);
+        CheckingAccount saved = checkingAccountRepository.save(account);
+        if (ledgerEngine != null) {
+            ledgerEngine.open(saved);
+        }
+        recordOpening(saved);
+        // Drops a cached "not found" for this account number
+        publishChanged(saved.getAccountNumber());
+        return saved;
     }
 
+    /**
+     * Insert the accounts whose numbers are not taken yet, in one transaction. Taken numbers are found with a
+     * single IN query rather than one lookup per account, and the inserts are sent as JDBC batches.
+     *
+     * @return the accounts that were inserted; the others were duplicates
+     */
+    public List<CheckingAccount> importAccounts(List<CheckingAccount> accounts) {
+        List<String> accountNumbers = accounts.stream()
+                .map(CheckingAccount::getAccountNumber)
+                .collect(Collectors.toList());
+        Set<String> taken = new HashSet<>(checkingAccountRepository.findExistingAccountNumbers(accountNumbers));
+        List<CheckingAccount> fresh = new ArrayList<>(accounts.size());
+        for (CheckingAccount account : accounts) {
+            if (taken.add(account.getAccountNumber())) {
+                fresh.add(account);
+            }
+        }
+
+        // Flush here so a number taken concurrently surfaces as a DataIntegrityViolationException
+        checkingAccountRepository.saveAllAndFlush(fresh);
+        for (CheckingAccount account : fresh) {
+            if (ledgerEngine != null) {
+                ledgerEngine.open(account);
+            }
+            recordOpening(account);
+            publishChanged(account.getAccountNumber());
+        }
+        return fresh;
+    }
+
+    /**
+     * Insert accounts handed off by another shard, like {@link #importAccounts}, together with the stored outcomes
+     * of their keyed mutations. A request retried on this shard after the move is then answered from its record
+     * instead of being applied a second time. Records of accounts that were not inserted, and keys this shard
+     * already has, are skipped.
+     *
+     * @return the accounts that were inserted; the others were duplicates
+     */
+    public List<CheckingAccount> adoptAccounts(List<CheckingAccount> accounts, List<IdempotencyRecord> records) {
+        List<CheckingAccount> adopted = importAccounts(accounts);
+        if (records.isEmpty() || adopted.isEmpty()) {
+            return adopted;
+        }
+        Set<String> adoptedNumbers = adopted.stream()
+                .map(CheckingAccount::getAccountNumber)
+                .collect(Collectors.toSet());
+        List<IdempotencyRecord> moved = records.stream()
+                .filter(record -> adoptedNumbers.contains(record.getAccountNumber()))
+                .collect(Collectors.toList());
+        Set<String> known = new HashSet<>(idempotencyRecordRepository.findExistingKeys(moved.stream()
+                .map(IdempotencyRecord::getIdempotencyKey)
+                .collect(Collectors.toList())));
+        idempotencyRecordRepository.saveAll(moved.stream()
+                .filter(record -> known.add(record.getIdempotencyKey()))
+                .collect(Collectors.toList()));
+        return adopted;
+    }
+
+    /**
+     * Remove the given accounts so that another shard can take them over, and return them with their final
+     * balances. The rows are locked before the holds are checked, so neither a transfer leg nor a new hold can
+     * get in between. Accounts with funds still held, and numbers that do not exist here, are left alone and
+     * not returned. Their transaction history stays behind. A removed event is written for each, so the query
+     * side and other outbox consumers drop them.
+     *
+     * @throws UnsupportedOperationException with the ledger enabled, which keeps the balances outside the table
+     */
+    public List<CheckingAccount> handOff(Collection<String> accountNumbers) {
+        if (ledgerEngine != null) {
+            throw new UnsupportedOperationException("Accounts cannot be handed off while the ledger is enabled");
+        }
+        List<CheckingAccount> locked = checkingAccountRepository.findByAccountNumberInForUpdate(accountNumbers);
+        if (locked.isEmpty()) {
+            return locked;
+        }
+        Set<String> held = new HashSet<>(fundHoldRepository.findAccountsWithHeldFunds(accountNumbers));
+        List<CheckingAccount> handedOff = locked.stream()
+                .filter(account -> !held.contains(account.getAccountNumber()))
+                .collect(Collectors.toList());
+        checkingAccountRepository.deleteAllInBatch(handedOff);
+        if (outboxWriter != null) {
+            outboxWriter.appendRemoved(handedOff);
+        }
+        for (CheckingAccount account : handedOff) {
+            publishChanged(account.getAccountNumber());
+        }
+        return handedOff;
+    }
+
+    @Cacheable(cacheNames = AccountCache.NAME, key = "#accountNumber")
     public Optional<CheckingAccount> getAccount(String accountNumber) {
+        if (ledgerEngine != null) {
+            return ledgerEngine.getAccount(accountNumber);
+        }
         return checkingAccountRepository.findByAccountNumber(accountNumber);
     }
 
-    public List<CheckingAccount> getAccountsByCustomer(String customerId) {
-        return checkingAccountRepository.findByCustomerId(customerId);
+    /**
+     * Keyset pagination: the accounts of a customer with an account number greater than {@code after},
+     * at most {@code limit} of them. Pass the last account number of a page to get the next one.
+     */
+    @Transactional(readOnly = true)
+    public List<CheckingAccount> getAccountsByCustomer(String customerId, String after, int limit) {
+        List<CheckingAccount> accounts = checkingAccountRepository.findPageByCustomerId(customerId,
+                after != null ? after : "", PageRequest.of(0, limit));
+        return ledgerEngine != null ? ledgerEngine.overlay(accounts) : accounts;
+    }
+
+    /**
+     * Keyset pagination over all accounts in account-number order, for moving accounts between shards.
+     */
+    @Transactional(readOnly = true)
+    public List<CheckingAccount> getAccounts(String after, int limit) {
+        List<CheckingAccount> accounts = checkingAccountRepository.findPageAfter(after != null ? after : "",
+                PageRequest.of(0, limit));
+        return ledgerEngine != null ? ledgerEngine.overlay(accounts) : accounts;
+    }
+
+    /**
+     * Hand every account of a customer to the consumer, reading them through a database cursor.
+     * Each entity is detached once consumed, so memory use does not grow with the number of accounts.
+     */
+    @Transactional(readOnly = true)
+    public void streamAccountsByCustomer(String customerId, Consumer<CheckingAccount> consumer) {
+        try (Stream<CheckingAccount> accounts = checkingAccountRepository.streamByCustomerId(customerId)) {
+            accounts.forEach(account -> {
+                consumer.accept(ledgerEngine != null ? ledgerEngine.overlay(account) : account);
+                entityManager.detach(account);
+            });
+        }
     }
 
     @Transactional
     public boolean deposit(TransactionRequest request) {
-        Optional<CheckingAccount> accountOpt = checkingAccountRepository
-                .findByAccountNumber(request.getAccountNumber());
-        if (accountOpt.isPresent()) {
-            CheckingAccount account = accountOpt.get();
-            boolean success = account.deposit(request.getAmount());
-            if (success) {
-                checkingAccountRepository.save(account);
-            }
-            return success;
-        }
-        return false;
+        return credit(request.getAccountNumber(), request.getAmountMinor(), request.getCurrency(),
+                TransactionType.DEPOSIT, null);
     }
 
     @Transactional
     public boolean withdraw(TransactionRequest request) {
-        Optional<CheckingAccount> accountOpt = checkingAccountRepository
-                .findByAccountNumber(request.getAccountNumber());
-        if (accountOpt.isPresent()) {
-            CheckingAccount account = accountOpt.get();
-            boolean success = account.withdraw(request.getAmount());
-            if (success) {
-                checkingAccountRepository.save(account);
+        return debit(request.getAccountNumber(), request.getAmountMinor(), request.getCurrency(),
+                TransactionType.WITHDRAWAL, null);
+    }
+
+    @Transactional
+    public boolean transferFrom(String accountNumber, long amountMinor, String currency) {
+        return debit(accountNumber, amountMinor, currency, TransactionType.TRANSFER_OUT, null);
+    }
+
+    @Transactional
+    public boolean transferTo(String accountNumber, long amountMinor, String currency) {
+        return credit(accountNumber, amountMinor, currency, TransactionType.TRANSFER_IN, null);
+    }
+
+    /**
+     * Apply a batch of withdrawals in one transaction.
+     * All referenced accounts are loaded and row-locked with a single query and the legs
+     * are applied in request order, so several legs against the same account see each
+     * other's effect and no concurrent update is lost.
+     */
+    @Transactional
+    public List<TransactionResult> transferFromBatch(List<TransactionRequest> requests) {
+        if (ledgerEngine != null) {
+            return applyEach(requests, r -> debit(r.getAccountNumber(), r.getAmountMinor(), r.getCurrency(),
+                    TransactionType.TRANSFER_OUT, null),
+                    "Account not found, currency mismatch, insufficient funds or invalid amount");
+        }
+        Map<String, CheckingAccount> accounts = loadAccounts(requests);
+        List<TransactionResult> results = new ArrayList<>(requests.size());
+        for (TransactionRequest request : requests) {
+            CheckingAccount account = accounts.get(request.getAccountNumber());
+            if (account == null) {
+                results.add(TransactionResult.failed(request, "Account not found"));
+            } else if (!account.getCurrency().equals(request.getCurrency())) {
+                results.add(TransactionResult.failed(request, "Currency mismatch"));
+            } else if (account.withdraw(request.getAmountMinor())) {
+                results.add(TransactionResult.succeeded(request));
+                recordTransaction(account.getAccountNumber(), TransactionType.TRANSFER_OUT, request.getAmountMinor(),
+                        request.getCurrency(), null);
+                publishChanged(account.getAccountNumber());
+            } else {
+                results.add(TransactionResult.failed(request, "Insufficient funds or invalid amount"));
             }
-            return success;
         }
-        return false;
+        checkingAccountRepository.saveAll(accounts.values());
+        return results;
     }
 
+    /**
+     * Apply a batch of deposits in one transaction.
+     */
     @Transactional
-    public boolean transferFrom(String accountNumber, BigDecimal amount) {
-        Optional<CheckingAccount> accountOpt = checkingAccountRepository.findByAccountNumber(accountNumber);
-        if (accountOpt.isPresent()) {
-            CheckingAccount account = accountOpt.get();
-            boolean success = account.withdraw(amount);
-            if (success) {
-                checkingAccountRepository.save(account);
+    public List<TransactionResult> transferToBatch(List<TransactionRequest> requests) {
+        if (ledgerEngine != null) {
+            return applyEach(requests, r -> credit(r.getAccountNumber(), r.getAmountMinor(), r.getCurrency(),
+                    TransactionType.TRANSFER_IN, null),
+                    "Account not found, currency mismatch or invalid amount");
+        }
+        Map<String, CheckingAccount> accounts = loadAccounts(requests);
+        List<TransactionResult> results = new ArrayList<>(requests.size());
+        for (TransactionRequest request : requests) {
+            CheckingAccount account = accounts.get(request.getAccountNumber());
+            if (account == null) {
+                results.add(TransactionResult.failed(request, "Account not found"));
+            } else if (!account.getCurrency().equals(request.getCurrency())) {
+                results.add(TransactionResult.failed(request, "Currency mismatch"));
+            } else if (account.deposit(request.getAmountMinor())) {
+                results.add(TransactionResult.succeeded(request));
+                recordTransaction(account.getAccountNumber(), TransactionType.TRANSFER_IN, request.getAmountMinor(),
+                        request.getCurrency(), null);
+                publishChanged(account.getAccountNumber());
+            } else {
+                results.add(TransactionResult.failed(request, "Invalid amount"));
             }
-            return success;
         }
-        return false;
+        checkingAccountRepository.saveAll(accounts.values());
+        return results;
     }
 
+    /**
+     * Reserve funds until {@code expiresAt} (epoch milliseconds): the amount is debited from the available
+     * balance and recorded under the client-chosen hold id. Placing the same hold id again with the same request
+     * returns the existing hold, whatever its status.
+     *
+     * @return the hold, or null if the account is missing, holds another currency or has insufficient funds
+     * @throws HoldConflictException if the hold id was used for a different request
+     */
     @Transactional
-    public boolean transferTo(String accountNumber, BigDecimal amount) {
-        Optional<CheckingAccount> accountOpt = checkingAccountRepository.findByAccountNumber(accountNumber);
-        if (accountOpt.isPresent()) {
-            CheckingAccount account = accountOpt.get();
-            boolean success = account.deposit(amount);
-            if (success) {
-                checkingAccountRepository.save(account);
+    public FundHold placeHold(String holdId, TransactionRequest request, long expiresAt) {
+        Optional<FundHold> existing = fundHoldRepository.findById(holdId);
+        if (existing.isPresent()) {
+            if (!existing.get().matches(request.getAccountNumber(), request.getAmountMinor(), request.getCurrency())) {
+                throw new HoldConflictException("Hold " + holdId + " was placed for a different request");
             }
-            return success;
+            return existing.get();
+        }
+
+        // Inserted before the debit, so a concurrent placement of the same id fails here rather than after
+        // debiting the ledger, which would then have to undo it
+        FundHold hold = fundHoldRepository.saveAndFlush(new FundHold(holdId, request.getAccountNumber(),
+                request.getAmountMinor(), request.getCurrency(), expiresAt));
+        if (!debit(request.getAccountNumber(), request.getAmountMinor(), request.getCurrency(), TransactionType.HOLD,
+                holdId)) {
+            fundHoldRepository.delete(hold);
+            return null;
+        }
+        return hold;
+    }
+
+    /**
+     * Make the held withdrawal final. Confirming a confirmed hold does nothing. A hold that already expired
+     * is debited again if the funds are still available.
+     *
+     * @return the hold, or empty if there is no hold with this id
+     * @throws HoldConflictException if the hold was released, or expired and the funds are gone
+     */
+    @Transactional
+    public Optional<FundHold> confirmHold(String holdId) {
+        Optional<FundHold> found = fundHoldRepository.findByIdForUpdate(holdId);
+        if (found.isEmpty()) {
+            return found;
+        }
+        FundHold hold = found.get();
+        switch (hold.getStatus()) {
+            case CONFIRMED:
+                return found;
+            case RELEASED:
+                throw new HoldConflictException("Hold " + holdId + " was released");
+            case EXPIRED:
+                if (!debit(hold.getAccountNumber(), hold.getAmountMinor(), hold.getCurrency(), TransactionType.HOLD,
+                        holdId)) {
+                    throw new HoldConflictException("Hold " + holdId + " expired and the funds are gone");
+                }
+                break;
+            default:
+                break;
+        }
+        hold.setStatus(HoldStatus.CONFIRMED);
+        return found;
+    }
+
+    /**
+     * Return the held amount to the account. Releasing a released or expired hold does nothing.
+     *
+     * @return the hold, or empty if there is no hold with this id
+     * @throws HoldConflictException if the hold was confirmed
+     */
+    @Transactional
+    public Optional<FundHold> releaseHold(String holdId) {
+        Optional<FundHold> found = fundHoldRepository.findByIdForUpdate(holdId);
+        if (found.isEmpty()) {
+            return found;
+        }
+        FundHold hold = found.get();
+        if (hold.getStatus() == HoldStatus.CONFIRMED) {
+            throw new HoldConflictException("Hold " + holdId + " was confirmed");
+        }
+        if (hold.getStatus() == HoldStatus.HELD) {
+            refund(hold, TransactionType.HOLD_RELEASE);
+            hold.setStatus(HoldStatus.RELEASED);
+        }
+        return found;
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<FundHold> getHold(String holdId) {
+        return fundHoldRepository.findById(holdId);
+    }
+
+    /**
+     * Release up to {@code limit} holds that expired before {@code now}, in one transaction.
+     *
+     * @return the number of expired holds found; less than {@code limit} when there are no more
+     */
+    @Transactional
+    public int expireHolds(long now, int limit) {
+        List<String> holdIds = fundHoldRepository.findExpiredIds(now, PageRequest.of(0, limit));
+        for (String holdId : holdIds) {
+            // Re-checked under the row lock: a confirm or release may have got there first
+            fundHoldRepository.findByIdForUpdate(holdId)
+                    .filter(hold -> hold.getStatus() == HoldStatus.HELD && hold.getExpiresAtMillis() < now)
+                    .ifPresent(hold -> {
+                        refund(hold, TransactionType.HOLD_EXPIRY);
+                        hold.setStatus(HoldStatus.EXPIRED);
+                    });
+        }
+        return holdIds.size();
+    }
+
+    private void refund(FundHold hold, TransactionType type) {
+        // Only fails if the balance would overflow, which the debit of the hold makes impossible in practice
+        if (!credit(hold.getAccountNumber(), hold.getAmountMinor(), hold.getCurrency(), type, hold.getHoldId())) {
+            throw new IllegalStateException("Could not return the funds of hold " + hold.getHoldId());
         }
-        return false;
+    }
+
+    private List<TransactionResult> applyEach(List<TransactionRequest> requests, Predicate<TransactionRequest> leg,
+            String failureMessage) {
+        List<TransactionResult> results = new ArrayList<>(requests.size());
+        for (TransactionRequest request : requests) {
+            results.add(leg.test(request)
+                    ? TransactionResult.succeeded(request)
+                    : TransactionResult.failed(request, failureMessage));
+        }
+        return results;
+    }
+
+    private Map<String, CheckingAccount> loadAccounts(List<TransactionRequest> requests) {
+        Set<String> accountNumbers = new HashSet<>();
+        for (TransactionRequest request : requests) {
+            accountNumbers.add(request.getAccountNumber());
+        }
+        return checkingAccountRepository.findByAccountNumberInForUpdate(accountNumbers).stream()
+                .collect(Collectors.toMap(CheckingAccount::getAccountNumber, Function.identity()));
+    }
+
+    // Single-statement balance updates: the UPDATE both checks and changes the balance,
+    // so there is no read-modify-write window for concurrent requests to race in.
+    private boolean credit(String accountNumber, long amountMinor, String currency, TransactionType type,
+            String reference) {
+        if (amountMinor <= 0) {
+            return false;
+        }
+        boolean applied = ledgerEngine != null
+                ? ledgerEngine.credit(accountNumber, amountMinor, currency)
+                : checkingAccountRepository.credit(accountNumber, amountMinor, currency,
+                        Long.MAX_VALUE - amountMinor, System.currentTimeMillis()) == 1;
+        if (applied) {
+            recordTransaction(accountNumber, type, amountMinor, currency, reference);
+            publishChanged(accountNumber);
+        }
+        return applied;
+    }
+
+    private boolean debit(String accountNumber, long amountMinor, String currency, TransactionType type,
+            String reference) {
+        if (amountMinor <= 0) {
+            return false;
+        }
+        boolean applied = ledgerEngine != null
+                ? ledgerEngine.debit(accountNumber, amountMinor, currency)
+                : checkingAccountRepository.debit(accountNumber, amountMinor, currency,
+                        System.currentTimeMillis()) == 1;
+        if (applied) {
+            recordTransaction(accountNumber, type, amountMinor, currency, reference);
+            publishChanged(accountNumber);
+        }
+        return applied;
+    }
+
+    private void recordOpening(CheckingAccount account) {
+        if (account.getBalanceMinor() > 0) {
+            recordTransaction(account.getAccountNumber(), TransactionType.OPENING, account.getBalanceMinor(),
+                    account.getCurrency(), null);
+        }
+    }
+
+    private void recordTransaction(String accountNumber, TransactionType type, long amountMinor, String currency,
+            String reference) {
+        if (transactionHistory != null) {
+            transactionHistory.record(accountNumber, type, amountMinor, currency, reference);
+        }
+    }
+
+    private void publishChanged(String accountNumber) {
+        eventPublisher.publishEvent(new AccountChangedEvent(accountNumber));
     }
 }
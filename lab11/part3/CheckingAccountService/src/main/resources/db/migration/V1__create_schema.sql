@@ -0,0 +1,63 @@
+-- Schema of the checking account service. Sequences step by 100 to match the pooled id generators, which
+-- reserve 100 ids per round trip.
+
+CREATE SEQUENCE checking_accounts_seq START WITH 1 INCREMENT BY 100;
+CREATE SEQUENCE outbox_events_seq START WITH 1 INCREMENT BY 100;
+CREATE SEQUENCE account_transactions_seq START WITH 1 INCREMENT BY 100;
+
+CREATE TABLE checking_accounts (
+    id             BIGINT       NOT NULL PRIMARY KEY,
+    account_number VARCHAR(255) NOT NULL,
+    customer_id    VARCHAR(255) NOT NULL,
+    balance_minor  BIGINT       NOT NULL,
+    currency       VARCHAR(3)   NOT NULL,
+    created_at     TIMESTAMP,
+    updated_at     BIGINT,
+    CONSTRAINT uk_checking_accounts_account_number UNIQUE (account_number)
+);
+-- Customer listing: equality on customer_id, keyset range and order on account_number
+CREATE INDEX idx_checking_accounts_customer_account ON checking_accounts (customer_id, account_number);
+
+CREATE TABLE fund_holds (
+    hold_id        VARCHAR(128) NOT NULL PRIMARY KEY,
+    account_number VARCHAR(255) NOT NULL,
+    amount_minor   BIGINT       NOT NULL,
+    currency       VARCHAR(3)   NOT NULL,
+    status         VARCHAR(16)  NOT NULL,
+    created_at     TIMESTAMP,
+    expires_at     BIGINT       NOT NULL
+);
+-- Expiry sweeper: held holds past their expiry
+CREATE INDEX idx_fund_holds_status_expires ON fund_holds (status, expires_at);
+
+CREATE TABLE idempotency_records (
+    idempotency_key VARCHAR(128) NOT NULL PRIMARY KEY,
+    operation       VARCHAR(255) NOT NULL,
+    account_number  VARCHAR(255),
+    amount_minor    BIGINT,
+    currency        VARCHAR(3),
+    success         BOOLEAN      NOT NULL,
+    created_at      TIMESTAMP
+);
+-- Purge of records past their retention
+CREATE INDEX idx_idempotency_created_at ON idempotency_records (created_at);
+
+CREATE TABLE outbox_events (
+    id             BIGINT       NOT NULL PRIMARY KEY,
+    account_number VARCHAR(255) NOT NULL,
+    balance_minor  BIGINT       NOT NULL,
+    currency       VARCHAR(3)   NOT NULL,
+    created_at     BIGINT       NOT NULL
+);
+
+CREATE TABLE account_transactions (
+    id             BIGINT       NOT NULL PRIMARY KEY,
+    account_number VARCHAR(255) NOT NULL,
+    type           VARCHAR(16)  NOT NULL,
+    amount_minor   BIGINT       NOT NULL,
+    currency       VARCHAR(3)   NOT NULL,
+    reference      VARCHAR(128),
+    created_at     BIGINT       NOT NULL
+);
+-- Transaction history: equality on account_number, newest-first range and order on created_at, id
+CREATE INDEX idx_account_transactions_account_time ON account_transactions (account_number, created_at DESC, id DESC);
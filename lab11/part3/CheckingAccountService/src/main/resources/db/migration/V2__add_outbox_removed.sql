@@ -0,0 +1,2 @@
+-- Marks the last event of an account handed off to another shard
+ALTER TABLE outbox_events ADD COLUMN removed BOOLEAN DEFAULT FALSE NOT NULL;
@@ -0,0 +1,111 @@
+package com.example.checkingaccount.coalescing;
+
+import com.example.checkingaccount.coalescing.MutationCoalescer.Kind;
+import com.example.checkingaccount.dto.AccountRequest;
+import com.example.checkingaccount.dto.TransactionRequest;
+import com.example.checkingaccount.history.TransactionHistory;
+import com.example.checkingaccount.idempotency.IdempotencyConflictException;
+import com.example.checkingaccount.repository.CheckingAccountRepository;
+import com.example.checkingaccount.service.CheckingAccountService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:coalescer-test",
+        "eureka.client.enabled=false",
+        "account.coalescing.enabled=true",
+        // Long enough for all mutations a test submits to end up in one batch
+        "account.coalescing.window-ms=200"
+})
+class MutationCoalescerTest {
+
+    @Autowired
+    private MutationCoalescer mutationCoalescer;
+
+    @Autowired
+    private CheckingAccountService checkingAccountService;
+
+    @Autowired
+    private CheckingAccountRepository checkingAccountRepository;
+
+    @SpyBean
+    private TransactionHistory transactionHistory;
+
+    @Test
+    void appliesMutationsInArrivalOrderAgainstTheRunningBalance() {
+        open("CHK-ORDER", 0);
+
+        CompletableFuture<Boolean> early = submit(Kind.DEBIT, "CHK-ORDER", 50, null);
+        CompletableFuture<Boolean> deposit = submit(Kind.CREDIT, "CHK-ORDER", 100, null);
+        CompletableFuture<Boolean> covered = submit(Kind.DEBIT, "CHK-ORDER", 80, null);
+        CompletableFuture<Boolean> overdraft = submit(Kind.DEBIT, "CHK-ORDER", 21, null);
+
+        // The first withdrawal comes before the deposit, the last one after the second has taken most of it
+        assertThat(early.join()).isFalse();
+        assertThat(deposit.join()).isTrue();
+        assertThat(covered.join()).isTrue();
+        assertThat(overdraft.join()).isFalse();
+        assertThat(balance("CHK-ORDER")).isEqualTo(20);
+    }
+
+    @Test
+    void failingMutationDoesNotTakeTheRestOfItsBatchWithIt() {
+        open("CHK-ISOLATE", 1000);
+        doThrow(new IllegalStateException("history unavailable")).when(transactionHistory)
+                .record(eq("CHK-ISOLATE"), any(), eq(13L), any(), any());
+
+        CompletableFuture<Boolean> before = submit(Kind.DEBIT, "CHK-ISOLATE", 100, null);
+        CompletableFuture<Boolean> failing = submit(Kind.DEBIT, "CHK-ISOLATE", 13, null);
+        CompletableFuture<Boolean> after = submit(Kind.CREDIT, "CHK-ISOLATE", 50, null);
+
+        assertThat(before.join()).isTrue();
+        assertThat(after.join()).isTrue();
+        assertThatThrownBy(failing::join)
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(balance("CHK-ISOLATE")).isEqualTo(950);
+    }
+
+    @Test
+    void reusedKeyFailsOnlyTheMutationThatReusedIt() {
+        open("CHK-KEYS", 1000);
+
+        CompletableFuture<Boolean> first = submit(Kind.DEBIT, "CHK-KEYS", 100, "key-1");
+        CompletableFuture<Boolean> replayed = submit(Kind.DEBIT, "CHK-KEYS", 100, "key-1");
+        CompletableFuture<Boolean> reused = submit(Kind.DEBIT, "CHK-KEYS", 200, "key-1");
+        CompletableFuture<Boolean> other = submit(Kind.CREDIT, "CHK-KEYS", 10, "key-2");
+
+        assertThat(first.join()).isTrue();
+        // Answered from the record of the first, not applied again
+        assertThat(replayed.join()).isTrue();
+        assertThatThrownBy(reused::join).hasCauseInstanceOf(IdempotencyConflictException.class);
+        assertThat(other.join()).isTrue();
+        assertThat(balance("CHK-KEYS")).isEqualTo(910);
+    }
+
+    private void open(String accountNumber, long balanceMinor) {
+        checkingAccountService.createAccount(new AccountRequest(accountNumber, "CUST-" + accountNumber,
+                BigDecimal.valueOf(balanceMinor, 2)));
+    }
+
+    private CompletableFuture<Boolean> submit(Kind kind, String accountNumber, long amountMinor, String key) {
+        return mutationCoalescer.submit(kind, kind == Kind.CREDIT ? "deposit" : "withdraw",
+                new TransactionRequest(accountNumber, amountMinor, "USD"), key);
+    }
+
+    private long balance(String accountNumber) {
+        return checkingAccountRepository.findByAccountNumber(accountNumber).orElseThrow().getBalanceMinor();
+    }
+}
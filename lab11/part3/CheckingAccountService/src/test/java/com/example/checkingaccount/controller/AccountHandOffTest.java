@@ -0,0 +1,123 @@
+package com.example.checkingaccount.controller;
+
+import com.example.checkingaccount.CheckingAccountServiceApplication;
+import com.example.checkingaccount.dto.AccountRequest;
+import com.example.checkingaccount.dto.TransactionRequest;
+import com.example.checkingaccount.idempotency.IdempotencyService;
+import com.example.checkingaccount.model.IdempotencyRecord;
+import com.example.checkingaccount.repository.CheckingAccountRepository;
+import com.example.checkingaccount.service.CheckingAccountService;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Moving accounts from one shard to another, each its own application context with its own database: a keyed
+ * mutation retried on the new shard is answered from the record that moved with the account, and a hand-off or
+ * adoption repeated under its key is answered as the first time.
+ */
+class AccountHandOffTest {
+
+    private static ConfigurableApplicationContext oldShard;
+    private static ConfigurableApplicationContext newShard;
+
+    @BeforeAll
+    static void startShards() {
+        oldShard = start("old-shard");
+        newShard = start("new-shard");
+    }
+
+    @AfterAll
+    static void stopShards() {
+        oldShard.close();
+        newShard.close();
+    }
+
+    @Test
+    void keyedWithdrawalRetriedAfterTheMoveIsNotAppliedAgain() throws Exception {
+        service(oldShard).createAccount(new AccountRequest("CHK-MOVE", "CUST-MOVE", BigDecimal.valueOf(1000, 2)));
+        TransactionRequest withdrawal = new TransactionRequest("CHK-MOVE", 300, "USD");
+        assertThat(withdraw(oldShard, "transfer-1:withdraw", withdrawal)).isTrue();
+
+        List<AccountRequest> handedOff = move("move-1", List.of("CHK-MOVE"));
+
+        assertThat(handedOff).hasSize(1);
+        assertThat(handedOff.get(0).getIdempotencyRecords()).extracting(IdempotencyRecord::getIdempotencyKey)
+                .containsExactly("transfer-1:withdraw");
+        assertThat(newShard.getBean(CheckingAccountRepository.class).findByAccountNumber("CHK-MOVE"))
+                .hasValueSatisfying(account -> assertThat(account.getBalanceMinor()).isEqualTo(700));
+
+        // The answer to the first attempt was lost; the retry follows the account to its new shard
+        assertThat(withdraw(newShard, "transfer-1:withdraw", withdrawal)).isTrue();
+        assertThat(newShard.getBean(CheckingAccountRepository.class).findByAccountNumber("CHK-MOVE"))
+                .hasValueSatisfying(account -> assertThat(account.getBalanceMinor()).isEqualTo(700));
+
+        // A new key is a new withdrawal
+        assertThat(withdraw(newShard, "transfer-2:withdraw", withdrawal)).isTrue();
+        assertThat(newShard.getBean(CheckingAccountRepository.class).findByAccountNumber("CHK-MOVE"))
+                .hasValueSatisfying(account -> assertThat(account.getBalanceMinor()).isEqualTo(400));
+    }
+
+    @Test
+    void handOffAndAdoptionRepeatedUnderTheirKeysAnswerAsTheFirstTime() throws Exception {
+        service(oldShard).createAccount(new AccountRequest("CHK-REPEAT", "CUST-REPEAT", BigDecimal.valueOf(500, 2)));
+        move("move-2", List.of("CHK-REPEAT"));
+
+        // The mover lost both answers and starts over
+        List<AccountRequest> handedOff = handOff("move-2", List.of("CHK-REPEAT"));
+        assertThat(handedOff).extracting(AccountRequest::getAccountNumber).containsExactly("CHK-REPEAT");
+        assertThat(handedOff.get(0).getInitialBalance()).isEqualByComparingTo("5.00");
+        assertThat(adopt("move-2", handedOff)).containsExactly("CHK-REPEAT");
+
+        // Without a key, the second hand-off finds nothing left to give up
+        assertThat(handOff(null, List.of("CHK-REPEAT"))).isEmpty();
+    }
+
+    // Hand off on the old shard and adopt on the new one, through JSON as between the services
+    private static List<AccountRequest> move(String moveId, List<String> accountNumbers) throws Exception {
+        List<AccountRequest> handedOff = handOff(moveId, accountNumbers);
+        assertThat(adopt(moveId, handedOff)).containsExactlyElementsOf(accountNumbers);
+        return handedOff;
+    }
+
+    private static List<AccountRequest> handOff(String moveId, List<String> accountNumbers) throws Exception {
+        ObjectMapper objectMapper = oldShard.getBean(ObjectMapper.class);
+        Object body = oldShard.getBean(CheckingAccountController.class)
+                .handOff(accountNumbers, moveId != null ? moveId + ":handoff" : null).getBody();
+        return objectMapper.readValue(objectMapper.writeValueAsString(body),
+                new TypeReference<List<AccountRequest>>() { });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> adopt(String moveId, List<AccountRequest> accounts) {
+        return (List<String>) newShard.getBean(CheckingAccountController.class)
+                .adopt(accounts, moveId + ":adopt").getBody();
+    }
+
+    private static boolean withdraw(ConfigurableApplicationContext shard, String key, TransactionRequest request) {
+        return shard.getBean(IdempotencyService.class).execute(key, "transfer-from", request,
+                () -> service(shard).transferFrom(request.getAccountNumber(), request.getAmountMinor(),
+                        request.getCurrency()));
+    }
+
+    private static CheckingAccountService service(ConfigurableApplicationContext shard) {
+        return shard.getBean(CheckingAccountService.class);
+    }
+
+    private static ConfigurableApplicationContext start(String name) {
+        return new SpringApplicationBuilder(CheckingAccountServiceApplication.class).run(
+                "--spring.datasource.url=jdbc:h2:mem:" + name,
+                "--server.port=0",
+                "--eureka.client.enabled=false",
+                "--spring.jmx.enabled=false");
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.checkingaccount.hold;
+
+import com.example.checkingaccount.dto.AccountRequest;
+import com.example.checkingaccount.dto.TransactionRequest;
+import com.example.checkingaccount.model.FundHold;
+import com.example.checkingaccount.model.HoldStatus;
+import com.example.checkingaccount.repository.CheckingAccountRepository;
+import com.example.checkingaccount.service.CheckingAccountService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Confirm, release and expiry of the same hold racing each other: whichever order they run in, the hold ends in
+ * one state and the account is debited exactly when that state is confirmed.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:hold-race-test",
+        "eureka.client.enabled=false",
+        // Expiry is driven by the test
+        "account.holds.sweep-interval-ms=3600000"
+})
+class FundHoldRaceTest {
+
+    private static final int ROUNDS = 20;
+    private static final long BALANCE = 1000;
+    private static final long HELD = 300;
+
+    @Autowired
+    private CheckingAccountService checkingAccountService;
+
+    @Autowired
+    private CheckingAccountRepository checkingAccountRepository;
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void startThreads() {
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @AfterEach
+    void stopThreads() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void confirmReleaseAndExpirySettleAHoldOnce() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            String accountNumber = "CHK-RACE-" + round;
+            String holdId = "hold-race-" + round;
+            checkingAccountService.createAccount(new AccountRequest(accountNumber, "CUST-RACE",
+                    BigDecimal.valueOf(BALANCE, 2)));
+            FundHold placed = checkingAccountService.placeHold(holdId,
+                    new TransactionRequest(accountNumber, HELD, "USD"), System.currentTimeMillis() + 20);
+            assertThat(placed).isNotNull();
+            assertThat(balance(accountNumber)).isEqualTo(BALANCE - HELD);
+            // Past its expiry, so the sweep competes with the other two
+            Thread.sleep(30);
+
+            CountDownLatch start = new CountDownLatch(1);
+            Future<Boolean> confirmed = race(start, () -> checkingAccountService.confirmHold(holdId).isPresent());
+            Future<Boolean> released = race(start, () -> checkingAccountService.releaseHold(holdId).isPresent());
+            Future<Boolean> swept = race(start,
+                    () -> checkingAccountService.expireHolds(System.currentTimeMillis(), 100) > 0);
+            start.countDown();
+            boolean confirmSucceeded = settled(confirmed);
+            settled(released);
+            settled(swept);
+
+            HoldStatus status = checkingAccountService.getHold(holdId).orElseThrow().getStatus();
+            assertThat(status).as("round %d", round).isNotEqualTo(HoldStatus.HELD);
+            assertThat(confirmSucceeded).as("round %d", round).isEqualTo(status == HoldStatus.CONFIRMED);
+            assertThat(balance(accountNumber)).as("round %d, %s", round, status)
+                    .isEqualTo(status == HoldStatus.CONFIRMED ? BALANCE - HELD : BALANCE);
+        }
+    }
+
+    private Future<Boolean> race(CountDownLatch start, Callable<Boolean> call) {
+        return executor.submit(() -> {
+            start.await();
+            return call.call();
+        });
+    }
+
+    // Whether the call went through; losing the race with a conflict is an expected outcome, anything else is not
+    private static boolean settled(Future<Boolean> call) throws InterruptedException {
+        try {
+            return call.get(10, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(HoldConflictException.class);
+            return false;
+        } catch (TimeoutException e) {
+            throw new AssertionError("Hold operation did not finish", e);
+        }
+    }
+
+    private long balance(String accountNumber) {
+        return checkingAccountRepository.findByAccountNumber(accountNumber).orElseThrow().getBalanceMinor();
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.checkingaccount.ledger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JournalTest {
+
+    // Header plus payload of a CREDIT or DEBIT record on a six-character account number
+    private static final int RECORD_SIZE = 8 + 8 + 1 + 8 + 2 + 6 + 2 + 2 + 8;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysRecordsAcrossSegmentsInSequenceOrder() throws IOException {
+        // Room for a few records per segment
+        Journal journal = new Journal(directory, 4 * RECORD_SIZE, false);
+        journal.replay(0, record -> { });
+        journal.append(Journal.OPEN, "CHK001", "CUST001", "USD", 1000, 1L);
+        for (int i = 1; i <= 20; i++) {
+            journal.append(i % 2 == 0 ? Journal.CREDIT : Journal.DEBIT, "CHK001", null, null, i, 1L + i);
+        }
+        journal.close();
+        assertThat(segmentCount()).isGreaterThan(1);
+
+        Journal reopened = new Journal(directory, 4 * RECORD_SIZE, false);
+        List<Journal.Record> replayed = replay(reopened, 0);
+        reopened.close();
+
+        assertThat(replayed).hasSize(21);
+        for (int i = 0; i < replayed.size(); i++) {
+            assertThat(replayed.get(i).sequence).isEqualTo(i + 1);
+        }
+        Journal.Record opening = replayed.get(0);
+        assertThat(opening.type).isEqualTo(Journal.OPEN);
+        assertThat(opening.customerId).isEqualTo("CUST001");
+        assertThat(opening.currency).isEqualTo("USD");
+        assertThat(opening.amountMinor).isEqualTo(1000);
+        Journal.Record last = replayed.get(20);
+        assertThat(last.type).isEqualTo(Journal.CREDIT);
+        assertThat(last.accountNumber).isEqualTo("CHK001");
+        assertThat(last.customerId).isNull();
+        assertThat(last.amountMinor).isEqualTo(20);
+        assertThat(last.timestamp).isEqualTo(21);
+    }
+
+    @Test
+    void replaysOnlyRecordsAfterTheSnapshotAndContinuesTheSequence() {
+        Journal journal = new Journal(directory, 4 * RECORD_SIZE, false);
+        journal.replay(0, record -> { });
+        for (int i = 1; i <= 10; i++) {
+            journal.append(Journal.CREDIT, "CHK001", null, null, i, i);
+        }
+        journal.close();
+
+        Journal reopened = new Journal(directory, 4 * RECORD_SIZE, false);
+        List<Journal.Record> replayed = replay(reopened, 7);
+
+        assertThat(replayed).extracting(record -> record.sequence).containsExactly(8L, 9L, 10L);
+        assertThat(reopened.append(Journal.CREDIT, "CHK001", null, null, 11, 11)).isEqualTo(11);
+        reopened.close();
+    }
+
+    @Test
+    void stopsAtATornRecord() throws IOException {
+        Journal journal = new Journal(directory, 1024, false);
+        journal.replay(0, record -> { });
+        for (int i = 1; i <= 3; i++) {
+            journal.append(Journal.CREDIT, "CHK001", null, null, i, i);
+        }
+        journal.close();
+        // Damage the payload of the third record, as a crash half way through writing it would
+        try (RandomAccessFile segment = new RandomAccessFile(segments().get(0).toFile(), "rw")) {
+            segment.seek(2 * RECORD_SIZE + 20);
+            segment.write(0x7f);
+        }
+
+        Journal reopened = new Journal(directory, 1024, false);
+        List<Journal.Record> replayed = replay(reopened, 0);
+        reopened.close();
+
+        assertThat(replayed).extracting(record -> record.amountMinor).containsExactly(1L, 2L);
+    }
+
+    private static List<Journal.Record> replay(Journal journal, long afterSequence) {
+        List<Journal.Record> records = new ArrayList<>();
+        journal.replay(afterSequence, records::add);
+        return records;
+    }
+
+    private long segmentCount() throws IOException {
+        return segments().size();
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> p.getFileName().toString().startsWith("journal-")).sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+}
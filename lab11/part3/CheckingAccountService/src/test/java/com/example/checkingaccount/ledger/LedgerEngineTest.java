@@ -0,0 +1,211 @@
+package com.example.checkingaccount.ledger;
+
+import com.example.checkingaccount.dto.AccountRequest;
+import com.example.checkingaccount.repository.CheckingAccountRepository;
+import com.example.checkingaccount.service.CheckingAccountService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Mutations racing on accounts that share a stripe, the undo of a mutation whose transaction rolls back, also
+ * once another request has tried to spend it, and the eviction of idle accounts.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:ledger-engine-test",
+        "eureka.client.enabled=false",
+        "account.ledger.enabled=true",
+        // Few stripes, so the accounts below share them
+        "account.ledger.stripes=2",
+        "account.ledger.fsync=false"
+})
+class LedgerEngineTest {
+
+    private static final long BALANCE = 1000;
+
+    @Autowired
+    private LedgerEngine ledgerEngine;
+
+    @Autowired
+    private CheckingAccountService checkingAccountService;
+
+    @Autowired
+    private CheckingAccountRepository checkingAccountRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // A fresh balance log per run; one left over from an earlier run would be recovered into the new database
+    @DynamicPropertySource
+    static void ledgerDirectory(DynamicPropertyRegistry registry) throws IOException {
+        String directory = Files.createTempDirectory("ledger-engine-test").toString();
+        registry.add("account.ledger.log-dir", () -> directory);
+    }
+
+    @Test
+    void concurrentMutationsOnSharedStripesAreAllApplied() throws Exception {
+        int accounts = 6;
+        int threads = 8;
+        int mutations = 600;
+        for (int i = 0; i < accounts; i++) {
+            createAccount("CHK-STRIPE-" + i);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                workers.add(executor.submit(() -> {
+                    for (int m = 0; m < mutations; m++) {
+                        String accountNumber = "CHK-STRIPE-" + (m % accounts);
+                        // Two credits for every debit, so no debit is refused for lack of funds
+                        assertThat(ledgerEngine.credit(accountNumber, 2, "USD")).isTrue();
+                        assertThat(ledgerEngine.debit(accountNumber, 1, "USD")).isTrue();
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long perAccount = (long) threads * mutations / accounts;
+        for (int i = 0; i < accounts; i++) {
+            assertThat(balance("CHK-STRIPE-" + i)).as("account %d", i).isEqualTo(BALANCE + perAccount);
+        }
+    }
+
+    @Test
+    void mutationIsUndoneWhenItsTransactionRollsBack() {
+        createAccount("CHK-ROLLBACK");
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            assertThat(ledgerEngine.debit("CHK-ROLLBACK", 300, "USD")).isTrue();
+            assertThat(balance("CHK-ROLLBACK")).isEqualTo(BALANCE - 300);
+            status.setRollbackOnly();
+        });
+
+        assertThat(balance("CHK-ROLLBACK")).isEqualTo(BALANCE);
+    }
+
+    @Test
+    void mutationIsKeptWhenItsTransactionCommits() {
+        createAccount("CHK-COMMIT");
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(
+                status -> assertThat(ledgerEngine.credit("CHK-COMMIT", 250, "USD")).isTrue());
+
+        assertThat(balance("CHK-COMMIT")).isEqualTo(BALANCE + 250);
+    }
+
+    @Test
+    void uncommittedCreditCannotBeSpentSoItsUndoNeverGoesBelowZero() throws Exception {
+        createAccount("CHK-UNCOMMITTED");
+        CountDownLatch credited = new CountDownLatch(1);
+        CountDownLatch spent = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> deposit = executor.submit(() -> new TransactionTemplate(transactionManager)
+                    .executeWithoutResult(status -> {
+                        assertThat(ledgerEngine.credit("CHK-UNCOMMITTED", 500, "USD")).isTrue();
+                        credited.countDown();
+                        try {
+                            assertThat(spent.await(10, TimeUnit.SECONDS)).isTrue();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        status.setRollbackOnly();
+                    }));
+            assertThat(credited.await(10, TimeUnit.SECONDS)).isTrue();
+
+            // Another request, while the deposit has not committed
+            assertThat(balance("CHK-UNCOMMITTED")).isEqualTo(BALANCE);
+            assertThat(ledgerEngine.debit("CHK-UNCOMMITTED", BALANCE + 500, "USD")).isFalse();
+            assertThat(ledgerEngine.debit("CHK-UNCOMMITTED", BALANCE, "USD")).isTrue();
+            assertThat(balance("CHK-UNCOMMITTED")).isZero();
+            spent.countDown();
+            deposit.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(balance("CHK-UNCOMMITTED")).isZero();
+        ledgerEngine.flush();
+        assertThat(checkingAccountRepository.findByAccountNumber("CHK-UNCOMMITTED"))
+                .hasValueSatisfying(account -> assertThat(account.getBalanceMinor()).isZero());
+    }
+
+    @Test
+    void committedCreditBecomesSpendable() {
+        createAccount("CHK-SPENDABLE");
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            assertThat(ledgerEngine.credit("CHK-SPENDABLE", 500, "USD")).isTrue();
+            assertThat(ledgerEngine.debit("CHK-SPENDABLE", BALANCE + 500, "USD")).isFalse();
+        });
+
+        assertThat(ledgerEngine.debit("CHK-SPENDABLE", BALANCE + 500, "USD")).isTrue();
+        assertThat(balance("CHK-SPENDABLE")).isZero();
+    }
+
+    @Test
+    void idleFlushedAccountsAreEvictedAndLoadedAgainOnTheirNextUse() throws Exception {
+        createAccount("CHK-IDLE");
+        createAccount("CHK-IN-TRANSACTION");
+        assertThat(ledgerEngine.credit("CHK-IDLE", 100, "USD")).isTrue();
+        ledgerEngine.flush();
+        Thread.sleep(5);
+
+        ReflectionTestUtils.setField(ledgerEngine, "evictIdleMs", 0L);
+        try {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                assertThat(ledgerEngine.credit("CHK-IN-TRANSACTION", 100, "USD")).isTrue();
+                ledgerEngine.evictIdle();
+                assertThat(tracked()).doesNotContainKey("CHK-IDLE").containsKey("CHK-IN-TRANSACTION");
+            });
+        } finally {
+            ReflectionTestUtils.setField(ledgerEngine, "evictIdleMs", 600000L);
+        }
+
+        assertThat(balance("CHK-IDLE")).isEqualTo(BALANCE + 100);
+        assertThat(ledgerEngine.debit("CHK-IDLE", 50, "USD")).isTrue();
+        assertThat(balance("CHK-IDLE")).isEqualTo(BALANCE + 50);
+        assertThat(balance("CHK-IN-TRANSACTION")).isEqualTo(BALANCE + 100);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, ?> tracked() {
+        return (Map<String, ?>) ReflectionTestUtils.getField(ledgerEngine, "accounts");
+    }
+
+    private void createAccount(String accountNumber) {
+        checkingAccountService.createAccount(new AccountRequest(accountNumber, "CUST-LEDGER",
+                BigDecimal.valueOf(BALANCE, 2)));
+    }
+
+    private long balance(String accountNumber) {
+        return ledgerEngine.getAccount(accountNumber).orElseThrow().getBalanceMinor();
+    }
+}
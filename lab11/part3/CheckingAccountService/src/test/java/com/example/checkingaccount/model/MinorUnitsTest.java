@@ -0,0 +1,70 @@
+package com.example.checkingaccount.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MinorUnitsTest {
+
+    @Test
+    void convertsByTheFractionDigitsOfTheCurrency() {
+        assertThat(MinorUnits.fromDecimal(new BigDecimal("12.34"), "USD")).isEqualTo(1234);
+        assertThat(MinorUnits.fromDecimal(new BigDecimal("1234"), "JPY")).isEqualTo(1234);
+        assertThat(MinorUnits.fromDecimal(new BigDecimal("1.234"), "KWD")).isEqualTo(1234);
+    }
+
+    @Test
+    void acceptsTrailingZerosBeyondTheMinorUnit() {
+        assertThat(MinorUnits.fromDecimal(new BigDecimal("1.500"), "USD")).isEqualTo(150);
+        assertThat(MinorUnits.fromDecimal(new BigDecimal("7.0"), "JPY")).isEqualTo(7);
+    }
+
+    @Test
+    void rejectsFractionsOfTheMinorUnit() {
+        assertThatThrownBy(() -> MinorUnits.fromDecimal(new BigDecimal("0.001"), "USD"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> MinorUnits.fromDecimal(new BigDecimal("100.5"), "JPY"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsAmountsBeyondTheRangeOfALong() {
+        assertThat(MinorUnits.fromDecimal(new BigDecimal("92233720368547758.07"), "USD")).isEqualTo(Long.MAX_VALUE);
+        assertThat(MinorUnits.fromDecimal(new BigDecimal("-92233720368547758.08"), "USD")).isEqualTo(Long.MIN_VALUE);
+        assertThatThrownBy(() -> MinorUnits.fromDecimal(new BigDecimal("92233720368547758.08"), "USD"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> MinorUnits.fromDecimal(new BigDecimal("1E+30"), "USD"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void keepsTheSignOfNegativeAmounts() {
+        assertThat(MinorUnits.fromDecimal(new BigDecimal("-0.01"), "USD")).isEqualTo(-1);
+        assertThat(MinorUnits.toDecimal(-1, "USD")).isEqualTo(new BigDecimal("-0.01"));
+    }
+
+    @Test
+    void formatsWithTheScaleOfTheCurrency() {
+        assertThat(MinorUnits.toDecimal(150, "USD")).isEqualTo(new BigDecimal("1.50"));
+        assertThat(MinorUnits.toDecimal(150, "JPY")).isEqualTo(new BigDecimal("150"));
+        assertThat(MinorUnits.toDecimal(0, "KWD")).isEqualTo(new BigDecimal("0.000"));
+    }
+
+    @Test
+    void treatsCurrenciesWithoutMinorUnitsAsWholeUnits() {
+        // XAU (gold) has no default fraction digits
+        assertThat(MinorUnits.fractionDigits("XAU")).isZero();
+        assertThat(MinorUnits.fromDecimal(new BigDecimal("3"), "XAU")).isEqualTo(3);
+    }
+
+    @Test
+    void rejectsUnknownCurrencies() {
+        assertThatThrownBy(() -> MinorUnits.fromDecimal(BigDecimal.ONE, "ABC"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> MinorUnits.toDecimal(1, "usd"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
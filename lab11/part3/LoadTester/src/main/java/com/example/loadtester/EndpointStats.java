@@ -0,0 +1,76 @@
+package com.example.loadtester;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram and outcome counts for one endpoint. Latencies are recorded in microseconds from the
+ * moment a request was scheduled, not from when it was actually sent, so a stalled server shows up in
+ * the percentiles instead of silently lowering the request rate (coordinated omission).
+ */
+public class EndpointStats {
+
+    private final String name;
+    private final Histogram latencyMicros = new ConcurrentHistogram(3);
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    public EndpointStats(String name) {
+        this.name = name;
+    }
+
+    // The transfer went through
+    public void succeeded(long latencyNanos) {
+        record(latencyNanos);
+        succeeded.increment();
+    }
+
+    // The service answered but refused the transfer, e.g. insufficient funds
+    public void rejected(long latencyNanos) {
+        record(latencyNanos);
+        rejected.increment();
+    }
+
+    // Non-2xx status, timeout or connection error
+    public void failed(long latencyNanos) {
+        record(latencyNanos);
+        failed.increment();
+    }
+
+    // Not sent because max-in-flight requests were already outstanding
+    public void dropped() {
+        dropped.increment();
+    }
+
+    public long completed() {
+        return succeeded.sum() + rejected.sum() + failed.sum();
+    }
+
+    public void print(PrintStream out, double elapsedSeconds) {
+        out.printf("%-26s %8d %8d %8d %8d %9.1f %9.2f %9.2f %9.2f %9.2f%n",
+                name, succeeded.sum(), rejected.sum(), failed.sum(), dropped.sum(),
+                completed() / elapsedSeconds,
+                millis(latencyMicros.getValueAtPercentile(50)),
+                millis(latencyMicros.getValueAtPercentile(99)),
+                millis(latencyMicros.getValueAtPercentile(99.9)),
+                millis(latencyMicros.getMaxValue()));
+    }
+
+    public static void printHeader(PrintStream out) {
+        out.printf("%-26s %8s %8s %8s %8s %9s %9s %9s %9s %9s%n",
+                "endpoint", "ok", "rejected", "failed", "dropped", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+    }
+
+    private void record(long latencyNanos) {
+        latencyMicros.recordValue(Math.max(latencyNanos / 1000, 0));
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
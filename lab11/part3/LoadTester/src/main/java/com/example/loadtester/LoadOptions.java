@@ -0,0 +1,107 @@
+package com.example.loadtester;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Command-line options, given as {@code --name=value}.
+ */
+public class LoadOptions {
+
+    private String checkingUrl = "http://localhost:8082";
+    private String savingUrl = "http://localhost:8081";
+    private String transferUrl = "http://localhost:8083";
+    private int rate = 200;
+    private int durationSeconds = 30;
+    private int accounts = 100;
+    private BigDecimal initialBalance = new BigDecimal("1000.00");
+    private BigDecimal maxAmount = new BigDecimal("50.00");
+    private List<String> endpoints = Arrays.asList("checking-to-saving", "saving-to-checking");
+    private int maxInFlight = 10000;
+    private int settleSeconds = 60;
+
+    public static LoadOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            int eq = arg.indexOf('=');
+            values.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+
+        LoadOptions options = new LoadOptions();
+        options.checkingUrl = values.getOrDefault("checking-url", options.checkingUrl);
+        options.savingUrl = values.getOrDefault("saving-url", options.savingUrl);
+        options.transferUrl = values.getOrDefault("transfer-url", options.transferUrl);
+        options.rate = Integer.parseInt(values.getOrDefault("rate", String.valueOf(options.rate)));
+        options.durationSeconds = Integer.parseInt(values.getOrDefault("duration", String.valueOf(options.durationSeconds)));
+        options.accounts = Integer.parseInt(values.getOrDefault("accounts", String.valueOf(options.accounts)));
+        options.initialBalance = new BigDecimal(values.getOrDefault("initial-balance", options.initialBalance.toPlainString()));
+        options.maxAmount = new BigDecimal(values.getOrDefault("max-amount", options.maxAmount.toPlainString()));
+        if (values.containsKey("endpoints")) {
+            options.endpoints = Arrays.asList(values.get("endpoints").split(","));
+        }
+        options.maxInFlight = Integer.parseInt(values.getOrDefault("max-in-flight", String.valueOf(options.maxInFlight)));
+        options.settleSeconds = Integer.parseInt(values.getOrDefault("settle", String.valueOf(options.settleSeconds)));
+
+        for (String endpoint : options.endpoints) {
+            if (!TransferEndpoint.isKnown(endpoint)) {
+                throw new IllegalArgumentException("Unknown endpoint " + endpoint + ", expected one of "
+                        + TransferEndpoint.NAMES);
+            }
+        }
+        if (options.rate <= 0 || options.durationSeconds <= 0 || options.accounts <= 0) {
+            throw new IllegalArgumentException("rate, duration and accounts must be positive");
+        }
+        return options;
+    }
+
+    // Getters
+    public String getCheckingUrl() {
+        return checkingUrl;
+    }
+
+    public String getSavingUrl() {
+        return savingUrl;
+    }
+
+    public String getTransferUrl() {
+        return transferUrl;
+    }
+
+    public int getRate() {
+        return rate;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public int getAccounts() {
+        return accounts;
+    }
+
+    public BigDecimal getInitialBalance() {
+        return initialBalance;
+    }
+
+    public BigDecimal getMaxAmount() {
+        return maxAmount;
+    }
+
+    public List<String> getEndpoints() {
+        return endpoints;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public int getSettleSeconds() {
+        return settleSeconds;
+    }
+}
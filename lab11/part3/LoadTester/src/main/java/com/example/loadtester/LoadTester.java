@@ -0,0 +1,332 @@
+package com.example.loadtester;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load generator for the transfer endpoints.
+ *
+ * Creates a fresh set of checking and saving accounts, then schedules transfers between random pairs at a fixed
+ * rate with {@code HttpClient.sendAsync}, whether or not earlier requests have completed. Latency per endpoint is
+ * recorded in HDR histograms. When the run is over and every saga has settled, the balances of all accounts are
+ * summed again and compared with the starting total: money may move between accounts but never appear or vanish.
+ *
+ * Usage: {@code java -jar target/load-tester.jar --rate=500 --duration=60 --accounts=200}
+ */
+public class LoadTester {
+
+    // Balances are summed exactly, so decimals must not go through double
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+    private static final List<String> SETTLED_STATES = List.of("COMPLETED", "COMPENSATED", "FAILED");
+    private static final int SETUP_CONCURRENCY = 64;
+
+    private final LoadOptions options;
+    private final HttpClient httpClient;
+    private final String runId = Long.toString(System.currentTimeMillis(), 36).toUpperCase();
+    private final String customerId = "LOAD-" + runId;
+    private final Map<TransferEndpoint, EndpointStats> stats = new EnumMap<>(TransferEndpoint.class);
+    private final Queue<String> pendingSagas = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong sent = new AtomicLong();
+
+    public LoadTester(LoadOptions options) {
+        this.options = options;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        for (String path : options.getEndpoints()) {
+            TransferEndpoint endpoint = TransferEndpoint.fromPath(path);
+            stats.put(endpoint, new EndpointStats(path));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadOptions options = LoadOptions.parse(args);
+        boolean conserved = new LoadTester(options).run();
+        System.exit(conserved ? 0 : 1);
+    }
+
+    public boolean run() throws Exception {
+        System.out.printf("Run %s: %d checking + %d saving accounts, %d transfers/s for %d s over %s%n",
+                runId, options.getAccounts(), options.getAccounts(), options.getRate(),
+                options.getDurationSeconds(), options.getEndpoints());
+
+        createAccounts();
+        Totals before = totals();
+        System.out.printf("Starting total: %s across %d accounts%n", before.balance, before.accounts);
+
+        long start = System.nanoTime();
+        drive(start);
+        awaitInFlight();
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        int unsettled = awaitSagas();
+
+        System.out.println();
+        EndpointStats.printHeader(System.out);
+        for (EndpointStats endpointStats : stats.values()) {
+            endpointStats.print(System.out, elapsedSeconds);
+        }
+
+        Totals after = totals();
+        boolean conserved = after.accounts == before.accounts && after.balance.compareTo(before.balance) == 0;
+        System.out.println();
+        System.out.printf("Final total:    %s across %d accounts%n", after.balance, after.accounts);
+        if (conserved) {
+            System.out.println("Money conserved");
+        } else {
+            System.out.printf("MONEY NOT CONSERVED: difference %s%n", after.balance.subtract(before.balance));
+            if (unsettled > 0) {
+                System.out.printf("%d sagas had not settled, their amounts may still be in flight%n", unsettled);
+            }
+        }
+        return conserved;
+    }
+
+    // Setup
+
+    private void createAccounts() throws InterruptedException {
+        Semaphore permits = new Semaphore(SETUP_CONCURRENCY);
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < options.getAccounts(); i++) {
+            responses.add(createAccount(permits, options.getCheckingUrl() + "/api/checking-accounts", checkingAccount(i)));
+            responses.add(createAccount(permits, options.getSavingUrl() + "/api/saving-accounts", savingAccount(i)));
+        }
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            HttpResponse<String> created = response.join();
+            if (created.statusCode() / 100 != 2) {
+                throw new IllegalStateException("Account creation failed with " + created.statusCode() + ": "
+                        + created.body());
+            }
+        }
+    }
+
+    private CompletableFuture<HttpResponse<String>> createAccount(Semaphore permits, String url, String accountNumber)
+            throws InterruptedException {
+        String json = "{\"accountNumber\":\"" + accountNumber + "\",\"customerId\":\"" + customerId
+                + "\",\"initialBalance\":" + options.getInitialBalance().toPlainString() + "}";
+        permits.acquire();
+        return httpClient.sendAsync(post(url, json), HttpResponse.BodyHandlers.ofString())
+                .whenComplete((response, error) -> permits.release());
+    }
+
+    // Load
+
+    /**
+     * Sends requests on a fixed schedule. Each request's latency is measured from its scheduled time, so when
+     * the sender falls behind the delay is charged to the requests that were held up.
+     */
+    private void drive(long start) {
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor();
+        progress.scheduleAtFixedRate(() -> System.out.printf("  sent %d, in flight %d%n", sent.get(), inFlight.get()),
+                5, 5, TimeUnit.SECONDS);
+
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / options.getRate();
+        long total = (long) options.getRate() * options.getDurationSeconds();
+        try {
+            for (long i = 0; i < total; i++) {
+                long scheduled = start + i * intervalNanos;
+                long wait = scheduled - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                sendTransfer(scheduled);
+            }
+        } finally {
+            progress.shutdownNow();
+        }
+    }
+
+    private void sendTransfer(long scheduled) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<String> endpoints = options.getEndpoints();
+        TransferEndpoint endpoint = TransferEndpoint.fromPath(endpoints.get(random.nextInt(endpoints.size())));
+        EndpointStats endpointStats = stats.get(endpoint);
+        if (inFlight.get() >= options.getMaxInFlight()) {
+            endpointStats.dropped();
+            return;
+        }
+
+        int from = random.nextInt(options.getAccounts());
+        int to = random.nextInt(options.getAccounts());
+        long maxCents = options.getMaxAmount().movePointRight(2).longValueExact();
+        BigDecimal amount = BigDecimal.valueOf(random.nextLong(1, maxCents + 1), 2);
+        String json = "{\"fromAccountNumber\":\"" + (endpoint.isFromChecking() ? checkingAccount(from) : savingAccount(from))
+                + "\",\"toAccountNumber\":\"" + (endpoint.isFromChecking() ? savingAccount(to) : checkingAccount(to))
+                + "\",\"amount\":" + amount.toPlainString() + "}";
+
+        inFlight.incrementAndGet();
+        sent.incrementAndGet();
+        httpClient.sendAsync(post(options.getTransferUrl() + "/api/transfers/" + endpoint.getPath(), json),
+                        HttpResponse.BodyHandlers.ofString())
+                .whenComplete((response, error) -> {
+                    long latency = System.nanoTime() - scheduled;
+                    try {
+                        classify(endpoint, endpointStats, response, error, latency);
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                });
+    }
+
+    private void classify(TransferEndpoint endpoint, EndpointStats endpointStats, HttpResponse<String> response,
+            Throwable error, long latency) {
+        if (error != null || response.statusCode() / 100 == 5) {
+            endpointStats.failed(latency);
+        } else if (endpoint.isSaga()) {
+            if (response.statusCode() == 202) {
+                pendingSagas.add(readTree(response.body()).path("id").asText());
+                endpointStats.succeeded(latency);
+            } else {
+                endpointStats.rejected(latency);
+            }
+        } else if (response.statusCode() / 100 == 2 && response.body().startsWith("Transfer completed")) {
+            endpointStats.succeeded(latency);
+        } else {
+            endpointStats.rejected(latency);
+        }
+    }
+
+    // Settling
+
+    private void awaitInFlight() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(options.getSettleSeconds());
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+        }
+    }
+
+    /**
+     * Polls every accepted saga until it reaches a final state, so its amount is no longer between accounts.
+     * Returns the number still running when the settle timeout ran out.
+     */
+    private int awaitSagas() throws InterruptedException {
+        List<String> pending = new ArrayList<>(pendingSagas);
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        System.out.printf("Waiting for %d sagas to settle%n", pending.size());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(options.getSettleSeconds());
+        while (!pending.isEmpty() && System.nanoTime() < deadline) {
+            Semaphore permits = new Semaphore(SETUP_CONCURRENCY);
+            List<CompletableFuture<String>> states = new ArrayList<>();
+            for (String id : pending) {
+                permits.acquire();
+                states.add(httpClient.sendAsync(get(options.getTransferUrl() + "/api/transfers/saga/" + id),
+                                HttpResponse.BodyHandlers.ofString())
+                        .thenApply(response -> readTree(response.body()).path("state").asText())
+                        .exceptionally(error -> "")
+                        .whenComplete((state, error) -> permits.release()));
+            }
+            List<String> stillPending = new ArrayList<>();
+            for (int i = 0; i < pending.size(); i++) {
+                if (!SETTLED_STATES.contains(states.get(i).join())) {
+                    stillPending.add(pending.get(i));
+                }
+            }
+            pending = stillPending;
+            if (!pending.isEmpty()) {
+                Thread.sleep(500);
+            }
+        }
+        return pending.size();
+    }
+
+    // Conservation
+
+    /**
+     * Sums the balances of this run's accounts in both services, read through the customer stream endpoints.
+     */
+    private Totals totals() throws IOException, InterruptedException {
+        Totals totals = new Totals();
+        addTotals(totals, options.getCheckingUrl() + "/api/checking-accounts/customer/" + customerId + "/stream");
+        addTotals(totals, options.getSavingUrl() + "/api/saving-accounts/customer/" + customerId + "/stream");
+        return totals;
+    }
+
+    private void addTotals(Totals totals, String url) throws IOException, InterruptedException {
+        HttpResponse<InputStream> response = httpClient.send(get(url), HttpResponse.BodyHandlers.ofInputStream());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Reading balances from " + url + " failed with " + response.statusCode());
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    totals.balance = totals.balance.add(readTree(line).path("balance").decimalValue());
+                    totals.accounts++;
+                }
+            }
+        }
+    }
+
+    private static class Totals {
+        private BigDecimal balance = BigDecimal.ZERO;
+        private int accounts;
+    }
+
+    // Helpers
+
+    private String checkingAccount(int index) {
+        return String.format("LC%s-%06d", runId, index);
+    }
+
+    private String savingAccount(int index) {
+        return String.format("LS%s-%06d", runId, index);
+    }
+
+    private static HttpRequest post(String url, String json) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    private static HttpRequest get(String url) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .timeout(Duration.ofSeconds(30))
+                .GET()
+                .build();
+    }
+
+    private static JsonNode readTree(String json) {
+        try {
+            return MAPPER.readTree(json);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unexpected response: " + json, e);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.loadtester;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * TransferClient endpoints the load can be spread over.
+ */
+public enum TransferEndpoint {
+    CHECKING_TO_SAVING("checking-to-saving", true, false),
+    SAVING_TO_CHECKING("saving-to-checking", false, false),
+    SAGA_CHECKING_TO_SAVING("saga/checking-to-saving", true, true),
+    SAGA_SAVING_TO_CHECKING("saga/saving-to-checking", false, true);
+
+    public static final List<String> NAMES = Arrays.stream(values())
+            .map(TransferEndpoint::getPath)
+            .collect(Collectors.toList());
+
+    private final String path;
+    private final boolean fromChecking;
+    private final boolean saga;
+
+    TransferEndpoint(String path, boolean fromChecking, boolean saga) {
+        this.path = path;
+        this.fromChecking = fromChecking;
+        this.saga = saga;
+    }
+
+    public static boolean isKnown(String path) {
+        return NAMES.contains(path);
+    }
+
+    public static TransferEndpoint fromPath(String path) {
+        for (TransferEndpoint endpoint : values()) {
+            if (endpoint.path.equals(path)) {
+                return endpoint;
+            }
+        }
+        throw new IllegalArgumentException("Unknown endpoint " + path);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public boolean isFromChecking() {
+        return fromChecking;
+    }
+
+    public boolean isSaga() {
+        return saga;
+    }
+}
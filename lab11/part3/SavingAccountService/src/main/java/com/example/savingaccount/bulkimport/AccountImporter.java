@@ -0,0 +1,213 @@
+package com.example.savingaccount.bulkimport;
+
+import com.example.savingaccount.dto.AccountRequest;
+import com.example.savingaccount.dto.ImportProgress;
+import com.example.savingaccount.model.SavingAccount;
+import com.example.savingaccount.model.MinorUnits;
+import com.example.savingaccount.service.SavingAccountService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Streaming bulk import of accounts. The body is parsed line by line while it arrives and handed to
+ * {@link SavingAccountService#importAccounts} in transactions of {@code account.import.batch-size} rows,
+ * so memory use does not depend on the size of the upload.
+ *
+ * CSV rows are {@code accountNumber,customerId[,initialBalance[,currency]]}, with an optional header row.
+ * NDJSON rows are {@link AccountRequest} objects. Invalid rows are counted and skipped.
+ */
+@Component
+public class AccountImporter {
+
+    private static final Logger log = LoggerFactory.getLogger(AccountImporter.class);
+
+    // Attempts per batch when account numbers are taken concurrently by single creates
+    private static final int MAX_ATTEMPTS = 3;
+
+    public enum Format {
+        CSV, NDJSON
+    }
+
+    @Autowired
+    private SavingAccountService savingAccountService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${account.import.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${account.import.max-errors:100}")
+    private int maxErrors;
+
+    @Value("${account.import.progress-interval-ms:5000}")
+    private long progressIntervalMs;
+
+    private final Map<String, ImportProgress> running = new ConcurrentHashMap<>();
+    private ObjectReader requestReader;
+    private Counter importedRows;
+    private Counter duplicateRows;
+    private Counter invalidRows;
+
+    @PostConstruct
+    public void init() {
+        requestReader = objectMapper.readerFor(AccountRequest.class);
+        importedRows = rowCounter("imported");
+        duplicateRows = rowCounter("duplicate");
+        invalidRows = rowCounter("invalid");
+    }
+
+    /**
+     * Import every row of the body. Blocks until the body has been read and the last batch committed.
+     */
+    public ImportProgress importAccounts(InputStream body, Format format) throws IOException {
+        ImportProgress progress = new ImportProgress(UUID.randomUUID().toString(), format.name());
+        running.put(progress.getImportId(), progress);
+        log.info("Import {} started ({})", progress.getImportId(), format);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            List<SavingAccount> batch = new ArrayList<>(batchSize);
+            long nextReport = System.currentTimeMillis() + progressIntervalMs;
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || (format == Format.CSV && lineNumber == 1 && isHeader(line))) {
+                    continue;
+                }
+                progress.rowRead();
+                try {
+                    batch.add(format == Format.CSV ? parseCsv(line) : parseJson(line));
+                } catch (IllegalArgumentException | IOException e) {
+                    progress.rowInvalid("line " + lineNumber + ": " + e.getMessage(), maxErrors);
+                    invalidRows.increment();
+                }
+                if (batch.size() >= batchSize) {
+                    commit(batch, progress);
+                    batch = new ArrayList<>(batchSize);
+                }
+                if (System.currentTimeMillis() >= nextReport) {
+                    report(progress);
+                    nextReport = System.currentTimeMillis() + progressIntervalMs;
+                }
+            }
+            if (!batch.isEmpty()) {
+                commit(batch, progress);
+            }
+        } finally {
+            progress.finish();
+            running.remove(progress.getImportId());
+            report(progress);
+        }
+        return progress;
+    }
+
+    /**
+     * Imports that are still reading their body.
+     */
+    public List<ImportProgress> running() {
+        return new ArrayList<>(running.values());
+    }
+
+    private void commit(List<SavingAccount> batch, ImportProgress progress) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                int inserted = savingAccountService.importAccounts(batch).size();
+                progress.batchCommitted(batch.size(), inserted);
+                importedRows.increment(inserted);
+                duplicateRows.increment(batch.size() - inserted);
+                return;
+            } catch (DataIntegrityViolationException e) {
+                if (attempt == MAX_ATTEMPTS) {
+                    throw e;
+                }
+                // A number in the batch was created after the duplicate check; the retry will skip it
+                log.debug("Import {} batch collided with a concurrent create, retrying", progress.getImportId());
+                for (SavingAccount account : batch) {
+                    account.setId(null);
+                }
+            }
+        }
+    }
+
+    private SavingAccount parseCsv(String line) {
+        String[] fields = line.split(",", -1);
+        if (fields.length < 2 || fields.length > 4) {
+            throw new IllegalArgumentException("expected 2 to 4 fields but found " + fields.length);
+        }
+        String initialBalance = fields.length > 2 ? fields[2].trim() : "";
+        String currency = fields.length > 3 ? fields[3].trim() : "";
+        try {
+            return toAccount(fields[0].trim(), fields[1].trim(),
+                    initialBalance.isEmpty() ? null : new BigDecimal(initialBalance),
+                    currency.isEmpty() ? null : currency);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("initialBalance " + initialBalance + " is not a number");
+        }
+    }
+
+    private SavingAccount parseJson(String line) throws IOException {
+        AccountRequest request = requestReader.readValue(line);
+        return toAccount(request.getAccountNumber(), request.getCustomerId(), request.getInitialBalance(),
+                request.getCurrency());
+    }
+
+    private static SavingAccount toAccount(String accountNumber, String customerId, BigDecimal initialBalance,
+            String currency) {
+        if (accountNumber == null || accountNumber.isEmpty()) {
+            throw new IllegalArgumentException("accountNumber is required");
+        }
+        if (customerId == null || customerId.isEmpty()) {
+            throw new IllegalArgumentException("customerId is required");
+        }
+        String code = currency != null ? currency : MinorUnits.DEFAULT_CURRENCY;
+        try {
+            MinorUnits.fractionDigits(code);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown currency " + code);
+        }
+        long balanceMinor = initialBalance != null ? MinorUnits.fromDecimal(initialBalance, code) : 0;
+        return new SavingAccount(accountNumber, customerId, balanceMinor, code);
+    }
+
+    private static boolean isHeader(String line) {
+        return line.trim().toLowerCase().startsWith("accountnumber");
+    }
+
+    private void report(ImportProgress progress) {
+        log.info("Import {}: {} rows read, {} imported, {} duplicates, {} invalid in {} ms ({} rows/s){}",
+                progress.getImportId(), progress.getRowsRead(), progress.getImported(), progress.getDuplicates(),
+                progress.getInvalid(), progress.getElapsedMs(), Math.round(progress.getRowsPerSecond()),
+                progress.isDone() ? ", done" : "");
+    }
+
+    private Counter rowCounter(String outcome) {
+        return Counter.builder("account.import.rows")
+                .description("Rows processed by bulk imports")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.savingaccount.cache;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Keeps the read-through account cache in line with committed changes.
+ * Entries are evicted only after the changing transaction commits, so the next read loads the
+ * committed balance. A read that started before the commit can still put the old balance back;
+ * the expireAfterWrite setting in {@code spring.cache.caffeine.spec} bounds how long it is served.
+ */
+@Component
+public class AccountCache {
+
+    public static final String NAME = "saving-accounts";
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onAccountChanged(AccountChangedEvent event) {
+        Cache cache = cacheManager.getCache(NAME);
+        if (cache != null) {
+            cache.evict(event.getAccountNumber());
+        }
+    }
+}
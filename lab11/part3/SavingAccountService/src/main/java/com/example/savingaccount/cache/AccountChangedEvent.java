@@ -0,0 +1,17 @@
+package com.example.savingaccount.cache;
+
+/**
+ * Published by the account service whenever an account is created or its balance changes.
+ */
+public class AccountChangedEvent {
+
+    private final String accountNumber;
+
+    public AccountChangedEvent(String accountNumber) {
+        this.accountNumber = accountNumber;
+    }
+
+    public String getAccountNumber() {
+        return accountNumber;
+    }
+}
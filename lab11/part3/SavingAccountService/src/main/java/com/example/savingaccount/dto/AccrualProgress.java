@@ -0,0 +1,102 @@
+package com.example.savingaccount.dto;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of one interest accrual run. Updated by the fork-join workers crediting chunks and read by anyone
+ * polling {@code GET /interest/accruals}.
+ */
+public class AccrualProgress {
+    private final LocalDate accrualDate;
+    private final LocalDateTime startedAt = LocalDateTime.now();
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong chunksDone = new AtomicLong();
+    private final AtomicLong chunksFailed = new AtomicLong();
+    private final AtomicLong accounts = new AtomicLong();
+    private volatile long chunks;
+    private volatile long chunksResumed;
+    private volatile boolean done;
+    private volatile String error;
+    private volatile long endNanos;
+
+    // Constructors
+    public AccrualProgress(LocalDate accrualDate) {
+        this.accrualDate = accrualDate;
+    }
+
+    // Chunks of the run, and how many of them an earlier attempt already committed
+    public void planned(long chunks, long chunksResumed) {
+        this.chunks = chunks;
+        this.chunksResumed = chunksResumed;
+        chunksDone.set(chunksResumed);
+    }
+
+    public void chunkCommitted(int credited) {
+        chunksDone.incrementAndGet();
+        accounts.addAndGet(credited);
+    }
+
+    // Rolled back, left for the next attempt
+    public void chunkFailed() {
+        chunksFailed.incrementAndGet();
+    }
+
+    public void fail(String error) {
+        this.error = error;
+        finish();
+    }
+
+    public void finish() {
+        endNanos = System.nanoTime();
+        done = true;
+    }
+
+    // Getters
+    public LocalDate getAccrualDate() {
+        return accrualDate;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public long getElapsedMs() {
+        return ((done ? endNanos : System.nanoTime()) - startNanos) / 1_000_000;
+    }
+
+    public long getChunks() {
+        return chunks;
+    }
+
+    public long getChunksDone() {
+        return chunksDone.get();
+    }
+
+    public long getChunksFailed() {
+        return chunksFailed.get();
+    }
+
+    public long getChunksResumed() {
+        return chunksResumed;
+    }
+
+    // Accounts credited by this attempt
+    public long getAccounts() {
+        return accounts.get();
+    }
+
+    public double getAccountsPerSecond() {
+        long elapsedMs = getElapsedMs();
+        return elapsedMs > 0 ? accounts.get() * 1000.0 / elapsedMs : 0;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+}
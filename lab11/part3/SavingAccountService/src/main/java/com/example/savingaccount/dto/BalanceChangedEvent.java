@@ -0,0 +1,88 @@
+package com.example.savingaccount.dto;
+
+import com.example.savingaccount.model.MinorUnits;
+import com.example.savingaccount.model.OutboxEvent;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.math.BigDecimal;
+
+/**
+ * A committed account balance, as published to outbox consumers. {@code eventId} is unique per event;
+ * delivery is at least once, so consumers drop ids they have already seen. {@code removed} marks the last
+ * event of an account handed off to another shard; consumers drop the account.
+ */
+public class BalanceChangedEvent {
+    private long eventId;
+    private String accountNumber;
+    private long balanceMinor;
+    private String currency;
+    private boolean removed;
+    private long timestamp;
+
+    // Constructors
+    public BalanceChangedEvent() {
+    }
+
+    public BalanceChangedEvent(OutboxEvent event) {
+        this.eventId = event.getId();
+        this.accountNumber = event.getAccountNumber();
+        this.balanceMinor = event.getBalanceMinor();
+        this.currency = event.getCurrency();
+        this.removed = event.isRemoved();
+        this.timestamp = event.getCreatedAt();
+    }
+
+    // Getters and Setters
+    public long getEventId() {
+        return eventId;
+    }
+
+    public void setEventId(long eventId) {
+        this.eventId = eventId;
+    }
+
+    public String getAccountNumber() {
+        return accountNumber;
+    }
+
+    public void setAccountNumber(String accountNumber) {
+        this.accountNumber = accountNumber;
+    }
+
+    @JsonIgnore
+    public long getBalanceMinor() {
+        return balanceMinor;
+    }
+
+    public void setBalanceMinor(long balanceMinor) {
+        this.balanceMinor = balanceMinor;
+    }
+
+    public BigDecimal getBalance() {
+        return MinorUnits.toDecimal(balanceMinor, currency);
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+
+    public boolean isRemoved() {
+        return removed;
+    }
+
+    public void setRemoved(boolean removed) {
+        this.removed = removed;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.savingaccount.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Counters of one bulk import. Updated by the importing request thread and read by anyone polling
+ * {@code GET /import}, so the counters are volatile.
+ */
+public class ImportProgress {
+    private final String importId;
+    private final String format;
+    private final LocalDateTime startedAt = LocalDateTime.now();
+    private final long startNanos = System.nanoTime();
+    private final List<String> errors = new CopyOnWriteArrayList<>();
+    private volatile long rowsRead;
+    private volatile long imported;
+    private volatile long duplicates;
+    private volatile long invalid;
+    private volatile long batches;
+    private volatile boolean done;
+    private volatile long endNanos;
+
+    // Constructors
+    public ImportProgress(String importId, String format) {
+        this.importId = importId;
+        this.format = format;
+    }
+
+    public void batchCommitted(int rows, int inserted) {
+        imported += inserted;
+        duplicates += rows - inserted;
+        batches++;
+    }
+
+    public void rowRead() {
+        rowsRead++;
+    }
+
+    // Keeps the first maxErrors messages; later invalid rows are only counted
+    public void rowInvalid(String error, int maxErrors) {
+        invalid++;
+        if (errors.size() < maxErrors) {
+            errors.add(error);
+        }
+    }
+
+    public void finish() {
+        endNanos = System.nanoTime();
+        done = true;
+    }
+
+    // Getters
+    public String getImportId() {
+        return importId;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public long getElapsedMs() {
+        return ((done ? endNanos : System.nanoTime()) - startNanos) / 1_000_000;
+    }
+
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    public long getInvalid() {
+        return invalid;
+    }
+
+    public long getBatches() {
+        return batches;
+    }
+
+    public double getRowsPerSecond() {
+        long elapsedMs = getElapsedMs();
+        return elapsedMs > 0 ? rowsRead * 1000.0 / elapsedMs : 0;
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+}
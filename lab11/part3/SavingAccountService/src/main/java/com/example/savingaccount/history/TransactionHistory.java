@@ -0,0 +1,234 @@
+package com.example.savingaccount.history;
+
+import com.example.savingaccount.model.AccountTransaction;
+import com.example.savingaccount.model.TransactionType;
+import com.example.savingaccount.repository.AccountTransactionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Transaction history: one {@link AccountTransaction} row per balance change, read back newest first.
+ *
+ * Entries recorded during a transaction are collected and inserted just before it commits, as one JDBC batch, so
+ * a rolled back transaction leaves none. With the ledger enabled the request transaction does not touch the
+ * balance rows; those entries are queued once it has committed (the ledger undoes the change if it rolls back)
+ * and, like any recorded outside a transaction, inserted by a background thread every
+ * {@code account.history.flush-interval-ms}, in batches of {@code batch-size}.
+ *
+ * Pages and streams are positioned with a {@link Cursor} on (time, id) rather than an offset, so reading far back
+ * in a long history costs the same as reading the first page.
+ */
+@Component
+@ConditionalOnProperty(name = "account.history.enabled", havingValue = "true", matchIfMissing = true)
+public class TransactionHistory {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionHistory.class);
+
+    @Autowired
+    private AccountTransactionRepository accountTransactionRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${account.ledger.enabled:false}")
+    private boolean ledgerEnabled;
+
+    @Value("${account.history.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    @Value("${account.history.batch-size:500}")
+    private int batchSize;
+
+    private final Queue<AccountTransaction> pending = new ConcurrentLinkedQueue<>();
+    private TransactionTemplate transactionTemplate;
+    private ScheduledExecutorService writer;
+
+    @PostConstruct
+    public void start() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "history-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::writeQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        writer.shutdown();
+        writer.awaitTermination(10, TimeUnit.SECONDS);
+        writeQuietly();
+    }
+
+    /**
+     * Record a balance change that was just applied.
+     */
+    public void record(String accountNumber, TransactionType type, long amountMinor, String currency,
+            String reference) {
+        AccountTransaction entry = new AccountTransaction(accountNumber, type, amountMinor, currency, reference);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            pending.add(entry);
+            return;
+        }
+        if (ledgerEnabled) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    pending.add(entry);
+                }
+            });
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        List<AccountTransaction> entries =
+                (List<AccountTransaction>) TransactionSynchronizationManager.getResource(this);
+        if (entries == null) {
+            entries = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(this, entries);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionEntries(entries));
+        }
+        entries.add(entry);
+    }
+
+    /**
+     * One page of an account's history, newest first: entries made at or after {@code from} and before
+     * {@code cursor}, at most {@code limit} of them.
+     */
+    @Transactional(readOnly = true)
+    public List<AccountTransaction> getPage(String accountNumber, long from, Cursor cursor, int limit) {
+        return accountTransactionRepository.findHistoryPage(accountNumber, from, cursor.time, cursor.id,
+                PageRequest.of(0, limit));
+    }
+
+    /**
+     * Hand the same range, without a limit, to the consumer through a database cursor. Each entity is detached
+     * once consumed, so memory use does not grow with the length of the history.
+     */
+    @Transactional(readOnly = true)
+    public void stream(String accountNumber, long from, Cursor cursor, Consumer<AccountTransaction> consumer) {
+        try (Stream<AccountTransaction> entries = accountTransactionRepository.streamHistory(accountNumber, from,
+                cursor.time, cursor.id)) {
+            entries.forEach(entry -> {
+                consumer.accept(entry);
+                entityManager.detach(entry);
+            });
+        }
+    }
+
+    private void writeQuietly() {
+        try {
+            List<AccountTransaction> batch = new ArrayList<>(batchSize);
+            do {
+                batch.clear();
+                AccountTransaction entry;
+                while (batch.size() < batchSize && (entry = pending.poll()) != null) {
+                    batch.add(entry);
+                }
+                if (!batch.isEmpty()) {
+                    write(batch);
+                }
+            } while (batch.size() == batchSize);
+        } catch (RuntimeException e) {
+            log.warn("Writing transaction history failed, will retry: {}", e.getMessage());
+        }
+    }
+
+    private void write(List<AccountTransaction> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> accountTransactionRepository.saveAll(batch));
+        } catch (RuntimeException e) {
+            // Back in the queue for the next run; the entries keep their original times
+            for (AccountTransaction entry : batch) {
+                entry.setId(null);
+                pending.add(entry);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Position in a history, newest first: only entries older than it are returned. Written as
+     * {@code <epoch millis>-<id>} of the last entry of a page.
+     */
+    public static final class Cursor {
+        private final long time;
+        private final long id;
+
+        private Cursor(long time, long id) {
+            this.time = time;
+            this.id = id;
+        }
+
+        /**
+         * Start of a range ending before {@code to} (epoch milliseconds), continued after {@code after} if given.
+         *
+         * @throws InvalidCursorException if {@code after} is not a cursor
+         */
+        public static Cursor of(String after, long to) {
+            if (after == null || after.isEmpty()) {
+                return new Cursor(to, Long.MIN_VALUE);
+            }
+            int separator = after.indexOf('-', 1);
+            if (separator < 0) {
+                throw new InvalidCursorException(after);
+            }
+            try {
+                Cursor cursor = new Cursor(Long.parseLong(after.substring(0, separator)),
+                        Long.parseLong(after.substring(separator + 1)));
+                return cursor.time < to ? cursor : new Cursor(to, Long.MIN_VALUE);
+            } catch (NumberFormatException e) {
+                throw new InvalidCursorException(after);
+            }
+        }
+
+        public static String after(AccountTransaction entry) {
+            return entry.getCreatedAtMillis() + "-" + entry.getId();
+        }
+    }
+
+    private class TransactionEntries implements TransactionSynchronization {
+        private final List<AccountTransaction> entries;
+
+        TransactionEntries(List<AccountTransaction> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            accountTransactionRepository.saveAll(entries);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(TransactionHistory.this);
+        }
+    }
+}
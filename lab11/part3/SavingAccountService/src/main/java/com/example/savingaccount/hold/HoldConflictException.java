@@ -0,0 +1,11 @@
+package com.example.savingaccount.hold;
+
+/**
+ * The hold cannot make the requested transition, or its id was already used for a different request.
+ */
+public class HoldConflictException extends RuntimeException {
+
+    public HoldConflictException(String message) {
+        super(message);
+    }
+}
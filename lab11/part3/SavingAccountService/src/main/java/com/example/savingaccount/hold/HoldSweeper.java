@@ -0,0 +1,40 @@
+package com.example.savingaccount.hold;
+
+import com.example.savingaccount.service.SavingAccountService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Returns the funds of holds that were neither confirmed nor released before they expired, so a client that
+ * crashed between hold and confirm does not leave money reserved.
+ */
+@Component
+public class HoldSweeper {
+
+    private static final Logger log = LoggerFactory.getLogger(HoldSweeper.class);
+
+    @Autowired
+    private SavingAccountService savingAccountService;
+
+    @Value("${account.holds.sweep-batch-size:500}")
+    private int batchSize;
+
+    @Scheduled(fixedDelayString = "${account.holds.sweep-interval-ms:1000}")
+    public void sweep() {
+        long now = System.currentTimeMillis();
+        int expired = 0;
+        int batch;
+        do {
+            // One transaction per batch
+            batch = savingAccountService.expireHolds(now, batchSize);
+            expired += batch;
+        } while (batch == batchSize);
+        if (expired > 0) {
+            log.info("Expired {} holds", expired);
+        }
+    }
+}
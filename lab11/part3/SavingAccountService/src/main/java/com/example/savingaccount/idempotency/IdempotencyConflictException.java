@@ -0,0 +1,11 @@
+package com.example.savingaccount.idempotency;
+
+/**
+ * Thrown when an Idempotency-Key is reused for a different operation, account or amount.
+ */
+public class IdempotencyConflictException extends RuntimeException {
+
+    public IdempotencyConflictException(String idempotencyKey) {
+        super("Idempotency-Key " + idempotencyKey + " was already used for a different request");
+    }
+}
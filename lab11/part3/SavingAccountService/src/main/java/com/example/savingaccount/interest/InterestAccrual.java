@@ -0,0 +1,337 @@
+package com.example.savingaccount.interest;
+
+import com.example.savingaccount.cache.AccountChangedEvent;
+import com.example.savingaccount.dto.AccrualProgress;
+import com.example.savingaccount.history.TransactionHistory;
+import com.example.savingaccount.model.AccrualChunk;
+import com.example.savingaccount.model.AccrualRun;
+import com.example.savingaccount.model.TransactionType;
+import com.example.savingaccount.repository.AccrualChunkRepository;
+import com.example.savingaccount.repository.AccrualRunRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Daily interest accrual. A run credits every account with a positive balance with one day of interest at
+ * {@code account.interest.annual-rate}, rounded down to the minor unit.
+ *
+ * The account ids of a run are split into chunks of {@code chunk-size} consecutive ids, which a fork-join pool of
+ * {@code parallelism} threads processes by recursively halving the id range. Each chunk is one transaction: the
+ * balances are read and locked, credited with one JDBC batch update and checkpointed with an {@link AccrualChunk} row,
+ * and the history and outbox entries are written as for any other change. A run that stops half way, whether it failed
+ * or the service went down, is resumed on startup or when started again, and skips the checkpointed chunks, so no
+ * account is credited twice for a day. A chunk that fails, e.g. on a lock timeout against live traffic, does not stop
+ * the others; the run is retried every {@code retry-interval-ms} until all its chunks are in. The pool size bounds how
+ * many connections and row locks the job holds at once, which leaves the rest of the connection pool to live traffic.
+ *
+ * Not available in ledger mode, where the balances live in the ledger rather than in the database.
+ */
+@Component
+@ConditionalOnProperty(name = "account.ledger.enabled", havingValue = "false", matchIfMissing = true)
+public class InterestAccrual {
+
+    private static final Logger log = LoggerFactory.getLogger(InterestAccrual.class);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private AccrualRunRepository accrualRunRepository;
+
+    @Autowired
+    private AccrualChunkRepository accrualChunkRepository;
+
+    // Present unless account.history.enabled=false
+    @Autowired(required = false)
+    private TransactionHistory transactionHistory;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${account.interest.annual-rate:0.02}")
+    private BigDecimal annualRate;
+
+    @Value("${account.interest.days-per-year:365}")
+    private int daysPerYear;
+
+    @Value("${account.interest.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${account.interest.parallelism:2}")
+    private int parallelism;
+
+    private final Map<LocalDate, AccrualProgress> runs = new ConcurrentHashMap<>();
+    private TransactionTemplate transactionTemplate;
+    private ForkJoinPool pool;
+    private Counter accruedAccounts;
+
+    @PostConstruct
+    public void start() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        pool = new ForkJoinPool(parallelism, p -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("interest-accrual-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+        accruedAccounts = Counter.builder("account.interest.accounts")
+                .description("Accounts credited with interest")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        // Chunks still running roll back and are redone when the run resumes
+        pool.shutdownNow();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterrupted() {
+        for (AccrualRun run : accrualRunRepository.findByCompletedAtIsNullOrderByAccrualDate()) {
+            log.info("Resuming interest accrual {}", run.getAccrualDate());
+            accrue(run.getAccrualDate());
+        }
+    }
+
+    /**
+     * Retry the runs of this instance that stopped with failed chunks, without waiting for a restart.
+     */
+    @Scheduled(initialDelayString = "${account.interest.retry-interval-ms:60000}",
+            fixedDelayString = "${account.interest.retry-interval-ms:60000}")
+    public void retryFailed() {
+        for (AccrualRun run : accrualRunRepository.findByCompletedAtIsNullOrderByAccrualDate()) {
+            AccrualProgress progress = runs.get(run.getAccrualDate());
+            if (progress != null && progress.isDone() && progress.getError() != null) {
+                log.info("Retrying interest accrual {} after: {}", run.getAccrualDate(), progress.getError());
+                accrue(run.getAccrualDate());
+            }
+        }
+    }
+
+    // Disabled unless account.interest.cron is set
+    @Scheduled(cron = "${account.interest.cron:-}")
+    public void accrueToday() {
+        accrue(LocalDate.now());
+    }
+
+    /**
+     * Start the run for {@code accrualDate} in the background, or resume it if an earlier attempt stopped.
+     *
+     * @return the progress of the run; already done if the run had completed before
+     */
+    public synchronized AccrualProgress accrue(LocalDate accrualDate) {
+        AccrualProgress current = runs.get(accrualDate);
+        if (current != null && !current.isDone()) {
+            return current;
+        }
+        AccrualProgress progress = new AccrualProgress(accrualDate);
+        runs.put(accrualDate, progress);
+        AccrualRun run = transactionTemplate.execute(status -> accrualRunRepository.findById(accrualDate)
+                .orElseGet(() -> plan(accrualDate)));
+        if (run == null || run.isCompleted()) {
+            long chunks = run != null ? chunkCount(run) : 0;
+            progress.planned(chunks, chunks);
+            progress.finish();
+            return progress;
+        }
+        pool.execute(() -> execute(run, progress));
+        return progress;
+    }
+
+    // Current and past runs since startup, newest first
+    public List<AccrualProgress> runs() {
+        List<AccrualProgress> all = new ArrayList<>(runs.values());
+        all.sort(Comparator.comparing(AccrualProgress::getAccrualDate).reversed());
+        return all;
+    }
+
+    // Fixes the id range and rate of a new run; null when there are no accounts
+    private AccrualRun plan(LocalDate accrualDate) {
+        Map<String, Object> range = jdbcTemplate.queryForMap(
+                "SELECT MIN(id) AS first_id, MAX(id) AS last_id FROM saving_accounts");
+        if (range.get("first_id") == null) {
+            return null;
+        }
+        return accrualRunRepository.save(new AccrualRun(accrualDate, annualRate, daysPerYear,
+                ((Number) range.get("first_id")).longValue(), ((Number) range.get("last_id")).longValue(),
+                chunkSize));
+    }
+
+    private void execute(AccrualRun run, AccrualProgress progress) {
+        try {
+            Set<Long> completed = new HashSet<>(accrualChunkRepository.findCompletedChunks(run.getAccrualDate()));
+            progress.planned(chunkCount(run), completed.size());
+            BigDecimal dailyRate = run.getAnnualRate().divide(BigDecimal.valueOf(run.getDaysPerYear()),
+                    MathContext.DECIMAL64);
+            new ChunkRange(run, dailyRate, completed, progress, run.getFirstAccountId(), run.getLastAccountId())
+                    .invoke();
+            if (progress.getChunksFailed() > 0) {
+                throw new IllegalStateException(progress.getChunksFailed() + " chunks failed");
+            }
+
+            transactionTemplate.executeWithoutResult(status -> accrualRunRepository.findById(run.getAccrualDate())
+                    .ifPresent(stored -> stored.setCompletedAt(LocalDateTime.now())));
+            progress.finish();
+            log.info("Interest accrual {} done: {} accounts in {} ms ({} accounts/s)", run.getAccrualDate(),
+                    progress.getAccounts(), progress.getElapsedMs(), Math.round(progress.getAccountsPerSecond()));
+        } catch (RuntimeException e) {
+            progress.fail(e.getMessage());
+            log.warn("Interest accrual {} stopped after {} of {} chunks, will be retried from there: {}",
+                    run.getAccrualDate(), progress.getChunksDone(), progress.getChunks(), e.getMessage());
+        }
+    }
+
+    /**
+     * Credit the accounts with ids {@code firstId..lastId} and checkpoint the chunk, in one transaction.
+     *
+     * @return the number of accounts credited
+     */
+    private int accrueChunk(AccrualRun run, BigDecimal dailyRate, long firstId, long lastId) {
+        Integer credited = transactionTemplate.execute(status -> {
+            List<Credit> credits = jdbcTemplate.query(
+                    // Locked until the chunk commits, so the interest is on the balance it is added to; a transfer
+                    // leg on one of the accounts waits for the chunk rather than changing the balance in between.
+                    // Locked in account-number order, as batch legs lock theirs, so neither waits on the other in turn.
+                    "SELECT id, account_number, balance_minor, currency FROM saving_accounts "
+                            + "WHERE id BETWEEN ? AND ? AND balance_minor > 0 ORDER BY account_number FOR UPDATE",
+                    (rs, rowNum) -> new Credit(rs.getLong("id"), rs.getString("account_number"),
+                            interest(rs.getLong("balance_minor"), dailyRate), rs.getString("currency")),
+                    firstId, lastId);
+            credits.removeIf(credit -> credit.interestMinor == 0);
+
+            long now = System.currentTimeMillis();
+            int[][] updated = jdbcTemplate.batchUpdate(
+                    "UPDATE saving_accounts SET balance_minor = balance_minor + ?, updated_at = ? "
+                            + "WHERE id = ? AND balance_minor <= ?",
+                    credits, credits.size(), (ps, credit) -> {
+                        ps.setLong(1, credit.interestMinor);
+                        ps.setLong(2, now);
+                        ps.setLong(3, credit.id);
+                        ps.setLong(4, Long.MAX_VALUE - credit.interestMinor);
+                    });
+
+            int count = 0;
+            int index = 0;
+            for (int[] batch : updated) {
+                for (int rows : batch) {
+                    Credit credit = credits.get(index++);
+                    if (rows == 1) {
+                        count++;
+                        if (transactionHistory != null) {
+                            transactionHistory.record(credit.accountNumber, TransactionType.INTEREST,
+                                    credit.interestMinor, credit.currency, run.getAccrualDate().toString());
+                        }
+                        eventPublisher.publishEvent(new AccountChangedEvent(credit.accountNumber));
+                    }
+                }
+            }
+            accrualChunkRepository.save(new AccrualChunk(run.getAccrualDate(), firstId, count));
+            return count;
+        });
+        return credited;
+    }
+
+    private long chunkCount(AccrualRun run) {
+        return (run.getLastAccountId() - run.getFirstAccountId()) / run.getChunkSize() + 1;
+    }
+
+    private static long interest(long balanceMinor, BigDecimal dailyRate) {
+        return BigDecimal.valueOf(balanceMinor).multiply(dailyRate).setScale(0, RoundingMode.DOWN).longValue();
+    }
+
+    /**
+     * A range of account ids starting at a chunk boundary. Split in two until it is a single chunk.
+     */
+    private class ChunkRange extends RecursiveAction {
+        private final AccrualRun run;
+        private final BigDecimal dailyRate;
+        private final Set<Long> completed;
+        private final AccrualProgress progress;
+        private final long firstId;
+        private final long lastId;
+
+        ChunkRange(AccrualRun run, BigDecimal dailyRate, Set<Long> completed, AccrualProgress progress,
+                long firstId, long lastId) {
+            this.run = run;
+            this.dailyRate = dailyRate;
+            this.completed = completed;
+            this.progress = progress;
+            this.firstId = firstId;
+            this.lastId = lastId;
+        }
+
+        @Override
+        protected void compute() {
+            long chunks = (lastId - firstId) / run.getChunkSize() + 1;
+            if (chunks > 1) {
+                long split = firstId + chunks / 2 * run.getChunkSize();
+                invokeAll(new ChunkRange(run, dailyRate, completed, progress, firstId, split - 1),
+                        new ChunkRange(run, dailyRate, completed, progress, split, lastId));
+            } else if (!completed.contains(firstId)) {
+                try {
+                    int credited = accrueChunk(run, dailyRate, firstId, lastId);
+                    progress.chunkCommitted(credited);
+                    accruedAccounts.increment(credited);
+                } catch (RuntimeException e) {
+                    // Rolled back; the other chunks go on and the retry of the run redoes this one
+                    progress.chunkFailed();
+                    log.warn("Interest accrual {}: chunk from id {} failed: {}", run.getAccrualDate(), firstId,
+                            e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static class Credit {
+        private final long id;
+        private final String accountNumber;
+        private final long interestMinor;
+        private final String currency;
+
+        Credit(long id, String accountNumber, long interestMinor, String currency) {
+            this.id = id;
+            this.accountNumber = accountNumber;
+            this.interestMinor = interestMinor;
+            this.currency = currency;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.savingaccount.ledger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of account events, written to memory-mapped segment files.
+ * Each record is framed as {@code [length][crc32][payload]}; a zero length marks the end
+ * of the written part of a segment and a checksum mismatch marks a torn write. Segments
+ * are named after the sequence number of their first record and are never rewritten,
+ * so together they form the full history of every account.
+ */
+class Journal {
+
+    static final byte OPEN = 1;
+    static final byte CREDIT = 2;
+    static final byte DEBIT = 3;
+
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".seg";
+    private static final int HEADER_SIZE = 8;
+    private static final byte[] EMPTY = new byte[0];
+
+    /**
+     * One decoded journal record. {@code customerId} and {@code currency} are only set for
+     * {@link #OPEN}; the amount is the opening balance for {@link #OPEN} and the delta otherwise,
+     * both in minor units.
+     */
+    static class Record {
+        final long sequence;
+        final byte type;
+        final long timestamp;
+        final String accountNumber;
+        final String customerId;
+        final String currency;
+        final long amountMinor;
+
+        Record(long sequence, byte type, long timestamp, String accountNumber, String customerId, String currency,
+                long amountMinor) {
+            this.sequence = sequence;
+            this.type = type;
+            this.timestamp = timestamp;
+            this.accountNumber = accountNumber;
+            this.customerId = customerId;
+            this.currency = currency;
+            this.amountMinor = amountMinor;
+        }
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean fsync;
+    private final CRC32 crc = new CRC32();
+    private long lastSequence;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+
+    Journal(Path directory, int segmentSize, boolean fsync) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.fsync = fsync;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create journal directory " + directory, e);
+        }
+    }
+
+    /**
+     * Replay every record after the given sequence number and start a fresh segment for new records.
+     * Segments that end at or before {@code afterSequence} are skipped without being read.
+     */
+    synchronized void replay(long afterSequence, Consumer<Record> consumer) {
+        lastSequence = afterSequence;
+        List<Path> segments = segments();
+        for (int i = 0; i < segments.size(); i++) {
+            if (i + 1 < segments.size() && firstSequenceOf(segments.get(i + 1)) <= afterSequence + 1) {
+                continue;
+            }
+            try (FileChannel in = FileChannel.open(segments.get(i), StandardOpenOption.READ)) {
+                ByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+                Record record;
+                while ((record = read(buffer)) != null) {
+                    if (record.sequence > afterSequence) {
+                        consumer.accept(record);
+                    }
+                    lastSequence = Math.max(lastSequence, record.sequence);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read journal segment " + segments.get(i), e);
+            }
+        }
+        open();
+    }
+
+    /**
+     * Append a record and return its sequence number.
+     */
+    synchronized long append(byte type, String accountNumber, String customerId, String currency, long amountMinor,
+            long timestamp) {
+        byte[] account = accountNumber.getBytes(StandardCharsets.UTF_8);
+        byte[] customer = customerId != null ? customerId.getBytes(StandardCharsets.UTF_8) : EMPTY;
+        byte[] code = currency != null ? currency.getBytes(StandardCharsets.UTF_8) : EMPTY;
+        int payloadSize = 8 + 1 + 8 + 2 + account.length + 2 + customer.length + 2 + code.length + 8;
+        if (HEADER_SIZE + payloadSize > segment.remaining()) {
+            open();
+        }
+
+        long sequence = lastSequence + 1;
+        int start = segment.position();
+        segment.position(start + HEADER_SIZE);
+        segment.putLong(sequence).put(type).putLong(timestamp);
+        segment.putShort((short) account.length).put(account);
+        segment.putShort((short) customer.length).put(customer);
+        segment.putShort((short) code.length).put(code);
+        segment.putLong(amountMinor);
+
+        ByteBuffer payload = segment.duplicate();
+        payload.position(start + HEADER_SIZE).limit(start + HEADER_SIZE + payloadSize);
+        crc.reset();
+        crc.update(payload);
+        segment.putInt(start, payloadSize).putInt(start + 4, (int) crc.getValue());
+        if (fsync) {
+            segment.force();
+        }
+        lastSequence = sequence;
+        return sequence;
+    }
+
+    synchronized long lastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Delete segments whose records all have a sequence number at or below the given one.
+     */
+    synchronized void deleteThrough(long sequence) {
+        List<Path> segments = segments();
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            if (firstSequenceOf(segments.get(i + 1)) <= sequence + 1) {
+                try {
+                    Files.deleteIfExists(segments.get(i));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot delete journal segment " + segments.get(i), e);
+                }
+            }
+        }
+    }
+
+    synchronized void close() {
+        if (channel != null) {
+            segment.force();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot close journal segment", e);
+            }
+            channel = null;
+            segment = null;
+        }
+    }
+
+    private void open() {
+        close();
+        // A segment named after the next sequence number can only be left over empty or torn by a previous run
+        Path path = directory.resolve(String.format("%s%020d%s", PREFIX, lastSequence + 1, SUFFIX));
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open journal segment " + path, e);
+        }
+    }
+
+    private Record read(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE) {
+            return null;
+        }
+        int start = buffer.position();
+        int payloadSize = buffer.getInt(start);
+        if (payloadSize <= 0 || payloadSize > buffer.remaining() - HEADER_SIZE) {
+            return null;
+        }
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(start + HEADER_SIZE).limit(start + HEADER_SIZE + payloadSize);
+        crc.reset();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != buffer.getInt(start + 4)) {
+            return null; // torn write at the end of a segment
+        }
+        try {
+            long sequence = payload.getLong();
+            byte type = payload.get();
+            long timestamp = payload.getLong();
+            String accountNumber = readString(payload);
+            String customerId = readString(payload);
+            String currency = readString(payload);
+            long amountMinor = payload.getLong();
+            buffer.position(start + HEADER_SIZE + payloadSize);
+            return new Record(sequence, type, timestamp, accountNumber, customerId.isEmpty() ? null : customerId,
+                    currency.isEmpty() ? null : currency, amountMinor);
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private List<Path> segments() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> p.getFileName().toString().startsWith(PREFIX))
+                    .filter(p -> p.getFileName().toString().endsWith(SUFFIX))
+                    .sorted((a, b) -> Long.compare(firstSequenceOf(a), firstSequenceOf(b)))
+                    .collect(Collectors.toCollection(ArrayList::new));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot list journal segments in " + directory, e);
+        }
+    }
+
+    private static long firstSequenceOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.savingaccount.ledger;
+
+import com.example.savingaccount.model.SavingAccount;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Point-in-time copies of every account, tagged with the last journal sequence number they include.
+ * Restart loads the newest readable snapshot and replays only the journal records after it.
+ */
+class JournalSnapshots {
+
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".snap";
+    private static final int MAGIC = 0x4a534e32;
+
+    /**
+     * Accounts restored from a snapshot, keyed by account number.
+     */
+    static class Snapshot {
+        final long sequence;
+        final Map<String, SavingAccount> accounts;
+
+        Snapshot(long sequence, Map<String, SavingAccount> accounts) {
+            this.sequence = sequence;
+            this.accounts = accounts;
+        }
+    }
+
+    private final Path directory;
+
+    JournalSnapshots(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Load the newest snapshot that can be read completely, or an empty one at sequence 0.
+     */
+    Snapshot loadLatest() {
+        List<Path> snapshots = snapshots();
+        Collections.reverse(snapshots);
+        for (Path path : snapshots) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                return read(in);
+            } catch (IOException | RuntimeException e) {
+                // Fall back to the previous snapshot; the journal still holds everything after it
+            }
+        }
+        return new Snapshot(0, new LinkedHashMap<>());
+    }
+
+    /**
+     * Write a snapshot and delete the older ones. The file only appears under its final name
+     * once it has been written and synced completely.
+     */
+    void write(long sequence, Collection<SavingAccount> accounts) {
+        Path target = directory.resolve(String.format("%s%020d%s", PREFIX, sequence, SUFFIX));
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            out.writeInt(MAGIC);
+            out.writeLong(sequence);
+            out.writeInt(accounts.size());
+            for (SavingAccount account : accounts) {
+                out.writeUTF(account.getAccountNumber());
+                out.writeUTF(account.getCustomerId());
+                out.writeUTF(account.getCurrency());
+                out.writeLong(account.getBalanceMinor());
+                out.writeUTF(account.getCreatedAt().toString());
+                out.writeLong(account.getUpdatedAtMillis());
+            }
+            out.flush();
+            file.getFD().sync();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write journal snapshot " + target, e);
+        }
+
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            for (Path path : snapshots()) {
+                if (!path.equals(target)) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot install journal snapshot " + target, e);
+        }
+    }
+
+    private static Snapshot read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a journal snapshot");
+        }
+        long sequence = in.readLong();
+        int count = in.readInt();
+        Map<String, SavingAccount> accounts = new LinkedHashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            String accountNumber = in.readUTF();
+            String customerId = in.readUTF();
+            String currency = in.readUTF();
+            SavingAccount account = new SavingAccount(accountNumber, customerId, in.readLong(), currency);
+            account.setCreatedAt(LocalDateTime.parse(in.readUTF()));
+            account.setUpdatedAtMillis(in.readLong());
+            accounts.put(account.getAccountNumber(), account);
+        }
+        return new Snapshot(sequence, accounts);
+    }
+
+    private List<Path> snapshots() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> p.getFileName().toString().startsWith(PREFIX))
+                    .filter(p -> p.getFileName().toString().endsWith(SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toCollection(ArrayList::new));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot list journal snapshots in " + directory, e);
+        }
+    }
+}
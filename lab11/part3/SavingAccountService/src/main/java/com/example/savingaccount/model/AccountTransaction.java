@@ -0,0 +1,133 @@
+package com.example.savingaccount.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * One change of an account balance, kept as its transaction history. Written in the transaction that changed the
+ * balance; never updated.
+ */
+@Entity
+@Table(name = "account_transactions", indexes = {
+        // Serves the history: equality on account_number, newest-first range and order on created_at, id
+        @Index(name = "idx_account_transactions_account_time", columnList = "account_number, created_at DESC, id DESC")
+})
+public class AccountTransaction {
+
+    // Pooled sequence, so the inserts of one transaction or flush are batched
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "account_transactions_seq")
+    @SequenceGenerator(name = "account_transactions_seq", sequenceName = "account_transactions_seq",
+            allocationSize = 100)
+    private Long id;
+
+    @Column(name = "account_number", nullable = false)
+    private String accountNumber;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", nullable = false, length = 16)
+    private TransactionType type;
+
+    // Always positive; the type tells whether it was credited or debited
+    @Column(name = "amount_minor", nullable = false)
+    private long amountMinor;
+
+    @Column(name = "currency", nullable = false, length = 3)
+    private String currency;
+
+    // Hold id for hold entries
+    @Column(name = "reference", length = 128)
+    private String reference;
+
+    // Epoch milliseconds
+    @Column(name = "created_at", nullable = false)
+    private long createdAt;
+
+    // Constructors
+    public AccountTransaction() {
+        this.createdAt = System.currentTimeMillis();
+    }
+
+    public AccountTransaction(String accountNumber, TransactionType type, long amountMinor, String currency,
+            String reference) {
+        this();
+        this.accountNumber = accountNumber;
+        this.type = type;
+        this.amountMinor = amountMinor;
+        this.currency = currency;
+        this.reference = reference;
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getAccountNumber() {
+        return accountNumber;
+    }
+
+    public void setAccountNumber(String accountNumber) {
+        this.accountNumber = accountNumber;
+    }
+
+    public TransactionType getType() {
+        return type;
+    }
+
+    public void setType(TransactionType type) {
+        this.type = type;
+    }
+
+    @JsonIgnore
+    public long getAmountMinor() {
+        return amountMinor;
+    }
+
+    public void setAmountMinor(long amountMinor) {
+        this.amountMinor = amountMinor;
+    }
+
+    // Signed: negative for debits
+    public BigDecimal getAmount() {
+        return MinorUnits.toDecimal(type.isCredit() ? amountMinor : -amountMinor, currency);
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+
+    public String getReference() {
+        return reference;
+    }
+
+    public void setReference(String reference) {
+        this.reference = reference;
+    }
+
+    @JsonIgnore
+    public long getCreatedAtMillis() {
+        return createdAt;
+    }
+
+    public void setCreatedAtMillis(long createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(createdAt), ZoneId.systemDefault());
+    }
+}
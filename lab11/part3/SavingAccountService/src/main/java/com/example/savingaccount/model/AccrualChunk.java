@@ -0,0 +1,85 @@
+package com.example.savingaccount.model;
+
+import javax.persistence.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Checkpoint of an accrual run: the chunk of account ids starting at {@code firstAccountId} has been credited.
+ * Written in the transaction that credits the chunk, so a chunk is either credited and checkpointed or neither.
+ */
+@Entity
+@Table(name = "accrual_chunks", uniqueConstraints = @UniqueConstraint(name = "uk_accrual_chunks_run_first",
+        columnNames = {"accrual_date", "first_account_id"}))
+public class AccrualChunk {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "accrual_chunks_seq")
+    @SequenceGenerator(name = "accrual_chunks_seq", sequenceName = "accrual_chunks_seq", allocationSize = 100)
+    private Long id;
+
+    @Column(name = "accrual_date", nullable = false)
+    private LocalDate accrualDate;
+
+    @Column(name = "first_account_id", nullable = false)
+    private long firstAccountId;
+
+    // Accounts credited by the chunk
+    @Column(name = "accounts", nullable = false)
+    private int accounts;
+
+    @Column(name = "completed_at", nullable = false)
+    private LocalDateTime completedAt;
+
+    // Constructors
+    public AccrualChunk() {
+    }
+
+    public AccrualChunk(LocalDate accrualDate, long firstAccountId, int accounts) {
+        this.accrualDate = accrualDate;
+        this.firstAccountId = firstAccountId;
+        this.accounts = accounts;
+        this.completedAt = LocalDateTime.now();
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public LocalDate getAccrualDate() {
+        return accrualDate;
+    }
+
+    public void setAccrualDate(LocalDate accrualDate) {
+        this.accrualDate = accrualDate;
+    }
+
+    public long getFirstAccountId() {
+        return firstAccountId;
+    }
+
+    public void setFirstAccountId(long firstAccountId) {
+        this.firstAccountId = firstAccountId;
+    }
+
+    public int getAccounts() {
+        return accounts;
+    }
+
+    public void setAccounts(int accounts) {
+        this.accounts = accounts;
+    }
+
+    public LocalDateTime getCompletedAt() {
+        return completedAt;
+    }
+
+    public void setCompletedAt(LocalDateTime completedAt) {
+        this.completedAt = completedAt;
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.savingaccount.model;
+
+import org.springframework.data.domain.Persistable;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * One interest accrual, for one day. The id range and rate are fixed when it starts, so a resumed run works on
+ * the same chunks with the same rate; accounts opened later are left to the next day's run.
+ */
+@Entity
+@Table(name = "accrual_runs")
+public class AccrualRun implements Persistable<LocalDate> {
+
+    @Id
+    @Column(name = "accrual_date")
+    private LocalDate accrualDate;
+
+    @Column(name = "annual_rate", nullable = false, precision = 9, scale = 6)
+    private BigDecimal annualRate;
+
+    @Column(name = "days_per_year", nullable = false)
+    private int daysPerYear;
+
+    // Account ids covered by the run, inclusive
+    @Column(name = "first_account_id", nullable = false)
+    private long firstAccountId;
+
+    @Column(name = "last_account_id", nullable = false)
+    private long lastAccountId;
+
+    @Column(name = "chunk_size", nullable = false)
+    private int chunkSize;
+
+    @Column(name = "started_at", nullable = false)
+    private LocalDateTime startedAt;
+
+    // Null until every chunk has committed
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+
+    // The accrual date is the id, so tell Spring Data to INSERT rather than merge
+    @Transient
+    private boolean isNew = true;
+
+    // Constructors
+    public AccrualRun() {
+    }
+
+    public AccrualRun(LocalDate accrualDate, BigDecimal annualRate, int daysPerYear, long firstAccountId,
+            long lastAccountId, int chunkSize) {
+        this.accrualDate = accrualDate;
+        this.annualRate = annualRate;
+        this.daysPerYear = daysPerYear;
+        this.firstAccountId = firstAccountId;
+        this.lastAccountId = lastAccountId;
+        this.chunkSize = chunkSize;
+        this.startedAt = LocalDateTime.now();
+    }
+
+    // Getters and Setters
+    public LocalDate getAccrualDate() {
+        return accrualDate;
+    }
+
+    public void setAccrualDate(LocalDate accrualDate) {
+        this.accrualDate = accrualDate;
+    }
+
+    public BigDecimal getAnnualRate() {
+        return annualRate;
+    }
+
+    public void setAnnualRate(BigDecimal annualRate) {
+        this.annualRate = annualRate;
+    }
+
+    public int getDaysPerYear() {
+        return daysPerYear;
+    }
+
+    public void setDaysPerYear(int daysPerYear) {
+        this.daysPerYear = daysPerYear;
+    }
+
+    public long getFirstAccountId() {
+        return firstAccountId;
+    }
+
+    public void setFirstAccountId(long firstAccountId) {
+        this.firstAccountId = firstAccountId;
+    }
+
+    public long getLastAccountId() {
+        return lastAccountId;
+    }
+
+    public void setLastAccountId(long lastAccountId) {
+        this.lastAccountId = lastAccountId;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public LocalDateTime getCompletedAt() {
+        return completedAt;
+    }
+
+    public void setCompletedAt(LocalDateTime completedAt) {
+        this.completedAt = completedAt;
+    }
+
+    @Override
+    public LocalDate getId() {
+        return accrualDate;
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
+
+    // Business methods
+    public boolean isCompleted() {
+        return completedAt != null;
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.savingaccount.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.springframework.data.domain.Persistable;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Funds reserved on an account. Placing the hold debits the available balance; confirming it makes the
+ * withdrawal final, releasing or expiring it credits the amount back.
+ */
+@Entity
+@Table(name = "fund_holds", indexes = @Index(name = "idx_fund_holds_status_expires", columnList = "status, expires_at"))
+public class FundHold implements Persistable<String> {
+
+    @Id
+    @Column(name = "hold_id", length = 128)
+    private String holdId;
+
+    @Column(name = "account_number", nullable = false)
+    private String accountNumber;
+
+    @Column(name = "amount_minor", nullable = false)
+    private long amountMinor;
+
+    @Column(name = "currency", nullable = false, length = 3)
+    private String currency;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 16)
+    private HoldStatus status;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    // Epoch milliseconds
+    @Column(name = "expires_at", nullable = false)
+    private long expiresAt;
+
+    // Hold ids are assigned by the client, so tell Spring Data to INSERT rather than merge
+    @Transient
+    private boolean isNew = true;
+
+    // Constructors
+    public FundHold() {
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public FundHold(String holdId, String accountNumber, long amountMinor, String currency, long expiresAt) {
+        this();
+        this.holdId = holdId;
+        this.accountNumber = accountNumber;
+        this.amountMinor = amountMinor;
+        this.currency = currency;
+        this.status = HoldStatus.HELD;
+        this.expiresAt = expiresAt;
+    }
+
+    // Getters and Setters
+    public String getHoldId() {
+        return holdId;
+    }
+
+    public void setHoldId(String holdId) {
+        this.holdId = holdId;
+    }
+
+    public String getAccountNumber() {
+        return accountNumber;
+    }
+
+    public void setAccountNumber(String accountNumber) {
+        this.accountNumber = accountNumber;
+    }
+
+    @JsonIgnore
+    public long getAmountMinor() {
+        return amountMinor;
+    }
+
+    public void setAmountMinor(long amountMinor) {
+        this.amountMinor = amountMinor;
+    }
+
+    public BigDecimal getAmount() {
+        return MinorUnits.toDecimal(amountMinor, currency);
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+
+    public HoldStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(HoldStatus status) {
+        this.status = status;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    @JsonIgnore
+    public long getExpiresAtMillis() {
+        return expiresAt;
+    }
+
+    public void setExpiresAtMillis(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(expiresAt), ZoneId.systemDefault());
+    }
+
+    @Override
+    @JsonIgnore
+    public String getId() {
+        return holdId;
+    }
+
+    @Override
+    @JsonIgnore
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
+
+    // Business methods
+    public boolean matches(String accountNumber, long amountMinor, String currency) {
+        return this.accountNumber.equals(accountNumber)
+                && this.amountMinor == amountMinor
+                && this.currency.equals(currency);
+    }
+}
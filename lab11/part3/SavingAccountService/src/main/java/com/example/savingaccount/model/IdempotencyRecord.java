@@ -0,0 +1,154 @@
+package com.example.savingaccount.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.springframework.data.domain.Persistable;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * Stored outcome of a mutation request carrying an Idempotency-Key header.
+ */
+@Entity
+@Table(name = "idempotency_records", indexes = @Index(name = "idx_idempotency_created_at", columnList = "created_at"))
+public class IdempotencyRecord implements Persistable<String> {
+
+    @Id
+    @Column(name = "idempotency_key", length = 128)
+    private String idempotencyKey;
+
+    @Column(name = "operation", nullable = false)
+    private String operation;
+
+    @Column(name = "account_number")
+    private String accountNumber;
+
+    @Column(name = "amount_minor")
+    private long amountMinor;
+
+    @Column(name = "currency", length = 3)
+    private String currency;
+
+    @Column(name = "success", nullable = false)
+    private boolean success;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    // JSON answer of a request whose outcome is more than success, e.g. the accounts of a hand-off
+    @Lob
+    @Column(name = "response")
+    private String response;
+
+    // Keys are assigned by the client, so tell Spring Data to INSERT rather than merge
+    @Transient
+    private boolean isNew = true;
+
+    // Constructors
+    public IdempotencyRecord() {
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public IdempotencyRecord(String idempotencyKey, String operation, String accountNumber, long amountMinor,
+            String currency) {
+        this();
+        this.idempotencyKey = idempotencyKey;
+        this.operation = operation;
+        this.accountNumber = accountNumber;
+        this.amountMinor = amountMinor;
+        this.currency = currency;
+    }
+
+    // Getters and Setters
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public void setOperation(String operation) {
+        this.operation = operation;
+    }
+
+    public String getAccountNumber() {
+        return accountNumber;
+    }
+
+    public void setAccountNumber(String accountNumber) {
+        this.accountNumber = accountNumber;
+    }
+
+    public long getAmountMinor() {
+        return amountMinor;
+    }
+
+    public void setAmountMinor(long amountMinor) {
+        this.amountMinor = amountMinor;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    @JsonIgnore
+    public String getResponse() {
+        return response;
+    }
+
+    public void setResponse(String response) {
+        this.response = response;
+    }
+
+    @Override
+    @JsonIgnore
+    public String getId() {
+        return idempotencyKey;
+    }
+
+    @Override
+    @JsonIgnore
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
+
+    // Business methods
+    public boolean matches(String operation, String accountNumber, long amountMinor, String currency) {
+        return this.operation.equals(operation)
+                && Objects.equals(this.accountNumber, accountNumber)
+                && this.amountMinor == amountMinor
+                && Objects.equals(this.currency, currency);
+    }
+}
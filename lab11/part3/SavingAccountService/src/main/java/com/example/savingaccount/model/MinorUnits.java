@@ -0,0 +1,43 @@
+package com.example.savingaccount.model;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+
+/**
+ * Conversions between decimal amounts and minor units (cents for USD).
+ * Money is held as a {@code long} of minor units plus an ISO 4217 currency code, so balance
+ * arithmetic needs no allocation. The decimal form is only used at the JSON boundary.
+ */
+public final class MinorUnits {
+
+    public static final String DEFAULT_CURRENCY = "USD";
+
+    private MinorUnits() {
+    }
+
+    /**
+     * Convert a decimal amount to minor units.
+     *
+     * @throws IllegalArgumentException if the amount has more decimal places than the currency
+     *         allows, does not fit in a long, or the currency code is unknown
+     */
+    public static long fromDecimal(BigDecimal amount, String currency) {
+        try {
+            return amount.movePointRight(fractionDigits(currency)).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Amount " + amount + " cannot be represented exactly in "
+                    + currency + " minor units");
+        }
+    }
+
+    public static BigDecimal toDecimal(long minorUnits, String currency) {
+        return BigDecimal.valueOf(minorUnits, fractionDigits(currency));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the currency code is unknown
+     */
+    public static int fractionDigits(String currency) {
+        return Math.max(Currency.getInstance(currency).getDefaultFractionDigits(), 0);
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.savingaccount.model;
+
+public enum TransactionType {
+    // Initial balance of a new or imported account
+    OPENING(true),
+    DEPOSIT(true),
+    WITHDRAWAL(false),
+    // Incoming leg of a transfer
+    TRANSFER_IN(true),
+    // Outgoing leg of a transfer, also used for batch withdrawals
+    TRANSFER_OUT(false),
+    // Funds reserved by a hold, or taken again when an expired hold is confirmed
+    HOLD(false),
+    // Held funds returned by a release
+    HOLD_RELEASE(true),
+    // Held funds returned by the expiry sweeper
+    HOLD_EXPIRY(true),
+    // One day of interest from the accrual job; the reference is the accrual date
+    INTEREST(true);
+
+    private final boolean credit;
+
+    TransactionType(boolean credit) {
+        this.credit = credit;
+    }
+
+    public boolean isCredit() {
+        return credit;
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.savingaccount.outbox;
+
+import com.example.savingaccount.dto.BalanceChangedEvent;
+import com.example.savingaccount.model.OutboxEvent;
+import com.example.savingaccount.query.AccountProjection;
+import com.example.savingaccount.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves committed outbox events to the {@link OutboxSink} on a single thread, oldest first, in batches of
+ * {@code account.outbox.batch-size}. A batch is deleted in the transaction that read it, after the sink accepted
+ * it. If the sink fails or the delete does not commit, the batch is published again on a later run. The
+ * query-side {@link AccountProjection}, when enabled, is fed the same batches after the sink.
+ */
+@Component
+@ConditionalOnProperty(name = "account.outbox.enabled", havingValue = "true", matchIfMissing = true)
+public class OutboxRelay {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private OutboxSink sink;
+
+    // Present only when account.query.enabled=true
+    @Autowired(required = false)
+    private AccountProjection accountProjection;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${account.outbox.poll-interval-ms:100}")
+    private long pollIntervalMs;
+
+    @Value("${account.outbox.batch-size:500}")
+    private int batchSize;
+
+    private TransactionTemplate transactionTemplate;
+    private ScheduledExecutorService relay;
+    private Counter published;
+
+    @PostConstruct
+    public void start() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        published = Counter.builder("account.outbox.published")
+                .description("Outbox events handed to the sink")
+                .register(meterRegistry);
+        relay = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "outbox-relay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        relay.scheduleWithFixedDelay(this::relayQuietly, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        relay.shutdown();
+        relay.awaitTermination(10, TimeUnit.SECONDS);
+        // One last pass, so events committed just before shutdown are not left until the next start
+        relayQuietly();
+    }
+
+    private void relayQuietly() {
+        try {
+            // A full batch means more may be waiting
+            int relayed;
+            do {
+                relayed = relayBatch();
+            } while (relayed == batchSize);
+        } catch (RuntimeException e) {
+            log.warn("Outbox relay failed, will retry: {}", e.getMessage());
+        }
+    }
+
+    int relayBatch() {
+        Integer relayed = transactionTemplate.execute(status -> {
+            List<OutboxEvent> batch = outboxEventRepository.findOldest(PageRequest.of(0, batchSize));
+            if (batch.isEmpty()) {
+                return 0;
+            }
+            List<BalanceChangedEvent> events = new ArrayList<>(batch.size());
+            for (OutboxEvent event : batch) {
+                events.add(new BalanceChangedEvent(event));
+            }
+            try {
+                sink.publish(events);
+            } catch (Exception e) {
+                throw new IllegalStateException("Sink rejected " + events.size() + " events: " + e.getMessage(), e);
+            }
+            if (accountProjection != null) {
+                accountProjection.apply(events);
+            }
+            outboxEventRepository.deleteAllInBatch(batch);
+            return batch.size();
+        });
+        published.increment(relayed);
+        return relayed;
+    }
+}
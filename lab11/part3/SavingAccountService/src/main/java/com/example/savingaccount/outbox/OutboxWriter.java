@@ -0,0 +1,97 @@
+package com.example.savingaccount.outbox;
+
+import com.example.savingaccount.cache.AccountChangedEvent;
+import com.example.savingaccount.model.SavingAccount;
+import com.example.savingaccount.model.OutboxEvent;
+import com.example.savingaccount.repository.OutboxEventRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Writes an outbox event for every account a transaction changes, in that transaction.
+ *
+ * The account service already announces each change with an {@link AccountChangedEvent}. The accounts are
+ * collected per transaction and their balances are read just before it commits, so an account changed several
+ * times by one transaction gets one event holding its final balance, and a rolled back transaction writes none.
+ *
+ * With the ledger enabled the request transactions do not touch the balance rows; the write-behind flush calls
+ * {@link #append} for the balances it commits instead. Accounts deleted by a hand-off have no row left to read,
+ * so the hand-off calls {@link #appendRemoved} for them.
+ */
+@Component
+@ConditionalOnProperty(name = "account.outbox.enabled", havingValue = "true", matchIfMissing = true)
+public class OutboxWriter {
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Value("${account.ledger.enabled:false}")
+    private boolean ledgerEnabled;
+
+    @EventListener
+    public void onAccountChanged(AccountChangedEvent event) {
+        if (ledgerEnabled || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Set<String> changed = (Set<String>) TransactionSynchronizationManager.getResource(this);
+        if (changed == null) {
+            changed = new TreeSet<>();
+            TransactionSynchronizationManager.bindResource(this, changed);
+            TransactionSynchronizationManager.registerSynchronization(new ChangedAccounts(changed));
+        }
+        changed.add(event.getAccountNumber());
+    }
+
+    /**
+     * Add events for accounts whose balances the caller is about to commit. Must run inside its transaction.
+     */
+    public void append(Collection<SavingAccount> accounts) {
+        List<OutboxEvent> events = new ArrayList<>(accounts.size());
+        for (SavingAccount account : accounts) {
+            events.add(new OutboxEvent(account.getAccountNumber(), account.getBalanceMinor(), account.getCurrency()));
+        }
+        outboxEventRepository.saveAll(events);
+    }
+
+    /**
+     * Add removed events for accounts the caller is deleting. Must run inside its transaction.
+     */
+    public void appendRemoved(Collection<SavingAccount> accounts) {
+        List<OutboxEvent> events = new ArrayList<>(accounts.size());
+        for (SavingAccount account : accounts) {
+            events.add(new OutboxEvent(account.getAccountNumber(), account.getBalanceMinor(), account.getCurrency(),
+                    true));
+        }
+        outboxEventRepository.saveAll(events);
+    }
+
+    private class ChangedAccounts implements TransactionSynchronization {
+        private final Set<String> accountNumbers;
+
+        ChangedAccounts(Set<String> accountNumbers) {
+            this.accountNumbers = accountNumbers;
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            outboxEventRepository.saveAll(outboxEventRepository.snapshotBalances(accountNumbers));
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(OutboxWriter.this);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.savingaccount.query;
+
+import com.example.savingaccount.dto.BalanceChangedEvent;
+import com.example.savingaccount.model.SavingAccount;
+import com.example.savingaccount.repository.SavingAccountRepository;
+import com.example.savingaccount.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query side of the account service: an in-memory copy of every account, indexed by account number and by
+ * customer, that the GET endpoints read without touching the database or its connection pool.
+ *
+ * It is loaded from the database at startup and then fed by the outbox relay with the balances of committed
+ * transactions, so it trails the database by about {@code account.outbox.poll-interval-ms}; the delay is recorded
+ * as {@code account.query.lag}. The relay is its only writer. Each stored account is an immutable copy replaced as
+ * a whole, so readers never see half an update. Events an account has already seen (by event id) are skipped, as
+ * the relay may deliver a batch twice. A removed event drops the account, which has been handed off to another
+ * shard; if it comes back, its next event reads it from the database again.
+ */
+@Component
+@ConditionalOnExpression("${account.query.enabled:false} and ${account.outbox.enabled:true}")
+public class AccountProjection {
+
+    private static final Logger log = LoggerFactory.getLogger(AccountProjection.class);
+
+    @Autowired
+    private SavingAccountRepository savingAccountRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final ConcurrentMap<String, Projected> accounts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, NavigableMap<String, SavingAccount>> byCustomer = new ConcurrentHashMap<>();
+    private Timer lag;
+
+    @PostConstruct
+    public void load() {
+        lag = Timer.builder("account.query.lag")
+                .description("Time from a balance change being committed to it being visible on the query side")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder("account.query.accounts", accounts, Map::size)
+                .description("Accounts held by the query-side projection")
+                .register(meterRegistry);
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        transactionTemplate.executeWithoutResult(status -> {
+            // Events still in the outbox are already part of the rows read below
+            long lastEventId = outboxEventRepository.findMaxId();
+            for (SavingAccount account : savingAccountRepository.findAll()) {
+                put(copy(account, account.getBalanceMinor(), account.getUpdatedAtMillis()), lastEventId);
+            }
+        });
+        log.info("Query projection loaded {} accounts", accounts.size());
+    }
+
+    /**
+     * Apply a batch of committed balance changes in event order. Accounts the projection has not seen yet are
+     * read from the database in one query for their static fields; their balance comes from the event. Removed
+     * events drop the account.
+     */
+    public void apply(List<BalanceChangedEvent> events) {
+        List<String> unknown = new ArrayList<>();
+        for (BalanceChangedEvent event : events) {
+            if (!event.isRemoved() && !accounts.containsKey(event.getAccountNumber())) {
+                unknown.add(event.getAccountNumber());
+            }
+        }
+        Map<String, SavingAccount> created = new HashMap<>();
+        if (!unknown.isEmpty()) {
+            for (SavingAccount account : savingAccountRepository.findByAccountNumberIn(unknown)) {
+                created.put(account.getAccountNumber(), account);
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        for (BalanceChangedEvent event : events) {
+            Projected current = accounts.get(event.getAccountNumber());
+            if (event.isRemoved()) {
+                if (current != null && current.eventId < event.getEventId()) {
+                    remove(current.account);
+                }
+                continue;
+            }
+            SavingAccount source = current != null ? current.account : created.get(event.getAccountNumber());
+            if (source == null || (current != null && current.eventId >= event.getEventId())) {
+                continue;
+            }
+            put(copy(source, event.getBalanceMinor(), event.getTimestamp()), event.getEventId());
+            lag.record(Math.max(0, now - event.getTimestamp()), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public Optional<SavingAccount> getAccount(String accountNumber) {
+        Projected projected = accounts.get(accountNumber);
+        return projected != null ? Optional.of(projected.account) : Optional.empty();
+    }
+
+    /**
+     * Same keyset page as {@code SavingAccountService#getAccountsByCustomer}: the customer's accounts with a number
+     * greater than {@code after}, in account-number order, at most {@code limit} of them.
+     */
+    public List<SavingAccount> getAccountsByCustomer(String customerId, String after, int limit) {
+        NavigableMap<String, SavingAccount> customerAccounts = byCustomer.get(customerId);
+        if (customerAccounts == null) {
+            return new ArrayList<>();
+        }
+        NavigableMap<String, SavingAccount> page = after != null
+                ? customerAccounts.tailMap(after, false)
+                : customerAccounts;
+        List<SavingAccount> accounts = new ArrayList<>(Math.min(limit, 64));
+        for (SavingAccount account : page.values()) {
+            if (accounts.size() == limit) {
+                break;
+            }
+            accounts.add(account);
+        }
+        return accounts;
+    }
+
+    // All accounts of a customer in account-number order
+    public Iterable<SavingAccount> getAllAccountsByCustomer(String customerId) {
+        NavigableMap<String, SavingAccount> customerAccounts = byCustomer.get(customerId);
+        return customerAccounts != null ? customerAccounts.values() : new ArrayList<>();
+    }
+
+    private void put(SavingAccount account, long eventId) {
+        accounts.put(account.getAccountNumber(), new Projected(account, eventId));
+        byCustomer.computeIfAbsent(account.getCustomerId(), customerId -> new ConcurrentSkipListMap<>())
+                .put(account.getAccountNumber(), account);
+    }
+
+    private void remove(SavingAccount account) {
+        accounts.remove(account.getAccountNumber());
+        NavigableMap<String, SavingAccount> customerAccounts = byCustomer.get(account.getCustomerId());
+        if (customerAccounts != null) {
+            customerAccounts.remove(account.getAccountNumber());
+        }
+    }
+
+    private static SavingAccount copy(SavingAccount source, long balanceMinor, long updatedAt) {
+        SavingAccount copy = new SavingAccount(source.getAccountNumber(), source.getCustomerId(), balanceMinor,
+                source.getCurrency());
+        copy.setId(source.getId());
+        copy.setCreatedAt(source.getCreatedAt());
+        copy.setUpdatedAtMillis(updatedAt);
+        return copy;
+    }
+
+    private static class Projected {
+        private final SavingAccount account;
+        // Id of the last event applied to the account
+        private final long eventId;
+
+        Projected(SavingAccount account, long eventId) {
+            this.account = account;
+            this.eventId = eventId;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.savingaccount.repository;
+
+import com.example.savingaccount.model.AccrualChunk;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface AccrualChunkRepository extends JpaRepository<AccrualChunk, Long> {
+
+    // First account ids of the chunks of a run that have already committed
+    @Query("SELECT c.firstAccountId FROM AccrualChunk c WHERE c.accrualDate = :accrualDate")
+    List<Long> findCompletedChunks(@Param("accrualDate") LocalDate accrualDate);
+
+    @Query("SELECT COALESCE(SUM(c.accounts), 0) FROM AccrualChunk c WHERE c.accrualDate = :accrualDate")
+    long countAccounts(@Param("accrualDate") LocalDate accrualDate);
+}
@@ -0,0 +1,15 @@
+package com.example.savingaccount.repository;
+
+import com.example.savingaccount.model.AccrualRun;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface AccrualRunRepository extends JpaRepository<AccrualRun, LocalDate> {
+
+    // Runs interrupted before their last chunk committed
+    List<AccrualRun> findByCompletedAtIsNullOrderByAccrualDate();
+}
@@ -0,0 +1,41 @@
+package com.example.savingaccount.repository;
+
+import com.example.savingaccount.model.FundHold;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface FundHoldRepository extends JpaRepository<FundHold, String> {
+
+    /**
+     * Load and row-lock a hold, so confirm, release and expiry of the same hold run one after another.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT h FROM FundHold h WHERE h.holdId = :holdId")
+    Optional<FundHold> findByIdForUpdate(@Param("holdId") String holdId);
+
+    /**
+     * Ids of holds still HELD past their expiry, oldest first. The page size comes from the {@link Pageable};
+     * its page number must stay 0.
+     */
+    @Query("SELECT h.holdId FROM FundHold h WHERE h.status = com.example.savingaccount.model.HoldStatus.HELD "
+            + "AND h.expiresAt < :now ORDER BY h.expiresAt")
+    List<String> findExpiredIds(@Param("now") long now, Pageable pageable);
+
+    /**
+     * The subset of the given account numbers with funds still HELD, in one query.
+     */
+    @Query("SELECT DISTINCT h.accountNumber FROM FundHold h "
+            + "WHERE h.status = com.example.savingaccount.model.HoldStatus.HELD "
+            + "AND h.accountNumber IN :accountNumbers")
+    List<String> findAccountsWithHeldFunds(@Param("accountNumbers") Collection<String> accountNumbers);
+}
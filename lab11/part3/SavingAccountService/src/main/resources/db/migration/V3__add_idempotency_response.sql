@@ -0,0 +1,2 @@
+-- Answer body of keyed requests that return more than success, e.g. a hand-off of accounts
+ALTER TABLE idempotency_records ADD COLUMN response CLOB;
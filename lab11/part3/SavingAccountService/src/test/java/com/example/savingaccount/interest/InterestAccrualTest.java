@@ -0,0 +1,154 @@
+package com.example.savingaccount.interest;
+
+import com.example.savingaccount.dto.AccountRequest;
+import com.example.savingaccount.dto.AccrualProgress;
+import com.example.savingaccount.history.TransactionHistory;
+import com.example.savingaccount.model.AccrualChunk;
+import com.example.savingaccount.model.AccrualRun;
+import com.example.savingaccount.model.TransactionType;
+import com.example.savingaccount.repository.AccrualChunkRepository;
+import com.example.savingaccount.repository.AccrualRunRepository;
+import com.example.savingaccount.repository.SavingAccountRepository;
+import com.example.savingaccount.service.SavingAccountService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+
+/**
+ * Interest accrual over chunks of two accounts, each credited 1.00 a day: a run that stopped half way resumes after
+ * its checkpointed chunks, and a chunk that fails is redone by the retry; no account is credited twice.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:interest-accrual-test",
+        "eureka.client.enabled=false",
+        "account.interest.annual-rate=3.65",
+        "account.interest.days-per-year=365",
+        "account.interest.chunk-size=2",
+        // Retries are driven by the test
+        "account.interest.retry-interval-ms=3600000"
+})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class InterestAccrualTest {
+
+    private static final int ACCOUNTS = 6;
+    private static final long BALANCE = 10000;
+    private static final long INTEREST = 100;
+
+    @Autowired
+    private InterestAccrual interestAccrual;
+
+    @Autowired
+    private SavingAccountService savingAccountService;
+
+    @Autowired
+    private SavingAccountRepository savingAccountRepository;
+
+    @Autowired
+    private AccrualRunRepository accrualRunRepository;
+
+    @Autowired
+    private AccrualChunkRepository accrualChunkRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @SpyBean
+    private TransactionHistory transactionHistory;
+
+    @BeforeEach
+    void createAccounts() {
+        for (int i = 0; i < ACCOUNTS; i++) {
+            savingAccountService.createAccount(new AccountRequest("SAV-ACC-" + i, "CUST-ACC",
+                    BigDecimal.valueOf(BALANCE, 2)));
+        }
+    }
+
+    @Test
+    void runStoppedHalfWayResumesAfterItsCheckpointedChunk() throws Exception {
+        LocalDate day = LocalDate.of(2024, 6, 29);
+        long firstId = id("SAV-ACC-0");
+        // As left by a service that went down after committing the first chunk
+        long lastId = id("SAV-ACC-" + (ACCOUNTS - 1));
+        accrualRunRepository.save(new AccrualRun(day, new BigDecimal("3.65"), 365, firstId, lastId, 2));
+        jdbcTemplate.update("UPDATE saving_accounts SET balance_minor = balance_minor + ? WHERE id BETWEEN ? AND ?",
+                INTEREST, firstId, firstId + 1);
+        accrualChunkRepository.save(new AccrualChunk(day, firstId, 2));
+
+        interestAccrual.resumeInterrupted();
+        AccrualProgress resumed = await(interestAccrual.runs().get(0));
+
+        assertThat(resumed.getError()).isNull();
+        assertThat(resumed.getChunks()).isEqualTo(3);
+        assertThat(resumed.getChunksResumed()).isEqualTo(1);
+        assertThat(resumed.getAccounts()).isEqualTo(ACCOUNTS - 2);
+        assertThat(balances()).containsOnly(BALANCE + INTEREST);
+        assertThat(accrualRunRepository.findById(day)).hasValueSatisfying(run ->
+                assertThat(run.isCompleted()).isTrue());
+
+        // Asked again, the completed day credits nothing
+        assertThat(interestAccrual.accrue(day).getAccounts()).isZero();
+        assertThat(balances()).containsOnly(BALANCE + INTEREST);
+    }
+
+    @Test
+    void failedChunkDoesNotStopTheOthersAndIsRedoneByTheRetry() throws Exception {
+        LocalDate day = LocalDate.of(2024, 6, 30);
+        // The chunk of SAV-ACC-2 and SAV-ACC-3 rolls back the first time, as on a lock timeout
+        doThrow(new IllegalStateException("lock timeout")).doCallRealMethod().when(transactionHistory)
+                .record(eq("SAV-ACC-2"), eq(TransactionType.INTEREST), anyLong(), anyString(), anyString());
+
+        AccrualProgress first = await(interestAccrual.accrue(day));
+
+        assertThat(first.getError()).contains("1 chunks failed");
+        assertThat(first.getChunksFailed()).isEqualTo(1);
+        assertThat(balances()).containsExactly(BALANCE + INTEREST, BALANCE + INTEREST, BALANCE, BALANCE,
+                BALANCE + INTEREST, BALANCE + INTEREST);
+        assertThat(accrualRunRepository.findById(day)).hasValueSatisfying(run ->
+                assertThat(run.isCompleted()).isFalse());
+
+        interestAccrual.retryFailed();
+        AccrualProgress retried = await(interestAccrual.runs().get(0));
+
+        assertThat(retried).isNotSameAs(first);
+        assertThat(retried.getError()).isNull();
+        assertThat(retried.getChunksResumed()).isEqualTo(2);
+        assertThat(balances()).containsOnly(BALANCE + INTEREST);
+        assertThat(accrualRunRepository.findById(day)).hasValueSatisfying(run ->
+                assertThat(run.isCompleted()).isTrue());
+    }
+
+    private long id(String accountNumber) {
+        return savingAccountRepository.findByAccountNumber(accountNumber).orElseThrow().getId();
+    }
+
+    private long[] balances() {
+        long[] balances = new long[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            balances[i] = savingAccountRepository.findByAccountNumber("SAV-ACC-" + i).orElseThrow()
+                    .getBalanceMinor();
+        }
+        return balances;
+    }
+
+    private static AccrualProgress await(AccrualProgress progress) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!progress.isDone() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(progress.isDone()).isTrue();
+        return progress;
+    }
+}
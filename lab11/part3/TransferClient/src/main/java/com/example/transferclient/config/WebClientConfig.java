@@ -0,0 +1,56 @@
+package com.example.transferclient.config;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * Non-blocking clients for the account services, used when transfer.execution-mode=reactive.
+ */
+@Configuration
+public class WebClientConfig {
+
+    @Bean
+    public ConnectionProvider accountServiceConnectionProvider(
+            @Value("${transfer.reactive.max-connections:500}") int maxConnections) {
+        return ConnectionProvider.builder("account-services")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(maxConnections * 4)
+                .build();
+    }
+
+    @Bean
+    public WebClient checkingAccountWebClient(WebClient.Builder builder,
+            ConnectionProvider accountServiceConnectionProvider,
+            @Value("${services.checking-account}") String baseUrl,
+            @Value("${transfer.reactive.response-timeout-ms:3000}") long responseTimeoutMs) {
+        return build(builder, accountServiceConnectionProvider, baseUrl, responseTimeoutMs);
+    }
+
+    @Bean
+    public WebClient savingAccountWebClient(WebClient.Builder builder,
+            ConnectionProvider accountServiceConnectionProvider,
+            @Value("${services.saving-account}") String baseUrl,
+            @Value("${transfer.reactive.response-timeout-ms:3000}") long responseTimeoutMs) {
+        return build(builder, accountServiceConnectionProvider, baseUrl, responseTimeoutMs);
+    }
+
+    // The Boot-provided builder is a fresh instance per injection point and records http.client.requests timers
+    private static WebClient build(WebClient.Builder builder, ConnectionProvider connectionProvider, String baseUrl,
+            long responseTimeoutMs) {
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 1000)
+                .responseTimeout(Duration.ofMillis(responseTimeoutMs));
+        return builder
+                .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+}
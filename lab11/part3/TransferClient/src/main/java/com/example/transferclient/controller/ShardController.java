@@ -0,0 +1,113 @@
+package com.example.transferclient.controller;
+
+import com.example.transferclient.dto.AccountRequest;
+import com.example.transferclient.dto.AccountSnapshot;
+import com.example.transferclient.dto.RebalanceResult;
+import com.example.transferclient.feign.CheckingAccountClient;
+import com.example.transferclient.feign.FeignRejections;
+import com.example.transferclient.feign.SavingAccountClient;
+import com.example.transferclient.shard.Shard;
+import com.example.transferclient.shard.ShardRebalancer;
+import com.example.transferclient.shard.ShardRing;
+import com.example.transferclient.shard.ShardRouter;
+import feign.FeignException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@RestController
+@RequestMapping("/api/shards")
+@CrossOrigin(origins = "*")
+public class ShardController {
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private ShardRebalancer shardRebalancer;
+
+    @Autowired
+    private CheckingAccountClient checkingAccountClient;
+
+    @Autowired
+    private SavingAccountClient savingAccountClient;
+
+    // The shards of each account service on the current ring
+    @GetMapping
+    public Map<String, List<Shard>> getShards() {
+        return shards(shardRouter.getRings());
+    }
+
+    // The shards of the rings that take over once rebalanced
+    @GetMapping("/pending")
+    public Map<String, List<Shard>> getPendingShards() {
+        return shards(shardRouter.getPendingRings());
+    }
+
+    @GetMapping("/{service}/owner/{accountNumber}")
+    public Shard getOwner(@PathVariable String service, @PathVariable String accountNumber) {
+        return shardRouter.owner(service, accountNumber);
+    }
+
+    /**
+     * Create an account on the shard that owns its number. While added shards wait for a rebalance, that is its
+     * owner on the pending ring, so the rebalance, which may already have read past the number, need not move it.
+     */
+    @PostMapping("/{service}/accounts")
+    public ResponseEntity<?> createAccount(@PathVariable String service, @RequestBody AccountRequest request) {
+        ShardRing ring = shardRouter.target(service);
+        URI shard = ring.owner(request.getAccountNumber()).getBaseUri();
+        AccountSnapshot account;
+        try {
+            account = ShardRouter.CHECKING.equals(service)
+                    ? checkingAccountClient.createAccount(shard, request).getBody()
+                    : savingAccountClient.createAccount(shard, request).getBody();
+        } catch (FeignException e) {
+            if (FeignRejections.isRejection(e)) {
+                // e.g. the number is taken; the shard's answer is the caller's
+                return ResponseEntity.status(e.status()).body(e.contentUTF8());
+            }
+            throw e;
+        }
+        shardRouter.moved(service, ring.owner(request.getAccountNumber()),
+                Collections.singletonList(request.getAccountNumber()));
+        return ResponseEntity.ok(account);
+    }
+
+    /**
+     * Move the accounts of an account service to the shards that own them on the current ring. Run it after
+     * starting a new instance; answers once every shard has been scanned.
+     */
+    @PostMapping("/{service}/rebalance")
+    public RebalanceResult rebalance(@PathVariable String service) {
+        return shardRebalancer.rebalance(service);
+    }
+
+    private static Map<String, List<Shard>> shards(Map<String, ShardRing> rings) {
+        return rings.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().getShards()));
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleUnknownService(IllegalArgumentException e) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+    }
+
+    @ExceptionHandler(IllegalStateException.class)
+    public ResponseEntity<String> handleAlreadyRunning(IllegalStateException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+    }
+
+    // A shard refused or failed a call; accounts already moved stay moved, and a new run carries on from there
+    @ExceptionHandler(FeignException.class)
+    public ResponseEntity<String> handleShardFailure(FeignException e) {
+        return ResponseEntity.status(HttpStatus.BAD_GATEWAY).body(e.getMessage());
+    }
+}
@@ -1,36 +1,107 @@
 package com.example.transferclient.controller;
 
+import com.example.transferclient.dto.BatchTransferRequest;
+import com.example.transferclient.dto.TransferDirection;
 import com.example.transferclient.dto.TransferRequest;
+import com.example.transferclient.dto.TransferResult;
+import com.example.transferclient.model.TransferSaga;
+import com.example.transferclient.service.BatchTransferService;
+import com.example.transferclient.service.ReactiveTransferService;
+import com.example.transferclient.service.SagaOrchestrator;
 import com.example.transferclient.service.TransferService;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.net.URI;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
 @RestController
 @RequestMapping("/api/transfers")
 @CrossOrigin(origins = "*")
+@Timed(histogram = true)
 public class TransferController {
 
     @Autowired
     private TransferService transferService;
 
+    @Autowired
+    private BatchTransferService batchTransferService;
+
+    @Autowired
+    private SagaOrchestrator sagaOrchestrator;
+
+    @Autowired
+    private ReactiveTransferService reactiveTransferService;
+
+    @Value("${transfer.execution-mode:blocking}")
+    private String executionMode;
+
     @PostMapping("/checking-to-saving")
-    public ResponseEntity<String> transferFromCheckingToSaving(@RequestBody TransferRequest request) {
-        String result = transferService.transferFromCheckingToSaving(request);
-        return ResponseEntity.ok(result);
+    public CompletableFuture<ResponseEntity<String>> transferFromCheckingToSaving(@RequestBody TransferRequest request) {
+        return execute(request, TransferDirection.CHECKING_TO_SAVING).thenApply(ResponseEntity::ok);
     }
 
     @PostMapping("/saving-to-checking")
-    public ResponseEntity<String> transferFromSavingToChecking(@RequestBody TransferRequest request) {
-        String result = transferService.transferFromSavingToChecking(request);
-        return ResponseEntity.ok(result);
+    public CompletableFuture<ResponseEntity<String>> transferFromSavingToChecking(@RequestBody TransferRequest request) {
+        return execute(request, TransferDirection.SAVING_TO_CHECKING).thenApply(ResponseEntity::ok);
     }
 
     @PostMapping("/test-error")
-    public ResponseEntity<String> testTransferWithError(@RequestBody TransferRequest request) {
+    public CompletableFuture<ResponseEntity<String>> testTransferWithError(@RequestBody TransferRequest request) {
         // Force error simulation
         request.setSimulateError(true);
-        String result = transferService.transferFromCheckingToSaving(request);
-        return ResponseEntity.ok(result);
+        return execute(request, TransferDirection.CHECKING_TO_SAVING).thenApply(ResponseEntity::ok);
+    }
+
+    @PostMapping("/batch")
+    public ResponseEntity<List<TransferResult>> transferBatch(@RequestBody BatchTransferRequest request) {
+        List<TransferResult> results = batchTransferService.transferBatch(request);
+        return ResponseEntity.ok(results);
+    }
+
+    @PostMapping("/saga/checking-to-saving")
+    public ResponseEntity<TransferSaga> startCheckingToSavingSaga(@RequestBody TransferRequest request) {
+        return accepted(sagaOrchestrator.start(request, TransferDirection.CHECKING_TO_SAVING));
+    }
+
+    @PostMapping("/saga/saving-to-checking")
+    public ResponseEntity<TransferSaga> startSavingToCheckingSaga(@RequestBody TransferRequest request) {
+        return accepted(sagaOrchestrator.start(request, TransferDirection.SAVING_TO_CHECKING));
+    }
+
+    @GetMapping("/saga/{transferId}")
+    public ResponseEntity<?> getSaga(@PathVariable String transferId) {
+        Optional<TransferSaga> saga = sagaOrchestrator.getSaga(transferId);
+        if (saga.isPresent()) {
+            return ResponseEntity.ok(saga.get());
+        } else {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * In reactive mode the request thread is handed back to Tomcat while the account-service
+     * calls are in flight; the response is written when the future completes.
+     */
+    private CompletableFuture<String> execute(TransferRequest request, TransferDirection direction) {
+        if ("reactive".equals(executionMode)) {
+            return reactiveTransferService.transfer(request, direction).toFuture();
+        }
+        String result = direction == TransferDirection.SAVING_TO_CHECKING
+                ? transferService.transferFromSavingToChecking(request)
+                : transferService.transferFromCheckingToSaving(request);
+        return CompletableFuture.completedFuture(result);
+    }
+
+    private ResponseEntity<TransferSaga> accepted(TransferSaga saga) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .location(URI.create("/api/transfers/saga/" + saga.getId()))
+                .body(saga);
     }
 }
@@ -0,0 +1,90 @@
+package com.example.transferclient.deadline;
+
+import java.util.function.Supplier;
+
+/**
+ * The time by which the caller of the current request needs an answer, as epoch milliseconds. It arrives and is
+ * passed on in the {@code X-Request-Deadline} header. {@link DeadlineFilter} holds it for the request thread, and
+ * every account-service call made on that thread carries it, so the services can skip work nobody is waiting
+ * for. Comparing wall clocks across services assumes their clocks are kept in sync (NTP).
+ */
+public final class Deadline {
+
+    public static final String HEADER = "X-Request-Deadline";
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    private final long epochMillis;
+
+    private Deadline(long epochMillis) {
+        this.epochMillis = epochMillis;
+    }
+
+    public static Deadline at(long epochMillis) {
+        return new Deadline(epochMillis);
+    }
+
+    public static Deadline in(long millis) {
+        return new Deadline(System.currentTimeMillis() + millis);
+    }
+
+    /**
+     * The deadline of the request being handled on this thread, or null if it has none.
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    static void set(Deadline deadline) {
+        CURRENT.set(deadline);
+    }
+
+    static void clear() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Run calls without the deadline: calls that must go out even after it, such as finishing or undoing a
+     * transfer, and calls whose outcome would be unknown if their timeout were cut short.
+     */
+    public static <T> T detached(Supplier<T> action) {
+        Deadline deadline = CURRENT.get();
+        CURRENT.remove();
+        try {
+            return action.get();
+        } finally {
+            if (deadline != null) {
+                CURRENT.set(deadline);
+            }
+        }
+    }
+
+    /**
+     * Fail with {@link DeadlineExceededException} if the current request's deadline has passed.
+     */
+    public static void checkCurrent() {
+        Deadline deadline = CURRENT.get();
+        if (deadline != null) {
+            deadline.check();
+        }
+    }
+
+    public long getEpochMillis() {
+        return epochMillis;
+    }
+
+    public long remainingMillis() {
+        return epochMillis - System.currentTimeMillis();
+    }
+
+    public boolean isExpired() {
+        return remainingMillis() <= 0;
+    }
+
+    public void check() {
+        long remaining = remainingMillis();
+        if (remaining <= 0) {
+            throw new DeadlineExceededException(-remaining);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.transferclient.deadline;
+
+/**
+ * The caller's deadline passed before an account-service call could be started or answered.
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+    public DeadlineExceededException(long lateMillis) {
+        super("Request deadline passed " + lateMillis + " ms ago");
+    }
+
+    // The call was sent, but the deadline passed before it was answered
+    public DeadlineExceededException(long lateMillis, Throwable cause) {
+        super("Request deadline passed " + lateMillis + " ms ago", cause);
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.transferclient.deadline;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Reads the caller's {@code X-Request-Deadline} for transfer requests, or applies
+ * {@code transfer.deadline.default-timeout-ms} when there is none, and holds it as {@link Deadline#current()}
+ * while the request is handled. A request whose deadline has already passed is answered with 504 right away.
+ */
+@Component
+public class DeadlineFilter extends OncePerRequestFilter {
+
+    // 0 leaves requests without a deadline header unbounded
+    @Value("${transfer.deadline.default-timeout-ms:0}")
+    private long defaultTimeoutMs;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Deadline deadline;
+        String header = request.getHeader(Deadline.HEADER);
+        if (header != null) {
+            try {
+                deadline = Deadline.at(Long.parseLong(header.trim()));
+            } catch (NumberFormatException e) {
+                reject(response, HttpStatus.BAD_REQUEST, Deadline.HEADER + " must be epoch milliseconds");
+                return;
+            }
+        } else {
+            deadline = defaultTimeoutMs > 0 ? Deadline.in(defaultTimeoutMs) : null;
+        }
+        if (deadline != null && deadline.isExpired()) {
+            reject(response, HttpStatus.GATEWAY_TIMEOUT,
+                    "Request deadline passed " + -deadline.remainingMillis() + " ms ago");
+            return;
+        }
+
+        Deadline.set(deadline);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            Deadline.clear();
+        }
+    }
+
+    private static void reject(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.getWriter().write(message);
+    }
+}
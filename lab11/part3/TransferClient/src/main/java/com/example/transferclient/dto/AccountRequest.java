@@ -0,0 +1,68 @@
+package com.example.transferclient.dto;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * An account as handed off by one shard and adopted by another, with its balance as the initial balance.
+ */
+public class AccountRequest {
+    private String accountNumber;
+    private String customerId;
+    private BigDecimal initialBalance;
+    private String currency;
+    // The old shard's stored outcomes of the account's keyed mutations, passed on to the new one unread
+    private List<JsonNode> idempotencyRecords;
+
+    // Constructors
+    public AccountRequest() {
+    }
+
+    // Getters and Setters
+    public String getAccountNumber() {
+        return accountNumber;
+    }
+
+    public void setAccountNumber(String accountNumber) {
+        this.accountNumber = accountNumber;
+    }
+
+    public String getCustomerId() {
+        return customerId;
+    }
+
+    public void setCustomerId(String customerId) {
+        this.customerId = customerId;
+    }
+
+    public BigDecimal getInitialBalance() {
+        return initialBalance;
+    }
+
+    public void setInitialBalance(BigDecimal initialBalance) {
+        this.initialBalance = initialBalance;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+
+    public List<JsonNode> getIdempotencyRecords() {
+        return idempotencyRecords;
+    }
+
+    public void setIdempotencyRecords(List<JsonNode> idempotencyRecords) {
+        this.idempotencyRecords = idempotencyRecords;
+    }
+
+    @Override
+    public String toString() {
+        return accountNumber + " (customer " + customerId + ", " + initialBalance + " " + currency + ")";
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.transferclient.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * An account as listed by an account service; the other fields of its answer are ignored.
+ */
+public class AccountSnapshot {
+    private String accountNumber;
+    private String customerId;
+    private BigDecimal balance;
+    private String currency;
+
+    // Constructors
+    public AccountSnapshot() {
+    }
+
+    // Getters and Setters
+    public String getAccountNumber() {
+        return accountNumber;
+    }
+
+    public void setAccountNumber(String accountNumber) {
+        this.accountNumber = accountNumber;
+    }
+
+    public String getCustomerId() {
+        return customerId;
+    }
+
+    public void setCustomerId(String customerId) {
+        this.customerId = customerId;
+    }
+
+    public BigDecimal getBalance() {
+        return balance;
+    }
+
+    public void setBalance(BigDecimal balance) {
+        this.balance = balance;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.transferclient.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BatchTransferRequest {
+    private TransferDirection direction = TransferDirection.CHECKING_TO_SAVING;
+    private List<TransferRequest> transfers = new ArrayList<>();
+
+    // Constructors
+    public BatchTransferRequest() {
+    }
+
+    public BatchTransferRequest(TransferDirection direction, List<TransferRequest> transfers) {
+        this.direction = direction;
+        this.transfers = transfers;
+    }
+
+    // Getters and Setters
+    public TransferDirection getDirection() {
+        return direction;
+    }
+
+    public void setDirection(TransferDirection direction) {
+        this.direction = direction;
+    }
+
+    public List<TransferRequest> getTransfers() {
+        return transfers;
+    }
+
+    public void setTransfers(List<TransferRequest> transfers) {
+        this.transfers = transfers;
+    }
+}
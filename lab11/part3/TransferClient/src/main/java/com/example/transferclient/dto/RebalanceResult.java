@@ -0,0 +1,100 @@
+package com.example.transferclient.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Outcome of one rebalancing run over the shards of an account service.
+ */
+public class RebalanceResult {
+    private final String service;
+    private final int shards;
+    private final LocalDateTime startedAt = LocalDateTime.now();
+    private final long startNanos = System.nanoTime();
+    private long elapsedMs;
+    private long scanned;
+    private long moved;
+    private long held;
+    private long returned;
+    private long resumed;
+    private boolean ringSwitched;
+
+    public RebalanceResult(String service, int shards) {
+        this.service = service;
+        this.shards = shards;
+    }
+
+    public void scanned(int accounts) {
+        scanned += accounts;
+    }
+
+    public void moved(int accounts) {
+        moved += accounts;
+    }
+
+    public void held(int accounts) {
+        held += accounts;
+    }
+
+    public void returned(int accounts) {
+        returned += accounts;
+    }
+
+    public void resumed() {
+        resumed++;
+    }
+
+    public void ringSwitched() {
+        ringSwitched = true;
+    }
+
+    public void finish() {
+        elapsedMs = (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    // Getters
+    public String getService() {
+        return service;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public long getElapsedMs() {
+        return elapsedMs;
+    }
+
+    // Accounts read from all shards
+    public long getScanned() {
+        return scanned;
+    }
+
+    // Accounts now on the shard that owns them
+    public long getMoved() {
+        return moved;
+    }
+
+    // Accounts left on their old shard because funds are on hold; moved by a later run
+    public long getHeld() {
+        return held;
+    }
+
+    // Accounts the new owner already had, given back to their old shard
+    public long getReturned() {
+        return returned;
+    }
+
+    // Moves cut short by an earlier run, finished by this one
+    public long getResumed() {
+        return resumed;
+    }
+
+    // Whether legs are now routed by the ring the accounts were moved to; not while accounts are held
+    public boolean isRingSwitched() {
+        return ringSwitched;
+    }
+}
@@ -1,18 +1,36 @@
 package com.example.transferclient.dto;
 
+import com.example.transferclient.model.MinorUnits;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import java.math.BigDecimal;
 
+/**
+ * The amount travels as a decimal in JSON and is held as minor units of {@code currency}.
+ */
 public class TransactionRequest {
     private String accountNumber;
-    private BigDecimal amount;
+    private long amountMinor;
+    private String currency = MinorUnits.DEFAULT_CURRENCY;
 
     // Constructors
     public TransactionRequest() {
     }
 
-    public TransactionRequest(String accountNumber, BigDecimal amount) {
+    public TransactionRequest(String accountNumber, long amountMinor, String currency) {
         this.accountNumber = accountNumber;
-        this.amount = amount;
+        this.amountMinor = amountMinor;
+        this.currency = currency;
+    }
+
+    // Both properties are needed together: the currency decides how many decimals the amount may have
+    @JsonCreator
+    public static TransactionRequest fromJson(@JsonProperty("accountNumber") String accountNumber,
+            @JsonProperty("amount") BigDecimal amount, @JsonProperty("currency") String currency) {
+        String code = currency != null ? currency : MinorUnits.DEFAULT_CURRENCY;
+        return new TransactionRequest(accountNumber, amount != null ? MinorUnits.fromDecimal(amount, code) : 0, code);
     }
 
     // Getters and Setters
@@ -24,11 +42,24 @@ public class TransactionRequest {
         this.accountNumber = accountNumber;
     }
 
+    @JsonIgnore
+    public long getAmountMinor() {
+        return amountMinor;
+    }
+
+    public void setAmountMinor(long amountMinor) {
+        this.amountMinor = amountMinor;
+    }
+
     public BigDecimal getAmount() {
-        return amount;
+        return MinorUnits.toDecimal(amountMinor, currency);
+    }
+
+    public String getCurrency() {
+        return currency;
     }
 
-    public void setAmount(BigDecimal amount) {
-        this.amount = amount;
+    public void setCurrency(String currency) {
+        this.currency = currency;
     }
 }
@@ -0,0 +1,64 @@
+package com.example.transferclient.dto;
+
+import java.math.BigDecimal;
+
+public class TransactionResult {
+    private String accountNumber;
+    private BigDecimal amount;
+    private boolean success;
+    private String message;
+    // Set by TransferClient when the call carrying the leg got no answer, so the leg may or may not have been applied
+    private boolean outcomeUnknown;
+
+    // Constructors
+    public TransactionResult() {
+    }
+
+    public TransactionResult(String accountNumber, BigDecimal amount, boolean success, String message) {
+        this.accountNumber = accountNumber;
+        this.amount = amount;
+        this.success = success;
+        this.message = message;
+    }
+
+    // Getters and Setters
+    public String getAccountNumber() {
+        return accountNumber;
+    }
+
+    public void setAccountNumber(String accountNumber) {
+        this.accountNumber = accountNumber;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public boolean isOutcomeUnknown() {
+        return outcomeUnknown;
+    }
+
+    public void setOutcomeUnknown(boolean outcomeUnknown) {
+        this.outcomeUnknown = outcomeUnknown;
+    }
+}
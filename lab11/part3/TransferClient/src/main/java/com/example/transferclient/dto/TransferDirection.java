@@ -0,0 +1,6 @@
+package com.example.transferclient.dto;
+
+public enum TransferDirection {
+    CHECKING_TO_SAVING,
+    SAVING_TO_CHECKING
+}
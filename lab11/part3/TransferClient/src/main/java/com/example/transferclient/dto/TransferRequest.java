@@ -1,31 +1,53 @@
 package com.example.transferclient.dto;
 
+import com.example.transferclient.model.MinorUnits;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import java.math.BigDecimal;
 
+/**
+ * The amount travels as a decimal in JSON and is held as minor units of {@code currency}.
+ */
 public class TransferRequest {
     private String fromAccountNumber;
     private String toAccountNumber;
-    private BigDecimal amount;
+    private long amountMinor;
+    private String currency = MinorUnits.DEFAULT_CURRENCY;
     private boolean simulateError;
 
     // Constructors
     public TransferRequest() {
     }
 
-    public TransferRequest(String fromAccountNumber, String toAccountNumber, BigDecimal amount) {
+    public TransferRequest(String fromAccountNumber, String toAccountNumber, long amountMinor, String currency) {
         this.fromAccountNumber = fromAccountNumber;
         this.toAccountNumber = toAccountNumber;
-        this.amount = amount;
+        this.amountMinor = amountMinor;
+        this.currency = currency;
         this.simulateError = false;
     }
 
-    public TransferRequest(String fromAccountNumber, String toAccountNumber, BigDecimal amount, boolean simulateError) {
+    public TransferRequest(String fromAccountNumber, String toAccountNumber, long amountMinor, String currency,
+            boolean simulateError) {
         this.fromAccountNumber = fromAccountNumber;
         this.toAccountNumber = toAccountNumber;
-        this.amount = amount;
+        this.amountMinor = amountMinor;
+        this.currency = currency;
         this.simulateError = simulateError;
     }
 
+    // The currency decides how many decimals the amount may have, so both are read together
+    @JsonCreator
+    public static TransferRequest fromJson(@JsonProperty("fromAccountNumber") String fromAccountNumber,
+            @JsonProperty("toAccountNumber") String toAccountNumber, @JsonProperty("amount") BigDecimal amount,
+            @JsonProperty("currency") String currency, @JsonProperty("simulateError") boolean simulateError) {
+        String code = currency != null ? currency : MinorUnits.DEFAULT_CURRENCY;
+        return new TransferRequest(fromAccountNumber, toAccountNumber,
+                amount != null ? MinorUnits.fromDecimal(amount, code) : 0, code, simulateError);
+    }
+
     // Getters and Setters
     public String getFromAccountNumber() {
         return fromAccountNumber;
@@ -43,12 +65,25 @@ public class TransferRequest {
         this.toAccountNumber = toAccountNumber;
     }
 
+    @JsonIgnore
+    public long getAmountMinor() {
+        return amountMinor;
+    }
+
+    public void setAmountMinor(long amountMinor) {
+        this.amountMinor = amountMinor;
+    }
+
     public BigDecimal getAmount() {
-        return amount;
+        return MinorUnits.toDecimal(amountMinor, currency);
+    }
+
+    public String getCurrency() {
+        return currency;
     }
 
-    public void setAmount(BigDecimal amount) {
-        this.amount = amount;
+    public void setCurrency(String currency) {
+        this.currency = currency;
     }
 
     public boolean isSimulateError() {
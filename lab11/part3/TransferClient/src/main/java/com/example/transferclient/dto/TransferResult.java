@@ -0,0 +1,82 @@
+package com.example.transferclient.dto;
+
+import com.example.transferclient.model.MinorUnits;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.math.BigDecimal;
+
+public class TransferResult {
+    private String fromAccountNumber;
+    private String toAccountNumber;
+    private long amountMinor;
+    private String currency;
+    private boolean success;
+    private String message;
+
+    // Constructors
+    public TransferResult() {
+    }
+
+    public TransferResult(TransferRequest request, boolean success, String message) {
+        this.fromAccountNumber = request.getFromAccountNumber();
+        this.toAccountNumber = request.getToAccountNumber();
+        this.amountMinor = request.getAmountMinor();
+        this.currency = request.getCurrency();
+        this.success = success;
+        this.message = message;
+    }
+
+    // Getters and Setters
+    public String getFromAccountNumber() {
+        return fromAccountNumber;
+    }
+
+    public void setFromAccountNumber(String fromAccountNumber) {
+        this.fromAccountNumber = fromAccountNumber;
+    }
+
+    public String getToAccountNumber() {
+        return toAccountNumber;
+    }
+
+    public void setToAccountNumber(String toAccountNumber) {
+        this.toAccountNumber = toAccountNumber;
+    }
+
+    @JsonIgnore
+    public long getAmountMinor() {
+        return amountMinor;
+    }
+
+    public void setAmountMinor(long amountMinor) {
+        this.amountMinor = amountMinor;
+    }
+
+    public BigDecimal getAmount() {
+        return MinorUnits.toDecimal(amountMinor, currency);
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
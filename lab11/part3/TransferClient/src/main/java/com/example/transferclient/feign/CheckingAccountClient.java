@@ -1,17 +1,72 @@
 package com.example.transferclient.feign;
 
+import com.example.transferclient.dto.AccountRequest;
+import com.example.transferclient.dto.AccountSnapshot;
 import com.example.transferclient.dto.TransactionRequest;
+import com.example.transferclient.dto.TransactionResult;
+import com.example.transferclient.shard.ShardRouter;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 
-@FeignClient(name = "checking-account-service", url = "http://localhost:8082")
+import java.net.URI;
+import java.util.List;
+
+/**
+ * Every call goes to the shard given as its first argument, picked by {@link ShardRouter}; the configured url
+ * is only the default when sharding is off.
+ */
+@FeignClient(name = "checking-account-service", url = "${services.checking-account}")
 public interface CheckingAccountClient {
 
     @PostMapping("/api/checking-accounts/transfer-from")
-    ResponseEntity<String> transferFrom(@RequestBody TransactionRequest request);
+    ResponseEntity<String> transferFrom(URI shard, @RequestHeader("Idempotency-Key") String idempotencyKey,
+            @RequestBody TransactionRequest request);
 
     @PostMapping("/api/checking-accounts/transfer-to")
-    ResponseEntity<String> transferTo(@RequestBody TransactionRequest request);
+    ResponseEntity<String> transferTo(URI shard, @RequestHeader("Idempotency-Key") String idempotencyKey,
+            @RequestBody TransactionRequest request);
+
+    @PostMapping("/api/checking-accounts/transfer-from/batch")
+    ResponseEntity<List<TransactionResult>> transferFromBatch(URI shard,
+            @RequestHeader("Idempotency-Key") String idempotencyKey, @RequestBody List<TransactionRequest> requests);
+
+    @PostMapping("/api/checking-accounts/transfer-to/batch")
+    ResponseEntity<List<TransactionResult>> transferToBatch(URI shard,
+            @RequestHeader("Idempotency-Key") String idempotencyKey, @RequestBody List<TransactionRequest> requests);
+
+    // On the shard ShardRouter picks for the new account number
+    @PostMapping("/api/checking-accounts")
+    ResponseEntity<AccountSnapshot> createAccount(URI shard, @RequestBody AccountRequest account);
+
+    // Hold operations are addressed by hold id and idempotent, so they are sent as PUT and DELETE and retried
+    @PutMapping("/api/checking-accounts/holds/{holdId}")
+    ResponseEntity<String> placeHold(URI shard, @PathVariable("holdId") String holdId,
+            @RequestBody TransactionRequest request);
+
+    @PutMapping("/api/checking-accounts/holds/{holdId}/confirmation")
+    ResponseEntity<String> confirmHold(URI shard, @PathVariable("holdId") String holdId);
+
+    @DeleteMapping("/api/checking-accounts/holds/{holdId}")
+    ResponseEntity<String> releaseHold(URI shard, @PathVariable("holdId") String holdId);
+
+    // Moving accounts between shards, see ShardRebalancer
+    @GetMapping("/api/checking-accounts")
+    ResponseEntity<List<AccountSnapshot>> getAccounts(URI shard, @RequestParam("after") String after,
+            @RequestParam("limit") int limit);
+
+    @PostMapping("/api/checking-accounts/handoff")
+    ResponseEntity<List<AccountRequest>> handOff(URI shard, @RequestHeader("Idempotency-Key") String idempotencyKey,
+            @RequestBody List<String> accountNumbers);
+
+    @PostMapping("/api/checking-accounts/adopt")
+    ResponseEntity<List<String>> adopt(URI shard, @RequestHeader("Idempotency-Key") String idempotencyKey,
+            @RequestBody List<AccountRequest> accounts);
 }
@@ -0,0 +1,65 @@
+package com.example.transferclient.feign;
+
+import com.example.transferclient.deadline.Deadline;
+import com.example.transferclient.deadline.DeadlineExceededException;
+import feign.Capability;
+import feign.Client;
+import feign.Request;
+import feign.Response;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.net.SocketTimeoutException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Passes the current request's {@link Deadline} on to the account services. Each attempt carries
+ * {@code X-Request-Deadline}, and its read timeout is cut to the time that is left. An attempt fails with
+ * {@link DeadlineExceededException} if it would start after the deadline, times out because the deadline cut
+ * its read timeout, or is answered with the service's 504 for an expired deadline. That is a runtime exception, so Feign does not retry it, and the circuit
+ * breaker ignores it: the caller ran out of time, the service did not fail.
+ */
+@Component
+@Order(0)
+public class FeignDeadlineCapability implements Capability {
+
+    @Override
+    public Client enrich(Client client) {
+        return (request, options) -> {
+            Deadline deadline = Deadline.current();
+            if (deadline == null) {
+                return client.execute(request, options);
+            }
+            deadline.check();
+
+            Map<String, Collection<String>> headers = new LinkedHashMap<>(request.headers());
+            headers.put(Deadline.HEADER, Collections.singletonList(String.valueOf(deadline.getEpochMillis())));
+            Request withDeadline = Request.create(request.httpMethod(), request.url(), headers, request.body(),
+                    request.charset(), request.requestTemplate());
+            long readTimeoutMs = Math.min(options.readTimeoutUnit().toMillis(options.readTimeout()),
+                    Math.max(1, deadline.remainingMillis()));
+            Request.Options remaining = new Request.Options(options.connectTimeout(), options.connectTimeoutUnit(),
+                    readTimeoutMs, TimeUnit.MILLISECONDS, options.isFollowRedirects());
+            Response response;
+            try {
+                response = client.execute(withDeadline, remaining);
+            } catch (SocketTimeoutException e) {
+                if (deadline.isExpired()) {
+                    throw new DeadlineExceededException(-deadline.remainingMillis(), e);
+                }
+                throw e;
+            }
+            // The service dropped the request unprocessed because it arrived too late
+            if (response.status() == HttpStatus.GATEWAY_TIMEOUT.value() && deadline.isExpired()) {
+                response.close();
+                throw new DeadlineExceededException(-deadline.remainingMillis());
+            }
+            return response;
+        };
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.transferclient.feign;
+
+import feign.Capability;
+import feign.Client;
+import feign.Request;
+import feign.Response;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every HTTP exchange made by the Feign account-service clients as {@code feign.client.requests},
+ * tagged by client, method, status and outcome. Each retry attempt is a separate sample, so the percentiles
+ * show the latency a single attempt sees, which is what the connect and read timeouts apply to.
+ * It wraps the transport innermost, so calls shed by {@link FeignResilienceCapability} are not timed here.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class FeignMetricsCapability implements Capability {
+
+    public static final String METRIC_NAME = "feign.client.requests";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Override
+    public Client enrich(Client client) {
+        return (request, options) -> {
+            long start = System.nanoTime();
+            String status = "NONE";
+            String outcome = "UNKNOWN";
+            try {
+                Response response = client.execute(request, options);
+                status = String.valueOf(response.status());
+                outcome = outcome(response.status());
+                return response;
+            } catch (SocketTimeoutException e) {
+                outcome = "TIMEOUT";
+                throw e;
+            } catch (IOException e) {
+                outcome = "IO_ERROR";
+                throw e;
+            } finally {
+                timer(request, status, outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        };
+    }
+
+    private Timer timer(Request request, String status, String outcome) {
+        return Timer.builder(METRIC_NAME)
+                .description("Account-service calls made through Feign, one sample per attempt")
+                .tag("client", request.requestTemplate().feignTarget().name())
+                .tag("method", request.requestTemplate().methodMetadata().method().getName())
+                .tag("status", status)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static String outcome(int status) {
+        if (status >= 200 && status < 300) {
+            return "SUCCESS";
+        }
+        if (status >= 400 && status < 500) {
+            return "CLIENT_ERROR";
+        }
+        if (status >= 500) {
+            return "SERVER_ERROR";
+        }
+        return "UNKNOWN";
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.transferclient.feign;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.io.HttpClientConnectionManager;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.pool.PoolStats;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.URISyntaxException;
+import java.util.function.Function;
+
+/**
+ * Connection pool gauges for the HC5 Feign transport: {@code feign.pool.connections} by state (leased,
+ * available, pending) and {@code feign.pool.max}, for the whole pool and per account service. Nothing is
+ * registered when the transport is the JDK default (feign.httpclient.hc5.enabled=false).
+ */
+@Component
+public class FeignPoolMetrics implements MeterBinder {
+
+    @Autowired
+    private ObjectProvider<HttpClientConnectionManager> connectionManager;
+
+    @Value("${services.checking-account}")
+    private String checkingAccountUrl;
+
+    @Value("${services.saving-account}")
+    private String savingAccountUrl;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        HttpClientConnectionManager manager = connectionManager.getIfAvailable();
+        if (!(manager instanceof PoolingHttpClientConnectionManager)) {
+            return;
+        }
+        PoolingHttpClientConnectionManager pool = (PoolingHttpClientConnectionManager) manager;
+        register(registry, pool, "all", PoolingHttpClientConnectionManager::getTotalStats);
+        register(registry, pool, "checking-account-service", routeStats(checkingAccountUrl));
+        register(registry, pool, "saving-account-service", routeStats(savingAccountUrl));
+    }
+
+    private static void register(MeterRegistry registry, PoolingHttpClientConnectionManager pool, String route,
+            Function<PoolingHttpClientConnectionManager, PoolStats> stats) {
+        gauge(registry, pool, "feign.pool.connections", route, "leased", p -> stats.apply(p).getLeased());
+        gauge(registry, pool, "feign.pool.connections", route, "available", p -> stats.apply(p).getAvailable());
+        gauge(registry, pool, "feign.pool.connections", route, "pending", p -> stats.apply(p).getPending());
+        Gauge.builder("feign.pool.max", pool, p -> stats.apply(p).getMax())
+                .description("Connection limit of the Feign HTTP pool")
+                .tag("route", route)
+                .register(registry);
+    }
+
+    private static void gauge(MeterRegistry registry, PoolingHttpClientConnectionManager pool, String name,
+            String route, String state, Function<PoolingHttpClientConnectionManager, Integer> value) {
+        Gauge.builder(name, pool, p -> value.apply(p))
+                .description("Connections of the Feign HTTP pool; pending counts requests waiting for one")
+                .tag("route", route)
+                .tag("state", state)
+                .register(registry);
+    }
+
+    private static Function<PoolingHttpClientConnectionManager, PoolStats> routeStats(String url) {
+        try {
+            HttpRoute route = new HttpRoute(HttpHost.create(url));
+            return pool -> pool.getStats(route);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Invalid account service URL " + url, e);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.transferclient.feign;
+
+import feign.FeignException;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Tells an account service's refusal of a call apart from a failure whose outcome is unknown.
+ */
+public final class FeignRejections {
+
+    private FeignRejections() {
+    }
+
+    /**
+     * A 4xx answer means the account service looked at the request and refused it (e.g. insufficient funds), so
+     * repeating it gives the same answer. 408 and 429 are the exceptions: the request was not handled, or not in
+     * time, and may succeed when repeated. Connection errors, timeouts, 5xx answers (including the 504 for an
+     * expired deadline) and a {@code DeadlineExceededException} leave it open whether the call took effect.
+     */
+    public static boolean isRejection(Throwable e) {
+        if (!(e instanceof FeignException)) {
+            return false;
+        }
+        return isRejection(((FeignException) e).status());
+    }
+
+    // The same test for the status of an answer that is not turned into an exception, e.g. on WebClient
+    public static boolean isRejection(int status) {
+        return status >= 400 && status < 500
+                && status != HttpStatus.REQUEST_TIMEOUT.value()
+                && status != HttpStatus.TOO_MANY_REQUESTS.value();
+    }
+
+    /**
+     * The call was turned away by this client's own bulkhead or open circuit breaker, so it never went out.
+     */
+    public static boolean wasNotSent(Throwable e) {
+        return e instanceof BulkheadFullException || e instanceof CallNotPermittedException;
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.transferclient.feign;
+
+import feign.Capability;
+import feign.Client;
+import feign.Request;
+import feign.Response;
+import feign.Target;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-downstream bulkhead and circuit breaker around the Feign account-service clients, named after the
+ * client ({@code checking-account-service}, {@code saving-account-service}) and configured under
+ * {@code resilience4j.*}. A slow or failing service can then only hold its own share of request threads,
+ * and once its breaker opens calls to it fail at once with {@code CallNotPermittedException} instead of
+ * waiting for a timeout; after the open period a few probe calls decide whether it closes again.
+ *
+ * With sharding, calls to a shard other than the configured url get a bulkhead and breaker of their own, named
+ * {@code <client>@<host:port>} and built from the {@code default} configs, so one failing shard does not cut off
+ * the others.
+ *
+ * Both exceptions are runtime exceptions, so Feign does not retry them. I/O errors and 5xx answers count
+ * as failures; 4xx answers are business rejections (e.g. insufficient funds) and count as successes.
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE)
+public class FeignResilienceCapability implements Capability {
+
+    private static final String DEFAULT_CONFIG = "default";
+
+    @Autowired
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+
+    @Autowired
+    private BulkheadRegistry bulkheadRegistry;
+
+    @Override
+    public Client enrich(Client client) {
+        return (request, options) -> {
+            String name = name(request);
+            Bulkhead bulkhead = bulkheadRegistry.bulkhead(name, DEFAULT_CONFIG);
+            CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker(name, DEFAULT_CONFIG);
+
+            bulkhead.acquirePermission();
+            try {
+                circuitBreaker.acquirePermission();
+                long start = System.nanoTime();
+                try {
+                    Response response = client.execute(request, options);
+                    long duration = System.nanoTime() - start;
+                    if (response.status() >= 500) {
+                        circuitBreaker.onError(duration, TimeUnit.NANOSECONDS, new ServerError(response.status()));
+                    } else {
+                        circuitBreaker.onSuccess(duration, TimeUnit.NANOSECONDS);
+                    }
+                    return response;
+                } catch (IOException | RuntimeException e) {
+                    circuitBreaker.onError(System.nanoTime() - start, TimeUnit.NANOSECONDS, e);
+                    throw e;
+                }
+            } finally {
+                bulkhead.onComplete();
+            }
+        };
+    }
+
+    private static String name(Request request) {
+        Target<?> target = request.requestTemplate().feignTarget();
+        if (request.url().startsWith(target.url())) {
+            return target.name();
+        }
+        return target.name() + "@" + URI.create(request.url()).getAuthority();
+    }
+
+    // Recorded against the breaker only; the response itself is still returned to Feign's decoder
+    private static class ServerError extends RuntimeException {
+        ServerError(int status) {
+            super("HTTP " + status, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.transferclient.feign;
+
+import feign.Request;
+import feign.RetryableException;
+import feign.Retryer;
+
+/**
+ * Retries I/O failures only for requests that carry an Idempotency-Key header, or that use PUT or DELETE.
+ * The account services deduplicate keyed requests, and their PUT and DELETE endpoints (the hold operations)
+ * are idempotent, so resending one after a timeout cannot move money twice. Other requests are never retried.
+ */
+public class IdempotentRetryer implements Retryer {
+
+    static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    private final Retryer delegate;
+
+    public IdempotentRetryer() {
+        this(new Retryer.Default(50, 1000, 3));
+    }
+
+    private IdempotentRetryer(Retryer delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void continueOrPropagate(RetryableException e) {
+        if (!e.hasRequest() || !isIdempotent(e.request())) {
+            throw e;
+        }
+        delegate.continueOrPropagate(e);
+    }
+
+    private static boolean isIdempotent(Request request) {
+        return request.headers().containsKey(IDEMPOTENCY_KEY)
+                || request.httpMethod() == Request.HttpMethod.PUT
+                || request.httpMethod() == Request.HttpMethod.DELETE;
+    }
+
+    @Override
+    public Retryer clone() {
+        return new IdempotentRetryer(delegate.clone());
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.transferclient.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One bulk call of the step a {@link BatchChunk} is at, stored with the chunk before it is sent: the shard it
+ * goes to, its Idempotency-Key and the legs it carries, as indexes into the chunk's transfers. A replay goes to
+ * the same shard under the same key, even if the accounts have been moved since.
+ */
+public class BatchCall {
+    private String shard;
+    private String idempotencyKey;
+    private List<Integer> legs = new ArrayList<>();
+
+    // Constructors
+    public BatchCall() {
+    }
+
+    public BatchCall(String shard, String idempotencyKey) {
+        this.shard = shard;
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    // Getters and Setters
+    public String getShard() {
+        return shard;
+    }
+
+    public void setShard(String shard) {
+        this.shard = shard;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public List<Integer> getLegs() {
+        return legs;
+    }
+
+    public void setLegs(List<Integer> legs) {
+        this.legs = legs;
+    }
+}
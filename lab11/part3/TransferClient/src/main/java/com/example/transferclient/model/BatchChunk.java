@@ -0,0 +1,154 @@
+package com.example.transferclient.model;
+
+import com.example.transferclient.dto.TransferDirection;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * One chunk of a batch transfer, written before its first bulk call goes out. Each step stores its bulk calls
+ * before sending them, so a chunk cut short by a crash, or whose calls got no answer, is resumed by replaying the
+ * calls of its step to the same shards under the same Idempotency-Keys; the account services answer a replay
+ * with the results of the first time.
+ */
+@Entity
+@Table(name = "batch_chunks", indexes = @Index(name = "idx_batch_chunks_updated_at", columnList = "updated_at"))
+public class BatchChunk {
+
+    @Id
+    @Column(name = "id", length = 36)
+    private String id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "direction", nullable = false)
+    private TransferDirection direction;
+
+    // JSON: the transfers of the chunk
+    @Lob
+    @Column(name = "transfers", nullable = false)
+    private String transfers;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "state", nullable = false)
+    private ChunkState state;
+
+    // JSON: the bulk calls of the current step
+    @Lob
+    @Column(name = "calls", nullable = false)
+    private String calls;
+
+    @Column(name = "attempts")
+    private int attempts;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    // Constructors
+    public BatchChunk() {
+        this.state = ChunkState.WITHDRAWING;
+        this.createdAt = LocalDateTime.now();
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public BatchChunk(String id, TransferDirection direction, String transfers) {
+        this();
+        this.id = id;
+        this.direction = direction;
+        this.transfers = transfers;
+    }
+
+    /**
+     * Move on to the next step, whose calls are sent once this is saved.
+     */
+    public void advanceTo(ChunkState state, String calls) {
+        this.state = state;
+        this.calls = calls;
+        this.lastError = null;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public void recordFailedAttempt(String error) {
+        this.attempts++;
+        this.lastError = error != null && error.length() > 1000 ? error.substring(0, 1000) : error;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    // Getters and Setters
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public TransferDirection getDirection() {
+        return direction;
+    }
+
+    public void setDirection(TransferDirection direction) {
+        this.direction = direction;
+    }
+
+    public String getTransfers() {
+        return transfers;
+    }
+
+    public void setTransfers(String transfers) {
+        this.transfers = transfers;
+    }
+
+    public ChunkState getState() {
+        return state;
+    }
+
+    public void setState(ChunkState state) {
+        this.state = state;
+    }
+
+    public String getCalls() {
+        return calls;
+    }
+
+    public void setCalls(String calls) {
+        this.calls = calls;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.transferclient.model;
+
+/**
+ * Step a {@link BatchChunk} is at. A chunk whose legs all have a final outcome is deleted.
+ */
+public enum ChunkState {
+    // Recorded; the withdrawals may or may not have been applied yet
+    WITHDRAWING,
+    // Withdrawals answered; the deposits of the withdrawn legs may or may not have been applied yet
+    DEPOSITING,
+    // Deposits answered; the refunds of the legs whose deposit was rejected may or may not have been applied yet
+    REFUNDING
+}
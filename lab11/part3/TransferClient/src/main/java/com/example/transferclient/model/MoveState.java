@@ -0,0 +1,15 @@
+package com.example.transferclient.model;
+
+/**
+ * Progress of a {@link ShardMove}. A move that finishes is deleted.
+ */
+public enum MoveState {
+    // Recorded; the old shard may or may not have handed the accounts off yet
+    HANDING_OFF,
+    // Handed off with the balances stored in the move; the new shard may or may not have adopted them
+    ADOPTING,
+    // Adopted as far as the new shard would; the rest go back to the old shard
+    RETURNING,
+    // Accounts neither shard would take; the move keeps their balances for manual intervention
+    FAILED
+}
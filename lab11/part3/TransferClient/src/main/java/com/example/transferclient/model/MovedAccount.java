@@ -0,0 +1,74 @@
+package com.example.transferclient.model;
+
+import javax.persistence.*;
+
+/**
+ * An account already moved to its shard on a ring that is not switched to yet, so its legs follow it there while
+ * the other accounts are still routed by the old ring. Deleted once the ring it was moved for is switched to.
+ */
+@Entity
+@Table(name = "moved_accounts", indexes = @Index(name = "idx_moved_accounts_service", columnList = "service"))
+public class MovedAccount {
+
+    // <service>/<account number>
+    @Id
+    @Column(name = "id")
+    private String id;
+
+    @Column(name = "service", nullable = false)
+    private String service;
+
+    @Column(name = "account_number", nullable = false)
+    private String accountNumber;
+
+    @Column(name = "shard_id", nullable = false)
+    private String shardId;
+
+    // Constructors
+    public MovedAccount() {
+    }
+
+    public MovedAccount(String service, String accountNumber, String shardId) {
+        this.id = id(service, accountNumber);
+        this.service = service;
+        this.accountNumber = accountNumber;
+        this.shardId = shardId;
+    }
+
+    // Getters and Setters
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getService() {
+        return service;
+    }
+
+    public void setService(String service) {
+        this.service = service;
+    }
+
+    public String getAccountNumber() {
+        return accountNumber;
+    }
+
+    public void setAccountNumber(String accountNumber) {
+        this.accountNumber = accountNumber;
+    }
+
+    public String getShardId() {
+        return shardId;
+    }
+
+    public void setShardId(String shardId) {
+        this.shardId = shardId;
+    }
+
+    public static String id(String service, String accountNumber) {
+        return service + "/" + accountNumber;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.transferclient.model;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The shards an account service's accounts are placed on: those of the ring last switched to, by shard id. A shard
+ * that registers without being one of them is added to the ring only once the rebalancer has moved accounts onto
+ * it, also after a restart of TransferClient.
+ */
+@Entity
+@Table(name = "placed_rings")
+public class PlacedRing {
+
+    @Id
+    @Column(name = "service")
+    private String service;
+
+    // Comma-separated, in id order
+    @Column(name = "shard_ids", nullable = false, length = 4000)
+    private String shardIds;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    // Constructors
+    public PlacedRing() {
+    }
+
+    public PlacedRing(String service, Collection<String> shardIds) {
+        this.service = service;
+        this.shardIds = String.join(",", shardIds);
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    // Getters and Setters
+    public String getService() {
+        return service;
+    }
+
+    public void setService(String service) {
+        this.service = service;
+    }
+
+    public String getShardIds() {
+        return shardIds;
+    }
+
+    public void setShardIds(String shardIds) {
+        this.shardIds = shardIds;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    // Business methods
+    public Set<String> shardIdSet() {
+        return new LinkedHashSet<>(Arrays.asList(shardIds.split(",")));
+    }
+}
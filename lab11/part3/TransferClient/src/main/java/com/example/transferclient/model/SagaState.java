@@ -0,0 +1,18 @@
+package com.example.transferclient.model;
+
+public enum SagaState {
+    STARTED,
+    WITHDRAWN,
+    COMPLETED,
+    COMPENSATING,
+    COMPENSATED,
+    FAILED,
+    // Two-step transfers handed over by TransferService: amount on hold, deposit outcome unknown
+    HELD,
+    // Two-step transfers handed over by TransferService: deposit applied, hold not yet confirmed
+    CONFIRMING;
+
+    public boolean isTerminal() {
+        return this == COMPLETED || this == COMPENSATED || this == FAILED;
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.transferclient.model;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * One batch of accounts moved from one shard to another by the rebalancer, written before the old shard is asked to
+ * hand them off. Between the hand-off and the adoption the accounts exist only here, so a move cut short by a crash
+ * or a failed call is resumed from this record. The calls carry Idempotency-Keys derived from the move id, so
+ * repeating one answers as the first time.
+ */
+@Entity
+@Table(name = "shard_moves", indexes = @Index(name = "idx_shard_moves_service", columnList = "service, created_at"))
+public class ShardMove {
+
+    @Id
+    @Column(name = "id", length = 36)
+    private String id;
+
+    @Column(name = "service", nullable = false)
+    private String service;
+
+    @Column(name = "from_shard", nullable = false)
+    private String fromShard;
+
+    @Column(name = "to_shard", nullable = false)
+    private String toShard;
+
+    // JSON: the account numbers asked for
+    @Lob
+    @Column(name = "account_numbers", nullable = false)
+    private String accountNumbers;
+
+    // JSON: the accounts handed off, with their balances
+    @Lob
+    @Column(name = "handed_off")
+    private String handedOff;
+
+    // JSON: the account numbers the new shard created
+    @Lob
+    @Column(name = "adopted")
+    private String adopted;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "state", nullable = false)
+    private MoveState state;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    // Constructors
+    public ShardMove() {
+        this.state = MoveState.HANDING_OFF;
+        this.createdAt = LocalDateTime.now();
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public ShardMove(String id, String service, String fromShard, String toShard, String accountNumbers) {
+        this();
+        this.id = id;
+        this.service = service;
+        this.fromShard = fromShard;
+        this.toShard = toShard;
+        this.accountNumbers = accountNumbers;
+    }
+
+    // Getters and Setters
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getService() {
+        return service;
+    }
+
+    public void setService(String service) {
+        this.service = service;
+    }
+
+    public String getFromShard() {
+        return fromShard;
+    }
+
+    public void setFromShard(String fromShard) {
+        this.fromShard = fromShard;
+    }
+
+    public String getToShard() {
+        return toShard;
+    }
+
+    public void setToShard(String toShard) {
+        this.toShard = toShard;
+    }
+
+    public String getAccountNumbers() {
+        return accountNumbers;
+    }
+
+    public void setAccountNumbers(String accountNumbers) {
+        this.accountNumbers = accountNumbers;
+    }
+
+    public String getHandedOff() {
+        return handedOff;
+    }
+
+    public void setHandedOff(String handedOff) {
+        this.handedOff = handedOff;
+    }
+
+    public String getAdopted() {
+        return adopted;
+    }
+
+    public void setAdopted(String adopted) {
+        this.adopted = adopted;
+    }
+
+    public MoveState getState() {
+        return state;
+    }
+
+    public void setState(MoveState state) {
+        this.state = state;
+        this.lastError = null;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError != null && lastError.length() > 1000 ? lastError.substring(0, 1000) : lastError;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.transferclient.model;
+
+import com.example.transferclient.dto.TransferDirection;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "transfer_sagas", indexes = @Index(name = "idx_transfer_sagas_state", columnList = "state, updated_at"))
+public class TransferSaga {
+
+    @Id
+    @Column(name = "id", length = 36)
+    private String id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "direction", nullable = false)
+    private TransferDirection direction;
+
+    @Column(name = "from_account_number", nullable = false)
+    private String fromAccountNumber;
+
+    @Column(name = "to_account_number", nullable = false)
+    private String toAccountNumber;
+
+    @Column(name = "amount_minor", nullable = false)
+    private long amountMinor;
+
+    @Column(name = "currency", nullable = false, length = 3)
+    private String currency;
+
+    @Column(name = "simulate_error")
+    private boolean simulateError;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "state", nullable = false)
+    private SagaState state;
+
+    @Column(name = "attempts")
+    private int attempts;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    // Constructors
+    public TransferSaga() {
+        this.state = SagaState.STARTED;
+        this.createdAt = LocalDateTime.now();
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public TransferSaga(String id, TransferDirection direction, String fromAccountNumber, String toAccountNumber,
+            long amountMinor, String currency, boolean simulateError) {
+        this();
+        this.id = id;
+        this.direction = direction;
+        this.fromAccountNumber = fromAccountNumber;
+        this.toAccountNumber = toAccountNumber;
+        this.amountMinor = amountMinor;
+        this.currency = currency;
+        this.simulateError = simulateError;
+    }
+
+    // Getters and Setters
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public TransferDirection getDirection() {
+        return direction;
+    }
+
+    public void setDirection(TransferDirection direction) {
+        this.direction = direction;
+    }
+
+    public String getFromAccountNumber() {
+        return fromAccountNumber;
+    }
+
+    public void setFromAccountNumber(String fromAccountNumber) {
+        this.fromAccountNumber = fromAccountNumber;
+    }
+
+    public String getToAccountNumber() {
+        return toAccountNumber;
+    }
+
+    public void setToAccountNumber(String toAccountNumber) {
+        this.toAccountNumber = toAccountNumber;
+    }
+
+    @JsonIgnore
+    public long getAmountMinor() {
+        return amountMinor;
+    }
+
+    public void setAmountMinor(long amountMinor) {
+        this.amountMinor = amountMinor;
+    }
+
+    // Decimal view for the JSON API
+    public BigDecimal getAmount() {
+        return MinorUnits.toDecimal(amountMinor, currency);
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+
+    public boolean isSimulateError() {
+        return simulateError;
+    }
+
+    public void setSimulateError(boolean simulateError) {
+        this.simulateError = simulateError;
+    }
+
+    public SagaState getState() {
+        return state;
+    }
+
+    public void setState(SagaState state) {
+        this.state = state;
+        this.attempts = 0;
+        this.lastError = null;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    // Business methods
+    public void recordFailedAttempt(String error) {
+        this.attempts++;
+        this.lastError = error != null && error.length() > 1000 ? error.substring(0, 1000) : error;
+        this.updatedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.transferclient.repository;
+
+import com.example.transferclient.model.BatchChunk;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface BatchChunkRepository extends JpaRepository<BatchChunk, String> {
+
+    // Unfinished chunks that have not moved since the cutoff, oldest first
+    List<BatchChunk> findByUpdatedAtBeforeOrderByCreatedAt(LocalDateTime cutoff);
+}
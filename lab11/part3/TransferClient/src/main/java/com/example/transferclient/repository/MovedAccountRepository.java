@@ -0,0 +1,13 @@
+package com.example.transferclient.repository;
+
+import com.example.transferclient.model.MovedAccount;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface MovedAccountRepository extends JpaRepository<MovedAccount, String> {
+
+    List<MovedAccount> findByService(String service);
+}
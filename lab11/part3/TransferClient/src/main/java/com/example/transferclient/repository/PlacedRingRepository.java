@@ -0,0 +1,9 @@
+package com.example.transferclient.repository;
+
+import com.example.transferclient.model.PlacedRing;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface PlacedRingRepository extends JpaRepository<PlacedRing, String> {
+}
@@ -0,0 +1,15 @@
+package com.example.transferclient.repository;
+
+import com.example.transferclient.model.MoveState;
+import com.example.transferclient.model.ShardMove;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ShardMoveRepository extends JpaRepository<ShardMove, String> {
+
+    // Unfinished moves of a service, oldest first
+    List<ShardMove> findByServiceAndStateNotOrderByCreatedAt(String service, MoveState state);
+}
@@ -0,0 +1,16 @@
+package com.example.transferclient.repository;
+
+import com.example.transferclient.model.SagaState;
+import com.example.transferclient.model.TransferSaga;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface TransferSagaRepository extends JpaRepository<TransferSaga, String> {
+
+    List<TransferSaga> findByStateInAndUpdatedAtBefore(Collection<SagaState> states, LocalDateTime cutoff);
+}
@@ -0,0 +1,490 @@
+package com.example.transferclient.service;
+
+import com.example.transferclient.deadline.Deadline;
+import com.example.transferclient.dto.BatchTransferRequest;
+import com.example.transferclient.dto.TransactionRequest;
+import com.example.transferclient.dto.TransactionResult;
+import com.example.transferclient.dto.TransferDirection;
+import com.example.transferclient.dto.TransferRequest;
+import com.example.transferclient.dto.TransferResult;
+import com.example.transferclient.feign.CheckingAccountClient;
+import com.example.transferclient.feign.FeignRejections;
+import com.example.transferclient.feign.SavingAccountClient;
+import com.example.transferclient.model.BatchCall;
+import com.example.transferclient.model.BatchChunk;
+import com.example.transferclient.model.ChunkState;
+import com.example.transferclient.repository.BatchChunkRepository;
+import com.example.transferclient.shard.ShardRouter;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.net.URI;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Executes large lists of transfers with bulk calls to the account services.
+ * Legs are grouped by source account and sent in chunks, so a chunk costs at most
+ * three round-trips (withdraw, deposit, refund) instead of two per transfer.
+ * With sharding each step of a chunk is one bulk call per shard, sent one after another.
+ *
+ * Every chunk is recorded as a {@link BatchChunk} before its withdrawals go out, and every step stores its bulk
+ * calls, each with the shard it goes to and an Idempotency-Key derived from the chunk id, before sending them.
+ * A call without an answer is sent again under its key; if it still gets none, or this instance stops, the chunk
+ * stays at its step and is resumed every transfer.batch.resume-interval-ms by replaying the step's calls. So a
+ * leg whose outcome is unknown is never refunded or deposited as if it had been rejected, and a withdrawn leg is
+ * never left without its deposit or refund.
+ */
+@Service
+public class BatchTransferService {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchTransferService.class);
+
+    private static final TypeReference<List<TransferRequest>> TRANSFERS = new TypeReference<>() { };
+    private static final TypeReference<List<BatchCall>> CALLS = new TypeReference<>() { };
+
+    @Autowired
+    private CheckingAccountClient checkingAccountClient;
+
+    @Autowired
+    private SavingAccountClient savingAccountClient;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private BatchChunkRepository batchChunkRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${transfer.batch.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${transfer.batch.replay-attempts:3}")
+    private int replayAttempts;
+
+    @Value("${transfer.batch.replay-backoff-ms:200}")
+    private long replayBackoffMs;
+
+    @Value("${transfer.batch.stale-after-ms:10000}")
+    private long staleAfterMs;
+
+    // Chunks currently being advanced by this instance; resuming skips them
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    public List<TransferResult> transferBatch(BatchTransferRequest request) {
+        List<TransferRequest> transfers = request.getTransfers();
+        TransferResult[] results = new TransferResult[transfers.size()];
+
+        for (List<Integer> chunk : groupBySourceAccount(transfers)) {
+            List<TransferRequest> legs = new ArrayList<>(chunk.size());
+            for (int index : chunk) {
+                legs.add(transfers.get(index));
+            }
+            TransferResult[] chunkResults = processChunk(request.getDirection(), legs);
+            for (int i = 0; i < chunk.size(); i++) {
+                results[chunk.get(i)] = chunkResults[i];
+            }
+        }
+
+        List<TransferResult> resultList = new ArrayList<>(results.length);
+        for (TransferResult result : results) {
+            resultList.add(result);
+        }
+        return resultList;
+    }
+
+    /**
+     * Finish the chunks cut short by a crash or left at a step whose calls got no answer. Chunks of another
+     * instance are left alone until they have not moved for transfer.batch.stale-after-ms.
+     */
+    @Scheduled(initialDelayString = "${transfer.batch.resume-interval-ms:5000}",
+            fixedDelayString = "${transfer.batch.resume-interval-ms:5000}")
+    public void resumeChunks() {
+        LocalDateTime cutoff = LocalDateTime.now().minusNanos(staleAfterMs * 1_000_000);
+        for (BatchChunk chunk : batchChunkRepository.findByUpdatedAtBeforeOrderByCreatedAt(cutoff)) {
+            if (!inFlight.add(chunk.getId())) {
+                continue;
+            }
+            try {
+                log.info("Resuming batch chunk {} at {} (attempt {})", chunk.getId(), chunk.getState(),
+                        chunk.getAttempts() + 1);
+                List<TransferRequest> legs = read(chunk.getTransfers(), TRANSFERS);
+                int completed = 0;
+                int failed = 0;
+                int pending = 0;
+                for (TransferResult result : Deadline.detached(() -> advance(chunk, legs, true))) {
+                    if (result == null) {
+                        continue;
+                    }
+                    if (result.isSuccess()) {
+                        completed++;
+                    } else if (result.getMessage().startsWith("Transfer pending")) {
+                        pending++;
+                    } else {
+                        failed++;
+                    }
+                }
+                log.info("Batch chunk {}: {} legs completed, {} failed, {} still pending", chunk.getId(), completed,
+                        failed, pending);
+            } catch (RuntimeException e) {
+                log.warn("Resuming batch chunk {} failed: {}", chunk.getId(), e.getMessage());
+            } finally {
+                inFlight.remove(chunk.getId());
+            }
+        }
+    }
+
+    /**
+     * Split the transfer indexes into chunks, keeping all legs of one source account
+     * together and in their original order.
+     */
+    private List<List<Integer>> groupBySourceAccount(List<TransferRequest> transfers) {
+        Map<String, List<Integer>> byAccount = new LinkedHashMap<>();
+        for (int i = 0; i < transfers.size(); i++) {
+            byAccount.computeIfAbsent(transfers.get(i).getFromAccountNumber(), k -> new ArrayList<>()).add(i);
+        }
+
+        List<List<Integer>> chunks = new ArrayList<>();
+        List<Integer> current = new ArrayList<>();
+        for (List<Integer> legs : byAccount.values()) {
+            if (!current.isEmpty() && current.size() + legs.size() > chunkSize) {
+                chunks.add(current);
+                current = new ArrayList<>();
+            }
+            current.addAll(legs);
+        }
+        if (!current.isEmpty()) {
+            chunks.add(current);
+        }
+        return chunks;
+    }
+
+    private TransferResult[] processChunk(TransferDirection direction, List<TransferRequest> legs) {
+        TransferResult[] results = new TransferResult[legs.size()];
+        // A chunk is not started after the caller's deadline, but a started one is not cut short: a bulk call that
+        // timed out would leave its legs' outcome open until it was replayed
+        try {
+            Deadline.checkCurrent();
+        } catch (Exception e) {
+            fail(legs, results, "Withdrawal request failed: " + e.getMessage());
+            return results;
+        }
+
+        // Step 1 is recorded with the chunk, before any money moves
+        BatchChunk chunk = new BatchChunk(UUID.randomUUID().toString(), direction, write(legs));
+        List<Integer> all = new ArrayList<>(legs.size());
+        for (int i = 0; i < legs.size(); i++) {
+            all.add(i);
+        }
+        chunk.advanceTo(ChunkState.WITHDRAWING, write(plan(chunk, step(direction, ChunkState.WITHDRAWING), legs,
+                all)));
+        inFlight.add(chunk.getId());
+        try {
+            batchChunkRepository.save(chunk);
+        } catch (RuntimeException e) {
+            inFlight.remove(chunk.getId());
+            fail(legs, results, "Could not record the transfer: " + e.getMessage());
+            return results;
+        }
+        try {
+            return Deadline.detached(() -> advance(chunk, legs, false));
+        } finally {
+            inFlight.remove(chunk.getId());
+        }
+    }
+
+    /**
+     * Take the chunk from its recorded step to the end. Each step replays the calls stored for it, and the calls
+     * of the next step are stored before they are sent. A step with a call that got no answer stops the chunk
+     * there; its legs without a final outcome are answered as pending.
+     *
+     * @param resumed whether the calls of the recorded step may have been sent before
+     * @return the outcome of every leg decided on this run, by index; null for legs decided on an earlier one
+     */
+    private TransferResult[] advance(BatchChunk chunk, List<TransferRequest> legs, boolean resumed) {
+        TransferResult[] results = new TransferResult[legs.size()];
+        try {
+            if (chunk.getState() == ChunkState.WITHDRAWING) {
+                // Step 1: Withdraw every leg of the chunk from the source accounts
+                List<BatchCall> calls = read(chunk.getCalls(), CALLS);
+                TransactionResult[] withdrawResults = send(step(chunk.getDirection(), ChunkState.WITHDRAWING),
+                        calls, legs, resumed);
+                if (stopped(chunk, calls, withdrawResults, legs, results, "Withdrawal")) {
+                    return results;
+                }
+                List<Integer> withdrawn = new ArrayList<>();
+                for (BatchCall call : calls) {
+                    for (int index : call.getLegs()) {
+                        TransactionResult result = withdrawResults[index];
+                        if (result.isSuccess()) {
+                            withdrawn.add(index);
+                        } else {
+                            results[index] = new TransferResult(legs.get(index), false,
+                                    "Failed to withdraw: " + result.getMessage());
+                        }
+                    }
+                }
+                if (withdrawn.isEmpty()) {
+                    batchChunkRepository.delete(chunk);
+                    return results;
+                }
+                chunk.advanceTo(ChunkState.DEPOSITING, write(plan(chunk,
+                        step(chunk.getDirection(), ChunkState.DEPOSITING), legs, withdrawn)));
+                batchChunkRepository.save(chunk);
+                resumed = false;
+            }
+
+            List<String> reasons = new ArrayList<>(legs.size());
+            for (int i = 0; i < legs.size(); i++) {
+                reasons.add("Transfer failed during deposit");
+            }
+            if (chunk.getState() == ChunkState.DEPOSITING) {
+                // Step 2: Deposit the withdrawn legs into the destination accounts
+                List<BatchCall> calls = read(chunk.getCalls(), CALLS);
+                TransactionResult[] depositResults = send(step(chunk.getDirection(), ChunkState.DEPOSITING),
+                        calls, legs, resumed);
+                if (stopped(chunk, calls, depositResults, legs, results, "Deposit")) {
+                    return results;
+                }
+                List<Integer> toRefund = new ArrayList<>();
+                for (BatchCall call : calls) {
+                    for (int index : call.getLegs()) {
+                        TransactionResult result = depositResults[index];
+                        if (result.isSuccess()) {
+                            results[index] = new TransferResult(legs.get(index), true,
+                                    "Transfer completed successfully");
+                        } else {
+                            toRefund.add(index);
+                            reasons.set(index, "Transfer failed during deposit: " + result.getMessage());
+                        }
+                    }
+                }
+                if (toRefund.isEmpty()) {
+                    batchChunkRepository.delete(chunk);
+                    return results;
+                }
+                chunk.advanceTo(ChunkState.REFUNDING, write(plan(chunk,
+                        step(chunk.getDirection(), ChunkState.REFUNDING), legs, toRefund)));
+                batchChunkRepository.save(chunk);
+                resumed = false;
+            }
+
+            // Step 3: Roll back the withdrawals whose deposit did not go through
+            List<BatchCall> calls = read(chunk.getCalls(), CALLS);
+            TransactionResult[] refundResults = send(step(chunk.getDirection(), ChunkState.REFUNDING), calls, legs,
+                    resumed);
+            if (stopped(chunk, calls, refundResults, legs, results, "Refund")) {
+                return results;
+            }
+            for (BatchCall call : calls) {
+                for (int index : call.getLegs()) {
+                    if (refundResults[index].isSuccess()) {
+                        results[index] = new TransferResult(legs.get(index), false,
+                                reasons.get(index) + ". Withdrawal has been rolled back.");
+                    } else {
+                        results[index] = new TransferResult(legs.get(index), false, reasons.get(index)
+                                + ". Rollback also failed: " + refundResults[index].getMessage()
+                                + ". Manual intervention required!");
+                        log.error("Batch chunk {}: withdrawal of {} from {} could not be rolled back. Manual "
+                                + "intervention required!", chunk.getId(), legs.get(index).getAmount(),
+                                legs.get(index).getFromAccountNumber());
+                    }
+                }
+            }
+            batchChunkRepository.delete(chunk);
+        } catch (RuntimeException e) {
+            // Recording a step failed; the chunk stays at the last step recorded, whose calls are replayed
+            log.warn("Batch chunk {} stopped at {}: {}", chunk.getId(), chunk.getState(), e.getMessage());
+            pending(chunk, legs, results, e.getMessage());
+        }
+        return results;
+    }
+
+    /**
+     * Whether a call of the step got no answer even after its replays. The chunk then stays at the step, the
+     * error is recorded, and the legs of the step without a final outcome are answered as pending.
+     */
+    private boolean stopped(BatchChunk chunk, List<BatchCall> calls, TransactionResult[] stepResults,
+            List<TransferRequest> legs, TransferResult[] results, String stepName) {
+        for (BatchCall call : calls) {
+            for (int index : call.getLegs()) {
+                if (stepResults[index].isOutcomeUnknown()) {
+                    String error = stepName + " " + stepResults[index].getMessage();
+                    chunk.recordFailedAttempt(error);
+                    try {
+                        batchChunkRepository.save(chunk);
+                    } catch (RuntimeException e) {
+                        log.warn("Batch chunk {}: could not record the failed attempt: {}", chunk.getId(),
+                                e.getMessage());
+                    }
+                    pending(chunk, legs, results, error);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Legs still open on this chunk; the chunk is finished in the background
+    private static void pending(BatchChunk chunk, List<TransferRequest> legs, TransferResult[] results,
+            String error) {
+        for (int i = 0; i < legs.size(); i++) {
+            if (results[i] == null) {
+                results[i] = new TransferResult(legs.get(i), false, "Transfer pending: " + error
+                        + ". It will be completed in the background with batch chunk " + chunk.getId());
+            }
+        }
+    }
+
+    private static void fail(List<TransferRequest> legs, TransferResult[] results, String message) {
+        for (int i = 0; i < legs.size(); i++) {
+            results[i] = new TransferResult(legs.get(i), false, message);
+        }
+    }
+
+    /**
+     * The bulk calls of a step: one per shard holding the accounts of the given legs, each with a key of its own.
+     */
+    private List<BatchCall> plan(BatchChunk chunk, Step step, List<TransferRequest> legs, List<Integer> indexes) {
+        Map<URI, BatchCall> byShard = new LinkedHashMap<>();
+        for (int index : indexes) {
+            URI shard = shardRouter.route(step.service, step.account.apply(legs.get(index)));
+            byShard.computeIfAbsent(shard, k -> new BatchCall(k.toString(),
+                    chunk.getId() + ":" + step.name + ":" + byShard.size())).getLegs().add(index);
+        }
+        return new ArrayList<>(byShard.values());
+    }
+
+    /**
+     * Send the calls of a step and answer with the result of each of their legs, by index. The legs of a shard
+     * that rejects the call get a failed result carrying the error. If a call still gets no answer after its
+     * replays, its legs are marked as having an unknown outcome.
+     */
+    private TransactionResult[] send(Step step, List<BatchCall> calls, List<TransferRequest> legs, boolean resumed) {
+        TransactionResult[] results = new TransactionResult[legs.size()];
+        for (BatchCall call : calls) {
+            List<TransactionRequest> shardLegs = new ArrayList<>(call.getLegs().size());
+            for (int index : call.getLegs()) {
+                TransferRequest transfer = legs.get(index);
+                shardLegs.add(new TransactionRequest(step.account.apply(transfer), transfer.getAmountMinor(),
+                        transfer.getCurrency()));
+            }
+            List<TransactionResult> shardResults = send(step.call, URI.create(call.getShard()),
+                    call.getIdempotencyKey(), shardLegs, resumed);
+            for (int i = 0; i < shardResults.size(); i++) {
+                results[call.getLegs().get(i)] = shardResults.get(i);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Send one bulk call, and send it again under the same Idempotency-Key while it fails without a rejection:
+     * the account service applies it at most once and answers a replay with the stored results.
+     *
+     * @param maybeSent whether the call may have gone out before, so a call that is not sent now is still unknown
+     */
+    private List<TransactionResult> send(BulkCall call, URI shard, String idempotencyKey,
+            List<TransactionRequest> legs, boolean maybeSent) {
+        boolean maybeApplied = maybeSent;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return call.send(shard, idempotencyKey, legs).getBody();
+            } catch (Exception e) {
+                maybeApplied |= !FeignRejections.wasNotSent(e);
+                if (FeignRejections.isRejection(e) || !maybeApplied || attempt >= replayAttempts) {
+                    boolean unknown = maybeApplied && !FeignRejections.isRejection(e);
+                    return failed(legs, (unknown ? "outcome unknown: " : "Request failed: ") + e.getMessage(),
+                            unknown);
+                }
+            }
+            try {
+                Thread.sleep(replayBackoffMs * attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return failed(legs, "outcome unknown: interrupted while replaying the request", true);
+            }
+        }
+    }
+
+    private static List<TransactionResult> failed(List<TransactionRequest> legs, String message, boolean unknown) {
+        List<TransactionResult> results = new ArrayList<>(legs.size());
+        for (TransactionRequest leg : legs) {
+            TransactionResult result = new TransactionResult(leg.getAccountNumber(), leg.getAmount(), false, message);
+            result.setOutcomeUnknown(unknown);
+            results.add(result);
+        }
+        return results;
+    }
+
+    private Step step(TransferDirection direction, ChunkState state) {
+        boolean fromSaving = direction == TransferDirection.SAVING_TO_CHECKING;
+        switch (state) {
+            case WITHDRAWING:
+                return fromSaving
+                        ? new Step("withdraw", ShardRouter.SAVING, savingAccountClient::transferFromBatch, true)
+                        : new Step("withdraw", ShardRouter.CHECKING, checkingAccountClient::transferFromBatch, true);
+            case DEPOSITING:
+                return fromSaving
+                        ? new Step("deposit", ShardRouter.CHECKING, checkingAccountClient::transferToBatch, false)
+                        : new Step("deposit", ShardRouter.SAVING, savingAccountClient::transferToBatch, false);
+            default:
+                return fromSaving
+                        ? new Step("refund", ShardRouter.SAVING, savingAccountClient::transferToBatch, true)
+                        : new Step("refund", ShardRouter.CHECKING, checkingAccountClient::transferToBatch, true);
+        }
+    }
+
+    private String write(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not write " + value, e);
+        }
+    }
+
+    private <T> T read(String json, TypeReference<T> type) {
+        try {
+            return objectMapper.readValue(json, type);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not read " + json, e);
+        }
+    }
+
+    // One bulk endpoint of an account service's Feign client
+    private interface BulkCall {
+        ResponseEntity<List<TransactionResult>> send(URI shard, String idempotencyKey, List<TransactionRequest> legs);
+    }
+
+    // A step of a chunk: the endpoint it calls and which account of each transfer it moves money on
+    private static class Step {
+        final String name;
+        final String service;
+        final BulkCall call;
+        final Function<TransferRequest, String> account;
+
+        Step(String name, String service, BulkCall call, boolean sourceAccount) {
+            this.name = name;
+            this.service = service;
+            this.call = call;
+            this.account = sourceAccount ? TransferRequest::getFromAccountNumber : TransferRequest::getToAccountNumber;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.example.transferclient.service;
+
+import com.example.transferclient.deadline.Deadline;
+import com.example.transferclient.deadline.DeadlineExceededException;
+import com.example.transferclient.dto.TransactionRequest;
+import com.example.transferclient.dto.TransferDirection;
+import com.example.transferclient.dto.TransferRequest;
+import com.example.transferclient.feign.FeignRejections;
+import com.example.transferclient.model.SagaState;
+import com.example.transferclient.shard.ShardRouter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Same hold, deposit and confirm flow as {@link TransferService}, built on WebClient.
+ * No thread waits for the account services: each step continues on the Netty event loop
+ * once the previous response arrives. As there, the caller's deadline goes with the hold and is checked again
+ * before the deposit, the transfer is recorded as a HELD saga before the deposit goes out, and a transfer whose
+ * deposit was or may have been applied is only finished, by confirming the hold or handing the transfer to the
+ * {@link SagaOrchestrator}, never undone.
+ */
+@Service
+public class ReactiveTransferService {
+
+    @Autowired
+    @Qualifier("checkingAccountWebClient")
+    private WebClient checkingAccountWebClient;
+
+    @Autowired
+    @Qualifier("savingAccountWebClient")
+    private WebClient savingAccountWebClient;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private SagaOrchestrator sagaOrchestrator;
+
+    @Value("${transfer.confirm.attempts:3}")
+    private int confirmAttempts;
+
+    @Value("${transfer.confirm.backoff-ms:100}")
+    private long confirmBackoffMs;
+
+    public Mono<String> transfer(TransferRequest request, TransferDirection direction) {
+        boolean fromChecking = direction == TransferDirection.CHECKING_TO_SAVING;
+        WebClient source = fromChecking ? checkingAccountWebClient : savingAccountWebClient;
+        WebClient target = fromChecking ? savingAccountWebClient : checkingAccountWebClient;
+        // Absolute URLs of the owning shards, which take the place of the clients' base URLs
+        String sourcePath = shardRouter.route(fromChecking ? ShardRouter.CHECKING : ShardRouter.SAVING,
+                request.getFromAccountNumber()) + (fromChecking ? "/api/checking-accounts" : "/api/saving-accounts");
+        String targetPath = shardRouter.route(fromChecking ? ShardRouter.SAVING : ShardRouter.CHECKING,
+                request.getToAccountNumber()) + (fromChecking ? "/api/saving-accounts" : "/api/checking-accounts");
+        String sourceName = fromChecking ? "checking account" : "saving account";
+        String targetName = fromChecking ? "saving account" : "checking account";
+
+        // Captured on the request thread; the later steps run on event-loop threads
+        Deadline deadline = Deadline.current();
+
+        // Step 1: Hold the amount on the source account, under the id a saga would finish the transfer with
+        String transferId = UUID.randomUUID().toString();
+        String holdId = transferId;
+        TransactionRequest withdrawRequest = new TransactionRequest(request.getFromAccountNumber(),
+                request.getAmountMinor(), request.getCurrency());
+        TransactionRequest depositRequest = new TransactionRequest(request.getToAccountNumber(),
+                request.getAmountMinor(), request.getCurrency());
+        return exchange(withDeadline(source.put().uri(sourcePath + "/holds/{holdId}", holdId)
+                        .bodyValue(withdrawRequest), deadline))
+                // No answer, e.g. a timeout after the request went out, so the hold may have been placed: return it
+                // now rather than when it expires. Releasing a hold that was never placed is refused and ignored.
+                .onErrorResume(e -> release(source, sourcePath, holdId)
+                        .onErrorResume(releaseException -> Mono.empty())
+                        .then(Mono.just(ResponseEntity.internalServerError().body(e.getMessage()))))
+                .flatMap(holdResponse -> {
+                    if (!holdResponse.getStatusCode().is2xxSuccessful()) {
+                        return Mono.just("Failed to withdraw from " + sourceName + ": " + holdResponse.getBody());
+                    }
+
+                    // Step 2: Deposit to the target account; the hold is released only if the deposit is not sent
+                    if (request.isSimulateError()) {
+                        return releaseAfter(source, sourcePath, holdId,
+                                "Simulated error during transfer - testing rollback");
+                    }
+                    if (deadline != null && deadline.isExpired()) {
+                        return releaseAfter(source, sourcePath, holdId,
+                                new DeadlineExceededException(-deadline.remainingMillis()).getMessage());
+                    }
+                    // Recorded first; from here on a stop leaves the transfer to the recovery worker. The deposit
+                    // stage answers every failure itself, so an error here is one of recording the saga.
+                    return Mono.fromCallable(() -> sagaOrchestrator.hold(transferId, request, direction))
+                            .subscribeOn(Schedulers.boundedElastic())
+                            .flatMap(saga -> post(target, targetPath + "/transfer-to",
+                                    SagaOrchestrator.depositKey(transferId), depositRequest)
+                                    .flatMap(depositResponse -> {
+                                        if (FeignRejections.isRejection(depositResponse.getStatusCodeValue())) {
+                                            String reason = "Failed to deposit: " + depositResponse.getBody();
+                                            return release(source, sourcePath, holdId)
+                                                    .then(finish(transferId, SagaState.COMPENSATED, reason))
+                                                    .thenReturn("Transfer failed during deposit. "
+                                                            + "Hold has been released.")
+                                                    // The recovery worker repeats the deposit under its key and
+                                                    // releases the hold once that is rejected again
+                                                    .onErrorResume(rollbackException -> handOver(transferId,
+                                                            request, direction, false, reason + ". Release failed: "
+                                                                    + rollbackException.getMessage()));
+                                        }
+                                        if (!depositResponse.getStatusCode().is2xxSuccessful()) {
+                                            return handOver(transferId, request, direction, false,
+                                                    "Deposit answered " + depositResponse.getStatusCodeValue()
+                                                            + ": " + depositResponse.getBody());
+                                        }
+
+                                        // Step 3: Make the withdrawal final; if that keeps failing, a saga finishes it
+                                        return confirm(source, sourcePath, holdId)
+                                                .then(finish(transferId, SagaState.COMPLETED, null))
+                                                .thenReturn("Transfer completed successfully: $"
+                                                        + request.getAmount() + " transferred from " + sourceName
+                                                        + " " + request.getFromAccountNumber() + " to "
+                                                        + targetName + " " + request.getToAccountNumber())
+                                                .onErrorResume(e -> handOver(transferId, request, direction, true,
+                                                        e.getMessage()));
+                                    })
+                                    // No answer to the deposit, so it may have been applied
+                                    .onErrorResume(e -> handOver(transferId, request, direction, false,
+                                            e.getMessage())))
+                            .onErrorResume(e -> releaseAfter(source, sourcePath, holdId,
+                                    "Could not record the transfer: " + e.getMessage()));
+                });
+    }
+
+    private Mono<String> releaseAfter(WebClient source, String sourcePath, String holdId, String error) {
+        return release(source, sourcePath, holdId)
+                .thenReturn("Transfer failed: " + error + ". Hold has been released.")
+                .onErrorResume(rollbackException -> Mono.just("Transfer failed: " + error
+                        + ". Rollback also failed: " + rollbackException.getMessage()
+                        + ". Manual intervention required!"));
+    }
+
+    /**
+     * Confirm the hold of a transfer whose deposit was applied. Confirming is idempotent, so failures other than a
+     * rejection are retried, up to transfer.confirm.attempts times.
+     */
+    private Mono<ResponseEntity<String>> confirm(WebClient source, String sourcePath, String holdId) {
+        return succeeded(exchange(source.put().uri(sourcePath + "/holds/{holdId}/confirmation", holdId)))
+                .retryWhen(Retry.backoff(confirmAttempts - 1, Duration.ofMillis(confirmBackoffMs))
+                        .filter(e -> !(e instanceof StatusException)
+                                || !FeignRejections.isRejection(((StatusException) e).status))
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+    }
+
+    /**
+     * Leave a transfer whose deposit was, or may have been, applied to the saga recovery worker. The saga is
+     * written on a worker thread, off the event loop.
+     */
+    private Mono<String> handOver(String transferId, TransferRequest request, TransferDirection direction,
+            boolean deposited, String error) {
+        return Mono.fromCallable(() -> sagaOrchestrator.takeOver(transferId, request, direction, deposited, error))
+                .subscribeOn(Schedulers.boundedElastic())
+                .thenReturn("Transfer " + transferId + " is pending: " + error
+                        + ". It will be completed in the background; see /api/transfers/saga/" + transferId)
+                .onErrorResume(recordException -> Mono.just("Transfer failed: " + error
+                        + ". Recording it for recovery also failed: " + recordException.getMessage()
+                        + ". Manual intervention required!"));
+    }
+
+    // Records the outcome of a transfer finished here, off the event loop; never fails
+    private Mono<Void> finish(String transferId, SagaState state, String reason) {
+        return Mono.fromRunnable(() -> sagaOrchestrator.finish(transferId, state, reason))
+                .subscribeOn(Schedulers.boundedElastic())
+                .then();
+    }
+
+    private Mono<ResponseEntity<String>> release(WebClient source, String sourcePath, String holdId) {
+        return succeeded(exchange(source.delete().uri(sourcePath + "/holds/{holdId}", holdId)));
+    }
+
+    // Turns a non-2xx response into an error
+    private static Mono<ResponseEntity<String>> succeeded(Mono<ResponseEntity<String>> call) {
+        return call.flatMap(response -> response.getStatusCode().is2xxSuccessful()
+                ? Mono.just(response)
+                : Mono.error(new StatusException(response.getStatusCodeValue(), response.getBody())));
+    }
+
+    /**
+     * POST one step under its Idempotency-Key; connection failures are retried with the same key.
+     */
+    private Mono<ResponseEntity<String>> post(WebClient client, String path, String idempotencyKey,
+            TransactionRequest body) {
+        return exchange(client.post()
+                .uri(path)
+                .header("Idempotency-Key", idempotencyKey)
+                .bodyValue(body));
+    }
+
+    private static WebClient.RequestHeadersSpec<?> withDeadline(WebClient.RequestHeadersSpec<?> request,
+            Deadline deadline) {
+        return deadline != null
+                ? request.header(Deadline.HEADER, String.valueOf(deadline.getEpochMillis()))
+                : request;
+    }
+
+    /**
+     * Send a request that is safe to repeat, either keyed or idempotent by method; connection failures are retried.
+     */
+    private static Mono<ResponseEntity<String>> exchange(WebClient.RequestHeadersSpec<?> request) {
+        return request
+                .exchangeToMono(response -> response.bodyToMono(String.class)
+                        .defaultIfEmpty("")
+                        .map(responseBody -> ResponseEntity.status(response.statusCode()).body(responseBody)))
+                .retryWhen(Retry.backoff(2, Duration.ofMillis(50))
+                        .filter(e -> e instanceof WebClientRequestException));
+    }
+
+    // A non-2xx answer, keeping its status so rejections can be told from failures worth retrying
+    private static class StatusException extends IllegalStateException {
+        final int status;
+
+        StatusException(int status, String body) {
+            super(body);
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package com.example.transferclient.service;
+
+import com.example.transferclient.dto.TransactionRequest;
+import com.example.transferclient.dto.TransferDirection;
+import com.example.transferclient.dto.TransferRequest;
+import com.example.transferclient.feign.CheckingAccountClient;
+import com.example.transferclient.feign.FeignRejections;
+import com.example.transferclient.feign.SavingAccountClient;
+import com.example.transferclient.model.SagaState;
+import com.example.transferclient.model.TransferSaga;
+import com.example.transferclient.repository.TransferSagaRepository;
+import com.example.transferclient.shard.ShardRouter;
+import feign.FeignException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs transfers as persistent sagas.
+ * Every state change is written to the saga log before the next step starts, so a saga
+ * interrupted by a crash or a failing account service is picked up by the recovery worker
+ * and either finished or compensated. Each step sends an Idempotency-Key derived from the
+ * saga id, so repeating a step whose outcome was lost does not move money twice.
+ *
+ * STARTED -> WITHDRAWN -> COMPLETED, or
+ * STARTED -> FAILED (withdrawal rejected), or
+ * WITHDRAWN -> COMPENSATING -> COMPENSATED (deposit rejected).
+ *
+ * A hold/confirm transfer of {@link TransferService} is recorded as HELD before its deposit goes out, and finished
+ * by TransferService, or taken over in HELD or CONFIRMING when it could not finish it, or when it stopped:
+ * HELD -> CONFIRMING -> COMPLETED, or
+ * HELD -> COMPENSATED (deposit rejected, hold released), or
+ * CONFIRMING -> FAILED (hold no longer confirmable; manual intervention required).
+ */
+@Service
+public class SagaOrchestrator {
+
+    private static final Logger log = LoggerFactory.getLogger(SagaOrchestrator.class);
+
+    private static final Set<SagaState> ACTIVE_STATES =
+            EnumSet.of(SagaState.STARTED, SagaState.WITHDRAWN, SagaState.COMPENSATING, SagaState.HELD,
+                    SagaState.CONFIRMING);
+
+    @Autowired
+    private CheckingAccountClient checkingAccountClient;
+
+    @Autowired
+    private SavingAccountClient savingAccountClient;
+
+    @Autowired
+    private TransferSagaRepository transferSagaRepository;
+
+    // Asked at every step, so a step retried after a rebalance goes to the account's new shard
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private ThreadPoolTaskExecutor sagaExecutor;
+
+    @Value("${transfer.saga.stale-after-ms:10000}")
+    private long staleAfterMs;
+
+    // Sagas currently being advanced by this instance; the recovery worker skips them
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    public TransferSaga start(TransferRequest request, TransferDirection direction) {
+        TransferSaga saga = transferSagaRepository.save(new TransferSaga(UUID.randomUUID().toString(), direction,
+                request.getFromAccountNumber(), request.getToAccountNumber(), request.getAmountMinor(),
+                request.getCurrency(), request.isSimulateError()));
+        submit(saga.getId());
+        return saga;
+    }
+
+    /**
+     * Record a hold/confirm transfer whose amount is held under the transfer id, before its deposit goes out
+     * under {@link #depositKey}. Should this instance stop before the hold is confirmed, the recovery worker
+     * finishes the transfer instead of the hold expiring after the deposit. Until {@link #finish} or
+     * {@link #takeOver}, the recovery worker of this instance leaves it alone.
+     */
+    public TransferSaga hold(String transferId, TransferRequest request, TransferDirection direction) {
+        TransferSaga saga = new TransferSaga(transferId, direction, request.getFromAccountNumber(),
+                request.getToAccountNumber(), request.getAmountMinor(), request.getCurrency(), false);
+        saga.setState(SagaState.HELD);
+        inFlight.add(transferId);
+        try {
+            return transferSagaRepository.save(saga);
+        } catch (RuntimeException e) {
+            inFlight.remove(transferId);
+            throw e;
+        }
+    }
+
+    /**
+     * Record the outcome of a transfer recorded by {@link #hold} that TransferService finished itself. If that
+     * fails, the saga stays HELD and the recovery worker repeats the deposit and the confirmation or release,
+     * both under their keys, and arrives at the same outcome.
+     */
+    public void finish(String transferId, SagaState state, String reason) {
+        try {
+            transferSagaRepository.findById(transferId).ifPresent(saga -> {
+                saga.setState(state);
+                saga.setLastError(reason);
+                transferSagaRepository.save(saga);
+            });
+        } catch (RuntimeException e) {
+            log.warn("Outcome {} of transfer {} could not be recorded: {}; left to the recovery worker", state,
+                    transferId, e.getMessage());
+        } finally {
+            inFlight.remove(transferId);
+        }
+    }
+
+    /**
+     * Take over a hold/confirm transfer whose amount is held under the transfer id and whose deposit went out
+     * under {@link #depositKey}, but whose deposit answer or hold confirmation never came. Once the saga is stale,
+     * the recovery worker repeats the deposit under the same key, so it is applied at most once, and then
+     * confirms the hold. The hold is only released if the deposit is rejected.
+     *
+     * @param deposited whether the deposit is known to have been applied
+     */
+    public TransferSaga takeOver(String transferId, TransferRequest request, TransferDirection direction,
+            boolean deposited, String error) {
+        TransferSaga saga = transferSagaRepository.findById(transferId).orElseGet(() -> new TransferSaga(transferId,
+                direction, request.getFromAccountNumber(), request.getToAccountNumber(), request.getAmountMinor(),
+                request.getCurrency(), false));
+        saga.setState(deposited ? SagaState.CONFIRMING : SagaState.HELD);
+        saga.recordFailedAttempt(error);
+        try {
+            return transferSagaRepository.save(saga);
+        } finally {
+            inFlight.remove(transferId);
+        }
+    }
+
+    /**
+     * Idempotency-Key of a saga's deposit, also used by {@link TransferService} so a taken-over deposit replays.
+     */
+    static String depositKey(String sagaId) {
+        return sagaId + ":deposit";
+    }
+
+    public Optional<TransferSaga> getSaga(String id) {
+        return transferSagaRepository.findById(id);
+    }
+
+    /**
+     * Resume sagas that have not moved for a while, including those left behind by a previous run.
+     */
+    @Scheduled(fixedDelayString = "${transfer.saga.recovery-interval-ms:5000}")
+    public void recover() {
+        LocalDateTime cutoff = LocalDateTime.now().minusNanos(staleAfterMs * 1_000_000);
+        for (TransferSaga saga : transferSagaRepository.findByStateInAndUpdatedAtBefore(ACTIVE_STATES, cutoff)) {
+            if (!inFlight.contains(saga.getId())) {
+                log.info("Recovering saga {} in state {} (attempt {})", saga.getId(), saga.getState(),
+                        saga.getAttempts() + 1);
+                submit(saga.getId());
+            }
+        }
+    }
+
+    private void submit(String id) {
+        if (!inFlight.add(id)) {
+            return;
+        }
+        try {
+            sagaExecutor.execute(() -> {
+                try {
+                    advance(id);
+                } finally {
+                    inFlight.remove(id);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            // Saga stays in the log; the recovery worker will pick it up once there is capacity
+            inFlight.remove(id);
+        }
+    }
+
+    private void advance(String id) {
+        TransferSaga saga = transferSagaRepository.findById(id).orElse(null);
+        while (saga != null && !saga.getState().isTerminal()) {
+            try {
+                switch (saga.getState()) {
+                    case STARTED:
+                        withdraw(saga);
+                        break;
+                    case WITHDRAWN:
+                        deposit(saga);
+                        break;
+                    case COMPENSATING:
+                        compensate(saga);
+                        break;
+                    case HELD:
+                        depositHeld(saga);
+                        break;
+                    case CONFIRMING:
+                        confirmHold(saga);
+                        break;
+                    default:
+                        return;
+                }
+            } catch (Exception e) {
+                // Transient failure: keep the state and let the recovery worker retry
+                saga.recordFailedAttempt(e.getMessage());
+                transferSagaRepository.save(saga);
+                log.warn("Saga {} failed in state {}: {}", saga.getId(), saga.getState(), e.getMessage());
+                return;
+            }
+            saga = transferSagaRepository.save(saga);
+        }
+    }
+
+    private void withdraw(TransferSaga saga) {
+        TransactionRequest request = new TransactionRequest(saga.getFromAccountNumber(),
+                saga.getAmountMinor(), saga.getCurrency());
+        try {
+            if (saga.getDirection() == TransferDirection.SAVING_TO_CHECKING) {
+                savingAccountClient.transferFrom(shardRouter.saving(request.getAccountNumber()),
+                        saga.getId() + ":withdraw", request);
+            } else {
+                checkingAccountClient.transferFrom(shardRouter.checking(request.getAccountNumber()),
+                        saga.getId() + ":withdraw", request);
+            }
+            saga.setState(SagaState.WITHDRAWN);
+        } catch (FeignException e) {
+            // Only a refusal is final; timeouts, 408, 429 and 5xx keep the state for the recovery worker
+            if (!FeignRejections.isRejection(e)) {
+                throw e;
+            }
+            saga.setState(SagaState.FAILED);
+            saga.setLastError("Failed to withdraw: " + e.contentUTF8());
+        }
+    }
+
+    private void deposit(TransferSaga saga) {
+        if (saga.isSimulateError()) {
+            saga.setState(SagaState.COMPENSATING);
+            saga.setLastError("Simulated error during transfer - testing rollback");
+            return;
+        }
+        TransactionRequest request = new TransactionRequest(saga.getToAccountNumber(),
+                saga.getAmountMinor(), saga.getCurrency());
+        try {
+            if (saga.getDirection() == TransferDirection.SAVING_TO_CHECKING) {
+                checkingAccountClient.transferTo(shardRouter.checking(request.getAccountNumber()),
+                        depositKey(saga.getId()), request);
+            } else {
+                savingAccountClient.transferTo(shardRouter.saving(request.getAccountNumber()),
+                        depositKey(saga.getId()), request);
+            }
+            saga.setState(SagaState.COMPLETED);
+        } catch (FeignException e) {
+            if (!FeignRejections.isRejection(e)) {
+                throw e;
+            }
+            saga.setState(SagaState.COMPENSATING);
+            saga.setLastError("Failed to deposit: " + e.contentUTF8());
+        }
+    }
+
+    private void compensate(TransferSaga saga) {
+        String reason = saga.getLastError();
+        TransactionRequest request = new TransactionRequest(saga.getFromAccountNumber(),
+                saga.getAmountMinor(), saga.getCurrency());
+        if (saga.getDirection() == TransferDirection.SAVING_TO_CHECKING) {
+            savingAccountClient.transferTo(shardRouter.saving(request.getAccountNumber()),
+                    saga.getId() + ":refund", request);
+        } else {
+            checkingAccountClient.transferTo(shardRouter.checking(request.getAccountNumber()),
+                    saga.getId() + ":refund", request);
+        }
+        saga.setState(SagaState.COMPENSATED);
+        saga.setLastError(reason);
+    }
+
+    private void depositHeld(TransferSaga saga) {
+        TransactionRequest request = new TransactionRequest(saga.getToAccountNumber(),
+                saga.getAmountMinor(), saga.getCurrency());
+        try {
+            if (saga.getDirection() == TransferDirection.SAVING_TO_CHECKING) {
+                checkingAccountClient.transferTo(shardRouter.checking(request.getAccountNumber()),
+                        depositKey(saga.getId()), request);
+            } else {
+                savingAccountClient.transferTo(shardRouter.saving(request.getAccountNumber()),
+                        depositKey(saga.getId()), request);
+            }
+            saga.setState(SagaState.CONFIRMING);
+        } catch (FeignException e) {
+            if (!FeignRejections.isRejection(e)) {
+                throw e;
+            }
+            // Rejected under the first attempt's key too, so the deposit never happened
+            String reason = "Failed to deposit: " + e.contentUTF8();
+            if (saga.getDirection() == TransferDirection.SAVING_TO_CHECKING) {
+                savingAccountClient.releaseHold(shardRouter.saving(saga.getFromAccountNumber()), saga.getId());
+            } else {
+                checkingAccountClient.releaseHold(shardRouter.checking(saga.getFromAccountNumber()), saga.getId());
+            }
+            saga.setState(SagaState.COMPENSATED);
+            saga.setLastError(reason);
+        }
+    }
+
+    private void confirmHold(TransferSaga saga) {
+        try {
+            if (saga.getDirection() == TransferDirection.SAVING_TO_CHECKING) {
+                savingAccountClient.confirmHold(shardRouter.saving(saga.getFromAccountNumber()), saga.getId());
+            } else {
+                checkingAccountClient.confirmHold(shardRouter.checking(saga.getFromAccountNumber()), saga.getId());
+            }
+            saga.setState(SagaState.COMPLETED);
+        } catch (FeignException e) {
+            if (!FeignRejections.isRejection(e)) {
+                throw e;
+            }
+            // Released, or expired and spent since: the deposit stands without its withdrawal
+            saga.setState(SagaState.FAILED);
+            saga.setLastError("Failed to confirm hold: " + e.contentUTF8() + ". Manual intervention required!");
+            log.error("Saga {}: hold could not be confirmed after the deposit. Manual intervention required!",
+                    saga.getId());
+        }
+    }
+}
@@ -1,75 +1,134 @@
 package com.example.transferclient.service;
 
+import com.example.transferclient.deadline.Deadline;
+import com.example.transferclient.dto.TransferDirection;
 import com.example.transferclient.dto.TransferRequest;
 import com.example.transferclient.dto.TransactionRequest;
 import com.example.transferclient.feign.CheckingAccountClient;
+import com.example.transferclient.feign.FeignRejections;
 import com.example.transferclient.feign.SavingAccountClient;
+import com.example.transferclient.model.SagaState;
+import com.example.transferclient.shard.ShardRouter;
+import feign.RetryableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
-import java.math.BigDecimal;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.UUID;
+import java.util.function.Supplier;
 
 @Service
 public class TransferService {
 
+    private static final Logger log = LoggerFactory.getLogger(TransferService.class);
+
     @Autowired
     private CheckingAccountClient checkingAccountClient;
 
     @Autowired
     private SavingAccountClient savingAccountClient;
 
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private SagaOrchestrator sagaOrchestrator;
+
+    @Value("${transfer.confirm.attempts:3}")
+    private int confirmAttempts;
+
+    @Value("${transfer.confirm.backoff-ms:100}")
+    private long confirmBackoffMs;
+
     /**
      * Transfer money from checking account to saving account
-     * This method implements a distributed transaction pattern
+     * The amount is held on the checking account, deposited to the saving account and then confirmed.
+     * If the deposit is rejected, the hold is released; if this client stops half way, the hold expires.
+     * The caller's deadline goes with the hold, and the transfer stops before the deposit once it has passed.
+     * The deposit itself is sent without it, because a deposit cut short may already have been applied.
+     * Before the deposit goes out the transfer is recorded as a HELD saga, so if this client stops before the hold
+     * is confirmed, the {@link SagaOrchestrator} finishes it rather than the hold expiring after the deposit.
+     * Once the deposit may have been applied the transfer only goes forward: if its outcome stays unknown, or the
+     * hold cannot be confirmed, the transfer is handed to the {@link SagaOrchestrator} to finish.
      */
     public String transferFromCheckingToSaving(TransferRequest request) {
+        // Also the hold id, and the id of the saga that finishes the transfer if this call cannot
+        String transferId = UUID.randomUUID().toString();
+        String holdId = transferId;
+        // Picked once, so the hold is confirmed or released on the shard it was placed on
+        URI source = shardRouter.checking(request.getFromAccountNumber());
+        URI target = shardRouter.saving(request.getToAccountNumber());
+        TransactionRequest withdrawRequest = new TransactionRequest(
+                request.getFromAccountNumber(),
+                request.getAmountMinor(), request.getCurrency());
+        TransactionRequest depositRequest = new TransactionRequest(
+                request.getToAccountNumber(),
+                request.getAmountMinor(), request.getCurrency());
+        boolean held = false;
+        boolean depositSent = false;
+        boolean deposited = false;
         try {
-            // Step 1: Withdraw from checking account
-            TransactionRequest withdrawRequest = new TransactionRequest(
-                    request.getFromAccountNumber(),
-                    request.getAmount());
-
-            var withdrawResponse = checkingAccountClient.transferFrom(withdrawRequest);
-            if (!withdrawResponse.getStatusCode().is2xxSuccessful()) {
-                return "Failed to withdraw from checking account: " + withdrawResponse.getBody();
+            // Step 1: Hold the amount on the checking account
+            var holdResponse = checkingAccountClient.placeHold(source, holdId, withdrawRequest);
+            if (!holdResponse.getStatusCode().is2xxSuccessful()) {
+                return "Failed to withdraw from checking account: " + holdResponse.getBody();
             }
+            held = true;
 
             // Simulate error if requested (for testing transaction rollback)
             if (request.isSimulateError()) {
                 throw new RuntimeException("Simulated error during transfer - testing rollback");
             }
 
-            // Step 2: Deposit to saving account
-            TransactionRequest depositRequest = new TransactionRequest(
-                    request.getToAccountNumber(),
-                    request.getAmount());
-
-            var depositResponse = savingAccountClient.transferTo(depositRequest);
+            // Step 2: Deposit to saving account, unless the caller has given up by now
+            Deadline.checkCurrent();
+            // Recorded first; from here on a stop leaves the transfer to the recovery worker
+            sagaOrchestrator.hold(transferId, request, TransferDirection.CHECKING_TO_SAVING);
+            depositSent = true;
+            var depositResponse = Deadline.detached(
+                    () -> savingAccountClient.transferTo(target, SagaOrchestrator.depositKey(transferId),
+                            depositRequest));
             if (!depositResponse.getStatusCode().is2xxSuccessful()) {
-                // If deposit fails, we need to rollback the withdrawal
-                // This is a simplified rollback - in a real scenario, you'd use Saga pattern or
-                // 2PC
-                TransactionRequest rollbackRequest = new TransactionRequest(
-                        request.getFromAccountNumber(),
-                        request.getAmount());
-                checkingAccountClient.transferTo(rollbackRequest);
-                return "Transfer failed during deposit. Withdrawal has been rolled back.";
+                Deadline.detached(() -> checkingAccountClient.releaseHold(source, holdId));
+                sagaOrchestrator.finish(transferId, SagaState.COMPENSATED,
+                        "Failed to deposit: " + depositResponse.getBody());
+                return "Transfer failed during deposit. Hold has been released.";
             }
+            deposited = true;
+
+            // Step 3: Make the withdrawal final
+            confirm(() -> checkingAccountClient.confirmHold(source, holdId));
+            sagaOrchestrator.finish(transferId, SagaState.COMPLETED, null);
 
             return "Transfer completed successfully: $" + request.getAmount() +
                     " transferred from checking account " + request.getFromAccountNumber() +
                     " to saving account " + request.getToAccountNumber();
 
         } catch (Exception e) {
-            // If any error occurs, attempt to rollback the withdrawal
+            // A rejected hold (e.g. insufficient funds) surfaces as a Feign exception; nothing to roll back
+            if (!held) {
+                releaseIfMaybePlaced(e, () -> checkingAccountClient.releaseHold(source, holdId));
+                return "Failed to withdraw from checking account: " + e.getMessage();
+            }
+            // Only a deposit that was rejected, or never went out, can be undone by releasing the hold
+            if (depositSent && (deposited || !FeignRejections.isRejection(e) && !FeignRejections.wasNotSent(e))) {
+                return handOver(transferId, request, TransferDirection.CHECKING_TO_SAVING, deposited, e);
+            }
             try {
-                TransactionRequest rollbackRequest = new TransactionRequest(
-                        request.getFromAccountNumber(),
-                        request.getAmount());
-                checkingAccountClient.transferTo(rollbackRequest);
-                return "Transfer failed: " + e.getMessage() + ". Withdrawal has been rolled back.";
+                Deadline.detached(() -> checkingAccountClient.releaseHold(source, holdId));
+                if (depositSent) {
+                    sagaOrchestrator.finish(transferId, SagaState.COMPENSATED, e.getMessage());
+                }
+                return "Transfer failed: " + e.getMessage() + ". Hold has been released.";
             } catch (Exception rollbackException) {
+                if (depositSent) {
+                    // The recovery worker repeats the deposit under its key, and releases the hold if it is rejected
+                    return handOver(transferId, request, TransferDirection.CHECKING_TO_SAVING, false, rollbackException);
+                }
                 return "Transfer failed: " + e.getMessage() +
                         ". Rollback also failed: " + rollbackException.getMessage() +
                         ". Manual intervention required!";
@@ -81,54 +140,136 @@ public class TransferService {
      * Transfer money from saving account to checking account
      */
     public String transferFromSavingToChecking(TransferRequest request) {
+        String transferId = UUID.randomUUID().toString();
+        String holdId = transferId;
+        URI source = shardRouter.saving(request.getFromAccountNumber());
+        URI target = shardRouter.checking(request.getToAccountNumber());
+        TransactionRequest withdrawRequest = new TransactionRequest(
+                request.getFromAccountNumber(),
+                request.getAmountMinor(), request.getCurrency());
+        TransactionRequest depositRequest = new TransactionRequest(
+                request.getToAccountNumber(),
+                request.getAmountMinor(), request.getCurrency());
+        boolean held = false;
+        boolean depositSent = false;
+        boolean deposited = false;
         try {
-            // Step 1: Withdraw from saving account
-            TransactionRequest withdrawRequest = new TransactionRequest(
-                    request.getFromAccountNumber(),
-                    request.getAmount());
-
-            var withdrawResponse = savingAccountClient.transferFrom(withdrawRequest);
-            if (!withdrawResponse.getStatusCode().is2xxSuccessful()) {
-                return "Failed to withdraw from saving account: " + withdrawResponse.getBody();
+            // Step 1: Hold the amount on the saving account
+            var holdResponse = savingAccountClient.placeHold(source, holdId, withdrawRequest);
+            if (!holdResponse.getStatusCode().is2xxSuccessful()) {
+                return "Failed to withdraw from saving account: " + holdResponse.getBody();
             }
+            held = true;
 
             // Simulate error if requested
             if (request.isSimulateError()) {
                 throw new RuntimeException("Simulated error during transfer - testing rollback");
             }
 
-            // Step 2: Deposit to checking account
-            TransactionRequest depositRequest = new TransactionRequest(
-                    request.getToAccountNumber(),
-                    request.getAmount());
-
-            var depositResponse = checkingAccountClient.transferTo(depositRequest);
+            // Step 2: Deposit to checking account, unless the caller has given up by now
+            Deadline.checkCurrent();
+            // Recorded first; from here on a stop leaves the transfer to the recovery worker
+            sagaOrchestrator.hold(transferId, request, TransferDirection.SAVING_TO_CHECKING);
+            depositSent = true;
+            var depositResponse = Deadline.detached(
+                    () -> checkingAccountClient.transferTo(target, SagaOrchestrator.depositKey(transferId),
+                            depositRequest));
             if (!depositResponse.getStatusCode().is2xxSuccessful()) {
-                // Rollback withdrawal
-                TransactionRequest rollbackRequest = new TransactionRequest(
-                        request.getFromAccountNumber(),
-                        request.getAmount());
-                savingAccountClient.transferTo(rollbackRequest);
-                return "Transfer failed during deposit. Withdrawal has been rolled back.";
+                Deadline.detached(() -> savingAccountClient.releaseHold(source, holdId));
+                sagaOrchestrator.finish(transferId, SagaState.COMPENSATED,
+                        "Failed to deposit: " + depositResponse.getBody());
+                return "Transfer failed during deposit. Hold has been released.";
             }
+            deposited = true;
+
+            // Step 3: Make the withdrawal final
+            confirm(() -> savingAccountClient.confirmHold(source, holdId));
+            sagaOrchestrator.finish(transferId, SagaState.COMPLETED, null);
 
             return "Transfer completed successfully: $" + request.getAmount() +
                     " transferred from saving account " + request.getFromAccountNumber() +
                     " to checking account " + request.getToAccountNumber();
 
         } catch (Exception e) {
-            // Rollback withdrawal
+            if (!held) {
+                releaseIfMaybePlaced(e, () -> savingAccountClient.releaseHold(source, holdId));
+                return "Failed to withdraw from saving account: " + e.getMessage();
+            }
+            if (depositSent && (deposited || !FeignRejections.isRejection(e) && !FeignRejections.wasNotSent(e))) {
+                return handOver(transferId, request, TransferDirection.SAVING_TO_CHECKING, deposited, e);
+            }
             try {
-                TransactionRequest rollbackRequest = new TransactionRequest(
-                        request.getFromAccountNumber(),
-                        request.getAmount());
-                savingAccountClient.transferTo(rollbackRequest);
-                return "Transfer failed: " + e.getMessage() + ". Withdrawal has been rolled back.";
+                Deadline.detached(() -> savingAccountClient.releaseHold(source, holdId));
+                if (depositSent) {
+                    sagaOrchestrator.finish(transferId, SagaState.COMPENSATED, e.getMessage());
+                }
+                return "Transfer failed: " + e.getMessage() + ". Hold has been released.";
             } catch (Exception rollbackException) {
+                if (depositSent) {
+                    // The recovery worker repeats the deposit under its key, and releases the hold if it is rejected
+                    return handOver(transferId, request, TransferDirection.SAVING_TO_CHECKING, false, rollbackException);
+                }
                 return "Transfer failed: " + e.getMessage() +
                         ". Rollback also failed: " + rollbackException.getMessage() +
                         ". Manual intervention required!";
             }
         }
     }
+
+    /**
+     * Confirm the hold of a transfer whose deposit was applied. Confirming is idempotent, so failures other than a
+     * rejection are retried, up to transfer.confirm.attempts times and without the caller's deadline.
+     */
+    private void confirm(Supplier<?> confirmHold) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                Deadline.detached(confirmHold);
+                return;
+            } catch (RuntimeException e) {
+                if (attempt >= confirmAttempts || FeignRejections.isRejection(e)) {
+                    throw e;
+                }
+            }
+            try {
+                Thread.sleep(confirmBackoffMs * attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while confirming a hold", e);
+            }
+        }
+    }
+
+    /**
+     * Leave a transfer whose deposit was, or may have been, applied to the saga recovery worker, which replays
+     * the deposit under the same key and confirms the hold.
+     */
+    private String handOver(String transferId, TransferRequest request, TransferDirection direction,
+            boolean deposited, Exception e) {
+        try {
+            sagaOrchestrator.takeOver(transferId, request, direction, deposited, e.getMessage());
+        } catch (Exception recordException) {
+            log.error("Transfer {} could not be recorded for recovery: {}. Manual intervention required!",
+                    transferId, recordException.getMessage());
+            return "Transfer failed: " + e.getMessage() +
+                    ". Recording it for recovery also failed: " + recordException.getMessage() +
+                    ". Manual intervention required!";
+        }
+        return "Transfer " + transferId + " is pending: " + e.getMessage() +
+                ". It will be completed in the background; see /api/transfers/saga/" + transferId;
+    }
+
+    /**
+     * A hold that timed out, e.g. because its read timeout was cut to the deadline, may still have been placed.
+     * Return it now rather than when it expires. Rejected and shed calls never placed one.
+     */
+    private static void releaseIfMaybePlaced(Exception e, Supplier<?> release) {
+        if (!(e instanceof RetryableException) && !(e.getCause() instanceof SocketTimeoutException)) {
+            return;
+        }
+        try {
+            Deadline.detached(release);
+        } catch (Exception ignored) {
+            // The hold expires on its own
+        }
+    }
 }
@@ -0,0 +1,49 @@
+package com.example.transferclient.shard;
+
+import java.net.URI;
+import java.util.Objects;
+
+/**
+ * One instance of an account service on the hash ring: its ring name (the {@code shard} metadata it registers
+ * with Eureka) and the base URI its calls are sent to.
+ */
+public final class Shard {
+
+    private final String id;
+    private final URI baseUri;
+
+    public Shard(String id, URI baseUri) {
+        this.id = id;
+        this.baseUri = baseUri;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public URI getBaseUri() {
+        return baseUri;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Shard)) {
+            return false;
+        }
+        Shard other = (Shard) o;
+        return id.equals(other.id) && baseUri.equals(other.baseUri);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, baseUri);
+    }
+
+    @Override
+    public String toString() {
+        return id + "=" + baseUri;
+    }
+}
@@ -0,0 +1,329 @@
+package com.example.transferclient.shard;
+
+import com.example.transferclient.dto.AccountRequest;
+import com.example.transferclient.dto.AccountSnapshot;
+import com.example.transferclient.dto.RebalanceResult;
+import com.example.transferclient.feign.CheckingAccountClient;
+import com.example.transferclient.feign.FeignRejections;
+import com.example.transferclient.feign.SavingAccountClient;
+import com.example.transferclient.model.MoveState;
+import com.example.transferclient.model.ShardMove;
+import com.example.transferclient.repository.ShardMoveRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import feign.FeignException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Moves accounts to the shards that own them on the ring {@link ShardRouter} keeps pending after a shard was
+ * added. Every shard is read a page at a time in account-number order. The accounts of a page that belong to
+ * another shard on that ring are handed off by the old one, which deletes them and answers with their final
+ * balances, and adopted by the new owner, which from then on gets their legs. Only the accounts before the new
+ * shard's points on the ring move, and only to it. Once a run leaves no account behind, the pending ring becomes
+ * the current one.
+ *
+ * Each batch is recorded as a {@link ShardMove} before the old shard is asked to hand it off, and the balances
+ * handed off are stored in it before the new shard is asked to adopt them. A move cut short by a crash or a failed
+ * call is resumed from that record at the start of the next run, and every transfer.sharding.rebalance.
+ * resume-interval-ms; its calls carry keys derived from the move id, so the shards answer a repeated call from
+ * their idempotency records without handing off or adopting twice.
+ *
+ * While an account is between the two shards, legs on it fail as for an unknown account, and accounts with funds
+ * on hold stay where they are until a later run, which switches the ring; so run it right after the new shard has
+ * joined, and again once the holds are settled. Transaction history stays on the old shard.
+ */
+@Service
+public class ShardRebalancer {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardRebalancer.class);
+
+    private static final TypeReference<List<String>> ACCOUNT_NUMBERS = new TypeReference<>() { };
+    private static final TypeReference<List<AccountRequest>> HANDED_OFF = new TypeReference<>() { };
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private CheckingAccountClient checkingAccountClient;
+
+    @Autowired
+    private SavingAccountClient savingAccountClient;
+
+    @Autowired
+    private ShardMoveRepository shardMoveRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${transfer.sharding.rebalance.page-size:1000}")
+    private int pageSize;
+
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @throws IllegalArgumentException if the service is not an account service
+     * @throws IllegalStateException if a run for the service is already going on
+     */
+    public RebalanceResult rebalance(String service) {
+        AccountService accounts = accountService(service);
+        if (!running.add(service)) {
+            throw new IllegalStateException("Already rebalancing " + service);
+        }
+        try {
+            // Picks up a shard that registered since the last registry refresh
+            shardRouter.refresh();
+            ShardRing ring = shardRouter.target(service);
+            RebalanceResult result = new RebalanceResult(service, ring.getShards().size());
+            // Accounts of a move cut short are on neither shard until it is finished
+            resume(service, accounts, result);
+            for (Shard shard : ring.getShards()) {
+                rebalance(service, accounts, ring, shard, result);
+            }
+            if (result.getHeld() == 0) {
+                shardRouter.commit(service, ring);
+                result.ringSwitched();
+            }
+            result.finish();
+            log.info("Rebalanced {} over {} shards: {} accounts scanned, {} moved, {} held, {} returned, {} moves "
+                    + "resumed in {} ms{}", service, result.getShards(), result.getScanned(), result.getMoved(),
+                    result.getHeld(), result.getReturned(), result.getResumed(), result.getElapsedMs(),
+                    result.isRingSwitched() ? "" : "; the ring switches once the held accounts have moved");
+            return result;
+        } finally {
+            running.remove(service);
+        }
+    }
+
+    /**
+     * Finish the moves cut short by a crash or a failed call, without waiting for the next rebalance.
+     */
+    @Scheduled(initialDelayString = "${transfer.sharding.rebalance.resume-interval-ms:30000}",
+            fixedDelayString = "${transfer.sharding.rebalance.resume-interval-ms:30000}")
+    public void resumeMoves() {
+        if (!shardRouter.isEnabled()) {
+            return;
+        }
+        for (String service : List.of(ShardRouter.CHECKING, ShardRouter.SAVING)) {
+            if (!running.add(service)) {
+                continue;
+            }
+            try {
+                RebalanceResult result = new RebalanceResult(service, shardRouter.target(service).getShards().size());
+                resume(service, accountService(service), result);
+                if (result.getResumed() > 0) {
+                    log.info("Resumed {} moves of {}: {} accounts moved, {} returned", result.getResumed(), service,
+                            result.getMoved(), result.getReturned());
+                }
+            } catch (RuntimeException e) {
+                log.warn("Resuming the moves of {} failed: {}", service, e.getMessage());
+            } finally {
+                running.remove(service);
+            }
+        }
+    }
+
+    private void resume(String service, AccountService accounts, RebalanceResult result) {
+        for (ShardMove move : shardMoveRepository.findByServiceAndStateNotOrderByCreatedAt(service,
+                MoveState.FAILED)) {
+            Shard from = shardRouter.shard(service, move.getFromShard());
+            Shard to = shardRouter.shard(service, move.getToShard());
+            if (from == null || to == null) {
+                throw new IllegalStateException("Move " + move.getId() + " from " + move.getFromShard() + " to "
+                        + move.getToShard() + " waits for both shards to be registered");
+            }
+            log.info("Resuming move {} of {} from {} to {} at {}", move.getId(), service, from, to, move.getState());
+            advance(move, accounts, from, to, result);
+            result.resumed();
+        }
+    }
+
+    private void rebalance(String service, AccountService accounts, ShardRing ring, Shard shard,
+            RebalanceResult result) {
+        // Moved accounts are deleted behind the cursor, so paging on by account number misses none
+        String after = "";
+        while (after != null) {
+            ResponseEntity<List<AccountSnapshot>> page = accounts.list.page(shard.getBaseUri(), after, pageSize);
+            List<AccountSnapshot> snapshots = page.getBody();
+            result.scanned(snapshots.size());
+
+            Map<Shard, List<String>> moves = new LinkedHashMap<>();
+            for (AccountSnapshot snapshot : snapshots) {
+                Shard owner = ring.owner(snapshot.getAccountNumber());
+                if (!owner.equals(shard)) {
+                    moves.computeIfAbsent(owner, k -> new ArrayList<>()).add(snapshot.getAccountNumber());
+                }
+            }
+            for (Map.Entry<Shard, List<String>> move : moves.entrySet()) {
+                move(service, accounts, shard, move.getKey(), move.getValue(), result);
+            }
+            after = page.getHeaders().getFirst("X-Next-After");
+        }
+    }
+
+    private void move(String service, AccountService accounts, Shard from, Shard to, List<String> accountNumbers,
+            RebalanceResult result) {
+        ShardMove move = shardMoveRepository.save(new ShardMove(UUID.randomUUID().toString(), service, from.getId(),
+                to.getId(), write(accountNumbers)));
+        advance(move, accounts, from, to, result);
+    }
+
+    // Takes the move from its recorded state to the end, saving each step before the call that depends on it
+    private void advance(ShardMove move, AccountService accounts, Shard from, Shard to, RebalanceResult result) {
+        try {
+            if (move.getState() == MoveState.HANDING_OFF) {
+                List<String> accountNumbers = read(move.getAccountNumbers(), ACCOUNT_NUMBERS);
+                List<AccountRequest> handedOff;
+                try {
+                    handedOff = accounts.handOff.send(from.getBaseUri(), move.getId() + ":handoff", accountNumbers)
+                            .getBody();
+                } catch (FeignException e) {
+                    if (FeignRejections.isRejection(e)) {
+                        // Nothing was handed off, e.g. the shard keeps its balances in the ledger engine
+                        shardMoveRepository.delete(move);
+                    }
+                    throw e;
+                }
+                result.held(accountNumbers.size() - handedOff.size());
+                if (handedOff.isEmpty()) {
+                    shardMoveRepository.delete(move);
+                    return;
+                }
+                move.setHandedOff(write(handedOff));
+                move.setState(MoveState.ADOPTING);
+                shardMoveRepository.save(move);
+            }
+
+            List<AccountRequest> handedOff = read(move.getHandedOff(), HANDED_OFF);
+            if (move.getState() == MoveState.ADOPTING) {
+                Set<String> adopted;
+                try {
+                    adopted = new HashSet<>(accounts.adopt.send(to.getBaseUri(), move.getId() + ":adopt", handedOff)
+                            .getBody());
+                } catch (FeignException e) {
+                    if (!FeignRejections.isRejection(e)) {
+                        throw e;
+                    }
+                    // Refused as a whole, e.g. a number created there concurrently
+                    adopted = Set.of();
+                }
+                shardRouter.moved(move.getService(), to, adopted);
+                result.moved(adopted.size());
+                if (adopted.size() == handedOff.size()) {
+                    shardMoveRepository.delete(move);
+                    return;
+                }
+                move.setAdopted(write(adopted));
+                move.setState(MoveState.RETURNING);
+                shardMoveRepository.save(move);
+            }
+
+            // The new owner already has these numbers, or refused the batch; put them back where they were
+            Set<String> adopted = new HashSet<>(read(move.getAdopted(), ACCOUNT_NUMBERS));
+            List<AccountRequest> notAdopted = new ArrayList<>();
+            for (AccountRequest account : handedOff) {
+                if (!adopted.contains(account.getAccountNumber())) {
+                    notAdopted.add(account);
+                }
+            }
+            log.warn("{} accounts not taken by {}; returning them to {}", notAdopted.size(), to, from);
+            List<String> restored;
+            try {
+                restored = accounts.adopt.send(from.getBaseUri(), move.getId() + ":return", notAdopted).getBody();
+            } catch (FeignException e) {
+                if (!FeignRejections.isRejection(e)) {
+                    throw e;
+                }
+                restored = List.of();
+            }
+            result.returned(restored.size());
+            if (restored.size() < notAdopted.size()) {
+                // Their numbers were taken on both shards meanwhile; the move keeps the balances
+                log.error("Could not return accounts of move {} to {}. Manual intervention required! Accounts: {}",
+                        move.getId(), from, notAdopted);
+                move.setState(MoveState.FAILED);
+                shardMoveRepository.save(move);
+                return;
+            }
+            shardMoveRepository.delete(move);
+        } catch (RuntimeException e) {
+            if (shardMoveRepository.existsById(move.getId())) {
+                move.setLastError(e.getMessage());
+                shardMoveRepository.save(move);
+                log.warn("Move {} of {} from {} to {} stopped at {}: {}; the next run resumes it", move.getId(),
+                        move.getService(), from, to, move.getState(), e.getMessage());
+            }
+            throw e;
+        }
+    }
+
+    private String write(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not write " + value, e);
+        }
+    }
+
+    private <T> T read(String json, TypeReference<T> type) {
+        try {
+            return objectMapper.readValue(json, type);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not read " + json, e);
+        }
+    }
+
+    private AccountService accountService(String service) {
+        switch (service) {
+            case ShardRouter.CHECKING:
+                return new AccountService(checkingAccountClient::getAccounts, checkingAccountClient::handOff,
+                        checkingAccountClient::adopt);
+            case ShardRouter.SAVING:
+                return new AccountService(savingAccountClient::getAccounts, savingAccountClient::handOff,
+                        savingAccountClient::adopt);
+            default:
+                throw new IllegalArgumentException("Unknown account service " + service);
+        }
+    }
+
+    private interface Lister {
+        ResponseEntity<List<AccountSnapshot>> page(URI shard, String after, int limit);
+    }
+
+    private interface HandOff {
+        ResponseEntity<List<AccountRequest>> send(URI shard, String idempotencyKey, List<String> accountNumbers);
+    }
+
+    private interface Adopt {
+        ResponseEntity<List<String>> send(URI shard, String idempotencyKey, List<AccountRequest> accounts);
+    }
+
+    // The calls of one account service's Feign client used for moving accounts
+    private static class AccountService {
+        final Lister list;
+        final HandOff handOff;
+        final Adopt adopt;
+
+        AccountService(Lister list, HandOff handOff, Adopt adopt) {
+            this.list = list;
+            this.handOff = handOff;
+            this.adopt = adopt;
+        }
+    }
+}
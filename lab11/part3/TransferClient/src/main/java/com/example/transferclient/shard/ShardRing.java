@@ -0,0 +1,71 @@
+package com.example.transferclient.shard;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Consistent-hash ring over the instances of one account service. Each shard is placed at {@code virtualNodes}
+ * points, hashed from its id; an account belongs to the first point at or after the hash of its number, wrapping
+ * around. The points depend only on the shard ids, so every TransferClient builds the same ring from the same
+ * registry. Adding a shard moves only the accounts just before its points, about 1/N of them, and all of them to
+ * the new shard; removing one moves only its own accounts.
+ */
+public final class ShardRing {
+
+    private static final ThreadLocal<MessageDigest> MD5 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final List<Shard> shards;
+    private final NavigableMap<Long, Shard> points = new TreeMap<>();
+
+    public ShardRing(List<Shard> shards, int virtualNodes) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("A ring needs at least one shard");
+        }
+        List<Shard> sorted = new ArrayList<>(shards);
+        sorted.sort(Comparator.comparing(Shard::getId));
+        this.shards = Collections.unmodifiableList(sorted);
+        // In id order, so that on a hash collision the same shard keeps the point on every client
+        for (Shard shard : sorted) {
+            for (int i = 0; i < virtualNodes; i++) {
+                points.putIfAbsent(hash(shard.getId() + "#" + i), shard);
+            }
+        }
+    }
+
+    /**
+     * The shard that holds the account.
+     */
+    public Shard owner(String accountNumber) {
+        Map.Entry<Long, Shard> point = points.ceilingEntry(hash(accountNumber));
+        return point != null ? point.getValue() : points.firstEntry().getValue();
+    }
+
+    // In id order
+    public List<Shard> getShards() {
+        return shards;
+    }
+
+    // First 8 bytes of the MD5 digest, which spreads even sequential account numbers evenly over the ring
+    static long hash(String key) {
+        byte[] digest = MD5.get().digest(key.getBytes(StandardCharsets.UTF_8));
+        long hash = 0;
+        for (int i = 0; i < 8; i++) {
+            hash = (hash << 8) | (digest[i] & 0xff);
+        }
+        return hash;
+    }
+}
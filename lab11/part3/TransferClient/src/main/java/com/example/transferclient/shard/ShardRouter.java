@@ -0,0 +1,308 @@
+package com.example.transferclient.shard;
+
+import com.example.transferclient.model.MovedAccount;
+import com.example.transferclient.model.PlacedRing;
+import com.example.transferclient.repository.MovedAccountRepository;
+import com.example.transferclient.repository.PlacedRingRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Picks the instance of an account service that holds an account. With transfer.sharding.enabled the accounts
+ * of each service are spread over its instances in the Eureka registry by a {@link ShardRing}, rebuilt whenever
+ * the client's registry cache is refreshed; otherwise, or while no instance is registered, every account goes
+ * to the URL under {@code services.*}.
+ *
+ * A ring that adds shards is kept pending until {@link ShardRebalancer} has moved the accounts onto it: legs keep
+ * going to the current ring, except for accounts already moved, which follow the pending one. The first shards
+ * to register, and the loss of a shard, change the ring right away, as there is nothing to move.
+ *
+ * The shards the accounts are placed on ({@link PlacedRing}) and the accounts moved ahead of the ring
+ * ({@link MovedAccount}) are kept in the saga database, so every TransferClient instance, also one just
+ * restarted, routes by them rather than by whichever shards happen to be registered.
+ *
+ * An instance that drops out of the registry takes its accounts' routes with it: until it is back, their legs
+ * go to a shard that does not know them and fail as for an unknown account.
+ */
+@Component
+public class ShardRouter {
+
+    public static final String CHECKING = "checking-account-service";
+    public static final String SAVING = "saving-account-service";
+
+    private static final Logger log = LoggerFactory.getLogger(ShardRouter.class);
+
+    @Autowired
+    private DiscoveryClient discoveryClient;
+
+    @Autowired
+    private PlacedRingRepository placedRingRepository;
+
+    @Autowired
+    private MovedAccountRepository movedAccountRepository;
+
+    @Value("${services.checking-account}")
+    private String checkingAccountUrl;
+
+    @Value("${services.saving-account}")
+    private String savingAccountUrl;
+
+    @Value("${transfer.sharding.enabled:false}")
+    private boolean enabled;
+
+    @Value("${transfer.sharding.virtual-nodes:160}")
+    private int virtualNodes;
+
+    private Map<String, ShardRing> fallback;
+
+    // Replaced as a whole, so a lookup never sees one service's old ring next to another's new one
+    private volatile Map<String, ShardRing> rings;
+
+    // Per service, a ring with shards added since the last rebalance
+    private final Map<String, ShardRing> pending = new ConcurrentHashMap<>();
+
+    // Per service, the registered shards by id
+    private volatile Map<String, Map<String, Shard>> registered = Collections.emptyMap();
+
+    // Per service, accounts already on their shard on a pending ring, and the id of that shard; reloaded on refresh
+    // to pick up moves made through other instances
+    private final Map<String, Map<String, String>> moved = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        Map<String, ShardRing> configured = new LinkedHashMap<>();
+        configured.put(CHECKING, singleShard(CHECKING, checkingAccountUrl));
+        configured.put(SAVING, singleShard(SAVING, savingAccountUrl));
+        fallback = Collections.unmodifiableMap(configured);
+        rings = fallback;
+    }
+
+    @EventListener({ApplicationReadyEvent.class, HeartbeatEvent.class})
+    public synchronized void refresh() {
+        if (!enabled) {
+            return;
+        }
+        Map<String, ShardRing> current = rings;
+        Map<String, ShardRing> refreshed = new LinkedHashMap<>();
+        Map<String, Map<String, Shard>> byId = new HashMap<>();
+        boolean changed = false;
+        for (String service : fallback.keySet()) {
+            List<Shard> shards = new ArrayList<>();
+            for (ServiceInstance instance : discoveryClient.getInstances(service)) {
+                String id = instance.getMetadata().getOrDefault("shard", instance.getInstanceId());
+                shards.add(new Shard(id, instance.getUri()));
+            }
+            shards.sort(Comparator.comparing(Shard::getId));
+            byId.put(service, shards.stream().collect(Collectors.toMap(Shard::getId, shard -> shard,
+                    (first, second) -> first, LinkedHashMap::new)));
+            ShardRing ring = current.get(service);
+            if (shards.isEmpty()) {
+                ring = fallback.get(service);
+                pending.remove(service);
+            } else {
+                List<Shard> placed = placed(service, shards);
+                if (!placed.equals(ring.getShards())) {
+                    // The first shards, a shard lost, or the ring switched to through another instance
+                    ring = new ShardRing(placed, virtualNodes);
+                }
+                if (placed.size() == shards.size()) {
+                    // Shards added since the last rebalance are gone again, or there were none
+                    pending.remove(service);
+                } else {
+                    ShardRing waiting = pending.get(service);
+                    if (waiting == null || !shards.equals(waiting.getShards())) {
+                        pending.put(service, new ShardRing(shards, virtualNodes));
+                        log.info("Shard ring of {} becomes {} once rebalanced", service, shards);
+                    }
+                }
+            }
+            if (ring != current.get(service)) {
+                log.info("Shard ring of {} is now {}", service, ring.getShards());
+                changed = true;
+            }
+            refreshed.put(service, ring);
+            moved.put(service, movedAccountRepository.findByService(service).stream()
+                    .collect(Collectors.toConcurrentMap(MovedAccount::getAccountNumber, MovedAccount::getShardId)));
+        }
+        registered = Collections.unmodifiableMap(byId);
+        if (changed) {
+            rings = Collections.unmodifiableMap(refreshed);
+        }
+    }
+
+    // The registered shards that accounts are placed on; the first shards to register of a service are placed
+    private List<Shard> placed(String service, List<Shard> shards) {
+        Optional<PlacedRing> placedRing = placedRingRepository.findById(service);
+        if (placedRing.isEmpty()) {
+            placedRingRepository.save(new PlacedRing(service, ids(shards)));
+            return shards;
+        }
+        Set<String> placedIds = placedRing.get().shardIdSet();
+        List<Shard> placed = shards.stream().filter(shard -> placedIds.contains(shard.getId()))
+                .collect(Collectors.toList());
+        if (placed.isEmpty()) {
+            // Route by what there is until one of them is back, without forgetting where the accounts are
+            log.warn("None of the shards {} of {} is registered", placedIds, service);
+            return shards;
+        }
+        return placed;
+    }
+
+    /**
+     * Base URI of the checking-account shard that holds the account.
+     */
+    public URI checking(String accountNumber) {
+        return route(CHECKING, accountNumber);
+    }
+
+    /**
+     * Base URI of the saving-account shard that holds the account.
+     */
+    public URI saving(String accountNumber) {
+        return route(SAVING, accountNumber);
+    }
+
+    public URI route(String service, String accountNumber) {
+        return owner(service, accountNumber).getBaseUri();
+    }
+
+    /**
+     * The shard that holds the account: its owner on the current ring, or the shard it was moved to.
+     *
+     * @throws IllegalArgumentException if the service is not an account service
+     */
+    public Shard owner(String service, String accountNumber) {
+        ShardRing ring = ring(service);
+        Map<String, String> movedAccounts = moved.get(service);
+        String shardId = movedAccounts != null ? movedAccounts.get(accountNumber) : null;
+        if (shardId != null) {
+            Shard shard = shard(service, shardId);
+            if (shard != null) {
+                return shard;
+            }
+        }
+        return ring.owner(accountNumber);
+    }
+
+    /**
+     * The registered shard of the service with the given id, or null.
+     */
+    public Shard shard(String service, String shardId) {
+        Map<String, Shard> shards = registered.get(service);
+        return shards != null ? shards.get(shardId) : null;
+    }
+
+    /**
+     * The ring to move the accounts of the service to, and to create new accounts on: the pending ring if shards
+     * were added since the last rebalance, else the current one.
+     *
+     * @throws IllegalArgumentException if the service is not an account service
+     */
+    public ShardRing target(String service) {
+        ShardRing ring = ring(service);
+        return pending.getOrDefault(service, ring);
+    }
+
+    /**
+     * Route the accounts to the given shard from now on; called once they are on it. Accounts it owns on the
+     * current ring need no route of their own.
+     */
+    public synchronized void moved(String service, Shard shard, Collection<String> accountNumbers) {
+        ShardRing ring = ring(service);
+        List<MovedAccount> placed = new ArrayList<>();
+        for (String accountNumber : accountNumbers) {
+            if (!ring.owner(accountNumber).getId().equals(shard.getId())) {
+                placed.add(new MovedAccount(service, accountNumber, shard.getId()));
+            }
+        }
+        if (placed.isEmpty()) {
+            return;
+        }
+        movedAccountRepository.saveAll(placed);
+        Map<String, String> movedAccounts = moved.computeIfAbsent(service, k -> new ConcurrentHashMap<>());
+        for (MovedAccount account : placed) {
+            movedAccounts.put(account.getAccountNumber(), account.getShardId());
+        }
+    }
+
+    /**
+     * Make the given ring the current one, once a rebalance onto it has left no account behind.
+     */
+    public synchronized void commit(String service, ShardRing ring) {
+        placedRingRepository.save(new PlacedRing(service, ids(ring.getShards())));
+        if (ring != ring(service)) {
+            Map<String, ShardRing> committed = new LinkedHashMap<>(rings);
+            committed.put(service, ring);
+            rings = Collections.unmodifiableMap(committed);
+            log.info("Shard ring of {} is now {}", service, ring.getShards());
+        }
+        pending.remove(service, ring);
+        // Accounts created on a ring that became pending during the rebalance still need their route
+        Map<String, String> movedAccounts = moved.get(service);
+        if (movedAccounts != null) {
+            List<String> routed = new ArrayList<>();
+            movedAccounts.forEach((accountNumber, shardId) -> {
+                if (ring.owner(accountNumber).getId().equals(shardId)) {
+                    routed.add(accountNumber);
+                }
+            });
+            movedAccountRepository.deleteAllByIdInBatch(routed.stream()
+                    .map(accountNumber -> MovedAccount.id(service, accountNumber)).collect(Collectors.toList()));
+            movedAccounts.keySet().removeAll(routed);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the service is not an account service
+     */
+    public ShardRing ring(String service) {
+        ShardRing ring = rings.get(service);
+        if (ring == null) {
+            throw new IllegalArgumentException("Unknown account service " + service);
+        }
+        return ring;
+    }
+
+    public Map<String, ShardRing> getRings() {
+        return rings;
+    }
+
+    public Map<String, ShardRing> getPendingRings() {
+        return Collections.unmodifiableMap(pending);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    private static List<String> ids(List<Shard> shards) {
+        return shards.stream().map(Shard::getId).collect(Collectors.toList());
+    }
+
+    private static ShardRing singleShard(String service, String url) {
+        return new ShardRing(Collections.singletonList(new Shard(service, URI.create(url))), 1);
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.transferclient.service;
+
+import com.example.transferclient.dto.BatchTransferRequest;
+import com.example.transferclient.dto.TransactionRequest;
+import com.example.transferclient.dto.TransactionResult;
+import com.example.transferclient.dto.TransferDirection;
+import com.example.transferclient.dto.TransferRequest;
+import com.example.transferclient.dto.TransferResult;
+import com.example.transferclient.feign.CheckingAccountClient;
+import com.example.transferclient.feign.SavingAccountClient;
+import com.example.transferclient.model.BatchChunk;
+import com.example.transferclient.model.ChunkState;
+import com.example.transferclient.repository.BatchChunkRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.ResponseEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Batch transfers against mocked account services: a chunk is in the saga database before its withdrawals go out,
+ * and a chunk whose deposit got no answer is finished later by replaying the deposit under the same key.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:batch-transfer-service",
+        "eureka.client.enabled=false",
+        "transfer.batch.replay-attempts=1",
+        "transfer.batch.resume-interval-ms=600000",
+        "transfer.batch.stale-after-ms=0"
+})
+class BatchTransferServiceTest {
+
+    @Autowired
+    private BatchTransferService batchTransferService;
+
+    @Autowired
+    private BatchChunkRepository batchChunkRepository;
+
+    @MockBean
+    private CheckingAccountClient checkingAccountClient;
+
+    @MockBean
+    private SavingAccountClient savingAccountClient;
+
+    @AfterEach
+    void tearDown() {
+        batchChunkRepository.deleteAll();
+    }
+
+    @Test
+    void chunkIsRecordedBeforeItsWithdrawalsGoOut() {
+        AtomicReference<List<BatchChunk>> atWithdrawal = new AtomicReference<>();
+        when(checkingAccountClient.transferFromBatch(any(), anyString(), anyList())).thenAnswer(call -> {
+            atWithdrawal.set(batchChunkRepository.findAll());
+            return succeeded(call.getArgument(2));
+        });
+        when(savingAccountClient.transferToBatch(any(), anyString(), anyList()))
+                .thenAnswer(call -> succeeded(call.getArgument(2)));
+
+        List<TransferResult> results = batchTransferService.transferBatch(request());
+
+        assertThat(results).allMatch(TransferResult::isSuccess);
+        assertThat(atWithdrawal.get()).extracting(BatchChunk::getState).containsExactly(ChunkState.WITHDRAWING);
+        assertThat(batchChunkRepository.count()).isZero();
+    }
+
+    @Test
+    void depositWithoutAnAnswerIsReplayedUnderItsKeyWhenTheChunkIsResumed() {
+        when(checkingAccountClient.transferFromBatch(any(), anyString(), anyList()))
+                .thenAnswer(call -> succeeded(call.getArgument(2)));
+        List<String> depositKeys = new ArrayList<>();
+        when(savingAccountClient.transferToBatch(any(), anyString(), anyList())).thenAnswer(call -> {
+            depositKeys.add(call.getArgument(1));
+            if (depositKeys.size() == 1) {
+                throw new IllegalStateException("connection reset");
+            }
+            return succeeded(call.getArgument(2));
+        });
+
+        List<TransferResult> results = batchTransferService.transferBatch(request());
+
+        assertThat(results).extracting(TransferResult::getMessage).allMatch(message -> message.startsWith(
+                "Transfer pending"));
+        assertThat(batchChunkRepository.findAll()).extracting(BatchChunk::getState)
+                .containsExactly(ChunkState.DEPOSITING);
+
+        batchTransferService.resumeChunks();
+
+        assertThat(depositKeys).hasSize(2);
+        assertThat(depositKeys.get(1)).isEqualTo(depositKeys.get(0));
+        verify(checkingAccountClient, times(1)).transferFromBatch(any(), anyString(), anyList());
+        verify(checkingAccountClient, times(0)).transferToBatch(any(), anyString(), anyList());
+        assertThat(batchChunkRepository.count()).isZero();
+    }
+
+    private static BatchTransferRequest request() {
+        return new BatchTransferRequest(TransferDirection.CHECKING_TO_SAVING, List.of(
+                new TransferRequest("CHK001", "SAV001", 500, "USD"),
+                new TransferRequest("CHK002", "SAV002", 700, "USD")));
+    }
+
+    private static ResponseEntity<List<TransactionResult>> succeeded(List<TransactionRequest> legs) {
+        List<TransactionResult> results = new ArrayList<>();
+        for (TransactionRequest leg : legs) {
+            results.add(new TransactionResult(leg.getAccountNumber(), leg.getAmount(), true, "ok"));
+        }
+        return ResponseEntity.ok(results);
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.transferclient.service;
+
+import com.example.transferclient.dto.TransferDirection;
+import com.example.transferclient.dto.TransferRequest;
+import com.example.transferclient.shard.ShardRouter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+/**
+ * The hold step of reactive transfers against stubbed account services: a hold whose answer never came may have
+ * been placed and is released, a refused one is not.
+ */
+class ReactiveTransferServiceTest {
+
+    private final ShardRouter shardRouter = new ShardRouter();
+    private final SagaOrchestrator sagaOrchestrator = mock(SagaOrchestrator.class);
+    private final ReactiveTransferService reactiveTransferService = new ReactiveTransferService();
+
+    // Calls to the checking-account service, in the order they were sent
+    private final List<ClientRequest> checkingCalls = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(shardRouter, "checkingAccountUrl", "http://localhost:8082");
+        ReflectionTestUtils.setField(shardRouter, "savingAccountUrl", "http://localhost:8081");
+        shardRouter.init();
+
+        ReflectionTestUtils.setField(reactiveTransferService, "shardRouter", shardRouter);
+        ReflectionTestUtils.setField(reactiveTransferService, "sagaOrchestrator", sagaOrchestrator);
+        ReflectionTestUtils.setField(reactiveTransferService, "confirmAttempts", 3);
+        ReflectionTestUtils.setField(reactiveTransferService, "confirmBackoffMs", 10L);
+        ReflectionTestUtils.setField(reactiveTransferService, "savingAccountWebClient", WebClient.builder()
+                .exchangeFunction(request -> Mono.error(new AssertionError("No deposit expected"))).build());
+    }
+
+    @Test
+    void holdThatTimedOutIsReleased() {
+        checking(request -> request.method() == HttpMethod.PUT
+                ? Mono.error(new WebClientRequestException(new TimeoutException("Read timed out"), request.method(),
+                        request.url(), HttpHeaders.EMPTY))
+                : Mono.just(ClientResponse.create(HttpStatus.OK).body("Hold released").build()));
+
+        String result = transfer();
+
+        assertThat(result).startsWith("Failed to withdraw from checking account");
+        ClientRequest hold = checkingCalls.get(0);
+        ClientRequest last = checkingCalls.get(checkingCalls.size() - 1);
+        assertThat(last.method()).isEqualTo(HttpMethod.DELETE);
+        assertThat(last.url()).isEqualTo(hold.url());
+        verifyNoInteractions(sagaOrchestrator);
+    }
+
+    @Test
+    void refusedHoldIsNotReleased() {
+        checking(request -> Mono.just(ClientResponse.create(HttpStatus.UNPROCESSABLE_ENTITY)
+                .body("Insufficient funds").build()));
+
+        String result = transfer();
+
+        assertThat(result).isEqualTo("Failed to withdraw from checking account: Insufficient funds");
+        assertThat(checkingCalls).extracting(ClientRequest::method).containsExactly(HttpMethod.PUT);
+    }
+
+    private String transfer() {
+        return reactiveTransferService.transfer(new TransferRequest("CHK001", "SAV001", 500, "USD"),
+                TransferDirection.CHECKING_TO_SAVING).block();
+    }
+
+    private void checking(Function<ClientRequest, Mono<ClientResponse>> answer) {
+        ReflectionTestUtils.setField(reactiveTransferService, "checkingAccountWebClient", WebClient.builder()
+                .exchangeFunction(request -> {
+                    checkingCalls.add(request);
+                    return answer.apply(request);
+                }).build());
+    }
+}
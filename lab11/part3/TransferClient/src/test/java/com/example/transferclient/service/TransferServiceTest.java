@@ -0,0 +1,126 @@
+package com.example.transferclient.service;
+
+import com.example.transferclient.dto.TransferRequest;
+import com.example.transferclient.feign.CheckingAccountClient;
+import com.example.transferclient.feign.SavingAccountClient;
+import com.example.transferclient.model.SagaState;
+import com.example.transferclient.model.TransferSaga;
+import com.example.transferclient.repository.TransferSagaRepository;
+import feign.FeignException;
+import feign.Request;
+import feign.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Hold/confirm transfers against mocked account services: the transfer is in the saga log before its deposit goes
+ * out, and its outcome is recorded there.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:transfer-service",
+        "eureka.client.enabled=false",
+        "transfer.saga.recovery-interval-ms=600000"
+})
+class TransferServiceTest {
+
+    @Autowired
+    private TransferService transferService;
+
+    @Autowired
+    private TransferSagaRepository transferSagaRepository;
+
+    @MockBean
+    private CheckingAccountClient checkingAccountClient;
+
+    @MockBean
+    private SavingAccountClient savingAccountClient;
+
+    @AfterEach
+    void tearDown() {
+        transferSagaRepository.deleteAll();
+    }
+
+    @Test
+    void depositGoesOutOnlyOnceTheTransferIsRecorded() {
+        when(checkingAccountClient.placeHold(any(), anyString(), any())).thenReturn(ResponseEntity.ok("held"));
+        AtomicReference<TransferSaga> atDeposit = new AtomicReference<>();
+        when(savingAccountClient.transferTo(any(), anyString(), any())).thenAnswer(call -> {
+            String transferId = call.<String>getArgument(1).replace(":deposit", "");
+            atDeposit.set(transferSagaRepository.findById(transferId).orElse(null));
+            return ResponseEntity.ok("deposited");
+        });
+        when(checkingAccountClient.confirmHold(any(), anyString())).thenReturn(ResponseEntity.ok("confirmed"));
+
+        String result = transferService.transferFromCheckingToSaving(new TransferRequest("CHK001", "SAV001", 500,
+                "USD"));
+
+        assertThat(result).startsWith("Transfer completed successfully");
+        assertThat(atDeposit.get()).isNotNull();
+        assertThat(atDeposit.get().getState()).isEqualTo(SagaState.HELD);
+        assertThat(transferSagaRepository.findById(atDeposit.get().getId()))
+                .hasValueSatisfying(saga -> assertThat(saga.getState()).isEqualTo(SagaState.COMPLETED));
+    }
+
+    @Test
+    void rejectedDepositReleasesTheHoldAndIsRecordedAsCompensated() {
+        when(checkingAccountClient.placeHold(any(), anyString(), any())).thenReturn(ResponseEntity.ok("held"));
+        when(savingAccountClient.transferTo(any(), anyString(), any())).thenThrow(rejection());
+        when(checkingAccountClient.releaseHold(any(), anyString())).thenReturn(ResponseEntity.ok("released"));
+
+        String result = transferService.transferFromCheckingToSaving(new TransferRequest("CHK001", "SAV404", 500,
+                "USD"));
+
+        assertThat(result).endsWith("Hold has been released.");
+        verify(checkingAccountClient, never()).confirmHold(any(), anyString());
+        List<TransferSaga> sagas = transferSagaRepository.findAll();
+        assertThat(sagas).extracting(TransferSaga::getState).containsExactly(SagaState.COMPENSATED);
+    }
+
+    @Test
+    void holdPlacedButNotReleasedAfterARejectedDepositIsLeftToRecovery() {
+        when(checkingAccountClient.placeHold(any(), anyString(), any())).thenReturn(ResponseEntity.ok("held"));
+        when(savingAccountClient.transferTo(any(), anyString(), any())).thenThrow(rejection());
+        when(checkingAccountClient.releaseHold(any(), anyString())).thenThrow(new IllegalStateException("down"));
+
+        String result = transferService.transferFromCheckingToSaving(new TransferRequest("CHK001", "SAV404", 500,
+                "USD"));
+
+        assertThat(result).contains("is pending");
+        List<TransferSaga> sagas = transferSagaRepository.findAll();
+        assertThat(sagas).extracting(TransferSaga::getState).containsExactly(SagaState.HELD);
+    }
+
+    @Test
+    void rejectedHoldRecordsNothing() {
+        when(checkingAccountClient.placeHold(any(), anyString(), any())).thenThrow(rejection());
+
+        String result = transferService.transferFromCheckingToSaving(new TransferRequest("CHK001", "SAV001", 500,
+                "USD"));
+
+        assertThat(result).startsWith("Failed to withdraw");
+        assertThat(transferSagaRepository.count()).isZero();
+    }
+
+    private static FeignException rejection() {
+        Request request = Request.create(Request.HttpMethod.POST, "http://localhost", Collections.emptyMap(),
+                new byte[0], StandardCharsets.UTF_8, null);
+        return FeignException.errorStatus("transferTo", Response.builder().status(422).reason("Unprocessable")
+                .request(request).headers(Collections.emptyMap()).build());
+    }
+}
@@ -0,0 +1,327 @@
+package com.example.transferclient.shard;
+
+import com.example.transferclient.dto.AccountRequest;
+import com.example.transferclient.dto.AccountSnapshot;
+import com.example.transferclient.dto.RebalanceResult;
+import com.example.transferclient.feign.CheckingAccountClient;
+import com.example.transferclient.feign.SavingAccountClient;
+import com.example.transferclient.model.MoveState;
+import com.example.transferclient.model.ShardMove;
+import com.example.transferclient.repository.MovedAccountRepository;
+import com.example.transferclient.repository.PlacedRingRepository;
+import com.example.transferclient.repository.ShardMoveRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import feign.Request;
+import feign.RetryableException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Rebalancing the checking accounts onto an added shard, against in-memory shards behind a mocked Feign client,
+ * with the moves and routes kept in an in-memory saga database.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:shard-rebalancer",
+        "eureka.client.enabled=false"
+})
+class ShardRebalancerTest {
+
+    private static final int ACCOUNTS = 300;
+
+    @Autowired
+    private PlacedRingRepository placedRingRepository;
+
+    @Autowired
+    private MovedAccountRepository movedAccountRepository;
+
+    @Autowired
+    private ShardMoveRepository shardMoveRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final DiscoveryClient discoveryClient = mock(DiscoveryClient.class);
+    private final CheckingAccountClient checkingAccountClient = mock(CheckingAccountClient.class);
+    private ShardRouter shardRouter;
+    private ShardRebalancer shardRebalancer;
+
+    // Account numbers and customers held by each shard
+    private final Map<URI, NavigableMap<String, String>> shards = new HashMap<>();
+    // Accounts with funds on hold, which their shard refuses to hand off
+    private final Set<String> held = new HashSet<>();
+    // Answers to keyed calls, as the shards' idempotency records keep them
+    private final Map<String, List<?>> answers = new HashMap<>();
+    // Adoptions that fail without an answer, as in a timeout
+    private int failingAdoptions;
+
+    @BeforeEach
+    void setUp() {
+        start();
+
+        when(checkingAccountClient.getAccounts(any(), anyString(), anyInt())).thenAnswer(call ->
+                page(call.getArgument(0), call.getArgument(1), call.getArgument(2)));
+        when(checkingAccountClient.handOff(any(), anyString(), anyList())).thenAnswer(call ->
+                handOff(call.getArgument(0), call.getArgument(1), call.getArgument(2)));
+        when(checkingAccountClient.adopt(any(), anyString(), anyList())).thenAnswer(call ->
+                adopt(call.getArgument(0), call.getArgument(1), call.getArgument(2)));
+
+        register(1, 2, 3);
+        shardRouter.refresh();
+        ShardRing ring = shardRouter.ring(ShardRouter.CHECKING);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            String accountNumber = accountNumber(i);
+            shard(ring.owner(accountNumber).getBaseUri()).put(accountNumber, "CUST" + i);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        placedRingRepository.deleteAll();
+        movedAccountRepository.deleteAll();
+        shardMoveRepository.deleteAll();
+    }
+
+    @Test
+    void movesAccountsToTheAddedShardAndThenSwitchesTheRing() {
+        register(1, 2, 3, 4);
+        shardRouter.refresh();
+        ShardRing target = shardRouter.target(ShardRouter.CHECKING);
+
+        RebalanceResult result = shardRebalancer.rebalance(ShardRouter.CHECKING);
+
+        // The added shard is scanned last, by then with the accounts moved onto it
+        assertThat(result.getScanned()).isEqualTo(ACCOUNTS + result.getMoved());
+        assertThat(result.getMoved()).isPositive().isEqualTo(shard(uri(4)).size());
+        assertThat(result.getHeld()).isZero();
+        assertThat(result.isRingSwitched()).isTrue();
+        assertThat(shardRouter.ring(ShardRouter.CHECKING)).isSameAs(target);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            URI owner = target.owner(accountNumber(i)).getBaseUri();
+            assertThat(shard(owner)).containsKey(accountNumber(i));
+            assertThat(shardRouter.checking(accountNumber(i))).isEqualTo(owner);
+        }
+        assertThat(shardMoveRepository.count()).isZero();
+        assertThat(movedAccountRepository.count()).isZero();
+    }
+
+    @Test
+    void moveCutShortBetweenHandOffAndAdoptionIsResumedAfterARestart() {
+        register(1, 2, 3, 4);
+        failingAdoptions = 1;
+
+        assertThatThrownBy(() -> shardRebalancer.rebalance(ShardRouter.CHECKING))
+                .isInstanceOf(RetryableException.class);
+
+        // Handed off and not adopted: the balances are in the move record only
+        List<ShardMove> moves = shardMoveRepository.findAll();
+        assertThat(moves).hasSize(1);
+        ShardMove move = moves.get(0);
+        assertThat(move.getState()).isEqualTo(MoveState.ADOPTING);
+        assertThat(move.getLastError()).isNotBlank();
+        int stranded = answer(move.getId() + ":handoff").size();
+        assertThat(stranded).isPositive();
+        assertThat(shards.values().stream().mapToInt(Map::size).sum()).isEqualTo(ACCOUNTS - stranded);
+
+        start();
+        RebalanceResult result = shardRebalancer.rebalance(ShardRouter.CHECKING);
+
+        assertThat(result.getResumed()).isEqualTo(1);
+        assertThat(result.isRingSwitched()).isTrue();
+        assertThat(shards.values().stream().mapToInt(Map::size).sum()).isEqualTo(ACCOUNTS);
+        ShardRing target = shardRouter.ring(ShardRouter.CHECKING);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            assertThat(shard(target.owner(accountNumber(i)).getBaseUri())).containsKey(accountNumber(i));
+        }
+        assertThat(shardMoveRepository.count()).isZero();
+    }
+
+    @Test
+    void scheduledResumeFinishesAMoveWithoutARebalance() {
+        register(1, 2, 3, 4);
+        failingAdoptions = 1;
+        assertThatThrownBy(() -> shardRebalancer.rebalance(ShardRouter.CHECKING))
+                .isInstanceOf(RetryableException.class);
+        String moveId = shardMoveRepository.findAll().get(0).getId();
+
+        shardRebalancer.resumeMoves();
+
+        assertThat(shardMoveRepository.count()).isZero();
+        for (Object account : answer(moveId + ":handoff")) {
+            String accountNumber = ((AccountRequest) account).getAccountNumber();
+            assertThat(shard(uri(4))).containsKey(accountNumber);
+            assertThat(shardRouter.checking(accountNumber)).isEqualTo(uri(4));
+        }
+        // The other accounts wait for the next rebalance
+        assertThat(shardRouter.getPendingRings()).containsKey(ShardRouter.CHECKING);
+    }
+
+    @Test
+    void keepsTheOldRingForHeldAccountsUntilALaterRunMovesThem() {
+        register(1, 2, 3, 4);
+        shardRouter.refresh();
+        ShardRing current = shardRouter.ring(ShardRouter.CHECKING);
+        ShardRing target = shardRouter.target(ShardRouter.CHECKING);
+        List<String> moving = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            if (target.owner(accountNumber(i)).getId().equals("checking-4")) {
+                moving.add(accountNumber(i));
+            }
+        }
+        String onHold = moving.get(0);
+        String moved = moving.get(1);
+        held.add(onHold);
+
+        RebalanceResult first = shardRebalancer.rebalance(ShardRouter.CHECKING);
+
+        assertThat(first.getHeld()).isEqualTo(1);
+        assertThat(first.isRingSwitched()).isFalse();
+        assertThat(shardRouter.ring(ShardRouter.CHECKING)).isSameAs(current);
+        // Each account is routed to where it is now
+        assertThat(shardRouter.checking(onHold)).isEqualTo(current.owner(onHold).getBaseUri());
+        assertThat(shard(current.owner(onHold).getBaseUri())).containsKey(onHold);
+        assertThat(shardRouter.checking(moved)).isEqualTo(uri(4));
+        assertThat(shard(uri(4))).containsKey(moved);
+
+        held.clear();
+        RebalanceResult second = shardRebalancer.rebalance(ShardRouter.CHECKING);
+
+        assertThat(second.getMoved()).isEqualTo(1);
+        assertThat(second.isRingSwitched()).isTrue();
+        assertThat(shardRouter.checking(onHold)).isEqualTo(uri(4));
+        assertThat(shard(uri(4))).containsKey(onHold);
+    }
+
+    private ResponseEntity<List<AccountSnapshot>> page(URI shard, String after, int limit) {
+        List<AccountSnapshot> page = new ArrayList<>();
+        for (String accountNumber : shard(shard).tailMap(after, false).keySet()) {
+            if (page.size() == limit) {
+                break;
+            }
+            AccountSnapshot snapshot = new AccountSnapshot();
+            snapshot.setAccountNumber(accountNumber);
+            page.add(snapshot);
+        }
+        if (page.size() < limit) {
+            return ResponseEntity.ok(page);
+        }
+        return ResponseEntity.ok().header("X-Next-After", page.get(page.size() - 1).getAccountNumber()).body(page);
+    }
+
+    // A new instance of each, as after a restart of TransferClient; only the saga database is kept
+    private void start() {
+        shardRouter = new ShardRouter();
+        ReflectionTestUtils.setField(shardRouter, "discoveryClient", discoveryClient);
+        ReflectionTestUtils.setField(shardRouter, "placedRingRepository", placedRingRepository);
+        ReflectionTestUtils.setField(shardRouter, "movedAccountRepository", movedAccountRepository);
+        ReflectionTestUtils.setField(shardRouter, "checkingAccountUrl", "http://localhost:8082");
+        ReflectionTestUtils.setField(shardRouter, "savingAccountUrl", "http://localhost:8081");
+        ReflectionTestUtils.setField(shardRouter, "enabled", true);
+        ReflectionTestUtils.setField(shardRouter, "virtualNodes", 160);
+        shardRouter.init();
+
+        shardRebalancer = new ShardRebalancer();
+        ReflectionTestUtils.setField(shardRebalancer, "shardRouter", shardRouter);
+        ReflectionTestUtils.setField(shardRebalancer, "checkingAccountClient", checkingAccountClient);
+        ReflectionTestUtils.setField(shardRebalancer, "savingAccountClient", mock(SavingAccountClient.class));
+        ReflectionTestUtils.setField(shardRebalancer, "shardMoveRepository", shardMoveRepository);
+        ReflectionTestUtils.setField(shardRebalancer, "objectMapper", objectMapper);
+        // Several pages per shard
+        ReflectionTestUtils.setField(shardRebalancer, "pageSize", 40);
+        shardRouter.refresh();
+    }
+
+    private List<?> answer(String key) {
+        return answers.get(key);
+    }
+
+    private ResponseEntity<List<AccountRequest>> handOff(URI shard, String key, List<String> accountNumbers) {
+        if (answers.containsKey(key)) {
+            @SuppressWarnings("unchecked")
+            List<AccountRequest> answer = (List<AccountRequest>) answers.get(key);
+            return ResponseEntity.ok(answer);
+        }
+        List<AccountRequest> handedOff = new ArrayList<>();
+        for (String accountNumber : accountNumbers) {
+            if (!held.contains(accountNumber) && shard(shard).containsKey(accountNumber)) {
+                AccountRequest account = new AccountRequest();
+                account.setAccountNumber(accountNumber);
+                account.setCustomerId(shard(shard).remove(accountNumber));
+                handedOff.add(account);
+            }
+        }
+        answers.put(key, handedOff);
+        return ResponseEntity.ok(handedOff);
+    }
+
+    private ResponseEntity<List<String>> adopt(URI shard, String key, List<AccountRequest> accounts) {
+        if (failingAdoptions > 0) {
+            failingAdoptions--;
+            throw new RetryableException(-1, "Read timed out", Request.HttpMethod.POST, null,
+                    Request.create(Request.HttpMethod.POST, shard + "/api/checking-accounts/adopt",
+                            Collections.emptyMap(), new byte[0], StandardCharsets.UTF_8, null));
+        }
+        if (answers.containsKey(key)) {
+            @SuppressWarnings("unchecked")
+            List<String> answer = (List<String>) answers.get(key);
+            return ResponseEntity.ok(answer);
+        }
+        List<String> adopted = new ArrayList<>();
+        for (AccountRequest account : accounts) {
+            if (shard(shard).putIfAbsent(account.getAccountNumber(), account.getCustomerId()) == null) {
+                adopted.add(account.getAccountNumber());
+            }
+        }
+        answers.put(key, adopted);
+        return ResponseEntity.ok(adopted);
+    }
+
+    private NavigableMap<String, String> shard(URI uri) {
+        return shards.computeIfAbsent(uri, k -> new TreeMap<>());
+    }
+
+    private void register(int... shardNumbers) {
+        List<ServiceInstance> instances = new ArrayList<>();
+        for (int shard : shardNumbers) {
+            instances.add(new DefaultServiceInstance("instance-" + shard, ShardRouter.CHECKING, "checking-" + shard,
+                    8082, false, Collections.singletonMap("shard", "checking-" + shard)));
+        }
+        when(discoveryClient.getInstances(ShardRouter.CHECKING)).thenReturn(instances);
+    }
+
+    private static URI uri(int shard) {
+        return URI.create("http://checking-" + shard + ":8082");
+    }
+
+    private static String accountNumber(int i) {
+        return String.format("CHK%06d", i);
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.transferclient.shard;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ShardRingTest {
+
+    private static final int VIRTUAL_NODES = 160;
+    private static final int ACCOUNTS = 10_000;
+
+    @Test
+    void ownersDependOnlyOnTheShardIds() {
+        List<Shard> shards = shards(4);
+        List<Shard> shuffled = new ArrayList<>(shards);
+        Collections.reverse(shuffled);
+        ShardRing ring = new ShardRing(shards, VIRTUAL_NODES);
+        ShardRing sameShards = new ShardRing(shuffled, VIRTUAL_NODES);
+
+        assertThat(sameShards.getShards()).isEqualTo(ring.getShards());
+        for (int i = 0; i < ACCOUNTS; i++) {
+            assertThat(sameShards.owner(accountNumber(i))).isEqualTo(ring.owner(accountNumber(i)));
+        }
+    }
+
+    @Test
+    void addingAShardMovesOnlyAboutItsShareOfAccountsAndOnlyToIt() {
+        ShardRing before = new ShardRing(shards(3), VIRTUAL_NODES);
+        List<Shard> grown = shards(4);
+        Shard added = grown.get(3);
+        ShardRing after = new ShardRing(grown, VIRTUAL_NODES);
+
+        int moved = 0;
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Shard oldOwner = before.owner(accountNumber(i));
+            Shard newOwner = after.owner(accountNumber(i));
+            if (!newOwner.equals(oldOwner)) {
+                assertThat(newOwner).isEqualTo(added);
+                moved++;
+            }
+        }
+        // About 1/4 of the accounts
+        assertThat(moved).isBetween(ACCOUNTS * 15 / 100, ACCOUNTS * 35 / 100);
+    }
+
+    @Test
+    void removingAShardMovesOnlyItsOwnAccounts() {
+        List<Shard> all = shards(4);
+        Shard removed = all.get(1);
+        ShardRing before = new ShardRing(all, VIRTUAL_NODES);
+        List<Shard> remaining = new ArrayList<>(all);
+        remaining.remove(removed);
+        ShardRing after = new ShardRing(remaining, VIRTUAL_NODES);
+
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Shard oldOwner = before.owner(accountNumber(i));
+            if (!oldOwner.equals(removed)) {
+                assertThat(after.owner(accountNumber(i))).isEqualTo(oldOwner);
+            }
+        }
+    }
+
+    @Test
+    void spreadsSequentialAccountNumbersEvenly() {
+        ShardRing ring = new ShardRing(shards(4), VIRTUAL_NODES);
+        Map<Shard, Integer> owned = new HashMap<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            owned.merge(ring.owner(accountNumber(i)), 1, Integer::sum);
+        }
+
+        assertThat(owned).hasSize(4);
+        assertThat(owned.values()).allSatisfy(count ->
+                assertThat(count).isBetween(ACCOUNTS * 15 / 100, ACCOUNTS * 35 / 100));
+    }
+
+    @Test
+    void needsAtLeastOneShard() {
+        assertThatThrownBy(() -> new ShardRing(Collections.emptyList(), VIRTUAL_NODES))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static List<Shard> shards(int count) {
+        List<Shard> shards = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            shards.add(new Shard("checking-" + i, URI.create("http://checking-" + i + ":8082")));
+        }
+        return shards;
+    }
+
+    private static String accountNumber(int i) {
+        return String.format("CHK%06d", i);
+    }
+}
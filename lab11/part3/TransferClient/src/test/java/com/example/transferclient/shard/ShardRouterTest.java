@@ -0,0 +1,198 @@
+package com.example.transferclient.shard;
+
+import com.example.transferclient.repository.MovedAccountRepository;
+import com.example.transferclient.repository.PlacedRingRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Routing by the registered shards, with the placed ring and the moved accounts kept in an in-memory saga database.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:shard-router",
+        "eureka.client.enabled=false"
+})
+class ShardRouterTest {
+
+    private static final String CONFIGURED_URL = "http://localhost:8082";
+
+    @Autowired
+    private PlacedRingRepository placedRingRepository;
+
+    @Autowired
+    private MovedAccountRepository movedAccountRepository;
+
+    private final DiscoveryClient discoveryClient = mock(DiscoveryClient.class);
+    private ShardRouter shardRouter;
+
+    @BeforeEach
+    void setUp() {
+        shardRouter = router();
+    }
+
+    @AfterEach
+    void tearDown() {
+        placedRingRepository.deleteAll();
+        movedAccountRepository.deleteAll();
+    }
+
+    @Test
+    void routesToTheConfiguredUrlUntilShardsRegister() {
+        shardRouter.refresh();
+
+        assertThat(shardRouter.checking("CHK000001")).isEqualTo(URI.create(CONFIGURED_URL));
+    }
+
+    @Test
+    void firstShardsToRegisterTakeOverRightAway() {
+        register(1, 2);
+        shardRouter.refresh();
+
+        assertThat(shardRouter.ring(ShardRouter.CHECKING).getShards()).extracting(Shard::getId)
+                .containsExactly("checking-1", "checking-2");
+        assertThat(shardRouter.getPendingRings()).isEmpty();
+    }
+
+    @Test
+    void addedShardWaitsForTheRebalance() {
+        register(1, 2);
+        shardRouter.refresh();
+        ShardRing current = shardRouter.ring(ShardRouter.CHECKING);
+        register(1, 2, 3);
+        shardRouter.refresh();
+
+        ShardRing pending = shardRouter.target(ShardRouter.CHECKING);
+        assertThat(shardRouter.ring(ShardRouter.CHECKING)).isSameAs(current);
+        assertThat(pending.getShards()).hasSize(3);
+        String moving = accountOwnedBy(pending, "checking-3");
+        String staying = accountOwnedBy(pending, "checking-1");
+
+        // Not moved yet: still on its old shard
+        assertThat(shardRouter.owner(ShardRouter.CHECKING, moving)).isEqualTo(current.owner(moving));
+
+        shardRouter.moved(ShardRouter.CHECKING, pending.owner(moving), Collections.singletonList(moving));
+        assertThat(shardRouter.owner(ShardRouter.CHECKING, moving).getId()).isEqualTo("checking-3");
+        assertThat(shardRouter.owner(ShardRouter.CHECKING, staying)).isEqualTo(current.owner(staying));
+
+        shardRouter.commit(ShardRouter.CHECKING, pending);
+        assertThat(shardRouter.ring(ShardRouter.CHECKING)).isSameAs(pending);
+        assertThat(shardRouter.getPendingRings()).isEmpty();
+        assertThat(shardRouter.owner(ShardRouter.CHECKING, moving).getId()).isEqualTo("checking-3");
+        // Routed by the ring now
+        assertThat(movedAccountRepository.count()).isZero();
+    }
+
+    @Test
+    void restartedRouterRoutesByThePlacedRingAndTheMovedAccounts() {
+        register(1, 2);
+        shardRouter.refresh();
+        ShardRing current = shardRouter.ring(ShardRouter.CHECKING);
+        register(1, 2, 3);
+        shardRouter.refresh();
+        ShardRing pending = shardRouter.target(ShardRouter.CHECKING);
+        String moving = accountOwnedBy(pending, "checking-3");
+        String staying = accountOwnedBy(pending, "checking-1");
+        shardRouter.moved(ShardRouter.CHECKING, pending.owner(moving), Collections.singletonList(moving));
+
+        // Sees all three shards registered, but accounts are placed on two of them
+        ShardRouter restarted = router();
+        restarted.refresh();
+
+        assertThat(restarted.ring(ShardRouter.CHECKING).getShards()).isEqualTo(current.getShards());
+        assertThat(restarted.target(ShardRouter.CHECKING).getShards()).isEqualTo(pending.getShards());
+        assertThat(restarted.owner(ShardRouter.CHECKING, moving).getId()).isEqualTo("checking-3");
+        assertThat(restarted.owner(ShardRouter.CHECKING, staying)).isEqualTo(current.owner(staying));
+
+        // A ring switched to through another instance is picked up on the next refresh
+        shardRouter.commit(ShardRouter.CHECKING, pending);
+        restarted.refresh();
+        assertThat(restarted.ring(ShardRouter.CHECKING).getShards()).isEqualTo(pending.getShards());
+        assertThat(restarted.getPendingRings()).isEmpty();
+    }
+
+    @Test
+    void heartbeatDoesNotReplaceAPendingRingWithAnEqualOne() {
+        register(1, 2);
+        shardRouter.refresh();
+        register(1, 2, 3);
+        shardRouter.refresh();
+        ShardRing pending = shardRouter.target(ShardRouter.CHECKING);
+
+        shardRouter.refresh();
+
+        assertThat(shardRouter.target(ShardRouter.CHECKING)).isSameAs(pending);
+    }
+
+    @Test
+    void lostShardChangesTheRingRightAway() {
+        register(1, 2, 3);
+        shardRouter.refresh();
+        register(1, 3);
+        shardRouter.refresh();
+
+        assertThat(shardRouter.ring(ShardRouter.CHECKING).getShards()).extracting(Shard::getId)
+                .containsExactly("checking-1", "checking-3");
+        assertThat(shardRouter.getPendingRings()).isEmpty();
+    }
+
+    @Test
+    void pendingRingIsDroppedWhenTheAddedShardLeavesAgain() {
+        register(1, 2);
+        shardRouter.refresh();
+        ShardRing current = shardRouter.ring(ShardRouter.CHECKING);
+        register(1, 2, 3);
+        shardRouter.refresh();
+        register(1, 2);
+        shardRouter.refresh();
+
+        assertThat(shardRouter.ring(ShardRouter.CHECKING)).isSameAs(current);
+        assertThat(shardRouter.target(ShardRouter.CHECKING)).isSameAs(current);
+    }
+
+    private ShardRouter router() {
+        ShardRouter router = new ShardRouter();
+        ReflectionTestUtils.setField(router, "discoveryClient", discoveryClient);
+        ReflectionTestUtils.setField(router, "placedRingRepository", placedRingRepository);
+        ReflectionTestUtils.setField(router, "movedAccountRepository", movedAccountRepository);
+        ReflectionTestUtils.setField(router, "checkingAccountUrl", CONFIGURED_URL);
+        ReflectionTestUtils.setField(router, "savingAccountUrl", "http://localhost:8081");
+        ReflectionTestUtils.setField(router, "enabled", true);
+        ReflectionTestUtils.setField(router, "virtualNodes", 160);
+        router.init();
+        return router;
+    }
+
+    private void register(int... shards) {
+        List<ServiceInstance> instances = new ArrayList<>();
+        for (int shard : shards) {
+            instances.add(new DefaultServiceInstance("instance-" + shard, ShardRouter.CHECKING, "checking-" + shard,
+                    8082, false, Collections.singletonMap("shard", "checking-" + shard)));
+        }
+        when(discoveryClient.getInstances(ShardRouter.CHECKING)).thenReturn(instances);
+    }
+
+    private static String accountOwnedBy(ShardRing ring, String shardId) {
+        for (int i = 0; ; i++) {
+            String accountNumber = String.format("CHK%06d", i);
+            if (ring.owner(accountNumber).getId().equals(shardId)) {
+                return accountNumber;
+            }
+        }
+    }
+}